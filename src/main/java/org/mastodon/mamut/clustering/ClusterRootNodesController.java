@@ -8,28 +8,44 @@ import org.mastodon.mamut.clustering.config.CropCriteria;
 import org.mastodon.mamut.clustering.config.SimilarityMeasure;
 import org.mastodon.mamut.clustering.ui.DendrogramView;
 import org.mastodon.mamut.clustering.util.Classification;
-import org.mastodon.mamut.clustering.util.ClusterUtils;
+import org.mastodon.mamut.clustering.util.ClassificationProgressListener;
+import org.mastodon.mamut.clustering.util.ClassificationReport;
+import org.mastodon.mamut.clustering.util.ClusteringSession;
+import org.mastodon.mamut.clustering.util.CondensedDistanceMatrix;
+import org.mastodon.mamut.clustering.util.DistanceCache;
+import org.mastodon.mamut.clustering.util.DistanceMatrixComputation;
+import org.mastodon.mamut.clustering.util.ProgressListener;
 import org.mastodon.mamut.model.Link;
 import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.ModelGraph;
 import org.mastodon.mamut.model.Spot;
 import org.mastodon.mamut.model.branch.BranchGraphSynchronizer;
 import org.mastodon.mamut.model.branch.BranchSpot;
-import org.mastodon.mamut.treesimilarity.tree.BranchSpotTree;
+import org.mastodon.mamut.treesimilarity.SubtreeMemo;
+import org.mastodon.mamut.treesimilarity.tree.CompactBranchSpotTree;
 import org.mastodon.mamut.treesimilarity.tree.TreeUtils;
-import org.mastodon.mamut.util.LineageTreeUtils;
+import org.mastodon.mamut.util.LineageRootIndex;
+import org.mastodon.mamut.util.TimepointSpotCounts;
 import org.mastodon.model.tag.TagSetStructure;
 import org.mastodon.util.ColorUtils;
 import org.mastodon.util.TagSetUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.swing.SwingUtilities;
+import java.io.File;
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.StringJoiner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class ClusterRootNodesController
@@ -37,131 +53,389 @@ public class ClusterRootNodesController
 
 	private static final Logger logger = LoggerFactory.getLogger( MethodHandles.lookup().lookupClass() );
 
+	/**
+	 * The maximum number of attempts to classify the lineage trees, if the model graph changes during the classification.
+	 */
+	private static final int MAX_ATTEMPTS = 3;
+
 	private final Model model;
 
 	private final BranchGraphSynchronizer synchronizer;
 
-	private SimilarityMeasure similarityMeasure = SimilarityMeasure.NORMALIZED_DIFFERENCE;
+	/**
+	 * The current parameters. They are replaced as a whole by the setters, such that a classification can capture them once and is not affected by later changes.
+	 */
+	private final AtomicReference< Parameters > parameters = new AtomicReference<>( new Parameters( null, 0, 0, 0, 0, 0,
+			SimilarityMeasure.NORMALIZED_DIFFERENCE, ClusteringMethod.AVERAGE_LINKAGE, 0, true ) );
+
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	/**
+	 * The job, which holds {@link #running}, or {@code null}.
+	 */
+	private volatile ClassificationJob currentJob;
 
-	private ClusteringMethod clusteringMethod = ClusteringMethod.AVERAGE_LINKAGE;
+	private volatile ProgressListener progressListener =
+			( completed, total ) -> logger.debug( "Computed {} of {} distances between lineage trees.", completed, total );
 
-	private CropCriteria cropCriterion;
+	private volatile ClassificationProgressListener classificationProgressListener = ( stage, completed, total ) -> {};
 
-	private int cropStart;
+	private final DistanceCache distanceCache;
 
-	private int cropEnd;
+	private final File distanceCacheFile;
 
-	private int cropStartTime;
+	private final LineageRootIndex rootIndex;
 
-	private int cropEndTime;
+	/**
+	 * The lineage trees of the last call of {@link #getRoots(ClassificationReport)}. They are reused, as long as the graphs and the crop parameters do not change.
+	 */
+	private List< CompactBranchSpotTree > trees;
 
-	private int numberOfClasses;
+	private long[] treesKey;
 
-	private int minCellDivisions;
+	/**
+	 * The version of the {@link #rootIndex} after the branch graph has been rebuilt by this controller.
+	 */
+	private long rebuiltVersion = -1;
 
-	private Classification< BranchSpotTree > classification;
+	/**
+	 * The distances and the dendrogram of the last classification. They are reused, if only the number of classes changes.
+	 */
+	private ClusteringSession< CompactBranchSpotTree > session;
 
-	private boolean running = false;
+	private long[] sessionFingerprints;
 
-	private boolean showDendrogram = true;
+	private SimilarityMeasure sessionSimilarityMeasure;
+
+	private ClusteringMethod sessionClusteringMethod;
+
+	private ClassificationReport lastReport;
 
 	public ClusterRootNodesController( final Model model, final BranchGraphSynchronizer synchronizer )
+	{
+		this( model, synchronizer, null );
+	}
+
+	/**
+	 * Creates a new controller.
+	 *
+	 * @param model the model
+	 * @param synchronizer the synchronizer of the branch graph
+	 * @param distanceCacheFile a file, in which the distances between lineage trees are cached across sessions, or {@code null} to only cache the distances in memory.
+	 */
+	public ClusterRootNodesController( final Model model, final BranchGraphSynchronizer synchronizer, final File distanceCacheFile )
+	{
+		this( model, synchronizer, new LineageRootIndex( model ), distanceCacheFile );
+	}
+
+	/**
+	 * Creates a new controller.
+	 *
+	 * @param model the model
+	 * @param synchronizer the synchronizer of the branch graph
+	 * @param rootIndex the index of the roots of the lineage trees of the model, which may be shared between controllers
+	 * @param distanceCacheFile a file, in which the distances between lineage trees are cached across sessions, or {@code null} to only cache the distances in memory.
+	 */
+	public ClusterRootNodesController( final Model model, final BranchGraphSynchronizer synchronizer, final LineageRootIndex rootIndex,
+			final File distanceCacheFile )
 	{
 		this.model = model;
 		this.synchronizer = synchronizer;
+		this.rootIndex = rootIndex;
+		this.distanceCacheFile = distanceCacheFile;
+		this.distanceCache = loadDistanceCache( distanceCacheFile );
 	}
 
-	public void createTagSet()
+	private static DistanceCache loadDistanceCache( final File file )
+	{
+		if ( file == null || !file.isFile() )
+			return new DistanceCache();
+		try
+		{
+			return DistanceCache.load( file );
+		}
+		catch ( IOException e )
+		{
+			logger.warn( "Could not load distance cache from {}. Message: {}", file, e.getMessage() );
+			return new DistanceCache();
+		}
+	}
+
+	private void saveDistanceCache()
 	{
-		if ( running )
+		if ( distanceCacheFile == null )
 			return;
-		if ( !isValidParams() )
+		try
+		{
+			// NB: only the distances computed since the last save are appended to the file
+			distanceCache.append( distanceCacheFile );
+		}
+		catch ( IOException e )
+		{
+			logger.warn( "Could not save distance cache to {}. Message: {}", distanceCacheFile, e.getMessage() );
+		}
+	}
+
+	/**
+	 * Classifies the lineage trees and creates a tag set with one tag per class.
+	 * <p>
+	 * The model graph is only locked while the lineage trees are extracted (read lock) and while the tags are applied (write lock).
+	 * The distances and the clustering are computed on a snapshot of {@link CompactBranchSpotTree}s without holding a lock, such that the application stays responsive during long runs.
+	 * If the model graph changes during the computation, the classification is repeated on a new snapshot.
+	 * <p>
+	 * The classification runs in the calling thread. It can be {@link #cancel(String) canceled} from any other thread, see {@link #getLastReport()}.
+	 * Use {@link #createClassificationJob()} to run the classification in another thread.
+	 *
+	 * @throws IllegalArgumentException if the parameters are invalid
+	 * @throws IllegalStateException if another classification is running
+	 */
+	public void createTagSet()
+	{
+		createClassificationJob().run();
+	}
+
+	/**
+	 * Creates a job, which classifies the lineage trees and creates a tag set with one tag per class, see {@link #createTagSet()}, when it is {@link ClassificationJob#run() run}.
+	 * <p>
+	 * The job captures the current parameters and listeners, such that changing them afterwards does not affect the job.
+	 * The controller {@link #isRunning() is running} from the creation of the job until the job is done. Thus, the job needs to be run exactly once.
+	 * It can be {@link ClassificationJob#cancel(String) canceled} at any time, also before it has been started.
+	 *
+	 * @return the job
+	 * @throws IllegalArgumentException if the parameters are invalid
+	 * @throws IllegalStateException if another classification is running
+	 */
+	public ClassificationJob createClassificationJob()
+	{
+		Parameters params = parameters.get();
+		if ( !getFeedback( params ).isEmpty() )
 			throw new IllegalArgumentException( "Invalid parameters settings." );
-		ReentrantReadWriteLock.WriteLock writeLock = model.getGraph().getLock().writeLock();
-		writeLock.lock();
+		if ( !running.compareAndSet( false, true ) )
+			throw new IllegalStateException( "A classification of lineage trees is already running." );
+		ClassificationJob newJob = new ClassificationJob( params, progressListener, classificationProgressListener );
+		currentJob = newJob;
+		return newJob;
+	}
+
+	/**
+	 * @return {@code true}, if a classification is currently running or has been created, but not yet run, see {@link #createClassificationJob()}.
+	 */
+	public boolean isRunning()
+	{
+		return running.get();
+	}
+
+	private void runClassification( ClassificationJob job )
+	{
+		ClassificationReport report = new ClassificationReport( job.classificationProgressListener );
+		job.report = report;
+		lastReport = report;
 		try
 		{
-			running = true;
-			runClassification();
+			Classification< CompactBranchSpotTree > result;
+			try
+			{
+				result = classifyAndTag( job, report );
+			}
+			catch ( CancellationException e )
+			{
+				logger.info( "Classification of lineage trees canceled. Reason: {}", e.getMessage() );
+				report.setCanceled( e.getMessage() );
+				return;
+			}
+
+			if ( job.parameters.showDendrogram )
+				report.measure( ClassificationReport.Stage.DENDROGRAM, () -> showDendrogram( job.parameters, result ) );
 		}
 		finally
 		{
-			writeLock.unlock();
-			running = false;
+			report.finish();
+			logger.info( "{}", report );
+			report.emitJfrEvents();
 		}
 	}
 
-	private void runClassification()
+	/**
+	 * Classifies a snapshot of the lineage trees without holding a lock and applies the classification under the write lock,
+	 * if the model graph has not changed in the meantime. Otherwise, the classification is repeated on a new snapshot.
+	 *
+	 * @return the applied classification
+	 * @throws CancellationException if the classification has been canceled or the model graph has changed during each attempt
+	 */
+	private Classification< CompactBranchSpotTree > classifyAndTag( ClassificationJob job, ClassificationReport report )
 	{
-		List< BranchSpotTree > roots = getRoots();
-		classification = classifyLineageTrees( roots );
+		Parameters params = job.parameters;
+		for ( int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++ )
+		{
+			job.throwIfCanceled();
+			Snapshot snapshot = takeSnapshot( params, report );
+			report.setNumberOfTrees( snapshot.trees.size() );
+			job.throwIfCanceled();
+			Classification< CompactBranchSpotTree > result = classifyLineageTrees( job, snapshot.trees, report );
+
+			ReentrantReadWriteLock.WriteLock writeLock = model.getGraph().getLock().writeLock();
+			writeLock.lock();
+			try
+			{
+				// NB: the tags are applied completely or not at all
+				job.throwIfCanceled();
+				// NB: the trees refer to branch spots by their pool indices, which are only valid, if the graphs have not changed
+				if ( rootIndex.getVersion() == snapshot.version )
+				{
+					Collection< Pair< String, Integer > > tagsAndColors = createTagsAndColors( params );
+					report.measure( ClassificationReport.Stage.TAGGING, () -> applyClassification( params, result, tagsAndColors ) );
+					return result;
+				}
+			}
+			finally
+			{
+				writeLock.unlock();
+			}
+			logger.info( "The model has changed during the classification of lineage trees (attempt {} of {}).", attempt, MAX_ATTEMPTS );
+		}
+		throw new CancellationException( "The model has changed during each of " + MAX_ATTEMPTS + " attempts to classify the lineage trees." );
+	}
 
-		Collection< Pair< String, Integer > > tagsAndColors = createTagsAndColors();
-		applyClassification( classification, tagsAndColors );
-		if ( showDendrogram )
-			showDendrogram();
+	/**
+	 * Gets the report of the last classification, i.e. the wall time of its stages and the work done for the distances between the lineage trees.
+	 *
+	 * @return the report, or {@code null}, if no classification has been run yet
+	 */
+	public ClassificationReport getLastReport()
+	{
+		return lastReport;
 	}
 
 	String getParameters()
+	{
+		return getParameters( parameters.get() );
+	}
+
+	private String getParameters( Parameters params )
 	{
 		StringJoiner joiner = new StringJoiner( ", " );
-		joiner.add( "Crop criterion: " + cropCriterion.getName() );
-		joiner.add( "Crop start: " + cropStart );
-		joiner.add( "Crop end: " + cropEnd );
-		joiner.add( "Number of classes: " + numberOfClasses );
-		joiner.add( "Minimum cell divisions: " + minCellDivisions );
-		joiner.add( "Similarity measure: " + similarityMeasure.getName() );
-		joiner.add( "Clustering method: " + clusteringMethod.getName() );
-		joiner.add( "Resulting lineage trees: " + getRoots().size() );
+		joiner.add( "Crop criterion: " + params.cropCriterion.getName() );
+		joiner.add( "Crop start: " + params.cropStart );
+		joiner.add( "Crop end: " + params.cropEnd );
+		joiner.add( "Number of classes: " + params.numberOfClasses );
+		joiner.add( "Minimum cell divisions: " + params.minCellDivisions );
+		joiner.add( "Similarity measure: " + params.similarityMeasure.getName() );
+		joiner.add( "Clustering method: " + params.clusteringMethod.getName() );
+		joiner.add( "Resulting lineage trees: " + getRoots( params ).size() );
 		return joiner.toString();
 	}
 
-	private void showDendrogram()
+	private void showDendrogram( Parameters params, Classification< CompactBranchSpotTree > result )
 	{
 
-		String header = "<html><body>Dendrogram of hierarchical clustering of lineages<br>" + getParameters() + "</body></html>";
-		DendrogramView< BranchSpotTree > dendrogramView =
-				new DendrogramView<>( classification.getAlgorithmResult(), classification.getObjectMapping(), classification.getCutoff(),
-						header
-				);
-		dendrogramView.show();
+		String header = "<html><body>Dendrogram of hierarchical clustering of lineages<br>" + getParameters( params ) + "</body></html>";
+		// NB: the classification may run in a background thread, but the view must be created on the event dispatch thread
+		SwingUtilities.invokeLater( () -> {
+			DendrogramView< CompactBranchSpotTree > dendrogramView =
+					new DendrogramView<>( result.getAlgorithmResult(), result.getObjectMapping(), result.getCutoff(), header );
+			dendrogramView.show();
+		} );
+	}
+
+	private Classification< CompactBranchSpotTree > classifyLineageTrees( ClassificationJob job, List< CompactBranchSpotTree > roots, ClassificationReport report )
+	{
+		Parameters params = job.parameters;
+		SimilarityMeasure similarityMeasure = params.similarityMeasure;
+		ClusteringMethod clusteringMethod = params.clusteringMethod;
+		CompactBranchSpotTree[] rootBranchSpots = roots.toArray( new CompactBranchSpotTree[ 0 ] );
+		long[] fingerprints = new long[ rootBranchSpots.length ];
+		for ( int i = 0; i < fingerprints.length; i++ )
+			fingerprints[ i ] = TreeUtils.fingerprint( rootBranchSpots[ i ] );
+
+		boolean sameTrees = session != null && Arrays.equals( fingerprints, sessionFingerprints );
+		if ( sameTrees && similarityMeasure == sessionSimilarityMeasure && clusteringMethod == sessionClusteringMethod )
+		{
+			logger.debug( "Reusing distances and dendrogram of the previous classification." );
+			// NB: the trees are cached, but recreated after the graph has changed. If the changes did not affect the fingerprints, the new trees need to be used for tagging.
+			// If the cached trees have been reused, this only wraps the same trees again.
+			session = session.withObjects( rootBranchSpots );
+		}
+		else
+		{
+			CondensedDistanceMatrix distances;
+			if ( sameTrees && similarityMeasure == sessionSimilarityMeasure )
+			{
+				logger.debug( "Reusing distances of the previous classification." );
+				distances = session.getDistances();
+			}
+			else
+				distances = report.measure( ClassificationReport.Stage.DISTANCES, () -> computeDistances( job, roots, fingerprints, report ) );
+			session = new ClusteringSession<>( rootBranchSpots, distances, clusteringMethod.getLinkage() );
+			sessionFingerprints = fingerprints;
+			sessionSimilarityMeasure = similarityMeasure;
+			sessionClusteringMethod = clusteringMethod;
+		}
+		// NB: the dendrogram is computed lazily by the session
+		return report.measure( ClassificationReport.Stage.CLUSTERING, () -> session.getClassificationByClassCount( params.numberOfClasses ) );
 	}
 
-	private Classification< BranchSpotTree > classifyLineageTrees( List< BranchSpotTree > roots )
+	private CondensedDistanceMatrix computeDistances( ClassificationJob job, List< CompactBranchSpotTree > roots, long[] fingerprints,
+			ClassificationReport report )
 	{
-		double[][] distances = ClusterUtils.getDistanceMatrix( new ArrayList<>( roots ), similarityMeasure );
-		BranchSpotTree[] rootBranchSpots = roots.toArray( new BranchSpotTree[ 0 ] );
-		return ClusterUtils.getClassificationByClassCount( rootBranchSpots, distances,
-				clusteringMethod.getLinkageStrategy(), numberOfClasses
-		);
+		DistanceMatrixComputation computation = new DistanceMatrixComputation( new ArrayList<>( roots ), job.parameters.similarityMeasure );
+		// NB: the fingerprints are already computed to detect unchanged trees
+		computation.setFingerprints( fingerprints );
+		SubtreeMemo memo = new SubtreeMemo();
+		ProgressListener listener = job.progressListener;
+		ClassificationProgressListener classificationListener = job.classificationProgressListener;
+		computation.setProgressListener( ( completed, total ) -> {
+			if ( listener != null )
+				listener.showProgress( completed, total );
+			classificationListener.showProgress( ClassificationReport.Stage.DISTANCES, completed, total );
+		} );
+		computation.setDistanceCache( distanceCache );
+		computation.setSubtreeMemo( memo );
+		job.distanceMatrixComputation = computation;
+		// NB: the classification may have been canceled before the computation has been published
+		String reason = job.cancelReason;
+		if ( reason != null )
+			computation.cancel( reason );
+		try
+		{
+			return computation.computeCondensed( false );
+		}
+		finally
+		{
+			job.distanceMatrixComputation = null;
+			report.addDistanceMatrix( computation, memo );
+			// NB: also save the distances computed before a cancellation
+			saveDistanceCache();
+		}
 	}
 
-	private Collection< Pair< String, Integer > > createTagsAndColors()
+	private static Collection< Pair< String, Integer > > createTagsAndColors( Parameters params )
 	{
 		Collection< Pair< String, Integer > > tagsAndColors = new ArrayList<>();
-		for ( int i = 0; i < numberOfClasses; i++ )
+		for ( int i = 0; i < params.numberOfClasses; i++ )
 			tagsAndColors.add( Pair.of( "Class " + ( i + 1 ), ColorUtils.GLASBEY[ i + 1 ].getRGB() ) );
 		return tagsAndColors;
 	}
 
-	private void applyClassification( Classification< BranchSpotTree > classification, Collection< Pair< String, Integer > > tagsAndColors )
+	private void applyClassification( Parameters params, Classification< CompactBranchSpotTree > classification,
+			Collection< Pair< String, Integer > > tagsAndColors )
 	{
-		Set< Set< BranchSpotTree > > classifiedObjects = classification.getClassifiedObjects();
-		TagSetStructure.TagSet tagSet = TagSetUtils.addNewTagSetToModel( model, getTagSetName(), tagsAndColors );
+		Set< Set< CompactBranchSpotTree > > classifiedObjects = classification.getClassifiedObjects();
+		TagSetStructure.TagSet tagSet = TagSetUtils.addNewTagSetToModel( model, getTagSetName( params ), tagsAndColors );
 		int i = 0;
-		for ( Set< BranchSpotTree > entry : classifiedObjects )
+		for ( Set< CompactBranchSpotTree > entry : classifiedObjects )
 		{
 			logger.info( "Class {} has {} trees", i, entry.size() );
 			TagSetStructure.Tag tag = tagSet.getTags().get( i );
-			for ( BranchSpotTree tree : entry )
+			for ( CompactBranchSpotTree tree : entry )
 			{
-				Spot rootSpot = model.getBranchGraph().getFirstLinkedVertex( tree.getBranchSpot(), model.getGraph().vertexRef() );
+				BranchSpot rootBranchSpot = tree.getBranchSpot( model.getBranchGraph().vertexRef() );
+				Spot rootSpot = model.getBranchGraph().getFirstLinkedVertex( rootBranchSpot, model.getGraph().vertexRef() );
 				ModelGraph modelGraph = model.getGraph();
 				DepthFirstIterator< Spot, Link > iterator = new DepthFirstIterator<>( rootSpot, modelGraph );
 				iterator.forEachRemaining( spot -> {
-					if ( spot.getTimepoint() < cropStart )
+					if ( spot.getTimepoint() < params.cropStart )
 						return;
-					if ( spot.getTimepoint() > cropEnd )
+					if ( spot.getTimepoint() > params.cropEnd )
 						return;
 					TagSetUtils.tagSpotAndIncomingEdges( model, spot, tagSet, tag );
 				} );
@@ -170,20 +444,70 @@ public class ClusterRootNodesController
 		}
 	}
 
-	private List< BranchSpotTree > getRoots()
+	private List< CompactBranchSpotTree > getRoots( Parameters params )
+	{
+		return takeSnapshot( params, new ClassificationReport() ).trees;
+	}
+
+	/**
+	 * Extracts the lineage trees under the read lock of the model graph. The trees are reused, as long as the graphs and the crop parameters do not change.
+	 * <p>
+	 * NB: must not be called while holding the read lock, since the branch graph may need to be rebuilt under the write lock.
+	 */
+	private synchronized Snapshot takeSnapshot( Parameters params, ClassificationReport report )
+	{
+		rebuildBranchGraphIfNeeded();
+		ReentrantReadWriteLock.ReadLock readLock = model.getGraph().getLock().readLock();
+		readLock.lock();
+		try
+		{
+			long[] key = { rootIndex.getVersion(), params.cropStartTime, params.cropEndTime, params.minCellDivisions };
+			if ( !Arrays.equals( key, treesKey ) )
+			{
+				RefSet< Spot > roots = report.measure( ClassificationReport.Stage.ROOTS, () -> rootIndex.getRoots( params.cropStartTime ) );
+				trees = Collections.unmodifiableList( report.measure( ClassificationReport.Stage.TREES, () -> createTrees( params, roots ) ) );
+				treesKey = key;
+			}
+			return new Snapshot( trees, treesKey[ 0 ] );
+		}
+		finally
+		{
+			readLock.unlock();
+		}
+	}
+
+	private void rebuildBranchGraphIfNeeded()
 	{
-		if ( !synchronizer.isUptodate() )
-			model.getBranchGraph().graphRebuilt();
-		RefSet< Spot > roots = LineageTreeUtils.getRoots( model.getGraph(), cropStartTime );
-		List< BranchSpotTree > trees = new ArrayList<>();
+		// NB: the branch graph only needs to be rebuilt, if the model graph has changed since this controller has rebuilt it
+		if ( synchronizer.isUptodate() || rootIndex.getVersion() == rebuiltVersion )
+			return;
+		ReentrantReadWriteLock.WriteLock writeLock = model.getGraph().getLock().writeLock();
+		writeLock.lock();
+		try
+		{
+			if ( !synchronizer.isUptodate() && rootIndex.getVersion() != rebuiltVersion )
+			{
+				model.getBranchGraph().graphRebuilt();
+				rebuiltVersion = rootIndex.getVersion();
+			}
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	private List< CompactBranchSpotTree > createTrees( Parameters params, RefSet< Spot > roots )
+	{
+		List< CompactBranchSpotTree > trees = new ArrayList<>();
 		for ( Spot root : roots )
 		{
 			BranchSpot rootBranchSpot = model.getBranchGraph().getBranchVertex( root, model.getBranchGraph().vertexRef() );
 			try
 			{
-				BranchSpotTree branchSpotTree = new BranchSpotTree( rootBranchSpot, cropEndTime );
-				int minTreeSize = 2 * minCellDivisions + 1;
-				if ( TreeUtils.size( branchSpotTree ) < minTreeSize )
+				CompactBranchSpotTree branchSpotTree = CompactBranchSpotTree.of( model.getBranchGraph(), rootBranchSpot, params.cropEndTime );
+				int minTreeSize = 2 * params.minCellDivisions + 1;
+				if ( branchSpotTree.size() < minTreeSize )
 					continue;
 				trees.add( branchSpotTree );
 			}
@@ -197,47 +521,84 @@ public class ClusterRootNodesController
 
 	public void setInputParams( CropCriteria cropCriterion, int cropStart, int cropEnd, int minCellDivisions )
 	{
-		this.cropCriterion = cropCriterion;
-		this.cropStart = cropStart;
-		this.cropEnd = cropEnd;
-		this.cropStartTime = cropStart;
-		this.cropEndTime = cropEnd;
-		if ( cropCriterion.equals( CropCriteria.NUMBER_OF_CELLS ) )
-		{
-			this.cropStartTime = LineageTreeUtils.getFirstTimepointWithNSpots( model, cropStart );
-			this.cropEndTime = LineageTreeUtils.getFirstTimepointWithNSpots( model, cropEnd );
-		}
-		this.minCellDivisions = minCellDivisions;
-		logger.debug( "Crop criterion {}, start: {}, end: {}", cropCriterion.getName(), this.cropStart, this.cropEnd );
-		logger.debug( "Crop time, start: {}, end: {}", this.cropStartTime, this.cropEndTime );
+		TimepointSpotCounts spotCounts = rootIndex.getSpotCounts();
+		boolean byNumberOfCells = cropCriterion.equals( CropCriteria.NUMBER_OF_CELLS );
+		int cropStartTime = byNumberOfCells ? spotCounts.getFirstTimepointWithNSpots( cropStart ) : cropStart;
+		int cropEndTime = byNumberOfCells ? spotCounts.getFirstTimepointWithNSpots( cropEnd ) : cropEnd;
+		parameters.updateAndGet( p -> new Parameters( cropCriterion, cropStart, cropEnd, cropStartTime, cropEndTime, minCellDivisions, p.similarityMeasure,
+				p.clusteringMethod, p.numberOfClasses, p.showDendrogram ) );
+		logger.debug( "Crop criterion {}, start: {}, end: {}", cropCriterion.getName(), cropStart, cropEnd );
+		logger.debug( "Crop time, start: {}, end: {}", cropStartTime, cropEndTime );
 	}
 
 	public void setComputeParams( SimilarityMeasure similarityMeasure, ClusteringMethod clusteringMethod, int numberOfClasses )
 	{
-		this.similarityMeasure = similarityMeasure;
-		this.clusteringMethod = clusteringMethod;
-		this.numberOfClasses = numberOfClasses;
+		parameters.updateAndGet( p -> new Parameters( p.cropCriterion, p.cropStart, p.cropEnd, p.cropStartTime, p.cropEndTime, p.minCellDivisions,
+				similarityMeasure, clusteringMethod, numberOfClasses, p.showDendrogram ) );
 	}
 
 	public void setShowDendrogram( boolean showDendrogram )
 	{
-		this.showDendrogram = showDendrogram;
+		parameters.updateAndGet( p -> new Parameters( p.cropCriterion, p.cropStart, p.cropEnd, p.cropStartTime, p.cropEndTime, p.minCellDivisions,
+				p.similarityMeasure, p.clusteringMethod, p.numberOfClasses, showDendrogram ) );
+	}
+
+	/**
+	 * Sets the listener that is informed about the progress of the computation of the distances between the lineage trees.
+	 * <p>
+	 * NB: the listener may be called from any thread.
+	 *
+	 * @param progressListener the listener
+	 */
+	public void setProgressListener( ProgressListener progressListener )
+	{
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Cancels the classification, if it is currently running or has been created, but not yet run, see {@link ClassificationJob#cancel(String)}.
+	 *
+	 * @param reason the reason for canceling
+	 */
+	public void cancel( String reason )
+	{
+		ClassificationJob runningJob = currentJob;
+		if ( runningJob != null )
+			runningJob.cancel( reason );
+	}
+
+	/**
+	 * Sets the listener that is informed about the stages of the classification and the progress within the stages.
+	 * <p>
+	 * NB: the listener may be called from any thread.
+	 *
+	 * @param classificationProgressListener the listener
+	 */
+	public void setClassificationProgressListener( ClassificationProgressListener classificationProgressListener )
+	{
+		this.classificationProgressListener =
+				classificationProgressListener == null ? ( stage, completed, total ) -> {} : classificationProgressListener;
 	}
 
 	public List< String > getFeedback()
+	{
+		return getFeedback( parameters.get() );
+	}
+
+	private List< String > getFeedback( Parameters params )
 	{
 		List< String > feedback = new ArrayList<>();
-		if ( cropStart >= cropEnd )
+		if ( params.cropStart >= params.cropEnd )
 		{
-			String message = "Crop start (" + cropStart + ") must be smaller than crop end (" + cropEnd + ")";
+			String message = "Crop start (" + params.cropStart + ") must be smaller than crop end (" + params.cropEnd + ")";
 			feedback.add( message );
 			logger.debug( message );
 		}
 
-		int roots = getRoots().size();
-		if ( numberOfClasses > roots )
+		int roots = getRoots( params ).size();
+		if ( params.numberOfClasses > roots )
 		{
-			String message = "Number of classes (" + numberOfClasses + ") must not be larger than number of valid roots (" + roots + ")";
+			String message = "Number of classes (" + params.numberOfClasses + ") must not be larger than number of valid roots (" + roots + ")";
 			feedback.add( message );
 			logger.debug( message );
 		}
@@ -250,19 +611,161 @@ public class ClusterRootNodesController
 		return getFeedback().isEmpty();
 	}
 
-	private String getTagSetName()
+	private static String getTagSetName( Parameters params )
 	{
 		return "Classification"
 				+ " ("
-				+ cropCriterion.getNameShort()
+				+ params.cropCriterion.getNameShort()
 				+ ": "
-				+ cropStart
+				+ params.cropStart
 				+ "-"
-				+ cropEnd
+				+ params.cropEnd
 				+ ", classes: "
-				+ numberOfClasses
+				+ params.numberOfClasses
 				+ ", min. div: "
-				+ minCellDivisions
+				+ params.minCellDivisions
 				+ ") ";
 	}
+
+	/**
+	 * A classification of the lineage trees with the parameters and listeners of the controller at the time the job has been created, see {@link #createClassificationJob()}.
+	 * <p>
+	 * The job holds the controller {@link #isRunning() running} until it is done.
+	 */
+	public class ClassificationJob implements Runnable
+	{
+		private final Parameters parameters;
+
+		private final ProgressListener progressListener;
+
+		private final ClassificationProgressListener classificationProgressListener;
+
+		private final AtomicBoolean started = new AtomicBoolean();
+
+		/**
+		 * The reason for canceling this job, or {@code null}, if it has not been canceled.
+		 */
+		private volatile String cancelReason;
+
+		private volatile DistanceMatrixComputation distanceMatrixComputation;
+
+		private volatile ClassificationReport report;
+
+		private ClassificationJob( final Parameters parameters, final ProgressListener progressListener,
+				final ClassificationProgressListener classificationProgressListener )
+		{
+			this.parameters = parameters;
+			this.progressListener = progressListener;
+			this.classificationProgressListener = classificationProgressListener;
+		}
+
+		/**
+		 * Runs the classification in the calling thread, see {@link ClusterRootNodesController#createTagSet()}.
+		 *
+		 * @throws IllegalStateException if the job has already been run
+		 */
+		@Override
+		public void run()
+		{
+			if ( !started.compareAndSet( false, true ) )
+				throw new IllegalStateException( "The classification job has already been run." );
+			try
+			{
+				runClassification( this );
+			}
+			finally
+			{
+				currentJob = null;
+				running.set( false );
+			}
+		}
+
+		/**
+		 * Cancels this job. The computation of the distances between the lineage trees is stopped immediately, the other stages are stopped before the next stage starts.
+		 * If the job has not yet been started, it stops right after it has been started. No tag set is created in this case.
+		 *
+		 * @param reason the reason for canceling
+		 */
+		public void cancel( final String reason )
+		{
+			String canceled = reason == null ? "Canceled." : reason;
+			cancelReason = canceled;
+			DistanceMatrixComputation computation = distanceMatrixComputation;
+			if ( computation != null )
+				computation.cancel( canceled );
+		}
+
+		/**
+		 * @return the report of this job, or {@code null}, if the job has not yet been started.
+		 */
+		public ClassificationReport getReport()
+		{
+			return report;
+		}
+
+		private void throwIfCanceled()
+		{
+			String reason = cancelReason;
+			if ( reason != null )
+				throw new CancellationException( reason );
+		}
+	}
+
+	/**
+	 * The parameters of a classification. They are never changed, such that a running classification is not affected by changes of the parameters in the user interface.
+	 */
+	private static class Parameters
+	{
+		private final CropCriteria cropCriterion;
+
+		private final int cropStart;
+
+		private final int cropEnd;
+
+		private final int cropStartTime;
+
+		private final int cropEndTime;
+
+		private final int minCellDivisions;
+
+		private final SimilarityMeasure similarityMeasure;
+
+		private final ClusteringMethod clusteringMethod;
+
+		private final int numberOfClasses;
+
+		private final boolean showDendrogram;
+
+		private Parameters( final CropCriteria cropCriterion, final int cropStart, final int cropEnd, final int cropStartTime, final int cropEndTime,
+				final int minCellDivisions, final SimilarityMeasure similarityMeasure, final ClusteringMethod clusteringMethod, final int numberOfClasses,
+				final boolean showDendrogram )
+		{
+			this.cropCriterion = cropCriterion;
+			this.cropStart = cropStart;
+			this.cropEnd = cropEnd;
+			this.cropStartTime = cropStartTime;
+			this.cropEndTime = cropEndTime;
+			this.minCellDivisions = minCellDivisions;
+			this.similarityMeasure = similarityMeasure;
+			this.clusteringMethod = clusteringMethod;
+			this.numberOfClasses = numberOfClasses;
+			this.showDendrogram = showDendrogram;
+		}
+	}
+
+	/**
+	 * The lineage trees extracted from the model and the {@link LineageRootIndex#getVersion() version} of the graphs they have been extracted from.
+	 */
+	private static class Snapshot
+	{
+		private final List< CompactBranchSpotTree > trees;
+
+		private final long version;
+
+		private Snapshot( final List< CompactBranchSpotTree > trees, final long version )
+		{
+			this.trees = trees;
+			this.version = version;
+		}
+	}
 }
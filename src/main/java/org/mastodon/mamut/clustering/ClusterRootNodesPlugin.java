@@ -5,6 +5,8 @@ import org.mastodon.mamut.MamutAppModel;
 import org.mastodon.mamut.clustering.ui.ClusterRootNodesView;
 import org.mastodon.mamut.plugin.MamutPlugin;
 import org.mastodon.mamut.plugin.MamutPluginAppModel;
+import org.mastodon.mamut.project.MamutProject;
+import org.mastodon.mamut.util.LineageRootIndex;
 import org.scijava.command.CommandService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
@@ -12,6 +14,7 @@ import org.scijava.ui.behaviour.util.AbstractNamedAction;
 import org.scijava.ui.behaviour.util.Actions;
 import org.scijava.ui.behaviour.util.RunnableAction;
 
+import java.io.File;
 import java.util.Collections;
 import java.util.List;
 
@@ -26,9 +29,16 @@ public class ClusterRootNodesPlugin implements MamutPlugin
 
 	private static final String[] CLUSTER_ROOT_NODES_KEYS = { "not mapped" };
 
+	private static final String DISTANCE_CACHE_SUFFIX = ".lineage-distances";
+
 	private final AbstractNamedAction clusterRootNodesAction;
 
-	private MamutAppModel appModel;
+	private MamutPluginAppModel pluginAppModel;
+
+	/**
+	 * The index of the roots of the lineage trees, which is shared by all classifications of the current app model.
+	 */
+	private LineageRootIndex rootIndex;
 
 	@SuppressWarnings("unused")
 	@Parameter
@@ -43,7 +53,10 @@ public class ClusterRootNodesPlugin implements MamutPlugin
 	@Override
 	public void setAppPluginModel( MamutPluginAppModel pluginAppModel )
 	{
-		this.appModel = pluginAppModel.getAppModel();
+		this.pluginAppModel = pluginAppModel;
+		if ( rootIndex != null )
+			rootIndex.close();
+		rootIndex = null;
 	}
 
 	@Override
@@ -60,7 +73,24 @@ public class ClusterRootNodesPlugin implements MamutPlugin
 
 	private void clusterRootNodes()
 	{
-		ClusterRootNodesController controller = new ClusterRootNodesController( appModel.getModel(), appModel.getBranchGraphSync() );
+		MamutAppModel appModel = pluginAppModel.getAppModel();
+		if ( rootIndex == null )
+			rootIndex = new LineageRootIndex( appModel.getModel() );
+		ClusterRootNodesController controller =
+				new ClusterRootNodesController( appModel.getModel(), appModel.getBranchGraphSync(), rootIndex, getDistanceCacheFile() );
 		commandService.run( ClusterRootNodesView.class, true, "controller", controller );
 	}
+
+	/**
+	 * Returns the file next to the project file, in which the distances between lineage trees are cached,
+	 * or {@code null}, if the project has not been saved yet.
+	 */
+	private File getDistanceCacheFile()
+	{
+		MamutProject project = pluginAppModel.getWindowManager().getProjectManager().getProject();
+		if ( project == null || project.getProjectRoot() == null )
+			return null;
+		File projectRoot = project.getProjectRoot();
+		return new File( projectRoot.getParentFile(), projectRoot.getName() + DISTANCE_CACHE_SUFFIX );
+	}
 }
@@ -4,23 +4,27 @@ import com.apporiented.algorithm.clustering.CompleteLinkageStrategy;
 import com.apporiented.algorithm.clustering.LinkageStrategy;
 import com.apporiented.algorithm.clustering.SingleLinkageStrategy;
 import org.mastodon.mamut.clustering.util.AverageLinkageUPGMAStrategy;
+import org.mastodon.mamut.clustering.util.Linkage;
 
 import java.util.NoSuchElementException;
 
 public enum ClusteringMethod
 {
-	AVERAGE_LINKAGE( "Average linkage", new AverageLinkageUPGMAStrategy() ),
-	SINGLE_LINKAGE( "Single Linkage", new SingleLinkageStrategy() ),
-	COMPLETE_LINKAGE( "Complete Linkage", new CompleteLinkageStrategy() );
+	AVERAGE_LINKAGE( "Average linkage", new AverageLinkageUPGMAStrategy(), Linkage.AVERAGE_UPGMA ),
+	SINGLE_LINKAGE( "Single Linkage", new SingleLinkageStrategy(), Linkage.SINGLE ),
+	COMPLETE_LINKAGE( "Complete Linkage", new CompleteLinkageStrategy(), Linkage.COMPLETE );
 
 	private final String name;
 
 	private final LinkageStrategy linkageStrategy;
 
-	ClusteringMethod( String name, LinkageStrategy linkageStrategy )
+	private final Linkage linkage;
+
+	ClusteringMethod( String name, LinkageStrategy linkageStrategy, Linkage linkage )
 	{
 		this.name = name;
 		this.linkageStrategy = linkageStrategy;
+		this.linkage = linkage;
 	}
 
 	public String getName()
@@ -40,4 +44,12 @@ public enum ClusteringMethod
 	{
 		return linkageStrategy;
 	}
+
+	/**
+	 * @return the linkage criterion for {@link org.mastodon.mamut.clustering.util.HierarchicalClustering}.
+	 */
+	public Linkage getLinkage()
+	{
+		return linkage;
+	}
 }
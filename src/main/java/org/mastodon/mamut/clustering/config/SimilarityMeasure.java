@@ -1,6 +1,11 @@
 package org.mastodon.mamut.clustering.config;
 
 import org.apache.commons.lang3.function.TriFunction;
+import org.mastodon.mamut.treesimilarity.DoubleCostFunction;
+import org.mastodon.mamut.treesimilarity.PreparedTree;
+import org.mastodon.mamut.treesimilarity.SubtreeDistances;
+import org.mastodon.mamut.treesimilarity.ZhangBudget;
+import org.mastodon.mamut.treesimilarity.ZhangLowerBound;
 import org.mastodon.mamut.treesimilarity.ZhangUnorderedTreeEditDistance;
 import org.mastodon.mamut.treesimilarity.tree.Tree;
 
@@ -10,19 +15,25 @@ import java.util.function.BinaryOperator;
 
 public enum SimilarityMeasure
 {
-	NORMALIZED_DIFFERENCE( "Normalized Zhang Tree Distance", ZhangUnorderedTreeEditDistance::normalizedDistance ),
-	AVERAGE_DIFFERENCE_PER_CELL_LIFE_CYCLE( "Per Cell Zhang Tree Distance", ZhangUnorderedTreeEditDistance::averageDistance ),
-	ABSOLUTE_DIFFERENCE( "Zhang Tree Distance", ZhangUnorderedTreeEditDistance::distance );
+	NORMALIZED_DIFFERENCE( "Normalized Zhang Tree Distance", ZhangUnorderedTreeEditDistance::normalizedDistance,
+			( distanceToNull1, distanceToNull2, size1, size2 ) -> distanceToNull1 + distanceToNull2 ),
+	AVERAGE_DIFFERENCE_PER_CELL_LIFE_CYCLE( "Per Cell Zhang Tree Distance", ZhangUnorderedTreeEditDistance::averageDistance,
+			( distanceToNull1, distanceToNull2, size1, size2 ) -> ( double ) size1 + ( double ) size2 ),
+	ABSOLUTE_DIFFERENCE( "Zhang Tree Distance", ZhangUnorderedTreeEditDistance::distance, ( distanceToNull1, distanceToNull2, size1, size2 ) -> 1 );
 
 	private final String name;
 
 	private final TriFunction< Tree< Double >, Tree< Double >, BiFunction< Double, Double, Double >, Double > distanceFunction;
 
+	private final Normalization normalization;
+
 	SimilarityMeasure( String name,
-			TriFunction< Tree< Double >, Tree< Double >, BiFunction< Double, Double, Double >, Double > distanceFunction )
+			TriFunction< Tree< Double >, Tree< Double >, BiFunction< Double, Double, Double >, Double > distanceFunction,
+			Normalization normalization )
 	{
 		this.name = name;
 		this.distanceFunction = distanceFunction;
+		this.normalization = normalization;
 	}
 
 	public static SimilarityMeasure getByName(final String name)
@@ -34,13 +45,109 @@ public enum SimilarityMeasure
 		throw new NoSuchElementException();
 	}
 
+	/**
+	 * Computes the distance between the given trees.
+	 * <p>
+	 * NB: for the {@link ZhangUnorderedTreeEditDistance#DEFAULT_COST_FUNCTION}, the computation is done with the equivalent {@link ZhangUnorderedTreeEditDistance#DEFAULT_DOUBLE_COST_FUNCTION},
+	 * which gives identical results without boxing.
+	 */
 	public double compute( Tree< Double > tree1, Tree< Double > tree2, BinaryOperator< Double > costFunction )
 	{
+		if ( costFunction == ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION )
+			return compute( tree1, tree2, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
 		return distanceFunction.apply( tree1, tree2, costFunction );
 	}
 
+	/**
+	 * Computes the distance between the given trees using a primitive cost function, i.e. without boxing attributes or costs per pair of nodes.
+	 */
+	public double compute( Tree< Double > tree1, Tree< Double > tree2, DoubleCostFunction costFunction )
+	{
+		return compute( PreparedTree.ofDoubles( tree1, costFunction ), PreparedTree.ofDoubles( tree2, costFunction ) );
+	}
+
+	/**
+	 * Computes the distance between the given prepared trees. The per-tree work is done once by {@link PreparedTree#of(Tree, BiFunction)}, such that only the pairwise computation remains.
+	 */
+	public double compute( PreparedTree< Double > tree1, PreparedTree< Double > tree2 )
+	{
+		return normalize( ZhangUnorderedTreeEditDistance.distance( tree1, tree2 ), tree1.getDistanceToNull(), tree2.getDistanceToNull(), tree1.size(), tree2.size() );
+	}
+
+	/**
+	 * Computes the distance between the given prepared trees within the given budget. The results are identical to {@link #compute(PreparedTree, PreparedTree)}.
+	 *
+	 * @throws java.util.concurrent.CancellationException if a limit of the budget is reached before the computation is complete
+	 */
+	public double compute( PreparedTree< Double > tree1, PreparedTree< Double > tree2, ZhangBudget budget )
+	{
+		double distance = ZhangUnorderedTreeEditDistance.distance( tree1, tree2, budget );
+		return normalize( distance, tree1.getDistanceToNull(), tree2.getDistanceToNull(), tree1.size(), tree2.size() );
+	}
+
+	/**
+	 * Computes this similarity measure for a pair of subtrees from the given table of subtree distances, i.e. without any further Zhang computation.
+	 *
+	 * @param subtreeDistances the distances between the subtrees of two trees, see {@link ZhangUnorderedTreeEditDistance#subtreeDistances(PreparedTree, PreparedTree)}
+	 * @param i the post-order number of the subtree of the first tree
+	 * @param j the post-order number of the subtree of the second tree
+	 * @return the distance between the two subtrees
+	 */
+	public double compute( SubtreeDistances< Double > subtreeDistances, int i, int j )
+	{
+		return normalize( subtreeDistances.get( i, j ), subtreeDistances.getDistanceToNull1( i ), subtreeDistances.getDistanceToNull2( j ),
+				subtreeDistances.getTree1().getSubtreeSize( i ), subtreeDistances.getTree2().getSubtreeSize( j ) );
+	}
+
+	/**
+	 * Computes the distance between the given trees, if it is below the given bound.
+	 * The computation is skipped, if the {@link #lowerBound(ZhangLowerBound.Summary, ZhangLowerBound.Summary) lower bound} already reaches the bound.
+	 *
+	 * @return the distance, if it is below the bound, otherwise {@link Double#POSITIVE_INFINITY}
+	 */
+	public double distanceIfBelow( Tree< Double > tree1, Tree< Double > tree2, BinaryOperator< Double > costFunction, double bound )
+	{
+		ZhangLowerBound.Summary summary1 = ZhangLowerBound.Summary.of( tree1, costFunction );
+		ZhangLowerBound.Summary summary2 = ZhangLowerBound.Summary.of( tree2, costFunction );
+		if ( lowerBound( summary1, summary2 ) >= bound )
+			return Double.POSITIVE_INFINITY;
+		double distance = compute( tree1, tree2, costFunction );
+		return distance < bound ? distance : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Computes a lower bound of this similarity measure for the trees with the given summaries, see {@link ZhangLowerBound}.
+	 */
+	public double lowerBound( ZhangLowerBound.Summary summary1, ZhangLowerBound.Summary summary2 )
+	{
+		return normalize( ZhangLowerBound.lowerBound( summary1, summary2 ), summary1.getCost(), summary2.getCost(), summary1.size(), summary2.size() );
+	}
+
 	public String getName()
 	{
 		return name;
 	}
+
+	private double normalize( double distance, double distanceToNull1, double distanceToNull2, int size1, int size2 )
+	{
+		double denominator = normalization.denominator( distanceToNull1, distanceToNull2, size1, size2 );
+		// NB: avoid division by zero. Two empty trees are considered equal. Two trees with zero distance are considered equal.
+		return denominator == 0 ? 0 : distance / denominator;
+	}
+
+	/**
+	 * The denominator, by which the distance between two trees is divided.
+	 */
+	@FunctionalInterface
+	private interface Normalization
+	{
+		/**
+		 * @param distanceToNull1 the distance of the first tree to the empty tree
+		 * @param distanceToNull2 the distance of the second tree to the empty tree
+		 * @param size1 the number of nodes of the first tree
+		 * @param size2 the number of nodes of the second tree
+		 * @return the denominator
+		 */
+		double denominator( double distanceToNull1, double distanceToNull2, int size1, int size2 );
+	}
 }
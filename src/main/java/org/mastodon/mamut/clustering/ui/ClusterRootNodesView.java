@@ -4,11 +4,18 @@ import org.mastodon.mamut.clustering.ClusterRootNodesController;
 import org.mastodon.mamut.clustering.config.ClusteringMethod;
 import org.mastodon.mamut.clustering.config.CropCriteria;
 import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.clustering.util.ClassificationReport;
 import org.scijava.ItemVisibility;
+import org.scijava.app.StatusService;
 import org.scijava.command.InteractiveCommand;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
+import org.scijava.thread.ThreadService;
 import org.scijava.widget.Button;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
 
 @Plugin(type = InteractiveCommand.class, visible = false, label = "Classification of Lineage Trees")
 public class ClusterRootNodesView extends InteractiveCommand
@@ -18,11 +25,20 @@ public class ClusterRootNodesView extends InteractiveCommand
 
 	private static final int WIDTH_INPUT = 7;
 
+	private static final Logger logger = LoggerFactory.getLogger( MethodHandles.lookup().lookupClass() );
 
 	@SuppressWarnings("unused")
 	@Parameter
 	private ClusterRootNodesController controller;
 
+	@SuppressWarnings("unused")
+	@Parameter
+	private StatusService statusService;
+
+	@SuppressWarnings("unused")
+	@Parameter
+	private ThreadService threadService;
+
 	@SuppressWarnings("all")
 	@Parameter(visibility = ItemVisibility.MESSAGE, required = false, persist = false)
 	private String documentation = "<html>\n"
@@ -83,12 +99,21 @@ public class ClusterRootNodesView extends InteractiveCommand
 
 	@SuppressWarnings("unused")
 	@Parameter(visibility = ItemVisibility.MESSAGE, required = false, persist = false, label = " ")
-	private String computeFeedback;
+	private volatile String computeFeedback;
 
 	@SuppressWarnings("unused")
 	@Parameter(label = "Create tag set", callback = "createTagSet", persist = false)
 	private Button createTagSet;
 
+	@SuppressWarnings("unused")
+	@Parameter(label = "Cancel", callback = "cancel", persist = false)
+	private Button cancel;
+
+	/**
+	 * The classification, which has been submitted last, or {@code null}.
+	 */
+	private volatile ClusterRootNodesController.ClassificationJob job;
+
 	/**
 	 * This method is executed whenever a parameter changes
 	 */
@@ -116,23 +141,76 @@ public class ClusterRootNodesView extends InteractiveCommand
 		paramFeedback += "</font></body></html>";
 	}
 
+	/**
+	 * Runs the classification in a background thread, such that it can be canceled. The progress of the stages is reported to the {@link StatusService}.
+	 */
 	@SuppressWarnings("unused")
 	private void createTagSet()
 	{
 		update();
-		if ( controller.isValidParams() )
+		if ( !controller.isValidParams() )
+			return;
+		controller.setClassificationProgressListener( ( stage, completed, total ) -> {
+			String message = stage == ClassificationReport.Stage.DISTANCES ? stage.getName() + " (" + completed + " of " + total + " pairs)" : stage.getName();
+			statusService.showStatus( completed, total, message );
+		} );
+		// NB: the job holds the controller running from now on, such that a second click is rejected and a cancel click reaches the job before it is started
+		ClusterRootNodesController.ClassificationJob classificationJob;
+		try
+		{
+			classificationJob = controller.createClassificationJob();
+		}
+		catch ( IllegalArgumentException | IllegalStateException e )
 		{
-			String feedback;
+			setComputeFeedback( "red", e.getMessage() );
+			return;
+		}
+		job = classificationJob;
+		setComputeFeedback( "black", "Classification running..." );
+		threadService.run( () -> {
 			try
 			{
-				controller.createTagSet();
-				feedback = "Tag set created.";
+				classificationJob.run();
+				ClassificationReport report = classificationJob.getReport();
+				if ( report != null && report.isCanceled() )
+					showResult( "red", "Classification canceled. " + report.getCancelReason() );
+				else
+					showResult( "green", "Tag set created." );
 			}
-			catch ( IllegalArgumentException e )
+			catch ( IllegalArgumentException | IllegalStateException e )
 			{
-				feedback = e.getMessage();
+				showResult( "red", e.getMessage() );
 			}
-			computeFeedback = "<html><body width=" + WIDTH_INPUT + "cm><font color=\"green\">" + feedback + "</font></body></html>";
-		}
+			catch ( RuntimeException e )
+			{
+				logger.error( "Classification of lineage trees failed.", e );
+				showResult( "red", "Classification failed. " + e );
+			}
+		} );
+	}
+
+	/**
+	 * Shows the result of a classification, which has been run in a background thread.
+	 * <p>
+	 * NB: the panel only shows the new feedback, when it is refreshed after the next callback. Thus, the result also replaces the progress in the status bar.
+	 */
+	private void showResult( final String color, final String feedback )
+	{
+		setComputeFeedback( color, feedback );
+		statusService.clearStatus();
+		statusService.showStatus( feedback );
+	}
+
+	@SuppressWarnings("unused")
+	private void cancel()
+	{
+		ClusterRootNodesController.ClassificationJob classificationJob = job;
+		if ( classificationJob != null )
+			classificationJob.cancel( "Canceled by the user." );
+	}
+
+	private void setComputeFeedback( final String color, final String feedback )
+	{
+		computeFeedback = "<html><body width=" + WIDTH_INPUT + "cm><font color=\"" + color + "\">" + feedback + "</font></body></html>";
 	}
 }
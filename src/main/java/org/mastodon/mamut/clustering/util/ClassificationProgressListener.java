@@ -0,0 +1,21 @@
+package org.mastodon.mamut.clustering.util;
+
+/**
+ * Receives progress updates of the stages of a classification of lineage trees, see {@link ClassificationReport.Stage}.
+ */
+@FunctionalInterface
+public interface ClassificationProgressListener
+{
+	/**
+	 * Called whenever a stage starts or completes and whenever the progress within a stage has changed.
+	 * <p>
+	 * A stage starts with {@code completed = 0} and completes with {@code completed = total}. Within {@link ClassificationReport.Stage#DISTANCES}, the work items are the pairs of lineage trees.
+	 * <p>
+	 * NB: this method may be called from any thread.
+	 *
+	 * @param stage the current stage
+	 * @param completed the number of completed work items of the stage
+	 * @param total the total number of work items of the stage
+	 */
+	void showProgress( ClassificationReport.Stage stage, int completed, int total );
+}
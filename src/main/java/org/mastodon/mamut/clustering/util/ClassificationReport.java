@@ -0,0 +1,350 @@
+package org.mastodon.mamut.clustering.util;
+
+import org.mastodon.mamut.treesimilarity.SubtreeMemo;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Reports the work done by a single classification of lineage trees, such that slow runs can be attributed to a stage.
+ * <p>
+ * The report contains
+ * <ul>
+ *     <li>the wall time of each {@link Stage}.</li>
+ *     <li>the number of cells of the dynamic programming and the number of solved assignment problems of the tree edit distance, see {@link SubtreeMemo}.</li>
+ *     <li>percentiles of the time per pair of trees, see {@link DistanceMatrixComputation#getPairTimes()}.</li>
+ *     <li>the peak memory of the distance matrix, see {@link DistanceMatrixComputation#getPeakMatrixBytes()}.</li>
+ * </ul>
+ * The statistics of the distance matrix are zero, if the distances of a previous classification have been reused.
+ * <p>
+ * Optionally, a {@link ClassificationProgressListener} is informed, whenever a stage starts or completes.
+ * <p>
+ * {@link #toString()} gives a summary for the log. {@link #emitJfrEvents()} emits the report as events of the Java Flight Recorder, which are recorded, if a flight recording is running.
+ */
+public class ClassificationReport
+{
+	/**
+	 * The stages of a classification.
+	 */
+	public enum Stage
+	{
+		ROOTS( "Find roots" ),
+		TREES( "Build lineage trees" ),
+		DISTANCES( "Compute distances" ),
+		CLUSTERING( "Hierarchical clustering" ),
+		TAGGING( "Apply tags" ),
+		DENDROGRAM( "Show dendrogram" );
+
+		private final String name;
+
+		Stage( final String name )
+		{
+			this.name = name;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+	}
+
+	private final long start = System.nanoTime();
+
+	private final ClassificationProgressListener progressListener;
+
+	private String cancelReason;
+
+	private long totalNanos = -1;
+
+	private final Map< Stage, Long > stageNanos = new EnumMap<>( Stage.class );
+
+	private int numberOfTrees;
+
+	private long computedPairs;
+
+	private long incompletePairs;
+
+	private long cells;
+
+	private long reusedCells;
+
+	private long flowSolves;
+
+	private long pairNanosMedian;
+
+	private long pairNanos90;
+
+	private long pairNanos99;
+
+	private long pairNanosMax;
+
+	private long peakMatrixBytes;
+
+	/**
+	 * Creates a new report.
+	 */
+	public ClassificationReport()
+	{
+		this( null );
+	}
+
+	/**
+	 * Creates a new report, which informs the given listener about the start and the completion of each stage.
+	 *
+	 * @param progressListener the listener, or {@code null}
+	 */
+	public ClassificationReport( final ClassificationProgressListener progressListener )
+	{
+		this.progressListener = progressListener == null ? ( stage, completed, total ) -> {} : progressListener;
+	}
+
+	/**
+	 * Runs the given stage and adds its wall time to this report.
+	 *
+	 * @param stage the stage
+	 * @param supplier the stage
+	 * @return the result of the stage
+	 */
+	public < T > T measure( final Stage stage, final Supplier< T > supplier )
+	{
+		progressListener.showProgress( stage, 0, 1 );
+		long stageStart = System.nanoTime();
+		T result;
+		try
+		{
+			result = supplier.get();
+		}
+		finally
+		{
+			addStageNanos( stage, System.nanoTime() - stageStart );
+		}
+		progressListener.showProgress( stage, 1, 1 );
+		return result;
+	}
+
+	/**
+	 * Runs the given stage and adds its wall time to this report.
+	 *
+	 * @param stage the stage
+	 * @param runnable the stage
+	 */
+	public void measure( final Stage stage, final Runnable runnable )
+	{
+		measure( stage, () -> {
+			runnable.run();
+			return null;
+		} );
+	}
+
+	/**
+	 * Adds the given time to the wall time of the given stage.
+	 *
+	 * @param stage the stage
+	 * @param nanos the time in nanoseconds
+	 */
+	public void addStageNanos( final Stage stage, final long nanos )
+	{
+		stageNanos.merge( stage, nanos, Long::sum );
+	}
+
+	/**
+	 * Sets the number of lineage trees that are classified.
+	 *
+	 * @param numberOfTrees the number of trees
+	 */
+	public void setNumberOfTrees( final int numberOfTrees )
+	{
+		this.numberOfTrees = numberOfTrees;
+	}
+
+	/**
+	 * Adds the statistics of the given distance matrix computation to this report.
+	 *
+	 * @param computation the computation, which is done or has been canceled
+	 * @param memo the memo used by the computation, see {@link DistanceMatrixComputation#setSubtreeMemo(SubtreeMemo)}
+	 */
+	public void addDistanceMatrix( final DistanceMatrixComputation computation, final SubtreeMemo memo )
+	{
+		LogHistogram pairTimes = computation.getPairTimes();
+		computedPairs += pairTimes.getCount();
+		incompletePairs += computation.getIncompletePairs().size();
+		cells += memo.getCells();
+		reusedCells += memo.getReusedCells();
+		flowSolves += memo.getFlowSolves();
+		pairNanosMedian = Math.max( pairNanosMedian, pairTimes.getPercentile( 50 ) );
+		pairNanos90 = Math.max( pairNanos90, pairTimes.getPercentile( 90 ) );
+		pairNanos99 = Math.max( pairNanos99, pairTimes.getPercentile( 99 ) );
+		pairNanosMax = Math.max( pairNanosMax, pairTimes.getMax() );
+		peakMatrixBytes = Math.max( peakMatrixBytes, computation.getPeakMatrixBytes() );
+	}
+
+	/**
+	 * Marks the classification as canceled.
+	 *
+	 * @param reason the reason for canceling
+	 */
+	public void setCanceled( final String reason )
+	{
+		this.cancelReason = reason == null ? "" : reason;
+	}
+
+	/**
+	 * @return {@code true}, if the classification has been canceled.
+	 */
+	public boolean isCanceled()
+	{
+		return cancelReason != null;
+	}
+
+	/**
+	 * @return the reason, why the classification has been canceled, or {@code null}, if it has not been canceled.
+	 */
+	public String getCancelReason()
+	{
+		return cancelReason;
+	}
+
+	/**
+	 * Marks the classification as done, which fixes the {@link #getTotalNanos() total wall time}.
+	 */
+	public void finish()
+	{
+		if ( totalNanos < 0 )
+			totalNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * @return the wall time from the creation of this report until {@link #finish()}, or until now, if it is not yet finished, in nanoseconds.
+	 */
+	public long getTotalNanos()
+	{
+		return totalNanos < 0 ? System.nanoTime() - start : totalNanos;
+	}
+
+	/**
+	 * @param stage the stage
+	 * @return the wall time of the given stage in nanoseconds, {@code 0}, if the stage has not been run.
+	 */
+	public long getStageNanos( final Stage stage )
+	{
+		return stageNanos.getOrDefault( stage, 0L );
+	}
+
+	/**
+	 * @return the wall times of the stages, that have been run, in nanoseconds.
+	 */
+	public Map< Stage, Long > getStageNanos()
+	{
+		return Collections.unmodifiableMap( stageNanos );
+	}
+
+	/**
+	 * @return the number of lineage trees that are classified.
+	 */
+	public int getNumberOfTrees()
+	{
+		return numberOfTrees;
+	}
+
+	/**
+	 * @return the number of pairs of trees, whose distances have been computed, i.e. that have not been taken from a cache.
+	 */
+	public long getComputedPairs()
+	{
+		return computedPairs;
+	}
+
+	/**
+	 * @return the number of pairs of trees, which exceeded the pair budget, see {@link DistanceMatrixComputation#getIncompletePairs()}.
+	 */
+	public long getIncompletePairs()
+	{
+		return incompletePairs;
+	}
+
+	/**
+	 * @return the number of cells of the dynamic programming, including reused cells, see {@link SubtreeMemo#getCells()}.
+	 */
+	public long getCells()
+	{
+		return cells;
+	}
+
+	/**
+	 * @return the number of cells of the dynamic programming, which have been reused from isomorphic subtrees, see {@link SubtreeMemo#getReusedCells()}.
+	 */
+	public long getReusedCells()
+	{
+		return reusedCells;
+	}
+
+	/**
+	 * @return the number of solved assignment problems, see {@link SubtreeMemo#getFlowSolves()}.
+	 */
+	public long getFlowSolves()
+	{
+		return flowSolves;
+	}
+
+	/**
+	 * @param percentile 50, 90, 99 or 100
+	 * @return the estimated percentile of the time per pair of trees in nanoseconds
+	 */
+	public long getPairNanos( final int percentile )
+	{
+		switch ( percentile )
+		{
+		case 50:
+			return pairNanosMedian;
+		case 90:
+			return pairNanos90;
+		case 99:
+			return pairNanos99;
+		case 100:
+			return pairNanosMax;
+		default:
+			throw new IllegalArgumentException( "The percentile (" + percentile + ") is expected to be 50, 90, 99 or 100." );
+		}
+	}
+
+	/**
+	 * @return the memory needed for the distance matrix and the schedule of the pairs of trees in bytes.
+	 */
+	public long getPeakMatrixBytes()
+	{
+		return peakMatrixBytes;
+	}
+
+	/**
+	 * Emits this report as events of the Java Flight Recorder: one event per stage and one summary event.
+	 * <p>
+	 * NB: the events are only recorded, if a flight recording is running. Nothing is emitted, if the Java Flight Recorder is not available.
+	 */
+	public void emitJfrEvents()
+	{
+		JfrEvents.emit( this );
+	}
+
+	@Override
+	public String toString()
+	{
+		StringJoiner stages = new StringJoiner( ", " );
+		for ( Map.Entry< Stage, Long > entry : stageNanos.entrySet() )
+			stages.add( entry.getKey().getName() + ": " + millis( entry.getValue() ) );
+		return String.format( Locale.ROOT,
+				"Classification of %d lineage trees %s in %s (%s). Computed pairs: %d (incomplete: %d), cells: %d (reused: %d), flow solves: %d, "
+						+ "time per pair: median %s, 90%% %s, 99%% %s, max %s, peak matrix memory: %.1f MB.",
+				numberOfTrees, isCanceled() ? "canceled" : "done", millis( getTotalNanos() ), stages, computedPairs, incompletePairs, cells, reusedCells, flowSolves,
+				millis( pairNanosMedian ), millis( pairNanos90 ), millis( pairNanos99 ), millis( pairNanosMax ), peakMatrixBytes / 1e6 );
+	}
+
+	private static String millis( final long nanos )
+	{
+		return String.format( Locale.ROOT, "%.3f ms", nanos / ( double ) TimeUnit.MILLISECONDS.toNanos( 1 ) );
+	}
+}
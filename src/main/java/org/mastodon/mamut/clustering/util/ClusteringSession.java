@@ -0,0 +1,221 @@
+package org.mastodon.mamut.clustering.util;
+
+import com.apporiented.algorithm.clustering.Cluster;
+import com.apporiented.algorithm.clustering.LinkageStrategy;
+import com.apporiented.algorithm.clustering.PDistClusteringAlgorithm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Holds the distance matrix and the dendrogram of a hierarchical clustering of objects, such that {@link Classification}s for different thresholds or class counts can be obtained without repeating the clustering.
+ * <p>
+ * The clustering itself is performed once, when the first {@link Classification} is requested that needs it.
+ * Afterwards, each new {@link Classification} is a cut through the existing dendrogram, which takes time linear in the number of objects.
+ * <p>
+ * The clustering is performed by {@link HierarchicalClustering}, if the linkage is supported by it. Otherwise, the clustering algorithm of the apporiented library is used.
+ *
+ * @param <T> the type of the objects to be clustered
+ */
+public class ClusteringSession< T >
+{
+	private static final Logger logger = LoggerFactory.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private final T[] objects;
+
+	private final CondensedDistanceMatrix distances;
+
+	@Nullable
+	private final Linkage linkage;
+
+	private final LinkageStrategy linkageStrategy;
+
+	// NB: the dendrogram of the apporiented library needs unique names instead of objects
+	private final Map< String, T > objectMapping;
+
+	private LinkageMatrix linkageMatrix;
+
+	/**
+	 * Creates a new session. The clustering is not yet performed.
+	 *
+	 * @param objects the objects to be clustered
+	 * @param distances the distances between the objects
+	 * @param linkageStrategy the linkage strategy (e.g. {@link com.apporiented.algorithm.clustering.AverageLinkageStrategy}, {@link com.apporiented.algorithm.clustering.CompleteLinkageStrategy}, {@link com.apporiented.algorithm.clustering.SingleLinkageStrategy})
+	 */
+	public ClusteringSession( final T[] objects, final CondensedDistanceMatrix distances, final LinkageStrategy linkageStrategy )
+	{
+		this( objects, distances, Linkage.of( linkageStrategy ), linkageStrategy, null );
+	}
+
+	/**
+	 * Creates a new session. The clustering is not yet performed.
+	 *
+	 * @param objects the objects to be clustered
+	 * @param distances the distances between the objects
+	 * @param linkage the linkage criterion
+	 */
+	public ClusteringSession( final T[] objects, final CondensedDistanceMatrix distances, final Linkage linkage )
+	{
+		this( objects, distances, linkage, null, null );
+	}
+
+	private ClusteringSession( final T[] objects, final CondensedDistanceMatrix distances, @Nullable final Linkage linkage,
+			final LinkageStrategy linkageStrategy, final LinkageMatrix linkageMatrix )
+	{
+		if ( objects.length != distances.size() )
+			throw new IllegalArgumentException( "number of objects (" + objects.length + ") must equal the size of the distance matrix ("
+					+ distances.size() + ")." );
+		if ( linkage == null && linkageStrategy == null )
+			throw new IllegalArgumentException( "Either a linkage or a linkage strategy must be given." );
+		this.objects = objects;
+		this.distances = distances;
+		this.linkage = linkage;
+		this.linkageStrategy = linkageStrategy;
+		this.objectMapping = objectMapping( objects );
+		this.linkageMatrix = linkageMatrix;
+	}
+
+	/**
+	 * Returns a session for the given objects that shares the distances and the dendrogram with this session.
+	 * <p>
+	 * This is useful, if the objects have been recreated, but are known to be equivalent to the objects of this session in the same order.
+	 *
+	 * @param objects the objects, one for each object of this session
+	 * @return the new session
+	 */
+	public < S > ClusteringSession< S > withObjects( final S[] objects )
+	{
+		return new ClusteringSession<>( objects, distances, linkage, linkageStrategy, linkageMatrix );
+	}
+
+	/**
+	 * @return the distances between the objects of this session.
+	 */
+	public CondensedDistanceMatrix getDistances()
+	{
+		return distances;
+	}
+
+	/**
+	 * Returns the result of the clustering. The clustering is performed, if this has not happened yet.
+	 *
+	 * @return the merges of the clustering
+	 */
+	public LinkageMatrix getLinkageMatrix()
+	{
+		performClustering();
+		return linkageMatrix;
+	}
+
+	/**
+	 * Gets a {@link Classification} that contains a mapping from cluster ids to objects.<p>
+	 * The amount of clusters depends on the given threshold.
+	 *
+	 * @param threshold the threshold for the distance for building clusters
+	 * @return a mapping from cluster id objects
+	 */
+	public Classification< T > getClassificationByThreshold( final double threshold )
+	{
+		if ( threshold < 0 )
+			throw new IllegalArgumentException( "threshold must be greater than or equal to zero" );
+
+		performClustering();
+
+		Set< Set< T > > classifiedObjects = new HashSet<>();
+		for ( int[] ids : linkageMatrix.cut( threshold ) )
+		{
+			Set< T > objectsOfClass = new HashSet<>();
+			for ( int id : ids )
+				objectsOfClass.add( objects[ id ] );
+			classifiedObjects.add( objectsOfClass );
+		}
+		log( classifiedObjects );
+		Cluster algorithmResult = linkageMatrix.toCluster( objectMapping.keySet().toArray( new String[ 0 ] ) );
+		return new Classification<>( classifiedObjects, algorithmResult, objectMapping, threshold );
+	}
+
+	/**
+	 * Gets a {@link Classification} that contains a mapping from cluster ids to objects.<p>
+	 * The amount of clusters depends on the given class count.
+	 * <p>
+	 * Constraints:
+	 * <ul>
+	 *     <li>The class count needs to be greater than zero</li>
+	 *     <li>The class count needs to be less than or equal to the number of objects</li>
+	 * </ul>
+	 *
+	 * @param classCount the number of classes to be built
+	 * @return a mapping from cluster id objects
+	 */
+	public Classification< T > getClassificationByClassCount( final int classCount )
+	{
+		if ( classCount < 1 )
+			throw new IllegalArgumentException( "number of classes (" + classCount + ") must be greater than zero." );
+		else if ( classCount > objects.length )
+			throw new IllegalArgumentException(
+					"number of classes (" + classCount + ") must be less than or equal to the number of objects to be classified ("
+							+ objects.length + ")." );
+		else if ( classCount == 1 )
+			return new Classification<>( Collections.singleton( new HashSet<>( Arrays.asList( objects ) ) ), null, null, 0d );
+
+		Set< Set< T > > classes = new HashSet<>();
+		if ( classCount == objects.length )
+		{
+			for ( T name : objects )
+				classes.add( Collections.singleton( name ) );
+			return new Classification<>( classes, null, null, 0d );
+		}
+
+		performClustering();
+		return getClassificationByThreshold( linkageMatrix.getThreshold( classCount ) );
+	}
+
+	private void performClustering()
+	{
+		if ( linkageMatrix != null )
+			return;
+		if ( linkage != null )
+		{
+			linkageMatrix = HierarchicalClustering.cluster( distances, linkage );
+			return;
+		}
+		String[] uniqueNames = objectMapping.keySet().toArray( new String[ 0 ] );
+		// NB: the algorithm expects the condensed matrix as the single row of a two-dimensional array
+		Cluster algorithmResult =
+				new PDistClusteringAlgorithm().performClustering( new double[][] { distances.asDoubleArray() }, uniqueNames, linkageStrategy );
+		Map< String, Integer > ids = new HashMap<>();
+		for ( int i = 0; i < uniqueNames.length; i++ )
+			ids.put( uniqueNames[ i ], i );
+		linkageMatrix = LinkageMatrix.fromCluster( algorithmResult, ids );
+	}
+
+	private static < T > Map< String, T > objectMapping( T[] objects )
+	{
+		Map< String, T > objectNames = new LinkedHashMap<>();
+		for ( int i = 0; i < objects.length; i++ )
+			objectNames.put( String.valueOf( i ), objects[ i ] );
+		return objectNames;
+	}
+
+	private static < T > void log( Set< Set< T > > objectsToClusterIds )
+	{
+		int i = 0;
+		for ( Set< T > entry : objectsToClusterIds )
+		{
+			if ( logger.isInfoEnabled() )
+				logger.info( "clusterId: {}, object: {}", i++,
+						entry.stream().map( Object::toString ).collect( Collectors.joining( "," ) )
+				);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package org.mastodon.mamut.clustering.util;
+
+/**
+ * A symmetric distance matrix with zero diagonal that only stores the upper triangle (without the diagonal) in a single primitive array.
+ * <p>
+ * Compared to a quadratic {@code double[n][n]} matrix, this needs less than half of the memory and only a single array object.
+ * Optionally, the distances can be stored with single ({@code float}) precision, which halves the memory again.
+ * <p>
+ * The distance between the objects {@code i < j} is stored at index {@code n * i - i * (i + 1) / 2 + (j - i - 1)}.
+ * This is the same order as used by {@code scipy.spatial.distance.pdist} and {@link com.apporiented.algorithm.clustering.PDistClusteringAlgorithm}.
+ */
+public class CondensedDistanceMatrix
+{
+	/**
+	 * The maximum length of a Java array that is safe to allocate on all JVMs.
+	 */
+	private static final long MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+	private final int size;
+
+	private final double[] doubleValues;
+
+	private final float[] floatValues;
+
+	/**
+	 * Creates a new matrix for {@code size} objects with double precision. All distances are initially zero.
+	 *
+	 * @param size the number of objects
+	 */
+	public CondensedDistanceMatrix( final int size )
+	{
+		this( size, false );
+	}
+
+	/**
+	 * Creates a new matrix for {@code size} objects. All distances are initially zero.
+	 *
+	 * @param size the number of objects
+	 * @param singlePrecision if {@code true}, the distances are stored as {@code float} values, otherwise as {@code double} values
+	 */
+	public CondensedDistanceMatrix( final int size, final boolean singlePrecision )
+	{
+		if ( size < 0 )
+			throw new IllegalArgumentException( "size (" + size + ") must not be negative." );
+		long length = ( long ) size * ( size - 1 ) / 2;
+		if ( length > MAX_ARRAY_LENGTH )
+			throw new IllegalArgumentException( "size (" + size + ") is too large for a condensed distance matrix." );
+		this.size = size;
+		this.doubleValues = singlePrecision ? null : new double[ ( int ) length ];
+		this.floatValues = singlePrecision ? new float[ ( int ) length ] : null;
+	}
+
+	/**
+	 * Creates a condensed matrix with double precision from the upper triangle of the given quadratic matrix.
+	 *
+	 * @param distances a symmetric quadratic distance matrix with zero diagonal
+	 * @return the condensed matrix
+	 */
+	public static CondensedDistanceMatrix fromSquare( final double[][] distances )
+	{
+		int size = distances.length;
+		CondensedDistanceMatrix matrix = new CondensedDistanceMatrix( size );
+		for ( int i = 0; i < size; i++ )
+		{
+			if ( distances[ i ].length != size )
+				throw new IllegalArgumentException( "The distance matrix needs to be quadratic, but row " + i + " has length "
+						+ distances[ i ].length + " instead of " + size + "." );
+			for ( int j = i + 1; j < size; j++ )
+				matrix.set( i, j, distances[ i ][ j ] );
+		}
+		return matrix;
+	}
+
+	/**
+	 * @return the number of objects, i.e. the number of rows and columns of the corresponding quadratic matrix.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return {@code true}, if the distances are stored as {@code float} values.
+	 */
+	public boolean isSinglePrecision()
+	{
+		return floatValues != null;
+	}
+
+	/**
+	 * Returns the distance between the objects {@code i} and {@code j}. The distance of an object to itself is zero.
+	 */
+	public double get( final int i, final int j )
+	{
+		if ( i == j )
+		{
+			checkIndex( i );
+			return 0;
+		}
+		int index = i < j ? index( i, j ) : index( j, i );
+		return doubleValues != null ? doubleValues[ index ] : floatValues[ index ];
+	}
+
+	/**
+	 * Sets the distance between the objects {@code i} and {@code j} (and {@code j} and {@code i}).
+	 * <p>
+	 * NB: different entries may be set concurrently from different threads.
+	 */
+	public void set( final int i, final int j, final double distance )
+	{
+		if ( i == j )
+			throw new IllegalArgumentException( "The distance of object " + i + " to itself is always zero and cannot be set." );
+		int index = i < j ? index( i, j ) : index( j, i );
+		if ( doubleValues != null )
+			doubleValues[ index ] = distance;
+		else
+			floatValues[ index ] = ( float ) distance;
+	}
+
+	/**
+	 * @return the quadratic matrix that corresponds to this condensed matrix.
+	 */
+	public double[][] toSquare()
+	{
+		double[][] distances = new double[ size ][ size ];
+		for ( int i = 0; i < size; i++ )
+		{
+			for ( int j = i + 1; j < size; j++ )
+			{
+				double distance = get( i, j );
+				distances[ i ][ j ] = distance;
+				distances[ j ][ i ] = distance;
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * Returns the condensed distances as a {@code double} array in the order described in {@link CondensedDistanceMatrix}.
+	 * <p>
+	 * NB: for matrices with double precision, this is the internal array of this matrix and not a copy. Modifications of the array are reflected in this matrix.
+	 */
+	public double[] asDoubleArray()
+	{
+		if ( doubleValues != null )
+			return doubleValues;
+		double[] values = new double[ floatValues.length ];
+		for ( int k = 0; k < values.length; k++ )
+			values[ k ] = floatValues[ k ];
+		return values;
+	}
+
+	private int index( final int i, final int j )
+	{
+		checkIndex( i );
+		checkIndex( j );
+		return ( int ) ( ( long ) size * i - ( long ) i * ( i + 1 ) / 2 + ( j - i - 1 ) );
+	}
+
+	private void checkIndex( final int i )
+	{
+		if ( i < 0 || i >= size )
+			throw new IndexOutOfBoundsException( "index (" + i + ") must be in range [0, " + size + ")." );
+	}
+}
@@ -0,0 +1,445 @@
+package org.mastodon.mamut.clustering.util;
+
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.treesimilarity.tree.TreeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A thread-safe cache of distances between pairs of trees.
+ * <p>
+ * The trees are identified by their {@link TreeUtils#fingerprint(org.mastodon.mamut.treesimilarity.tree.Tree) fingerprint}, i.e. by their attributes and structure, not by their identity.
+ * Thus, cached distances remain valid, if the same trees are created again, e.g. after the model has been reloaded or the crop window has been changed in a way that does not affect a tree.
+ * <p>
+ * Since all {@link SimilarityMeasure}s are symmetric, the order of the two trees of a pair does not matter.
+ * <p>
+ * The distances are stored in primitive arrays, i.e. without objects per distance. The number of distances is limited by {@link #getMaxSize()}.
+ * The cache keeps two generations of distances. If the current generation is full, the older generation is evicted. Distances that are used from the older generation are moved to the current one,
+ * such that distances, which are used in every classification, are not evicted.
+ * <p>
+ * The cache can be saved to and loaded from a file using {@link #save(File)} and {@link #load(File)}. The distances, which are added after saving or loading, can be appended to the same file
+ * by {@link #append(File)}, such that the complete file is only rewritten, if it contains much more distances than the cache.
+ */
+public class DistanceCache
+{
+	private static final Logger logger = LoggerFactory.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private static final int MAGIC_NUMBER = 0x44495354; // "DIST"
+
+	private static final int VERSION = 2;
+
+	/**
+	 * The default maximum number of distances, which need about 50 MB.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 1 << 20;
+
+	private static final SimilarityMeasure[] SIMILARITY_MEASURES = SimilarityMeasure.values();
+
+	private final int maxSize;
+
+	private Table current = new Table();
+
+	private Table previous = new Table();
+
+	/**
+	 * The file that has been written or loaded last, to which the {@link #unsaved} distances can be appended.
+	 */
+	private File file;
+
+	private long fileSize;
+
+	/**
+	 * The distances that have been added after the {@link #file} has been written or loaded, or {@code null}, if the complete cache needs to be written again.
+	 */
+	private Table unsaved;
+
+	/**
+	 * Creates a new cache for at most {@link #DEFAULT_MAX_SIZE} distances.
+	 */
+	public DistanceCache()
+	{
+		this( DEFAULT_MAX_SIZE );
+	}
+
+	/**
+	 * Creates a new cache for at most the given number of distances.
+	 *
+	 * @param maxSize the maximum number of distances, at least 2
+	 */
+	public DistanceCache( final int maxSize )
+	{
+		if ( maxSize < 2 )
+			throw new IllegalArgumentException( "The maximum size of the cache must be at least 2, but is " + maxSize + "." );
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return the maximum number of distances, which are kept in this cache.
+	 */
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/**
+	 * Returns the cached distance between the trees with the given fingerprints, or {@code null}, if no distance is cached.
+	 *
+	 * @param similarityMeasure the similarity measure of the distance
+	 * @param fingerprint1 the fingerprint of the first tree
+	 * @param fingerprint2 the fingerprint of the second tree
+	 * @return the distance or {@code null}
+	 */
+	public synchronized Double get( final SimilarityMeasure similarityMeasure, final long fingerprint1, final long fingerprint2 )
+	{
+		int measure = similarityMeasure.ordinal();
+		long min = Math.min( fingerprint1, fingerprint2 );
+		long max = Math.max( fingerprint1, fingerprint2 );
+		int slot = current.find( measure, min, max );
+		if ( slot >= 0 )
+			return current.distances[ slot ];
+		slot = previous.find( measure, min, max );
+		if ( slot < 0 )
+			return null;
+		double distance = previous.distances[ slot ];
+		previous.remove( slot );
+		addToCurrent( measure, min, max, distance );
+		return distance;
+	}
+
+	/**
+	 * Stores the distance between the trees with the given fingerprints.
+	 *
+	 * @param similarityMeasure the similarity measure of the distance
+	 * @param fingerprint1 the fingerprint of the first tree
+	 * @param fingerprint2 the fingerprint of the second tree
+	 * @param distance the distance
+	 */
+	public synchronized void put( final SimilarityMeasure similarityMeasure, final long fingerprint1, final long fingerprint2, final double distance )
+	{
+		int measure = similarityMeasure.ordinal();
+		long min = Math.min( fingerprint1, fingerprint2 );
+		long max = Math.max( fingerprint1, fingerprint2 );
+		int slot = previous.find( measure, min, max );
+		if ( slot >= 0 )
+			previous.remove( slot );
+		addToCurrent( measure, min, max, distance );
+		if ( unsaved != null )
+		{
+			// NB: if too many distances have not been saved yet, the complete cache is written on the next save
+			if ( unsaved.size < maxSize )
+				unsaved.put( measure, min, max, distance );
+			else
+				unsaved = null;
+		}
+	}
+
+	private void addToCurrent( final int measure, final long fingerprint1, final long fingerprint2, final double distance )
+	{
+		if ( current.size >= maxSize / 2 && current.find( measure, fingerprint1, fingerprint2 ) < 0 )
+		{
+			logger.debug( "Evicting {} distances from the distance cache.", previous.size );
+			previous = current;
+			current = new Table();
+		}
+		current.put( measure, fingerprint1, fingerprint2, distance );
+	}
+
+	/**
+	 * @return the number of cached distances over all similarity measures.
+	 */
+	public synchronized int size()
+	{
+		return current.size + previous.size;
+	}
+
+	/**
+	 * Removes all cached distances.
+	 */
+	public synchronized void clear()
+	{
+		current = new Table();
+		previous = new Table();
+		unsaved = null;
+	}
+
+	/**
+	 * Saves the cache to the given file. An existing file is overwritten.
+	 *
+	 * @param file the file
+	 * @throws IOException if the file cannot be written
+	 */
+	public synchronized void save( final File file ) throws IOException
+	{
+		try (DataOutputStream output = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( file.toPath() ) ) ))
+		{
+			output.writeInt( MAGIC_NUMBER );
+			output.writeInt( VERSION );
+			writeDistances( output, previous );
+			writeDistances( output, current );
+		}
+		bindTo( file, size() );
+		logger.debug( "Saved {} distances to {}.", fileSize, file );
+	}
+
+	/**
+	 * Appends the distances, which have been added since the given file has been written or loaded by this cache, to the file.
+	 * <p>
+	 * The complete cache is written instead, see {@link #save(File)}, if the file has not been written or loaded by this cache, or if it would contain many more distances than the cache.
+	 *
+	 * @param file the file
+	 * @throws IOException if the file cannot be written
+	 */
+	public synchronized void append( final File file ) throws IOException
+	{
+		// NB: the file contains outdated and evicted distances, thus it is compacted, if it grows too large
+		if ( unsaved == null || !file.equals( this.file ) || !file.isFile() || fileSize + unsaved.size > 2L * maxSize )
+		{
+			save( file );
+			return;
+		}
+		if ( unsaved.size == 0 )
+			return;
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream( Files.newOutputStream( file.toPath(), StandardOpenOption.APPEND ) ) ))
+		{
+			writeDistances( output, unsaved );
+		}
+		logger.debug( "Appended {} distances to {}.", unsaved.size, file );
+		bindTo( file, fileSize + unsaved.size );
+	}
+
+	private void bindTo( final File file, final long fileSize )
+	{
+		this.file = file;
+		this.fileSize = fileSize;
+		this.unsaved = new Table();
+	}
+
+	/**
+	 * Writes the distances of the given table in blocks per similarity measure. Each block consists of the name of the similarity measure,
+	 * the number of distances and for each distance the two fingerprints and the distance.
+	 */
+	private static void writeDistances( final DataOutputStream output, final Table table ) throws IOException
+	{
+		int[] counts = new int[ SIMILARITY_MEASURES.length ];
+		for ( int slot = 0; slot < table.measures.length; slot++ )
+			if ( table.measures[ slot ] != 0 )
+				counts[ table.measures[ slot ] - 1 ]++;
+		for ( int measure = 0; measure < counts.length; measure++ )
+		{
+			if ( counts[ measure ] == 0 )
+				continue;
+			output.writeUTF( SIMILARITY_MEASURES[ measure ].name() );
+			output.writeInt( counts[ measure ] );
+			for ( int slot = 0; slot < table.measures.length; slot++ )
+			{
+				if ( table.measures[ slot ] != measure + 1 )
+					continue;
+				output.writeLong( table.fingerprints1[ slot ] );
+				output.writeLong( table.fingerprints2[ slot ] );
+				output.writeDouble( table.distances[ slot ] );
+			}
+		}
+	}
+
+	/**
+	 * Loads a cache for at most {@link #DEFAULT_MAX_SIZE} distances from the given file, which has been written by {@link #save(File)} and {@link #append(File)}.
+	 *
+	 * @param file the file
+	 * @return the loaded cache
+	 * @throws IOException if the file cannot be read or has an invalid format
+	 */
+	public static DistanceCache load( final File file ) throws IOException
+	{
+		return load( file, DEFAULT_MAX_SIZE );
+	}
+
+	/**
+	 * Loads a cache from the given file, which has been written by {@link #save(File)} and {@link #append(File)}.
+	 * <p>
+	 * Distances of similarity measures that are unknown to this version are skipped. If the file contains more distances than the given maximum, the distances that have been written last are kept.
+	 * An incomplete block at the end of the file, e.g. of an interrupted {@link #append(File)}, is skipped.
+	 *
+	 * @param file the file
+	 * @param maxSize the maximum number of distances of the cache
+	 * @return the loaded cache
+	 * @throws IOException if the file cannot be read or has an invalid format
+	 */
+	public static DistanceCache load( final File file, final int maxSize ) throws IOException
+	{
+		DistanceCache cache = new DistanceCache( maxSize );
+		long fileSize = 0;
+		try (DataInputStream input = new DataInputStream( new BufferedInputStream( Files.newInputStream( file.toPath() ) ) ))
+		{
+			if ( input.readInt() != MAGIC_NUMBER )
+				throw new IOException( "The file " + file + " is not a distance cache." );
+			int version = input.readInt();
+			if ( version != VERSION )
+				throw new IOException( "Unsupported version (" + version + ") of distance cache " + file + "." );
+			while ( true )
+			{
+				String name;
+				try
+				{
+					name = input.readUTF();
+				}
+				catch ( EOFException e )
+				{
+					break;
+				}
+				SimilarityMeasure similarityMeasure = similarityMeasureOrNull( name );
+				try
+				{
+					int numberOfPairs = input.readInt();
+					for ( int k = 0; k < numberOfPairs; k++ )
+					{
+						long fingerprint1 = input.readLong();
+						long fingerprint2 = input.readLong();
+						double distance = input.readDouble();
+						if ( similarityMeasure != null )
+							cache.put( similarityMeasure, fingerprint1, fingerprint2, distance );
+					}
+					fileSize += numberOfPairs;
+				}
+				catch ( EOFException e )
+				{
+					logger.warn( "Skipping the incomplete last block of distances of distance cache {}.", file );
+					break;
+				}
+			}
+		}
+		cache.bindTo( file, fileSize );
+		logger.debug( "Loaded {} distances from {}.", cache.size(), file );
+		return cache;
+	}
+
+	private static SimilarityMeasure similarityMeasureOrNull( final String name )
+	{
+		try
+		{
+			return SimilarityMeasure.valueOf( name );
+		}
+		catch ( IllegalArgumentException e )
+		{
+			logger.debug( "Skipping distances of unknown similarity measure {}.", name );
+			return null;
+		}
+	}
+
+	/**
+	 * Hash table with open addressing and linear probing, which stores the similarity measure, the two fingerprints and the distance of each entry in parallel primitive arrays.
+	 * The first fingerprint of each entry is the smaller one.
+	 */
+	private static class Table
+	{
+		private static final int INITIAL_CAPACITY = 16;
+
+		/**
+		 * The ordinal of the similarity measure plus one, or zero for empty slots.
+		 */
+		private byte[] measures = new byte[ INITIAL_CAPACITY ];
+
+		private long[] fingerprints1 = new long[ INITIAL_CAPACITY ];
+
+		private long[] fingerprints2 = new long[ INITIAL_CAPACITY ];
+
+		private double[] distances = new double[ INITIAL_CAPACITY ];
+
+		private int size;
+
+		/**
+		 * @return the slot of the given entry or {@code -1}, if the entry is not contained.
+		 */
+		private int find( final int measure, final long fingerprint1, final long fingerprint2 )
+		{
+			int mask = measures.length - 1;
+			for ( int slot = hash( measure, fingerprint1, fingerprint2 ) & mask; measures[ slot ] != 0; slot = ( slot + 1 ) & mask )
+				if ( measures[ slot ] == measure + 1 && fingerprints1[ slot ] == fingerprint1 && fingerprints2[ slot ] == fingerprint2 )
+					return slot;
+			return -1;
+		}
+
+		private void put( final int measure, final long fingerprint1, final long fingerprint2, final double distance )
+		{
+			// NB: the load factor is kept at most 1/2
+			if ( 2 * ( size + 1 ) > measures.length )
+				resize( 2 * measures.length );
+			int mask = measures.length - 1;
+			int slot = hash( measure, fingerprint1, fingerprint2 ) & mask;
+			while ( measures[ slot ] != 0 )
+			{
+				if ( measures[ slot ] == measure + 1 && fingerprints1[ slot ] == fingerprint1 && fingerprints2[ slot ] == fingerprint2 )
+				{
+					distances[ slot ] = distance;
+					return;
+				}
+				slot = ( slot + 1 ) & mask;
+			}
+			measures[ slot ] = ( byte ) ( measure + 1 );
+			fingerprints1[ slot ] = fingerprint1;
+			fingerprints2[ slot ] = fingerprint2;
+			distances[ slot ] = distance;
+			size++;
+		}
+
+		/**
+		 * Removes the entry in the given slot. The following entries of the same cluster are shifted back, such that no tombstones are needed.
+		 */
+		private void remove( int slot )
+		{
+			int mask = measures.length - 1;
+			measures[ slot ] = 0;
+			size--;
+			for ( int next = ( slot + 1 ) & mask; measures[ next ] != 0; next = ( next + 1 ) & mask )
+			{
+				int home = hash( measures[ next ] - 1, fingerprints1[ next ], fingerprints2[ next ] ) & mask;
+				// NB: the entry may move to the free slot, if its home slot is not between the free slot and its current slot
+				if ( ( ( next - home ) & mask ) >= ( ( next - slot ) & mask ) )
+				{
+					measures[ slot ] = measures[ next ];
+					fingerprints1[ slot ] = fingerprints1[ next ];
+					fingerprints2[ slot ] = fingerprints2[ next ];
+					distances[ slot ] = distances[ next ];
+					measures[ next ] = 0;
+					slot = next;
+				}
+			}
+		}
+
+		private void resize( final int capacity )
+		{
+			byte[] oldMeasures = measures;
+			long[] oldFingerprints1 = fingerprints1;
+			long[] oldFingerprints2 = fingerprints2;
+			double[] oldDistances = distances;
+			measures = new byte[ capacity ];
+			fingerprints1 = new long[ capacity ];
+			fingerprints2 = new long[ capacity ];
+			distances = new double[ capacity ];
+			size = 0;
+			for ( int slot = 0; slot < oldMeasures.length; slot++ )
+				if ( oldMeasures[ slot ] != 0 )
+					put( oldMeasures[ slot ] - 1, oldFingerprints1[ slot ], oldFingerprints2[ slot ], oldDistances[ slot ] );
+		}
+
+		/**
+		 * NB: the fingerprints are already well mixed, thus a cheap combination suffices.
+		 */
+		private static int hash( final int measure, final long fingerprint1, final long fingerprint2 )
+		{
+			long hash = ( fingerprint1 * 31 + fingerprint2 ) * 31 + measure;
+			return ( int ) ( hash ^ ( hash >>> 32 ) );
+		}
+	}
+}
@@ -0,0 +1,552 @@
+package org.mastodon.mamut.clustering.util;
+
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.feature.CancelableImpl;
+import org.mastodon.mamut.treesimilarity.PreparedTree;
+import org.mastodon.mamut.treesimilarity.SubtreeMemo;
+import org.mastodon.mamut.treesimilarity.ZhangBudget;
+import org.mastodon.mamut.treesimilarity.ZhangLowerBound;
+import org.mastodon.mamut.treesimilarity.ZhangUnorderedTreeEditDistance;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+import org.mastodon.mamut.treesimilarity.tree.TreeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Computes a symmetric quadratic distance matrix for a list of trees using a {@link SimilarityMeasure}. The diagonal is set to zero.
+ * <p>
+ * The pairs of trees are computed in parallel on a {@link ForkJoinPool}. The cost of computing the distance between two trees grows with the product of their sizes.
+ * Thus, the trees are sorted by decreasing size once, and the pairs are handed out row by row in blocks, i.e. the pairs of the largest trees first.
+ * All workers take the next block from this shared schedule as soon as they are done with their current block, such that no worker is left idle with small pairs while another one still computes a large pair at the end.
+ * The schedule needs memory linear in the number of trees, plus one bit per pair, if distances are taken from the {@link DistanceCache}.
+ * <p>
+ * The progress is reported to an optional {@link ProgressListener}. The computation can be canceled from any thread using {@link #cancel(String)}.
+ * In this case, {@link #compute()} and {@link #computeCondensed(boolean)} throw a {@link CancellationException}.
+ * If the computation of a pair fails, the computation is canceled and the first failure is rethrown once all workers have stopped.
+ * <p>
+ * Each tree is {@link PreparedTree prepared} once before the pairs are computed, such that the work per pair is only the pairwise dynamic programming.
+ * <p>
+ * Optionally, a {@link DistanceCache} can be given, such that only the distances of pairs of trees that are not yet cached are computed.
+ * <p>
+ * The results of the dynamic programming for pairs of isomorphic subtrees are shared between all pairs of trees by a {@link SubtreeMemo}. Its hit rate is logged after each computation.
+ * <p>
+ * Canceling also stops the pairs, which are currently computed. Optionally, each pair can be limited by a {@link ZhangBudget}, such that a single pathological pair of huge trees cannot stall the computation.
+ * Pairs that exceed the budget are reported by {@link #getIncompletePairs()}. Their distances are {@link Double#NaN}, or the {@link SimilarityMeasure#lowerBound(ZhangLowerBound.Summary, ZhangLowerBound.Summary) lower bound}
+ * of the distance, if {@link #setLowerBoundFallback(boolean)} is enabled. The distances of incomplete pairs are not added to the {@link DistanceCache}.
+ * <p>
+ * The time needed for each computed pair is recorded in a {@link LogHistogram}, see {@link #getPairTimes()}, and the memory of the matrix and the schedule of the pairs is reported by {@link #getPeakMatrixBytes()}.
+ */
+public class DistanceMatrixComputation extends CancelableImpl
+{
+	private static final Logger logger = LoggerFactory.getLogger( MethodHandles.lookup().lookupClass() );
+
+	/**
+	 * The number of progress updates that are reported at most during one computation.
+	 */
+	private static final int PROGRESS_STEPS = 100;
+
+	/**
+	 * The number of blocks of pairs, which each worker takes on average. More blocks balance the workers better at the end of the computation.
+	 */
+	private static final int BLOCKS_PER_WORKER = 64;
+
+	private final List< Tree< Double > > trees;
+
+	private final SimilarityMeasure similarityMeasure;
+
+	private final ForkJoinPool pool;
+
+	private ProgressListener progressListener = ( completed, total ) -> {};
+
+	private DistanceCache distanceCache;
+
+	private long[] fingerprints;
+
+	private SubtreeMemo subtreeMemo;
+
+	private ZhangBudget pairBudget = ZhangBudget.UNLIMITED;
+
+	private boolean lowerBoundFallback;
+
+	private final List< int[] > incompletePairs = Collections.synchronizedList( new ArrayList<>() );
+
+	private LogHistogram pairTimes = new LogHistogram();
+
+	private long peakMatrixBytes;
+
+	/**
+	 * Creates a new distance matrix computation that runs on the {@link ForkJoinPool#commonPool() common pool}.
+	 *
+	 * @param trees a list of trees
+	 * @param similarityMeasure the similarity measure to be used
+	 */
+	public DistanceMatrixComputation( final List< Tree< Double > > trees, final SimilarityMeasure similarityMeasure )
+	{
+		this( trees, similarityMeasure, ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 * Creates a new distance matrix computation that runs on the given {@link ForkJoinPool}.
+	 *
+	 * @param trees a list of trees
+	 * @param similarityMeasure the similarity measure to be used
+	 * @param pool the pool to run the computation on
+	 */
+	public DistanceMatrixComputation( final List< Tree< Double > > trees, final SimilarityMeasure similarityMeasure, final ForkJoinPool pool )
+	{
+		this.trees = trees;
+		this.similarityMeasure = similarityMeasure;
+		this.pool = pool;
+	}
+
+	/**
+	 * Sets the listener that is informed about the number of computed pairs of trees.
+	 *
+	 * @param progressListener the listener
+	 */
+	public void setProgressListener( final ProgressListener progressListener )
+	{
+		this.progressListener = progressListener == null ? ( completed, total ) -> {} : progressListener;
+	}
+
+	/**
+	 * Sets a cache of distances. Distances of pairs of trees that are contained in the cache are not computed again.
+	 * Newly computed distances are added to the cache.
+	 *
+	 * @param distanceCache the cache or {@code null} to not use a cache
+	 */
+	public void setDistanceCache( final DistanceCache distanceCache )
+	{
+		this.distanceCache = distanceCache;
+	}
+
+	/**
+	 * Sets the {@link TreeUtils#fingerprint(Tree) fingerprints} of the trees, which identify the trees in the {@link #setDistanceCache(DistanceCache) distance cache}.
+	 * This avoids computing them again, if the caller already needs them. Otherwise, they are computed, if a distance cache is set.
+	 *
+	 * @param fingerprints the fingerprints in the order of the trees, or {@code null} to compute them
+	 */
+	public void setFingerprints( final long[] fingerprints )
+	{
+		if ( fingerprints != null && fingerprints.length != trees.size() )
+			throw new IllegalArgumentException( "The number of fingerprints (" + fingerprints.length + ") does not match the number of trees (" + trees.size() + ")." );
+		this.fingerprints = fingerprints;
+	}
+
+	/**
+	 * Sets the memo that shares the results for isomorphic subtrees between the pairs of trees. This allows to read the statistics of the memo after the computation.
+	 *
+	 * @param subtreeMemo the memo, or {@code null} to use a new memo for each computation
+	 */
+	public void setSubtreeMemo( final SubtreeMemo subtreeMemo )
+	{
+		this.subtreeMemo = subtreeMemo;
+	}
+
+	/**
+	 * Sets the budget of each pair of trees, see {@link ZhangBudget}. Pairs that exceed the budget are reported by {@link #getIncompletePairs()}.
+	 *
+	 * @param pairBudget the budget or {@code null} to not limit the pairs
+	 */
+	public void setPairBudget( final ZhangBudget pairBudget )
+	{
+		this.pairBudget = pairBudget == null ? ZhangBudget.UNLIMITED : pairBudget;
+	}
+
+	/**
+	 * Sets whether the distances of pairs that exceed the {@link #setPairBudget(ZhangBudget) pair budget} are estimated by a cheap lower bound of the distance.
+	 * Otherwise, their distances are {@link Double#NaN}.
+	 *
+	 * @param lowerBoundFallback {@code true} to estimate the distances of incomplete pairs by their lower bound
+	 */
+	public void setLowerBoundFallback( final boolean lowerBoundFallback )
+	{
+		this.lowerBoundFallback = lowerBoundFallback;
+	}
+
+	/**
+	 * Gets the pairs of trees of the last computation, whose distances could not be computed within the {@link #setPairBudget(ZhangBudget) pair budget}.
+	 *
+	 * @return the pairs as arrays {@code { i, j }} of the indices of the trees, sorted by {@code i} and {@code j}
+	 */
+	public List< int[] > getIncompletePairs()
+	{
+		List< int[] > pairs;
+		synchronized ( incompletePairs )
+		{
+			pairs = new ArrayList<>( incompletePairs );
+		}
+		pairs.sort( Comparator.< int[] >comparingInt( pair -> pair[ 0 ] ).thenComparingInt( pair -> pair[ 1 ] ) );
+		return pairs;
+	}
+
+	/**
+	 * Gets the times needed for the pairs of trees computed by the last computation. Pairs, whose distances are taken from the {@link DistanceCache}, are not included.
+	 *
+	 * @return the histogram of the times per pair in nanoseconds
+	 */
+	public LogHistogram getPairTimes()
+	{
+		return pairTimes;
+	}
+
+	/**
+	 * Gets the memory needed by the last computation for the distance matrix and the schedule of the pairs of trees, which are both held until the computation is done.
+	 *
+	 * @return the number of bytes
+	 */
+	public long getPeakMatrixBytes()
+	{
+		return peakMatrixBytes;
+	}
+
+	/**
+	 * Computes the distance matrix.
+	 *
+	 * @return a symmetric quadratic distance matrix
+	 * @throws CancellationException if the computation has been canceled
+	 */
+	public double[][] compute()
+	{
+		int size = trees.size();
+		double[][] distances = new double[ size ][ size ];
+		computeInto( ( i, j, distance ) -> {
+			distances[ i ][ j ] = distance;
+			distances[ j ][ i ] = distance; // symmetric
+		}, ( long ) size * size * Double.BYTES );
+		return distances;
+	}
+
+	/**
+	 * Computes the distance matrix in condensed form, which needs less than half of the memory of {@link #compute()}.
+	 *
+	 * @param singlePrecision if {@code true}, the distances are stored as {@code float} values
+	 * @return a condensed distance matrix
+	 * @throws CancellationException if the computation has been canceled
+	 */
+	public CondensedDistanceMatrix computeCondensed( final boolean singlePrecision )
+	{
+		long size = trees.size();
+		CondensedDistanceMatrix distances = new CondensedDistanceMatrix( trees.size(), singlePrecision );
+		computeInto( distances::set, size * ( size - 1 ) / 2 * ( singlePrecision ? Float.BYTES : Double.BYTES ) );
+		return distances;
+	}
+
+	private void computeInto( final DistanceConsumer distances, final long matrixBytes )
+	{
+		int size = trees.size();
+		long[] fingerprints = fingerprints();
+		SubtreeMemo memo = subtreeMemo != null ? subtreeMemo : new SubtreeMemo();
+		List< PreparedTree< Double > > preparedTrees = prepareTrees( memo );
+		// NB: the summaries are only needed for incomplete pairs, thus they are computed lazily, but at most once per tree
+		AtomicReferenceArray< ZhangLowerBound.Summary > summaries = lowerBoundFallback ? new AtomicReferenceArray<>( size ) : null;
+		PairSchedule schedule = new PairSchedule( preparedTrees, pool.getParallelism() );
+		if ( fingerprints != null )
+			takeCachedPairs( schedule, fingerprints, distances );
+		int total = schedule.numberOfPairs();
+		int progressStep = Math.max( 1, total / PROGRESS_STEPS );
+
+		incompletePairs.clear();
+		LogHistogram times = new LogHistogram();
+		pairTimes = times;
+		peakMatrixBytes = matrixBytes + schedule.bytes();
+		// NB: canceling the computation also stops the pairs that are currently computed
+		ZhangBudget budget = pairBudget.withCancellation( this::isCanceled );
+		AtomicInteger completed = new AtomicInteger();
+		AtomicReference< RuntimeException > failure = new AtomicReference<>();
+		Runnable worker = () -> {
+			try
+			{
+				int[] block = new int[ 3 ];
+				while ( !isCanceled() && schedule.next( block ) )
+				{
+					for ( int column = block[ 1 ]; column < block[ 2 ] && !isCanceled(); column++ )
+					{
+						if ( schedule.isSkipped( block[ 0 ], column ) )
+							continue;
+						int i = Math.min( schedule.tree( block[ 0 ] ), schedule.tree( column ) );
+						int j = Math.max( schedule.tree( block[ 0 ] ), schedule.tree( column ) );
+						long start = System.nanoTime();
+						try
+						{
+							double distance = similarityMeasure.compute( preparedTrees.get( i ), preparedTrees.get( j ), budget );
+							times.record( System.nanoTime() - start );
+							distances.accept( i, j, distance );
+							if ( distanceCache != null )
+								distanceCache.put( similarityMeasure, fingerprints[ i ], fingerprints[ j ], distance );
+						}
+						catch ( CancellationException e )
+						{
+							if ( isCanceled() )
+								return;
+							times.record( System.nanoTime() - start );
+							incompletePairs.add( new int[] { i, j } );
+							distances.accept( i, j, lowerBoundFallback ? lowerBound( summaries, i, j ) : Double.NaN );
+						}
+						int done = completed.incrementAndGet();
+						if ( done % progressStep == 0 || done == total )
+							progressListener.showProgress( done, total );
+					}
+				}
+			}
+			catch ( RuntimeException e )
+			{
+				// NB: the other workers are stopped, and the first failure is rethrown once all of them are done
+				if ( failure.compareAndSet( null, e ) )
+					cancel( "Computing the distance of a pair of trees failed: " + e );
+			}
+		};
+
+		int numberOfWorkers = Math.min( pool.getParallelism(), total );
+		List< ForkJoinTask< ? > > tasks = new ArrayList<>( numberOfWorkers );
+		for ( int w = 0; w < numberOfWorkers; w++ )
+			tasks.add( pool.submit( worker ) );
+		for ( ForkJoinTask< ? > task : tasks )
+			task.join();
+
+		if ( failure.get() != null )
+			throw failure.get();
+		if ( isCanceled() )
+		{
+			logger.info( "Distance matrix computation canceled after {} of {} pairs. Reason: {}", completed.get(), total, getCancelReason() );
+			throw new CancellationException( getCancelReason() );
+		}
+		if ( !incompletePairs.isEmpty() )
+			logger.warn( "{} of {} pairs of trees exceeded the pair budget {}. Their distances are {}.", incompletePairs.size(), total, pairBudget,
+					lowerBoundFallback ? "estimated by lower bounds" : "NaN" );
+		logger.debug( "Shared results of isomorphic subtrees: {}", memo );
+		logger.debug( "Time per pair of trees: median {} us, 99th percentile {} us, maximum {} us.", times.getPercentile( 50 ) / 1000,
+				times.getPercentile( 99 ) / 1000, times.getMax() / 1000 );
+	}
+
+	private double lowerBound( final AtomicReferenceArray< ZhangLowerBound.Summary > summaries, final int i, final int j )
+	{
+		return similarityMeasure.lowerBound( summaryOf( summaries, i ), summaryOf( summaries, j ) );
+	}
+
+	/**
+	 * Gets the summary of the tree with the given index, which is computed on first use. Concurrent workers may compute the same summary, but only one of them is kept.
+	 */
+	private ZhangLowerBound.Summary summaryOf( final AtomicReferenceArray< ZhangLowerBound.Summary > summaries, final int i )
+	{
+		ZhangLowerBound.Summary summary = summaries.get( i );
+		if ( summary != null )
+			return summary;
+		summaries.compareAndSet( i, null, ZhangLowerBound.Summary.of( trees.get( i ), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION ) );
+		return summaries.get( i );
+	}
+
+	/**
+	 * Prepares each tree once, such that only the pairwise computation is done per pair of trees.
+	 */
+	private List< PreparedTree< Double > > prepareTrees( final SubtreeMemo memo )
+	{
+		List< PreparedTree< Double > > preparedTrees = new ArrayList<>( trees.size() );
+		for ( Tree< Double > tree : trees )
+			preparedTrees.add( PreparedTree.ofDoubles( tree, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION, memo ) );
+		return preparedTrees;
+	}
+
+	private long[] fingerprints()
+	{
+		if ( distanceCache == null )
+			return null;
+		if ( this.fingerprints != null )
+			return this.fingerprints;
+		long[] fingerprints = new long[ trees.size() ];
+		for ( int i = 0; i < fingerprints.length; i++ )
+			fingerprints[ i ] = TreeUtils.fingerprint( trees.get( i ) );
+		return fingerprints;
+	}
+
+	/**
+	 * Passes the distances of the pairs of trees that are contained in the distance cache directly to the given {@code distances} and skips them in the schedule.
+	 */
+	private void takeCachedPairs( final PairSchedule schedule, final long[] fingerprints, final DistanceConsumer distances )
+	{
+		int size = trees.size();
+		for ( int row = 0; row < size; row++ )
+		{
+			int i = schedule.tree( row );
+			for ( int column = row + 1; column < size; column++ )
+			{
+				int j = schedule.tree( column );
+				Double cached = distanceCache.get( similarityMeasure, fingerprints[ i ], fingerprints[ j ] );
+				if ( cached != null )
+				{
+					distances.accept( i, j, cached );
+					schedule.skip( row, column );
+				}
+			}
+		}
+		logger.debug( "Distance cache contains {} of {} distances.", schedule.numberOfSkippedPairs(), ( long ) size * ( size - 1 ) / 2 );
+	}
+
+	/**
+	 * Hands out the pairs of trees in blocks to the workers.
+	 * <p>
+	 * The trees are sorted by decreasing size once. A pair of trees is identified by the ranks {@code row < column} of its trees in this order.
+	 * The pairs are handed out row by row, i.e. the pairs of the largest tree first. Within a row, the partners get smaller, such that the last blocks contain the pairs of the smallest trees.
+	 * Each block covers consecutive pairs of one row, whose estimated costs, i.e. the products of the sizes of the trees, add up to a small share of the costs of all pairs.
+	 * Thus, the pairs of large trees are handed out one by one and the pairs of small trees in large blocks.
+	 */
+	private static class PairSchedule
+	{
+		/**
+		 * The indices of the trees by decreasing size.
+		 */
+		private final int[] trees;
+
+		/**
+		 * The sizes of the trees by decreasing size.
+		 */
+		private final long[] sizes;
+
+		private final long numberOfPairs;
+
+		private final double blockCosts;
+
+		/**
+		 * One bit per pair, which is set for pairs that are not computed. Only allocated, if at least one pair is skipped.
+		 */
+		private long[] skipped;
+
+		private long numberOfSkippedPairs;
+
+		private int row = 0;
+
+		private int column = 1;
+
+		private PairSchedule( final List< PreparedTree< Double > > preparedTrees, final int parallelism )
+		{
+			int size = preparedTrees.size();
+			numberOfPairs = ( long ) size * ( size - 1 ) / 2;
+			if ( numberOfPairs > Integer.MAX_VALUE )
+				throw new IllegalArgumentException( "Too many trees (" + size + ") for a distance matrix." );
+			// NB: the sizes and indices are packed into one long, such that a primitive sort can be used. The sorted array is reused for the sizes.
+			sizes = new long[ size ];
+			for ( int i = 0; i < size; i++ )
+				sizes[ i ] = ( ( long ) preparedTrees.get( i ).size() << Integer.SIZE ) | i;
+			Arrays.sort( sizes );
+			for ( int rank = 0; rank < size / 2; rank++ )
+			{
+				long key = sizes[ size - 1 - rank ];
+				sizes[ size - 1 - rank ] = sizes[ rank ];
+				sizes[ rank ] = key;
+			}
+			trees = new int[ size ];
+			double sum = 0;
+			double sumOfSquares = 0;
+			for ( int rank = 0; rank < size; rank++ )
+			{
+				trees[ rank ] = ( int ) sizes[ rank ];
+				sizes[ rank ] >>>= Integer.SIZE;
+				sum += sizes[ rank ];
+				sumOfSquares += ( double ) sizes[ rank ] * sizes[ rank ];
+			}
+			double totalCosts = ( sum * sum - sumOfSquares ) / 2;
+			blockCosts = Math.max( 1, totalCosts / ( ( double ) parallelism * BLOCKS_PER_WORKER ) );
+		}
+
+		private int tree( final int rank )
+		{
+			return trees[ rank ];
+		}
+
+		/**
+		 * Takes the next block of pairs.
+		 *
+		 * @param block receives the row, the first column and the column after the last column of the block
+		 * @return {@code false}, if all pairs have been handed out
+		 */
+		private synchronized boolean next( final int[] block )
+		{
+			if ( row >= trees.length - 1 )
+				return false;
+			block[ 0 ] = row;
+			block[ 1 ] = column;
+			double costs = 0;
+			do
+			{
+				costs += ( double ) sizes[ row ] * sizes[ column ];
+				column++;
+			}
+			while ( column < trees.length && costs < blockCosts );
+			block[ 2 ] = column;
+			if ( column == trees.length )
+			{
+				row++;
+				column = row + 1;
+			}
+			return true;
+		}
+
+		/**
+		 * Marks the given pair as not to be computed. Must not be called concurrently with the workers.
+		 */
+		private void skip( final int row, final int column )
+		{
+			if ( skipped == null )
+				skipped = new long[ ( int ) ( ( numberOfPairs + Long.SIZE - 1 ) / Long.SIZE ) ];
+			long index = index( row, column );
+			skipped[ ( int ) ( index / Long.SIZE ) ] |= 1L << index;
+			numberOfSkippedPairs++;
+		}
+
+		private boolean isSkipped( final int row, final int column )
+		{
+			if ( skipped == null )
+				return false;
+			long index = index( row, column );
+			return ( skipped[ ( int ) ( index / Long.SIZE ) ] & ( 1L << index ) ) != 0;
+		}
+
+		/**
+		 * The index of the pair in the order of the rows, i.e. the number of pairs in the rows before plus the position in its row.
+		 */
+		private long index( final int row, final int column )
+		{
+			return ( long ) row * ( trees.length - 1 ) - ( long ) row * ( row - 1 ) / 2 + column - row - 1;
+		}
+
+		private long numberOfSkippedPairs()
+		{
+			return numberOfSkippedPairs;
+		}
+
+		/**
+		 * The number of pairs that need to be computed.
+		 */
+		private int numberOfPairs()
+		{
+			return ( int ) ( numberOfPairs - numberOfSkippedPairs );
+		}
+
+		/**
+		 * The memory of the schedule.
+		 */
+		private long bytes()
+		{
+			return ( long ) trees.length * ( Integer.BYTES + Long.BYTES ) + ( skipped == null ? 0 : ( long ) skipped.length * Long.BYTES );
+		}
+	}
+
+	@FunctionalInterface
+	private interface DistanceConsumer
+	{
+		void accept( int i, int j, double distance );
+	}
+}
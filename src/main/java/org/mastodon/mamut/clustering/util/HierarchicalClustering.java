@@ -0,0 +1,278 @@
+package org.mastodon.mamut.clustering.util;
+
+import java.util.Arrays;
+
+/**
+ * Agglomerative hierarchical clustering on a {@link CondensedDistanceMatrix} in {@code O(n²)} time.
+ * <p>
+ * Single linkage uses the SLINK algorithm, which needs no memory beyond the distance matrix except for a few arrays of length {@code n}.
+ * Complete and average linkage use the nearest-neighbour chain algorithm, which works on a copy of the distance matrix that is updated with the Lance-Williams formulas.
+ * <p>
+ * In contrast to the clustering algorithms of the apporiented library, no objects are created per cluster or per pair of clusters and the result is a compact {@link LinkageMatrix}.
+ *
+ * @see <a href="https://doi.org/10.1093/comjnl/16.1.30">Sibson, SLINK: An optimally efficient algorithm for the single-link cluster method</a>
+ * @see <a href="https://arxiv.org/abs/1109.2378">Müllner, Modern hierarchical, agglomerative clustering algorithms</a>
+ */
+public class HierarchicalClustering
+{
+	private HierarchicalClustering()
+	{
+		// prevent from instantiation
+	}
+
+	/**
+	 * Clusters the objects of the given distance matrix.
+	 * <p>
+	 * The merges of the resulting {@link LinkageMatrix} are sorted by increasing distance.
+	 *
+	 * @param distances the distances between the objects
+	 * @param linkage the linkage criterion
+	 * @return the linkage matrix
+	 * @throws IllegalArgumentException if a distance is not finite, e.g. {@link Double#NaN} for a pair of trees that exceeded the budget of a {@link DistanceMatrixComputation}
+	 */
+	public static LinkageMatrix cluster( final CondensedDistanceMatrix distances, final Linkage linkage )
+	{
+		int size = distances.size();
+		if ( size < 2 )
+			return new LinkageMatrix( size, new int[ 0 ], new int[ 0 ], new double[ 0 ] );
+		checkFinite( distances );
+		Merges merges = linkage == Linkage.SINGLE ? slink( distances ) : nearestNeighborChain( distances, linkage );
+		return merges.toLinkageMatrix();
+	}
+
+	private static void checkFinite( final CondensedDistanceMatrix distances )
+	{
+		int size = distances.size();
+		for ( int i = 0; i < size; i++ )
+		{
+			for ( int j = i + 1; j < size; j++ )
+			{
+				double distance = distances.get( i, j );
+				if ( !Double.isFinite( distance ) )
+					throw new IllegalArgumentException( "The distance between object " + i + " and object " + j + " (" + distance + ") is not finite." );
+			}
+		}
+	}
+
+	/**
+	 * Computes the single linkage clustering with SLINK. The pointer representation is converted into unsorted merges of objects.
+	 */
+	private static Merges slink( final CondensedDistanceMatrix distances )
+	{
+		int size = distances.size();
+		double[] d = distances.asDoubleArray();
+		int[] pointer = new int[ size ];
+		double[] lambda = new double[ size ];
+		double[] m = new double[ size ];
+		for ( int i = 0; i < size; i++ )
+		{
+			pointer[ i ] = i;
+			lambda[ i ] = Double.POSITIVE_INFINITY;
+			for ( int j = 0; j < i; j++ )
+				m[ j ] = d[ index( size, j, i ) ];
+			for ( int j = 0; j < i; j++ )
+			{
+				int p = pointer[ j ];
+				if ( lambda[ j ] >= m[ j ] )
+				{
+					m[ p ] = Math.min( m[ p ], lambda[ j ] );
+					lambda[ j ] = m[ j ];
+					pointer[ j ] = i;
+				}
+				else
+					m[ p ] = Math.min( m[ p ], m[ j ] );
+			}
+			for ( int j = 0; j < i; j++ )
+			{
+				if ( lambda[ j ] >= lambda[ pointer[ j ] ] )
+					pointer[ j ] = i;
+			}
+		}
+		// NB: object j is merged with object pointer[j] at distance lambda[j], the last object has no merge
+		Merges merges = new Merges( size );
+		for ( int j = 0; j < size - 1; j++ )
+			merges.add( j, pointer[ j ], lambda[ j ] );
+		return merges;
+	}
+
+	/**
+	 * Computes the complete or average linkage clustering with the nearest-neighbour chain algorithm. The resulting merges refer to the representative objects of the merged clusters.
+	 */
+	private static Merges nearestNeighborChain( final CondensedDistanceMatrix distances, final Linkage linkage )
+	{
+		int size = distances.size();
+		double[] d = distances.isSinglePrecision() ? distances.asDoubleArray() : distances.asDoubleArray().clone();
+		// NB: the distance between i < j is at rowStart[i] + j, which avoids multiplications in the inner loops
+		int[] rowStart = new int[ size ];
+		for ( int i = 0; i < size; i++ )
+			rowStart[ i ] = index( size, i, i + 1 ) - i - 1;
+		int[] clusterSizes = new int[ size ];
+		Arrays.fill( clusterSizes, 1 );
+		int[] chain = new int[ size ];
+		int chainLength = 0;
+		int firstActive = 0;
+		Merges merges = new Merges( size );
+		for ( int k = 0; k < size - 1; k++ )
+		{
+			if ( chainLength == 0 )
+			{
+				while ( clusterSizes[ firstActive ] == 0 )
+					firstActive++;
+				chain[ chainLength++ ] = firstActive;
+			}
+			int x;
+			int y;
+			while ( true )
+			{
+				x = chain[ chainLength - 1 ];
+				// NB: prefer the previous element of the chain in case of ties, such that the chain terminates
+				int previous = chainLength > 1 ? chain[ chainLength - 2 ] : -1;
+				double minimum = previous >= 0 ? d[ index( rowStart, x, previous ) ] : Double.POSITIVE_INFINITY;
+				y = previous;
+				for ( int i = 0; i < size; i++ )
+				{
+					if ( clusterSizes[ i ] == 0 || i == x )
+						continue;
+					double distance = d[ index( rowStart, x, i ) ];
+					if ( distance < minimum )
+					{
+						minimum = distance;
+						y = i;
+					}
+				}
+				if ( y == previous )
+					break;
+				chain[ chainLength++ ] = y;
+			}
+			chainLength -= 2;
+
+			// NB: the merged cluster is represented by y, x becomes inactive
+			merges.add( x, y, d[ index( rowStart, x, y ) ] );
+			int sizeX = clusterSizes[ x ];
+			int sizeY = clusterSizes[ y ];
+			for ( int i = 0; i < size; i++ )
+			{
+				if ( clusterSizes[ i ] == 0 || i == x || i == y )
+					continue;
+				int indexYI = index( rowStart, y, i );
+				d[ indexYI ] = update( linkage, d[ index( rowStart, x, i ) ], d[ indexYI ], sizeX, sizeY );
+			}
+			clusterSizes[ y ] = sizeX + sizeY;
+			clusterSizes[ x ] = 0;
+		}
+		return merges;
+	}
+
+	/**
+	 * The Lance-Williams update of the distance between the other cluster and the merged cluster of x and y.
+	 * The formulas are the same as used by the linkage strategies of the apporiented library.
+	 */
+	private static double update( final Linkage linkage, final double distanceX, final double distanceY, final int sizeX, final int sizeY )
+	{
+		switch ( linkage )
+		{
+		case SINGLE:
+			return Math.min( distanceX, distanceY );
+		case COMPLETE:
+			return Math.max( distanceX, distanceY );
+		case AVERAGE_UPGMA:
+			return ( distanceX * sizeX + distanceY * sizeY ) / ( sizeX + sizeY );
+		case AVERAGE_WPGMA:
+			return ( distanceX + distanceY ) / 2;
+		default:
+			throw new IllegalArgumentException( "Unknown linkage: " + linkage );
+		}
+	}
+
+	private static int index( final int size, final int i, final int j )
+	{
+		if ( i > j )
+			return index( size, j, i );
+		return ( int ) ( ( long ) size * i - ( long ) i * ( i + 1 ) / 2 + ( j - i - 1 ) );
+	}
+
+	private static int index( final int[] rowStart, final int i, final int j )
+	{
+		return i < j ? rowStart[ i ] + j : rowStart[ j ] + i;
+	}
+
+	/**
+	 * Merges of two objects, each representing the cluster it currently belongs to, in the order of their computation.
+	 */
+	private static class Merges
+	{
+		private final int size;
+
+		private final int[] objects1;
+
+		private final int[] objects2;
+
+		private final double[] distances;
+
+		private int count;
+
+		private Merges( final int size )
+		{
+			this.size = size;
+			this.objects1 = new int[ size - 1 ];
+			this.objects2 = new int[ size - 1 ];
+			this.distances = new double[ size - 1 ];
+		}
+
+		private void add( final int object1, final int object2, final double distance )
+		{
+			objects1[ count ] = object1;
+			objects2[ count ] = object2;
+			distances[ count ] = distance;
+			count++;
+		}
+
+		/**
+		 * Sorts the merges stably by distance and replaces the representative objects by the ids of the clusters they belong to at the time of the merge.
+		 */
+		private LinkageMatrix toLinkageMatrix()
+		{
+			int merges = size - 1;
+			Integer[] order = new Integer[ merges ];
+			for ( int k = 0; k < merges; k++ )
+				order[ k ] = k;
+			Arrays.sort( order, ( a, b ) -> Double.compare( distances[ a ], distances[ b ] ) );
+
+			// NB: union find with path halving over the objects, the cluster id of each set is stored at its root
+			int[] parent = new int[ size ];
+			int[] clusterIds = new int[ size ];
+			for ( int i = 0; i < size; i++ )
+			{
+				parent[ i ] = i;
+				clusterIds[ i ] = i;
+			}
+			int[] first = new int[ merges ];
+			int[] second = new int[ merges ];
+			double[] sortedDistances = new double[ merges ];
+			for ( int k = 0; k < merges; k++ )
+			{
+				int m = order[ k ];
+				int root1 = find( parent, objects1[ m ] );
+				int root2 = find( parent, objects2[ m ] );
+				int id1 = clusterIds[ root1 ];
+				int id2 = clusterIds[ root2 ];
+				first[ k ] = Math.min( id1, id2 );
+				second[ k ] = Math.max( id1, id2 );
+				sortedDistances[ k ] = distances[ m ];
+				parent[ root1 ] = root2;
+				clusterIds[ root2 ] = size + k;
+			}
+			return new LinkageMatrix( size, first, second, sortedDistances );
+		}
+
+		private static int find( final int[] parent, int i )
+		{
+			while ( parent[ i ] != i )
+			{
+				parent[ i ] = parent[ parent[ i ] ];
+				i = parent[ i ];
+			}
+			return i;
+		}
+	}
+}
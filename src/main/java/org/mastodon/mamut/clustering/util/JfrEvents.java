@@ -0,0 +1,153 @@
+package org.mastodon.mamut.clustering.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Emits {@link ClassificationReport}s as events of the Java Flight Recorder.
+ * <p>
+ * NB: this project is compiled for Java 8, which does not contain the {@code jdk.jfr} API. Thus, the event types are created at runtime by the {@code jdk.jfr.EventFactory} via reflection.
+ * If the Java Flight Recorder is not available, e.g. on Java 8, no events are emitted.
+ */
+class JfrEvents
+{
+	private static final Logger logger = LoggerFactory.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private static final String CATEGORY = "Mastodon";
+
+	private JfrEvents()
+	{
+		// prevent from instantiation
+	}
+
+	/**
+	 * Emits one event per stage and one summary event for the given report.
+	 */
+	static void emit( final ClassificationReport report )
+	{
+		Factories factories = Factories.INSTANCE;
+		if ( factories == null )
+			return;
+		try
+		{
+			for ( Map.Entry< ClassificationReport.Stage, Long > entry : report.getStageNanos().entrySet() )
+				factories.commit( factories.stage, entry.getKey().getName(), entry.getValue() );
+			factories.commit( factories.summary, report.getNumberOfTrees(), report.getTotalNanos(), report.getComputedPairs(), report.getIncompletePairs(),
+					report.getCells(), report.getReusedCells(), report.getFlowSolves(), report.getPairNanos( 50 ), report.getPairNanos( 90 ),
+					report.getPairNanos( 99 ), report.getPairNanos( 100 ), report.getPeakMatrixBytes() );
+		}
+		catch ( ReflectiveOperationException e )
+		{
+			logger.debug( "Could not emit flight recorder events. Message: {}", e.getMessage() );
+		}
+	}
+
+	/**
+	 * The event factories, which are created once, if the Java Flight Recorder is available.
+	 */
+	private static class Factories
+	{
+		private static final Factories INSTANCE = create();
+
+		private final Object stage;
+
+		private final Object summary;
+
+		private final Method newEvent;
+
+		private final Method set;
+
+		private final Method commit;
+
+		private final Constructor< ? > annotationElement;
+
+		private final Constructor< ? > valueDescriptor;
+
+		private Factories() throws ReflectiveOperationException
+		{
+			Class< ? > factoryClass = Class.forName( "jdk.jfr.EventFactory" );
+			Class< ? > eventClass = Class.forName( "jdk.jfr.Event" );
+			Class< ? > annotationElementClass = Class.forName( "jdk.jfr.AnnotationElement" );
+			Class< ? > valueDescriptorClass = Class.forName( "jdk.jfr.ValueDescriptor" );
+			annotationElement = annotationElementClass.getConstructor( Class.class, Object.class );
+			valueDescriptor = valueDescriptorClass.getConstructor( Class.class, String.class, List.class );
+			newEvent = factoryClass.getMethod( "newEvent" );
+			set = eventClass.getMethod( "set", int.class, Object.class );
+			commit = eventClass.getMethod( "commit" );
+			Method create = factoryClass.getMethod( "create", List.class, List.class );
+
+			stage = create.invoke( null, eventType( "org.mastodon.ClassificationStage", "Classification Stage" ),
+					Arrays.asList( field( String.class, "stage", "Stage", null ),
+							field( long.class, "wallTime", "Wall Time", timespan() ) ) );
+			summary = create.invoke( null, eventType( "org.mastodon.Classification", "Classification of Lineage Trees" ),
+					Arrays.asList( field( int.class, "trees", "Lineage Trees", null ),
+							field( long.class, "wallTime", "Wall Time", timespan() ),
+							field( long.class, "computedPairs", "Computed Pairs", null ),
+							field( long.class, "incompletePairs", "Incomplete Pairs", null ),
+							field( long.class, "cells", "Cells", null ),
+							field( long.class, "reusedCells", "Reused Cells", null ),
+							field( long.class, "flowSolves", "Flow Solves", null ),
+							field( long.class, "pairTimeMedian", "Pair Time Median", timespan() ),
+							field( long.class, "pairTime90", "Pair Time 90th Percentile", timespan() ),
+							field( long.class, "pairTime99", "Pair Time 99th Percentile", timespan() ),
+							field( long.class, "pairTimeMax", "Pair Time Maximum", timespan() ),
+							field( long.class, "peakMatrixMemory", "Peak Matrix Memory", annotation( "jdk.jfr.DataAmount", "BYTES" ) ) ) );
+		}
+
+		private static Factories create()
+		{
+			try
+			{
+				return new Factories();
+			}
+			catch ( ReflectiveOperationException | LinkageError | RuntimeException e )
+			{
+				logger.debug( "Java Flight Recorder is not available. Message: {}", e.getMessage() );
+				return null;
+			}
+		}
+
+		private void commit( final Object factory, final Object... values ) throws ReflectiveOperationException
+		{
+			Object event = newEvent.invoke( factory );
+			for ( int i = 0; i < values.length; i++ )
+				set.invoke( event, i, values[ i ] );
+			commit.invoke( event );
+		}
+
+		private List< Object > eventType( final String name, final String label ) throws ReflectiveOperationException
+		{
+			return Arrays.asList( annotation( "jdk.jfr.Name", name ), annotation( "jdk.jfr.Label", label ),
+					annotation( "jdk.jfr.Category", new String[] { CATEGORY } ) );
+		}
+
+		private Object field( final Class< ? > type, final String name, final String label, final Object annotation )
+				throws ReflectiveOperationException
+		{
+			List< Object > annotations = new ArrayList<>();
+			annotations.add( annotation( "jdk.jfr.Label", label ) );
+			if ( annotation != null )
+				annotations.add( annotation );
+			return valueDescriptor.newInstance( type, name, Collections.unmodifiableList( annotations ) );
+		}
+
+		private Object timespan() throws ReflectiveOperationException
+		{
+			return annotation( "jdk.jfr.Timespan", "NANOSECONDS" );
+		}
+
+		private Object annotation( final String type, final Object value ) throws ReflectiveOperationException
+		{
+			return annotationElement.newInstance( Class.forName( type ), value );
+		}
+	}
+}
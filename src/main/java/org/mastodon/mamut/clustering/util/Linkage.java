@@ -0,0 +1,59 @@
+package org.mastodon.mamut.clustering.util;
+
+import com.apporiented.algorithm.clustering.CompleteLinkageStrategy;
+import com.apporiented.algorithm.clustering.LinkageStrategy;
+import com.apporiented.algorithm.clustering.SingleLinkageStrategy;
+import com.apporiented.algorithm.clustering.WeightedLinkageStrategy;
+
+/**
+ * The linkage criteria supported by {@link HierarchicalClustering}.
+ * <p>
+ * The distances of merged clusters are computed with the same formulas as the corresponding {@link LinkageStrategy}s of the apporiented library.
+ */
+public enum Linkage
+{
+	/**
+	 * The distance between two clusters is the minimum distance between their objects.
+	 */
+	SINGLE,
+
+	/**
+	 * The distance between two clusters is the maximum distance between their objects.
+	 */
+	COMPLETE,
+
+	/**
+	 * The distance between two clusters is the mean distance between their objects (UPGMA).
+	 *
+	 * @see AverageLinkageUPGMAStrategy
+	 */
+	AVERAGE_UPGMA,
+
+	/**
+	 * The distance between a merged cluster and another cluster is the mean of the distances of the two merged clusters to the other cluster (WPGMA).
+	 *
+	 * @see AverageLinkageWPGMAStrategy
+	 */
+	AVERAGE_WPGMA;
+
+	/**
+	 * Returns the linkage that corresponds to the given {@link LinkageStrategy} of the apporiented library.
+	 *
+	 * @param linkageStrategy the linkage strategy
+	 * @return the linkage or {@code null}, if the linkage strategy is unknown
+	 */
+	public static Linkage of( final LinkageStrategy linkageStrategy )
+	{
+		if ( linkageStrategy instanceof SingleLinkageStrategy )
+			return SINGLE;
+		if ( linkageStrategy instanceof CompleteLinkageStrategy )
+			return COMPLETE;
+		// NB: apporiented's WeightedLinkageStrategy weights by cluster size, i.e. it is UPGMA
+		if ( linkageStrategy instanceof WeightedLinkageStrategy )
+			return AVERAGE_UPGMA;
+		// NB: apporiented's AverageLinkageStrategy averages the two distances of the merged clusters, i.e. it is WPGMA
+		if ( linkageStrategy instanceof com.apporiented.algorithm.clustering.AverageLinkageStrategy )
+			return AVERAGE_WPGMA;
+		return null;
+	}
+}
@@ -0,0 +1,301 @@
+package org.mastodon.mamut.clustering.util;
+
+import com.apporiented.algorithm.clustering.Cluster;
+import com.apporiented.algorithm.clustering.Distance;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of an agglomerative hierarchical clustering of {@code n} objects as a compact list of {@code n - 1} merges.
+ * <p>
+ * The layout follows the linkage matrix of {@code scipy.cluster.hierarchy.linkage}: the objects are identified by the ids {@code 0} to {@code n - 1}.
+ * The cluster created by merge {@code k} gets the id {@code n + k}. Merge {@code k} joins the clusters {@link #getFirst(int)} and {@link #getSecond(int)},
+ * which are either objects or clusters created by earlier merges, at the distance {@link #getDistance(int)}.
+ * <p>
+ * Cutting the dendrogram at a threshold (see {@link #cut(double)}) takes time linear in the number of objects.
+ */
+public class LinkageMatrix
+{
+	private final int size;
+
+	private final int[] first;
+
+	private final int[] second;
+
+	private final double[] distances;
+
+	private final int[] clusterSizes;
+
+	/**
+	 * The ids of the objects in the order in which they appear as leaves of the dendrogram.
+	 */
+	private final int[] leafOrder;
+
+	/**
+	 * The start index of each object and each cluster in {@link #leafOrder}. The objects of a cluster are contiguous in {@link #leafOrder}.
+	 */
+	private final int[] leafStart;
+
+	private double[] sortedDistances;
+
+	/**
+	 * Creates a new linkage matrix.
+	 *
+	 * @param size the number of objects
+	 * @param first the id of the first cluster of each merge
+	 * @param second the id of the second cluster of each merge
+	 * @param distances the distance of each merge
+	 */
+	public LinkageMatrix( final int size, final int[] first, final int[] second, final double[] distances )
+	{
+		int merges = Math.max( 0, size - 1 );
+		if ( first.length != merges || second.length != merges || distances.length != merges )
+			throw new IllegalArgumentException( "A linkage matrix of " + size + " objects needs to contain " + merges + " merges." );
+		this.size = size;
+		this.first = first;
+		this.second = second;
+		this.distances = distances;
+		this.clusterSizes = new int[ merges ];
+		for ( int k = 0; k < merges; k++ )
+		{
+			checkChild( first[ k ], k );
+			checkChild( second[ k ], k );
+			clusterSizes[ k ] = sizeOf( first[ k ] ) + sizeOf( second[ k ] );
+		}
+		if ( merges > 0 && clusterSizes[ merges - 1 ] != size )
+			throw new IllegalArgumentException( "The last merge needs to contain all " + size + " objects." );
+		this.leafOrder = new int[ size ];
+		this.leafStart = new int[ size + merges ];
+		computeLeafOrder();
+	}
+
+	/**
+	 * Converts the result of a clustering algorithm of the apporiented library into a linkage matrix.
+	 *
+	 * @param root the root of the dendrogram
+	 * @param objectIds the ids of the objects by the names of the leaves of the dendrogram
+	 * @return the linkage matrix
+	 */
+	public static LinkageMatrix fromCluster( final Cluster root, final Map< String, Integer > objectIds )
+	{
+		int size = objectIds.size();
+		int merges = Math.max( 0, size - 1 );
+		int[] first = new int[ merges ];
+		int[] second = new int[ merges ];
+		double[] distances = new double[ merges ];
+		Map< Cluster, Integer > ids = new IdentityHashMap<>();
+		int k = 0;
+		// NB: post-order, such that the children are merged before their parents
+		for ( Cluster cluster : postOrder( root ) )
+		{
+			if ( cluster.isLeaf() )
+			{
+				Integer id = objectIds.get( cluster.getName() );
+				if ( id == null )
+					throw new IllegalArgumentException( "Unknown leaf name: " + cluster.getName() );
+				ids.put( cluster, id );
+				continue;
+			}
+			List< Cluster > children = cluster.getChildren();
+			if ( children.size() != 2 )
+				throw new IllegalArgumentException( "Only binary dendrograms are supported, but a cluster has " + children.size() + " children." );
+			first[ k ] = ids.get( children.get( 0 ) );
+			second[ k ] = ids.get( children.get( 1 ) );
+			distances[ k ] = cluster.getDistanceValue();
+			ids.put( cluster, size + k );
+			k++;
+		}
+		return new LinkageMatrix( size, first, second, distances );
+	}
+
+	/**
+	 * @return the number of clustered objects.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the id of the first cluster of merge {@code k}.
+	 */
+	public int getFirst( final int k )
+	{
+		return first[ k ];
+	}
+
+	/**
+	 * @return the id of the second cluster of merge {@code k}.
+	 */
+	public int getSecond( final int k )
+	{
+		return second[ k ];
+	}
+
+	/**
+	 * @return the distance at which the clusters of merge {@code k} are joined.
+	 */
+	public double getDistance( final int k )
+	{
+		return distances[ k ];
+	}
+
+	/**
+	 * @return the number of objects in the cluster created by merge {@code k}.
+	 */
+	public int getClusterSize( final int k )
+	{
+		return clusterSizes[ k ];
+	}
+
+	/**
+	 * Returns the merges in the format of {@code scipy.cluster.hierarchy.linkage}, i.e. one row {@code [first, second, distance, cluster size]} per merge.
+	 *
+	 * @return a {@code (n - 1) x 4} array
+	 */
+	public double[][] toArray()
+	{
+		double[][] array = new double[ first.length ][];
+		for ( int k = 0; k < first.length; k++ )
+			array[ k ] = new double[] { first[ k ], second[ k ], distances[ k ], clusterSizes[ k ] };
+		return array;
+	}
+
+	/**
+	 * Cuts the dendrogram at the given threshold.
+	 * <p>
+	 * All merges with a distance greater than or equal to the threshold are undone. The resulting classes are the children of these merges that are not undone themselves.
+	 * Objects count as clusters with distance zero. This is the same definition as used by {@link ClusterUtils#getClassificationByThreshold}.
+	 * <p>
+	 * The runtime is linear in the number of objects.
+	 *
+	 * @param threshold the threshold
+	 * @return the ids of the objects of each class
+	 */
+	public List< int[] > cut( final double threshold )
+	{
+		List< int[] > classes = new ArrayList<>();
+		for ( int k = 0; k < first.length; k++ )
+		{
+			if ( distances[ k ] < threshold )
+				continue;
+			addClassIfBelow( first[ k ], threshold, classes );
+			addClassIfBelow( second[ k ], threshold, classes );
+		}
+		return classes;
+	}
+
+	/**
+	 * Returns a threshold that cuts the dendrogram into the given number of classes, if the distances of the merges are distinct.
+	 * <p>
+	 * The threshold is the mean of the distances of the {@code classCount - 1}-th and the {@code classCount}-th largest merge, where objects count as merges with distance zero.
+	 *
+	 * @param classCount the number of classes, in range {@code [2, n - 1]}
+	 * @return the threshold
+	 */
+	public double getThreshold( final int classCount )
+	{
+		if ( classCount < 2 || classCount > size - 1 )
+			throw new IllegalArgumentException( "number of classes (" + classCount + ") must be in range [2, " + ( size - 1 ) + "]." );
+		if ( sortedDistances == null )
+		{
+			double[] sorted = distances.clone();
+			Arrays.sort( sorted );
+			sortedDistances = sorted;
+		}
+		int largest = sortedDistances.length - 1;
+		return ( sortedDistances[ largest - ( classCount - 2 ) ] + sortedDistances[ largest - ( classCount - 1 ) ] ) / 2d;
+	}
+
+	/**
+	 * Creates a dendrogram of the apporiented library, e.g. for the visualization with a {@link com.apporiented.algorithm.clustering.visualization.DendrogramPanel}.
+	 * <p>
+	 * NB: a new dendrogram is created on every call, since the dendrogram is mutable. Only the leaves contain leaf names.
+	 *
+	 * @param names the names of the objects
+	 * @return the root of the dendrogram or {@code null}, if there are no objects
+	 */
+	public Cluster toCluster( final String[] names )
+	{
+		if ( names.length != size )
+			throw new IllegalArgumentException( "number of names (" + names.length + ") must equal the number of objects (" + size + ")." );
+		Cluster[] clusters = new Cluster[ size + first.length ];
+		for ( int i = 0; i < size; i++ )
+		{
+			Cluster leaf = new Cluster( names[ i ] );
+			leaf.addLeafName( names[ i ] );
+			clusters[ i ] = leaf;
+		}
+		for ( int k = 0; k < first.length; k++ )
+		{
+			Cluster cluster = new Cluster( "clstr#" + ( size + k ) );
+			cluster.setDistance( new Distance( distances[ k ], ( double ) clusterSizes[ k ] ) );
+			for ( Cluster child : new Cluster[] { clusters[ first[ k ] ], clusters[ second[ k ] ] } )
+			{
+				cluster.addChild( child );
+				child.setParent( cluster );
+			}
+			clusters[ size + k ] = cluster;
+		}
+		return clusters.length == 0 ? null : clusters[ clusters.length - 1 ];
+	}
+
+	private void addClassIfBelow( final int id, final double threshold, final List< int[] > classes )
+	{
+		double distance = id < size ? 0d : distances[ id - size ];
+		if ( distance >= threshold )
+			return;
+		int start = leafStart[ id ];
+		classes.add( Arrays.copyOfRange( leafOrder, start, start + sizeOf( id ) ) );
+	}
+
+	private void computeLeafOrder()
+	{
+		if ( size == 1 )
+			return;
+		// NB: the children of a merge are always created before the merge, so the ranges can be assigned from the root downwards
+		for ( int k = first.length - 1; k >= 0; k-- )
+		{
+			int start = leafStart[ size + k ];
+			leafStart[ first[ k ] ] = start;
+			leafStart[ second[ k ] ] = start + sizeOf( first[ k ] );
+		}
+		for ( int i = 0; i < size; i++ )
+			leafOrder[ leafStart[ i ] ] = i;
+	}
+
+	private int sizeOf( final int id )
+	{
+		return id < size ? 1 : clusterSizes[ id - size ];
+	}
+
+	private void checkChild( final int id, final int k )
+	{
+		if ( id < 0 || id >= size + k )
+			throw new IllegalArgumentException( "Merge " + k + " refers to the invalid cluster id " + id + "." );
+	}
+
+	private static List< Cluster > postOrder( final Cluster root )
+	{
+		List< Cluster > list = new ArrayList<>();
+		Deque< Cluster > stack = new ArrayDeque<>();
+		stack.push( root );
+		while ( !stack.isEmpty() )
+		{
+			Cluster current = stack.pop();
+			list.add( current );
+			for ( Cluster child : current.getChildren() )
+				stack.push( child );
+		}
+		// NB: each cluster is listed before its children, thus the reversed list contains the children before their parents
+		Collections.reverse( list );
+		return list;
+	}
+}
@@ -0,0 +1,104 @@
+package org.mastodon.mamut.clustering.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * A thread-safe histogram of non-negative values, e.g. the times needed per pair of trees, which allows to estimate percentiles with constant memory.
+ * <p>
+ * The values are counted in logarithmic buckets: each power of two is divided into {@link #SUB_BUCKETS} buckets of equal width, values below {@link #SUB_BUCKETS} are counted exactly.
+ * A percentile is estimated by the largest value of the bucket it falls into. Thus, the estimate is at most 1 / {@link #SUB_BUCKETS} above the actual percentile.
+ */
+public class LogHistogram
+{
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/**
+	 * The number of buckets per power of two.
+	 */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray( Long.SIZE * SUB_BUCKETS );
+
+	private final LongAccumulator max = new LongAccumulator( Math::max, 0 );
+
+	/**
+	 * Counts the given value. Negative values are counted as zero.
+	 *
+	 * @param value the value
+	 */
+	public void record( final long value )
+	{
+		long nonNegative = Math.max( 0, value );
+		counts.incrementAndGet( bucket( nonNegative ) );
+		max.accumulate( nonNegative );
+	}
+
+	/**
+	 * @return the number of recorded values.
+	 */
+	public long getCount()
+	{
+		long count = 0;
+		for ( int b = 0; b < counts.length(); b++ )
+			count += counts.get( b );
+		return count;
+	}
+
+	/**
+	 * @return the largest recorded value, or {@code 0}, if no value has been recorded.
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * Estimates the given percentile of the recorded values.
+	 *
+	 * @param percentile the percentile between 0 and 100, e.g. 50 for the median
+	 * @return an upper estimate of the percentile, or {@code 0}, if no value has been recorded
+	 */
+	public long getPercentile( final double percentile )
+	{
+		if ( percentile < 0 || percentile > 100 )
+			throw new IllegalArgumentException( "The percentile (" + percentile + ") must be between 0 and 100." );
+		long[] snapshot = new long[ counts.length() ];
+		long count = 0;
+		for ( int b = 0; b < snapshot.length; b++ )
+		{
+			snapshot[ b ] = counts.get( b );
+			count += snapshot[ b ];
+		}
+		if ( count == 0 )
+			return 0;
+		long rank = Math.max( 1, ( long ) Math.ceil( percentile / 100 * count ) );
+		long cumulative = 0;
+		for ( int b = 0; b < snapshot.length; b++ )
+		{
+			cumulative += snapshot[ b ];
+			if ( cumulative >= rank )
+				return Math.min( largestValue( b ), getMax() );
+		}
+		return getMax();
+	}
+
+	static int bucket( final long value )
+	{
+		if ( value < SUB_BUCKETS )
+			return ( int ) value;
+		int exponent = 63 - Long.numberOfLeadingZeros( value );
+		int subBucket = ( int ) ( value >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 );
+		return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS + subBucket;
+	}
+
+	static long largestValue( final int bucket )
+	{
+		if ( bucket < SUB_BUCKETS )
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long width = 1L << ( exponent - SUB_BUCKET_BITS );
+		long smallestValue = ( SUB_BUCKETS + bucket % SUB_BUCKETS ) * width;
+		return smallestValue + width - 1;
+	}
+}
@@ -0,0 +1,18 @@
+package org.mastodon.mamut.clustering.util;
+
+/**
+ * Receives progress updates of long-running computations, e.g. {@link DistanceMatrixComputation}.
+ */
+@FunctionalInterface
+public interface ProgressListener
+{
+	/**
+	 * Called whenever the progress of the computation has changed.
+	 * <p>
+	 * NB: this method may be called from any thread.
+	 *
+	 * @param completed the number of completed work items
+	 * @param total the total number of work items
+	 */
+	void showProgress( int completed, int total );
+}
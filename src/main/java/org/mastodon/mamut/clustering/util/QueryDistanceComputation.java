@@ -0,0 +1,89 @@
+package org.mastodon.mamut.clustering.util;
+
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.treesimilarity.PreparedTree;
+import org.mastodon.mamut.treesimilarity.ZhangUnorderedTreeEditDistance;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the distances of one query tree to many target trees using a {@link SimilarityMeasure} and the {@link ZhangUnorderedTreeEditDistance#DEFAULT_COST_FUNCTION default cost function}.
+ * <p>
+ * The query tree is {@link PreparedTree prepared} once, when the computation is created, and is shared by all targets of all calls of {@link #compute(Collection)}.
+ * Each target is prepared once per call. The targets are computed in parallel on a {@link ForkJoinPool}, each worker takes the next target as soon as it is done with its current one.
+ * <p>
+ * The distances are identical to the ones of {@link SimilarityMeasure#compute(Tree, Tree, java.util.function.BinaryOperator)} with the default cost function.
+ */
+public class QueryDistanceComputation
+{
+	private final PreparedTree< Double > query;
+
+	private final SimilarityMeasure similarityMeasure;
+
+	/**
+	 * Creates a new computation of the distances to the given query tree.
+	 *
+	 * @param query the query tree or {@code null} for the empty tree
+	 * @param similarityMeasure the similarity measure to be used
+	 */
+	public QueryDistanceComputation( @Nullable final Tree< Double > query, final SimilarityMeasure similarityMeasure )
+	{
+		if ( similarityMeasure == null )
+			throw new IllegalArgumentException( "The similarity measure is expected to be non-null, but it is null." );
+		this.query = PreparedTree.ofDoubles( query, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+		this.similarityMeasure = similarityMeasure;
+	}
+
+	/**
+	 * Computes the distances of the query tree to the given targets on the {@link ForkJoinPool#commonPool() common pool}.
+	 *
+	 * @param targets the target trees, {@code null} elements are considered as empty trees
+	 * @return the distances in the iteration order of the targets
+	 */
+	public double[] compute( final Collection< ? extends Tree< Double > > targets )
+	{
+		return compute( targets, ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 * Computes the distances of the query tree to the given targets on the given {@link ForkJoinPool}.
+	 *
+	 * @param targets the target trees, {@code null} elements are considered as empty trees
+	 * @param pool the pool to run the computation on
+	 * @return the distances in the iteration order of the targets
+	 */
+	public double[] compute( final Collection< ? extends Tree< Double > > targets, final ForkJoinPool pool )
+	{
+		List< Tree< Double > > targetList = new ArrayList<>( targets );
+		int total = targetList.size();
+		double[] distances = new double[ total ];
+
+		AtomicInteger next = new AtomicInteger();
+		Runnable worker = () -> {
+			while ( true )
+			{
+				int k = next.getAndIncrement();
+				if ( k >= total )
+					return;
+				PreparedTree< Double > target = PreparedTree.ofDoubles( targetList.get( k ), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+				distances[ k ] = similarityMeasure.compute( query, target );
+			}
+		};
+
+		int numberOfWorkers = Math.min( pool.getParallelism(), total );
+		List< ForkJoinTask< ? > > tasks = new ArrayList<>( numberOfWorkers );
+		for ( int w = 0; w < numberOfWorkers; w++ )
+			tasks.add( pool.submit( worker ) );
+		// NB: joining the tasks makes the writes of the workers to the distances visible to the calling thread
+		for ( ForkJoinTask< ? > task : tasks )
+			task.join();
+		return distances;
+	}
+}
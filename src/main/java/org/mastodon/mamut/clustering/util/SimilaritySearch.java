@@ -0,0 +1,221 @@
+package org.mastodon.mamut.clustering.util;
+
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.treesimilarity.PreparedTree;
+import org.mastodon.mamut.treesimilarity.ZhangLowerBound;
+import org.mastodon.mamut.treesimilarity.ZhangUnorderedTreeEditDistance;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Range and k-nearest-neighbour queries over a fixed list of trees using a {@link SimilarityMeasure} and the {@link ZhangUnorderedTreeEditDistance#DEFAULT_COST_FUNCTION default cost function}.
+ * <p>
+ * For each candidate, a cheap {@link ZhangLowerBound lower bound} of the distance to the query is computed first. The full Zhang computation is skipped for all candidates,
+ * whose lower bound already exceeds the cutoff of a range query or the k-th best distance found so far by a nearest neighbour query.
+ * The {@link ZhangLowerBound.Summary summaries} needed for the lower bounds and the {@link PreparedTree prepared trees} are computed once per tree, when the search is created.
+ */
+public class SimilaritySearch
+{
+	private static final Logger logger = LoggerFactory.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private static final Comparator< Neighbor > BY_DISTANCE = Comparator.comparingDouble( Neighbor::getDistance ).thenComparingInt( Neighbor::getIndex );
+
+	private final List< PreparedTree< Double > > trees;
+
+	private final SimilarityMeasure similarityMeasure;
+
+	private final ZhangLowerBound.Summary[] summaries;
+
+	/**
+	 * Creates a new search over the given trees.
+	 *
+	 * @param trees the trees to be searched, the results refer to the indices in this list
+	 * @param similarityMeasure the similarity measure to be used
+	 */
+	public SimilaritySearch( final List< Tree< Double > > trees, final SimilarityMeasure similarityMeasure )
+	{
+		this.trees = new ArrayList<>( trees.size() );
+		this.similarityMeasure = similarityMeasure;
+		this.summaries = new ZhangLowerBound.Summary[ trees.size() ];
+		for ( int i = 0; i < summaries.length; i++ )
+		{
+			this.trees.add( prepare( trees.get( i ) ) );
+			summaries[ i ] = summaryOf( trees.get( i ) );
+		}
+	}
+
+	/**
+	 * Finds all trees, whose distance to the given query tree is below the given cutoff.
+	 *
+	 * @param query the query tree, which does not need to be contained in the searched trees
+	 * @param cutoff the exclusive upper bound of the distances
+	 * @return the neighbours sorted by increasing distance
+	 */
+	public List< Neighbor > range( final Tree< Double > query, final double cutoff )
+	{
+		return range( prepare( query ), summaryOf( query ), -1, cutoff );
+	}
+
+	/**
+	 * Finds all other trees, whose distance to the tree with the given index is below the given cutoff.
+	 *
+	 * @param index the index of the query tree
+	 * @param cutoff the exclusive upper bound of the distances
+	 * @return the neighbours sorted by increasing distance, not containing the query tree itself
+	 */
+	public List< Neighbor > range( final int index, final double cutoff )
+	{
+		return range( trees.get( index ), summaries[ index ], index, cutoff );
+	}
+
+	/**
+	 * Finds the {@code k} trees that are closest to the given query tree. Ties are broken by the index of the trees.
+	 *
+	 * @param query the query tree, which does not need to be contained in the searched trees
+	 * @param k the number of neighbours
+	 * @return the neighbours sorted by increasing distance, fewer than {@code k}, if there are fewer trees
+	 */
+	public List< Neighbor > nearest( final Tree< Double > query, final int k )
+	{
+		return nearest( prepare( query ), summaryOf( query ), -1, k );
+	}
+
+	/**
+	 * Finds the {@code k} other trees that are closest to the tree with the given index. Ties are broken by the index of the trees.
+	 *
+	 * @param index the index of the query tree
+	 * @param k the number of neighbours
+	 * @return the neighbours sorted by increasing distance, not containing the query tree itself
+	 */
+	public List< Neighbor > nearest( final int index, final int k )
+	{
+		return nearest( trees.get( index ), summaries[ index ], index, k );
+	}
+
+	private List< Neighbor > range( final PreparedTree< Double > query, final ZhangLowerBound.Summary summary, final int excluded, final double cutoff )
+	{
+		List< Neighbor > neighbors = new ArrayList<>();
+		int pruned = 0;
+		for ( int i = 0; i < summaries.length; i++ )
+		{
+			if ( i == excluded )
+				continue;
+			if ( similarityMeasure.lowerBound( summary, summaries[ i ] ) >= cutoff )
+			{
+				pruned++;
+				continue;
+			}
+			double distance = distance( query, i );
+			if ( distance < cutoff )
+				neighbors.add( new Neighbor( i, distance ) );
+		}
+		logger.debug( "Range query with cutoff {}: pruned {} of {} candidates by lower bounds.", cutoff, pruned, candidates( excluded ) );
+		neighbors.sort( BY_DISTANCE );
+		return neighbors;
+	}
+
+	private List< Neighbor > nearest( final PreparedTree< Double > query, final ZhangLowerBound.Summary summary, final int excluded, final int k )
+	{
+		if ( k < 0 )
+			throw new IllegalArgumentException( "Number of neighbours (" + k + ") must not be negative." );
+		if ( k == 0 )
+			return Collections.emptyList();
+
+		// NB: the candidates are visited in the order of increasing lower bounds, such that the search can stop at the first candidate that cannot improve the result
+		Neighbor[] candidates = new Neighbor[ candidates( excluded ) ];
+		int c = 0;
+		for ( int i = 0; i < summaries.length; i++ )
+			if ( i != excluded )
+				candidates[ c++ ] = new Neighbor( i, similarityMeasure.lowerBound( summary, summaries[ i ] ) );
+		Arrays.sort( candidates, BY_DISTANCE );
+
+		// NB: max-heap of the best neighbours found so far, the worst of them is at the head
+		PriorityQueue< Neighbor > best = new PriorityQueue<>( k, BY_DISTANCE.reversed() );
+		int computed = 0;
+		for ( Neighbor candidate : candidates )
+		{
+			if ( best.size() == k && candidate.distance > best.peek().distance )
+				break;
+			Neighbor neighbor = new Neighbor( candidate.index, distance( query, candidate.index ) );
+			computed++;
+			if ( best.size() < k )
+				best.add( neighbor );
+			else if ( BY_DISTANCE.compare( neighbor, best.peek() ) < 0 )
+			{
+				best.poll();
+				best.add( neighbor );
+			}
+		}
+		logger.debug( "Nearest neighbour query with k={}: pruned {} of {} candidates by lower bounds.", k, candidates.length - computed, candidates.length );
+		List< Neighbor > neighbors = new ArrayList<>( best );
+		neighbors.sort( BY_DISTANCE );
+		return neighbors;
+	}
+
+	private double distance( final PreparedTree< Double > query, final int index )
+	{
+		return similarityMeasure.compute( query, trees.get( index ) );
+	}
+
+	private static PreparedTree< Double > prepare( final Tree< Double > tree )
+	{
+		return PreparedTree.ofDoubles( tree, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+	}
+
+	private int candidates( final int excluded )
+	{
+		return excluded < 0 ? summaries.length : summaries.length - 1;
+	}
+
+	private static ZhangLowerBound.Summary summaryOf( final Tree< Double > tree )
+	{
+		return ZhangLowerBound.Summary.of( tree, ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION );
+	}
+
+	/**
+	 * A tree found by a query together with its distance to the query tree.
+	 */
+	public static class Neighbor
+	{
+		private final int index;
+
+		private final double distance;
+
+		private Neighbor( final int index, final double distance )
+		{
+			this.index = index;
+			this.distance = distance;
+		}
+
+		/**
+		 * @return the index of the tree in the list of searched trees
+		 */
+		public int getIndex()
+		{
+			return index;
+		}
+
+		/**
+		 * @return the distance of the tree to the query tree
+		 */
+		public double getDistance()
+		{
+			return distance;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Neighbor{index=" + index + ", distance=" + distance + "}";
+		}
+	}
+}
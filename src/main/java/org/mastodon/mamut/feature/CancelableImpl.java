@@ -4,7 +4,7 @@ import org.scijava.Cancelable;
 
 public class CancelableImpl implements Cancelable
 {
-	private String cancelReason;
+	private volatile String cancelReason;
 
 	public void deleteCancelReason()
 	{
@@ -0,0 +1,389 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.mastodon.mamut.treesimilarity.util.AssignmentSolver;
+
+import java.util.Arrays;
+
+/**
+ * The recurrences of the dynamic programming of the Zhang unordered tree edit distance on two {@link PreparedTree prepared trees}. See {@link ZhangUnorderedTreeEditDistance} for a description of the edit operations.
+ * <p>
+ * The subclasses decide how the tables of the tree and forest distances are stored and in which order they are filled. They give access to the tables by {@link #treeDistance(int, int)} and
+ * {@link #forestDistance(int, int)}. The recurrences only read the cells of children of the given pair of subtrees, which need to be filled before.
+ * <p>
+ * The results of all subclasses are identical to the ones of the hash map based implementation in {@link ZhangUnorderedTreeEditDistance}, including the tie-breaking between equally good edit operations,
+ * as long as their tables store the distances exactly. NB: the hash map based implementation sums up the costs of composed node mappings with compensated summation,
+ * thus for costs that are not integers, the results may differ in the last bits.
+ *
+ * @param <T> Attribute type of the tree nodes.
+ */
+abstract class AbstractZhangUnorderedTreeEditDistance< T >
+{
+	static final int TREE = 0;
+
+	static final int FOREST = 1;
+
+	protected final PreparedTree< T > tree1;
+
+	protected final PreparedTree< T > tree2;
+
+	protected final int n2;
+
+	/**
+	 * The number of assignment problems solved so far.
+	 */
+	protected long flowSolves;
+
+	/**
+	 * NB: both trees need to be non-empty and prepared with the same cost function.
+	 */
+	protected AbstractZhangUnorderedTreeEditDistance( final PreparedTree< T > tree1, final PreparedTree< T > tree2 )
+	{
+		this.tree1 = tree1;
+		this.tree2 = tree2;
+		this.n2 = tree2.size();
+	}
+
+	/**
+	 * @return the cost of changing the attribute of subtree {@code i} of the first tree into the attribute of subtree {@code j} of the second tree.
+	 */
+	protected abstract double attributeDistance( int i, int j );
+
+	/**
+	 * @return the distance between subtree {@code i} of the first tree and subtree {@code j} of the second tree, which has been filled before.
+	 */
+	protected abstract double treeDistance( int i, int j );
+
+	/**
+	 * @return the distance between the forests of the children of subtree {@code i} of the first tree and of subtree {@code j} of the second tree, which has been filled before.
+	 */
+	protected abstract double forestDistance( int i, int j );
+
+	/**
+	 * Computes the tree distance of the given pair of subtrees from the tables. The forest distance of the pair needs to be filled before.
+	 */
+	protected double computeTreeDistance( int i, int j )
+	{
+		double attributeDistance = attributeDistance( i, j );
+		if ( tree1.isLeaf( i ) && tree2.isLeaf( j ) )
+			return attributeDistance;
+
+		double insertOperationCosts = insertOperationCost( i, j, bestInsertOperationChild( i, j ) );
+		double deleteOperationCosts = deleteOperationCost( i, j, bestDeleteOperationChild( i, j ) );
+		double changeCosts = attributeDistance + forestDistance( i, j );
+		return Math.min( insertOperationCosts, Math.min( deleteOperationCosts, changeCosts ) );
+	}
+
+	/**
+	 * Computes the forest distance of the given pair of subtrees from the tables.
+	 */
+	protected double computeForestDistance( int i, int j )
+	{
+		if ( tree1.isLeaf( i ) )
+			return tree2.forestCosts[ j ];
+
+		if ( tree2.isLeaf( j ) )
+			return tree1.forestCosts[ i ];
+
+		double forestInsertCosts = forestInsertCost( i, j, bestForestInsertChild( i, j ) );
+		double forestDeleteCosts = forestDeleteCost( i, j, bestForestDeleteChild( i, j ) );
+		double changeCosts = minCostMaxFlowCost( i, j, minCostMaxFlow( i, j ) );
+		return Math.min( forestInsertCosts, Math.min( forestDeleteCosts, changeCosts ) );
+	}
+
+	/**
+	 * Writes the mapping of the given pair of subtrees, if the best edit operation maps them, and passes the pairs, which the best edit operation continues with, to {@code pending}.
+	 */
+	protected void writeTreeMapping( int i, int j, int[] mapping, PendingPairs pending )
+	{
+		if ( tree1.isLeaf( i ) && tree2.isLeaf( j ) )
+		{
+			mapping[ i ] = j;
+			return;
+		}
+
+		int insertChild = bestInsertOperationChild( i, j );
+		int deleteChild = bestDeleteOperationChild( i, j );
+		double insertOperationCosts = insertOperationCost( i, j, insertChild );
+		double deleteOperationCosts = deleteOperationCost( i, j, deleteChild );
+		double changeCosts = attributeDistance( i, j ) + forestDistance( i, j );
+		switch ( findBest( insertOperationCosts, deleteOperationCosts, changeCosts ) )
+		{
+		case 0:
+			if ( insertChild >= 0 )
+				pending.push( TREE, i, insertChild );
+			break;
+		case 1:
+			if ( deleteChild >= 0 )
+				pending.push( TREE, deleteChild, j );
+			break;
+		default:
+			mapping[ i ] = j;
+			pending.push( FOREST, i, j );
+		}
+	}
+
+	/**
+	 * Passes the pairs, which the best edit operation of the given pair of forests continues with, to {@code pending}.
+	 */
+	protected void writeForestMapping( int i, int j, PendingPairs pending )
+	{
+		if ( tree1.isLeaf( i ) || tree2.isLeaf( j ) )
+			return;
+
+		int insertChild = bestForestInsertChild( i, j );
+		int deleteChild = bestForestDeleteChild( i, j );
+		int[] assignment = minCostMaxFlow( i, j );
+		double forestInsertCosts = forestInsertCost( i, j, insertChild );
+		double forestDeleteCosts = forestDeleteCost( i, j, deleteChild );
+		double changeCosts = minCostMaxFlowCost( i, j, assignment );
+		switch ( findBest( forestInsertCosts, forestDeleteCosts, changeCosts ) )
+		{
+		case 0:
+			if ( insertChild >= 0 )
+				pending.push( FOREST, i, insertChild );
+			break;
+		case 1:
+			if ( deleteChild >= 0 )
+				pending.push( FOREST, deleteChild, j );
+			break;
+		default:
+			int start1 = tree1.childrenStart[ i ];
+			int start2 = tree2.childrenStart[ j ];
+			for ( int k = 0; k < assignment.length; k++ )
+				if ( assignment[ k ] >= 0 )
+					pending.push( TREE, tree1.children[ start1 + k ], tree2.children[ start2 + assignment[ k ] ] );
+		}
+	}
+
+	/**
+	 * Edit operation (3b). See {@link ZhangUnorderedTreeEditDistance}.
+	 */
+	private double insertOperationCost( int i, int j, int child )
+	{
+		if ( child < 0 )
+			return Double.POSITIVE_INFINITY;
+		return ( tree2.treeCosts[ j ] - tree2.treeCosts[ child ] ) + treeDistance( i, child );
+	}
+
+	private int bestInsertOperationChild( int i, int j )
+	{
+		int best = -1;
+		double bestCost = Double.POSITIVE_INFINITY;
+		for ( int k = tree2.childrenStart[ j ]; k < tree2.childrenStart[ j + 1 ]; k++ )
+		{
+			int child = tree2.children[ k ];
+			double cost = insertOperationCost( i, j, child );
+			if ( cost < bestCost )
+			{
+				best = child;
+				bestCost = cost;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Edit operation (3a). See {@link ZhangUnorderedTreeEditDistance}.
+	 */
+	private double deleteOperationCost( int i, int j, int child )
+	{
+		if ( child < 0 )
+			return Double.POSITIVE_INFINITY;
+		return ( tree1.treeCosts[ i ] - tree1.treeCosts[ child ] ) + treeDistance( child, j );
+	}
+
+	private int bestDeleteOperationChild( int i, int j )
+	{
+		int best = -1;
+		double bestCost = Double.POSITIVE_INFINITY;
+		for ( int k = tree1.childrenStart[ i ]; k < tree1.childrenStart[ i + 1 ]; k++ )
+		{
+			int child = tree1.children[ k ];
+			double cost = deleteOperationCost( i, j, child );
+			if ( cost < bestCost )
+			{
+				best = child;
+				bestCost = cost;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Edit operation (4b). See {@link ZhangUnorderedTreeEditDistance}.
+	 */
+	private double forestInsertCost( int i, int j, int child )
+	{
+		if ( child < 0 )
+			return Double.POSITIVE_INFINITY;
+		return ( tree2.forestCosts[ j ] - tree2.forestCosts[ child ] ) + forestDistance( i, child );
+	}
+
+	private int bestForestInsertChild( int i, int j )
+	{
+		int best = -1;
+		double bestCost = Double.POSITIVE_INFINITY;
+		for ( int k = tree2.childrenStart[ j ]; k < tree2.childrenStart[ j + 1 ]; k++ )
+		{
+			int child = tree2.children[ k ];
+			double cost = forestInsertCost( i, j, child );
+			if ( cost < bestCost )
+			{
+				best = child;
+				bestCost = cost;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Edit operation (4a). See {@link ZhangUnorderedTreeEditDistance}.
+	 */
+	private double forestDeleteCost( int i, int j, int child )
+	{
+		if ( child < 0 )
+			return Double.POSITIVE_INFINITY;
+		return ( tree1.forestCosts[ i ] - tree1.forestCosts[ child ] ) + forestDistance( child, j );
+	}
+
+	private int bestForestDeleteChild( int i, int j )
+	{
+		int best = -1;
+		double bestCost = Double.POSITIVE_INFINITY;
+		for ( int k = tree1.childrenStart[ i ]; k < tree1.childrenStart[ i + 1 ]; k++ )
+		{
+			int child = tree1.children[ k ];
+			double cost = forestDeleteCost( i, j, child );
+			if ( cost < bestCost )
+			{
+				best = child;
+				bestCost = cost;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the costs of the given assignment between the children of {@code forest1} and the children of {@code forest2}.
+	 * The costs are summed up in the same order as in the hash map based implementation: deleted children, inserted children, mapped children.
+	 */
+	private double minCostMaxFlowCost( int forest1, int forest2, int[] assignment )
+	{
+		int start1 = tree1.childrenStart[ forest1 ];
+		int start2 = tree2.childrenStart[ forest2 ];
+		int numberOfChildren2 = tree2.childrenStart[ forest2 + 1 ] - start2;
+		boolean[] mapped2 = new boolean[ numberOfChildren2 ];
+		double cost = 0;
+		for ( int k = 0; k < assignment.length; k++ )
+		{
+			if ( assignment[ k ] < 0 )
+				cost += tree1.treeCosts[ tree1.children[ start1 + k ] ];
+			else
+				mapped2[ assignment[ k ] ] = true;
+		}
+		for ( int l = 0; l < numberOfChildren2; l++ )
+			if ( !mapped2[ l ] )
+				cost += tree2.treeCosts[ tree2.children[ start2 + l ] ];
+		for ( int k = 0; k < assignment.length; k++ )
+			if ( assignment[ k ] >= 0 )
+				cost += treeDistance( tree1.children[ start1 + k ], tree2.children[ start2 + assignment[ k ] ] );
+		return cost;
+	}
+
+	/**
+	 * Solves the assignment between the children of {@code forest1} and the children of {@code forest2}. See {@link AssignmentSolver}.
+	 *
+	 * @return for each child of {@code forest1}, the position of the assigned child among the children of {@code forest2}, or {@code -1} if the child is deleted.
+	 * Children of {@code forest2} that are not assigned are inserted.
+	 */
+	private int[] minCostMaxFlow( int forest1, int forest2 )
+	{
+		flowSolves++;
+		int start1 = tree1.childrenStart[ forest1 ];
+		int start2 = tree2.childrenStart[ forest2 ];
+		int numberOfChildren1 = tree1.childrenStart[ forest1 + 1 ] - start1;
+		int numberOfChildren2 = tree2.childrenStart[ forest2 + 1 ] - start2;
+
+		double[] deleteCosts = new double[ numberOfChildren1 ];
+		double[] insertCosts = new double[ numberOfChildren2 ];
+		double[] mapCosts = new double[ numberOfChildren1 * numberOfChildren2 ];
+		for ( int k = 0; k < numberOfChildren1; k++ )
+		{
+			int child1 = tree1.children[ start1 + k ];
+			deleteCosts[ k ] = tree1.treeCosts[ child1 ];
+			for ( int l = 0; l < numberOfChildren2; l++ )
+				mapCosts[ k * numberOfChildren2 + l ] = treeDistance( child1, tree2.children[ start2 + l ] );
+		}
+		for ( int l = 0; l < numberOfChildren2; l++ )
+			insertCosts[ l ] = tree2.treeCosts[ tree2.children[ start2 + l ] ];
+
+		return AssignmentSolver.solve( deleteCosts, insertCosts, mapCosts );
+	}
+
+	/**
+	 * Returns the position (0, 1 or 2) of the lowest of the given costs. On ties, the lower position wins.
+	 */
+	private static int findBest( double costA, double costB, double costC )
+	{
+		if ( costA <= costB && costA <= costC )
+			return 0;
+		if ( costB <= costC )
+			return 1;
+		return 2;
+	}
+
+	/**
+	 * Receives the pairs of subtrees, which still need to be visited by the backtracking of the node mapping.
+	 */
+	@FunctionalInterface
+	interface PendingPairs
+	{
+		/**
+		 * @param kind {@link #TREE} or {@link #FOREST}
+		 * @param i the post-order number of the subtree of the first tree
+		 * @param j the post-order number of the subtree of the second tree
+		 */
+		void push( int kind, int i, int j );
+	}
+
+	/**
+	 * A stack of pairs of subtrees for the backtracking, which does not allocate an object per pair.
+	 */
+	static class PairStack implements PendingPairs
+	{
+		private int[] entries = new int[ 3 * 16 ];
+
+		private int size;
+
+		int kind;
+
+		int i;
+
+		int j;
+
+		@Override
+		public void push( int kind, int i, int j )
+		{
+			if ( size + 3 > entries.length )
+				entries = Arrays.copyOf( entries, 2 * entries.length );
+			entries[ size++ ] = kind;
+			entries[ size++ ] = i;
+			entries[ size++ ] = j;
+		}
+
+		/**
+		 * Removes the top pair and stores it in {@link #kind}, {@link #i} and {@link #j}.
+		 */
+		void pop()
+		{
+			j = entries[ --size ];
+			i = entries[ --size ];
+			kind = entries[ --size ];
+		}
+
+		boolean isEmpty()
+		{
+			return size == 0;
+		}
+	}
+}
@@ -0,0 +1,328 @@
+package org.mastodon.mamut.treesimilarity;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memory bounded implementation of the Zhang unordered tree edit distance for very large pairs of trees. See {@link ZhangUnorderedTreeEditDistance} for a description of the edit operations.
+ * <p>
+ * The dynamic programming is the same as in {@link DenseZhangUnorderedTreeEditDistance}, see {@link AbstractZhangUnorderedTreeEditDistance}, but the tables are not kept for all pairs of subtrees:
+ * <ul>
+ *     <li>The distances are stored in one row per subtree of the first tree, which holds the distances to all subtrees of the second tree.</li>
+ *     <li>A row is only kept until the row of the parent subtree has been computed. Since the subtrees are numbered in post-order, only the rows of the children of the subtrees on the current path are alive at any time.</li>
+ *     <li>Isomorphic subtrees of the first tree (see {@link SubtreeClasses}) share one row.</li>
+ *     <li>The distances are stored as {@code float} and the attribute distances are computed when needed instead of being stored.</li>
+ * </ul>
+ * The node mapping is not stored either. It is reconstructed top-down ({@link #nodeMappingIndices()}): for each subtree of the first tree, which is part of the backtracking,
+ * the rows of the subtree and its children are recomputed from its own subtree. This costs the sum of the sizes of these subtrees times the size of the second tree.
+ * <p>
+ * NB: the intermediate results are rounded to {@code float}. Costs that are integers below 2<sup>24</sup>, e.g. branch durations in timepoints, are represented exactly and the results are identical to
+ * the ones of {@link DenseZhangUnorderedTreeEditDistance}. Other costs may differ in the last bits and, in case of ties, a different but equally good node mapping may be found.
+ *
+ * @param <T> Attribute type of the tree nodes.
+ */
+class BoundedZhangUnorderedTreeEditDistance< T > extends AbstractZhangUnorderedTreeEditDistance< T >
+{
+	/**
+	 * Approximate size of the header of an array object.
+	 */
+	private static final long ARRAY_HEADER_BYTES = 16;
+
+	/**
+	 * The rows of the tree distances per subtree of the first tree, {@code null} if the row is not alive.
+	 */
+	private final float[][] treeRows;
+
+	/**
+	 * The rows of the forest distances per subtree of the first tree, {@code null} if the row is not alive.
+	 */
+	private final float[][] forestRows;
+
+	/**
+	 * Rows that are no longer needed, reused for the next rows.
+	 */
+	private final Deque< float[] > freeRows = new ArrayDeque<>();
+
+	/**
+	 * The subtree, whose rows have been computed by the last {@link #sweep(int)}, and the representatives of its subtrees.
+	 */
+	private int sweepRoot = -1;
+
+	private int[] sweepRepresentatives;
+
+	private long cells;
+
+	private long reusedCells;
+
+	/**
+	 * Checks the budget of the computation, {@code null} if the computation is not limited.
+	 */
+	private final ZhangBudget.Meter meter;
+
+	/**
+	 * NB: both trees need to be non-empty and prepared with the same cost function.
+	 */
+	BoundedZhangUnorderedTreeEditDistance( final PreparedTree< T > tree1, final PreparedTree< T > tree2 )
+	{
+		this( tree1, tree2, null );
+	}
+
+	/**
+	 * NB: both trees need to be non-empty and prepared with the same cost function.
+	 *
+	 * @param meter checks the budget of the computation once per row, including the rows recomputed for the node mapping, or {@code null}
+	 */
+	BoundedZhangUnorderedTreeEditDistance( final PreparedTree< T > tree1, final PreparedTree< T > tree2, final ZhangBudget.Meter meter )
+	{
+		super( tree1, tree2 );
+		this.meter = meter;
+		treeRows = new float[ tree1.size() ][];
+		forestRows = new float[ tree1.size() ][];
+	}
+
+	/**
+	 * Estimates the memory needed by the tables of {@link DenseZhangUnorderedTreeEditDistance} for the given trees.
+	 *
+	 * @return the number of bytes
+	 */
+	static long denseTableBytes( final PreparedTree< ? > tree1, final PreparedTree< ? > tree2 )
+	{
+		return 3 * ( ARRAY_HEADER_BYTES + ( long ) Double.BYTES * tree1.size() * tree2.size() );
+	}
+
+	/**
+	 * Estimates the memory needed by the rows of this implementation for the given trees, see {@link #peakRows(PreparedTree)}.
+	 *
+	 * @return the number of bytes
+	 */
+	static long boundedTableBytes( final PreparedTree< ? > tree1, final PreparedTree< ? > tree2 )
+	{
+		long rowBytes = ARRAY_HEADER_BYTES + ( long ) Float.BYTES * tree2.size();
+		long perSubtreeBytes = 2L * Long.BYTES + 2L * Integer.BYTES;
+		return 2 * peakRows( tree1 ) * rowBytes + perSubtreeBytes * tree1.size();
+	}
+
+	/**
+	 * Computes the maximum number of distinct rows that are alive at the same time during {@link #compute()}, by running the post-order sweep without computing any distance.
+	 * <p>
+	 * NB: the sweeps of {@link #nodeMappingIndices()} cover subtrees of the first tree and never need more rows than this.
+	 */
+	static int peakRows( final PreparedTree< ? > tree1 )
+	{
+		int n1 = tree1.size();
+		int[] representatives = tree1.representatives;
+		int[] references = new int[ n1 ];
+		for ( int i = 0; i < n1; i++ )
+			references[ representatives[ i ] ]++;
+		int alive = 0;
+		int peak = 0;
+		for ( int i = 0; i < n1; i++ )
+		{
+			if ( representatives[ i ] == i )
+				peak = Math.max( peak, ++alive );
+			for ( int k = tree1.childrenStart[ i ]; k < tree1.childrenStart[ i + 1 ]; k++ )
+				if ( --references[ representatives[ tree1.children[ k ] ] ] == 0 )
+					alive--;
+		}
+		return peak;
+	}
+
+	/**
+	 * Computes the Zhang edit distance between the two trees.
+	 */
+	double compute()
+	{
+		int root = tree1.size() - 1;
+		sweep( root );
+		double distance = treeRows[ root ][ n2 - 1 ];
+		clear();
+		if ( tree1.memo != null && tree1.memo == tree2.memo )
+			tree1.memo.record( cells, reusedCells, flowSolves );
+		return distance;
+	}
+
+	/**
+	 * Reconstructs the optimal node mapping between the two trees. The rows needed for the backtracking are recomputed for each subtree of the first tree on the way down.
+	 *
+	 * @return for each subtree of the first tree, the post-order number of the subtree of the second tree it is mapped to, or {@code -1}, if it is not mapped.
+	 */
+	int[] nodeMappingIndices()
+	{
+		int n1 = tree1.size();
+		int[] mapping = new int[ n1 ];
+		Arrays.fill( mapping, -1 );
+		// NB: the backtracking only moves from a subtree of the first tree to itself or its children, which have smaller post-order numbers.
+		// Visiting the subtrees in descending order thus handles all pairs of a subtree at once, with its rows recomputed only once.
+		PairStack[] pending = new PairStack[ n1 ];
+		PendingPairs pendingPairs = ( kind, i, j ) -> push( pending, kind, i, j );
+		pendingPairs.push( TREE, n1 - 1, n2 - 1 );
+		for ( int i = n1 - 1; i >= 0; i-- )
+		{
+			PairStack pairs = pending[ i ];
+			if ( pairs == null )
+				continue;
+			sweep( i );
+			while ( !pairs.isEmpty() )
+			{
+				pairs.pop();
+				if ( pairs.kind == TREE )
+					writeTreeMapping( pairs.i, pairs.j, mapping, pendingPairs );
+				else
+					writeForestMapping( pairs.i, pairs.j, pendingPairs );
+			}
+			pending[ i ] = null;
+			clear();
+		}
+		return mapping;
+	}
+
+	private static void push( final PairStack[] pending, final int kind, final int i, final int j )
+	{
+		if ( pending[ i ] == null )
+			pending[ i ] = new PairStack();
+		pending[ i ].push( kind, i, j );
+	}
+
+	/**
+	 * Computes the rows of all subtrees of the given subtree of the first tree in post-order. Afterwards, only the rows of the given subtree and of its children are alive.
+	 */
+	private void sweep( final int root )
+	{
+		int first = root - tree1.subtreeSizes[ root ] + 1;
+		int[] representatives = sweepRepresentatives( first, root );
+		int[] references = new int[ representatives.length ];
+		for ( int representative : representatives )
+			references[ representative - first ]++;
+		sweepRoot = root;
+		sweepRepresentatives = representatives;
+		for ( int i = first; i <= root; i++ )
+		{
+			computeRow( i, representatives[ i - first ] );
+			if ( i == root )
+				break;
+			for ( int k = tree1.childrenStart[ i ]; k < tree1.childrenStart[ i + 1 ]; k++ )
+			{
+				int child = tree1.children[ k ];
+				int representative = representatives[ child - first ];
+				if ( --references[ representative - first ] == 0 )
+				{
+					freeRows.push( treeRows[ representative ] );
+					freeRows.push( forestRows[ representative ] );
+					treeRows[ representative ] = null;
+					forestRows[ representative ] = null;
+				}
+				// NB: the row of a representative stays alive as long as other subtrees of its class still need it
+				if ( child != representative )
+				{
+					treeRows[ child ] = null;
+					forestRows[ child ] = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the representatives of the subtrees {@code first} to {@code root}. Representatives outside this range are replaced by the first subtree of the same class within the range.
+	 */
+	private int[] sweepRepresentatives( final int first, final int root )
+	{
+		int[] representatives = new int[ root - first + 1 ];
+		Map< Integer, Integer > firstOfClass = null;
+		for ( int i = first; i <= root; i++ )
+		{
+			int representative = tree1.representatives[ i ];
+			if ( representative < first )
+			{
+				if ( firstOfClass == null )
+					firstOfClass = new HashMap<>();
+				Integer firstInRange = firstOfClass.putIfAbsent( tree1.classes[ i ], i );
+				representative = firstInRange == null ? i : firstInRange;
+			}
+			representatives[ i - first ] = representative;
+		}
+		return representatives;
+	}
+
+	private void computeRow( final int i, final int representative1 )
+	{
+		if ( meter != null )
+			meter.add( n2 );
+		cells += n2;
+		// NB: isomorphic subtrees have the same distances. The representative has a smaller post-order number, thus its row is already filled.
+		if ( representative1 != i )
+		{
+			treeRows[ i ] = treeRows[ representative1 ];
+			forestRows[ i ] = forestRows[ representative1 ];
+			reusedCells += n2;
+			return;
+		}
+		float[] treeRow = newRow();
+		float[] forestRow = newRow();
+		treeRows[ i ] = treeRow;
+		forestRows[ i ] = forestRow;
+		int[] representatives2 = tree2.representatives;
+		for ( int j = 0; j < n2; j++ )
+		{
+			int representative2 = representatives2[ j ];
+			if ( representative2 != j )
+			{
+				forestRow[ j ] = forestRow[ representative2 ];
+				treeRow[ j ] = treeRow[ representative2 ];
+				reusedCells++;
+				continue;
+			}
+			forestRow[ j ] = !tree1.isLeaf( i ) || !tree2.isLeaf( j ) ? ( float ) computeForestDistance( i, j ) : 0;
+			treeRow[ j ] = ( float ) computeTreeDistance( i, j );
+		}
+	}
+
+	private float[] newRow()
+	{
+		float[] row = freeRows.poll();
+		return row != null ? row : new float[ n2 ];
+	}
+
+	/**
+	 * Releases the rows, which are still alive after the last {@link #sweep(int)}.
+	 */
+	private void clear()
+	{
+		int first = sweepRoot - tree1.subtreeSizes[ sweepRoot ] + 1;
+		for ( int i = first; i <= sweepRoot; i++ )
+		{
+			if ( treeRows[ i ] == null )
+				continue;
+			if ( sweepRepresentatives[ i - first ] == i )
+			{
+				freeRows.push( treeRows[ i ] );
+				freeRows.push( forestRows[ i ] );
+			}
+			treeRows[ i ] = null;
+			forestRows[ i ] = null;
+		}
+	}
+
+	@Override
+	protected double attributeDistance( int i, int j )
+	{
+		DoubleCostFunction doubleCostFunction = tree1.doubleCostFunction;
+		if ( doubleCostFunction != null )
+			return doubleCostFunction.change( tree1.doubleAttributes[ i ], tree2.doubleAttributes[ j ] );
+		return tree1.costFunction.apply( tree1.attributes.get( i ), tree2.attributes.get( j ) );
+	}
+
+	@Override
+	protected double treeDistance( int i, int j )
+	{
+		return treeRows[ i ][ j ];
+	}
+
+	@Override
+	protected double forestDistance( int i, int j )
+	{
+		return forestRows[ i ][ j ];
+	}
+}
@@ -0,0 +1,82 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.mastodon.collection.RefRefMap;
+import org.mastodon.mamut.model.branch.BranchSpot;
+import org.mastodon.mamut.treesimilarity.tree.CompactBranchSpotTree;
+import org.mastodon.properties.IntPropertyMap;
+
+/**
+ * Writes the {@link ZhangUnorderedTreeEditDistance#nodeMappingIndices(PreparedTree, PreparedTree) node mapping} between two lineages directly onto their {@link BranchSpot}s.
+ * <p>
+ * The trees need to be prepared from {@link CompactBranchSpotTree}s, whose node indices are the post-order numbers of the node mapping.
+ * The branch spots are only accessed via refs, such that mapping many pairs of lineages does not create any object per node.
+ */
+public class BranchSpotMappings
+{
+	private BranchSpotMappings()
+	{
+		// prevent from instantiation
+	}
+
+	/**
+	 * Computes the node mapping between the given trees and puts each mapped pair of branch spots into the given map.
+	 *
+	 * @param tree1 the first tree, prepared from a {@link CompactBranchSpotTree}
+	 * @param tree2 the second tree, prepared from a {@link CompactBranchSpotTree} with the same cost function
+	 * @param mapping the map from branch spots of the first tree to the branch spots of the second tree, existing entries of other branch spots are kept
+	 */
+	public static void writeTo( final PreparedTree< Double > tree1, final PreparedTree< Double > tree2, final RefRefMap< BranchSpot, BranchSpot > mapping )
+	{
+		CompactBranchSpotTree branchSpotTree1 = branchSpotTree( tree1 );
+		CompactBranchSpotTree branchSpotTree2 = branchSpotTree( tree2 );
+		int[] indices = ZhangUnorderedTreeEditDistance.nodeMappingIndices( tree1, tree2 );
+		BranchSpot keyRef = mapping.createKeyRef();
+		BranchSpot valueRef = mapping.createValueRef();
+		BranchSpot previousRef = mapping.createValueRef();
+		try
+		{
+			for ( int i = 0; i < indices.length; i++ )
+				if ( indices[ i ] >= 0 )
+					mapping.put( branchSpotTree1.getBranchSpot( i, keyRef ), branchSpotTree2.getBranchSpot( indices[ i ], valueRef ), previousRef );
+		}
+		finally
+		{
+			mapping.releaseKeyRef( keyRef );
+			mapping.releaseValueRef( valueRef );
+			mapping.releaseValueRef( previousRef );
+		}
+	}
+
+	/**
+	 * Computes the node mapping between the given trees and stores, for each mapped branch spot of the first tree, the pool index of the branch spot of the second tree it is mapped to.
+	 * The branch spot can be obtained with {@code tree2.getTree().getBranchSpotPool().getObject( index, ref )}.
+	 *
+	 * @param tree1 the first tree, prepared from a {@link CompactBranchSpotTree}
+	 * @param tree2 the second tree, prepared from a {@link CompactBranchSpotTree} with the same cost function
+	 * @param mapping the property map of the branch spots of the first tree, the values of unmapped branch spots are not changed
+	 */
+	public static void writeTo( final PreparedTree< Double > tree1, final PreparedTree< Double > tree2, final IntPropertyMap< BranchSpot > mapping )
+	{
+		CompactBranchSpotTree branchSpotTree1 = branchSpotTree( tree1 );
+		CompactBranchSpotTree branchSpotTree2 = branchSpotTree( tree2 );
+		int[] indices = ZhangUnorderedTreeEditDistance.nodeMappingIndices( tree1, tree2 );
+		BranchSpot ref = branchSpotTree1.getBranchSpotPool().createRef();
+		try
+		{
+			for ( int i = 0; i < indices.length; i++ )
+				if ( indices[ i ] >= 0 )
+					mapping.set( branchSpotTree1.getBranchSpot( i, ref ), branchSpotTree2.getObjectId( indices[ i ] ) );
+		}
+		finally
+		{
+			branchSpotTree1.getBranchSpotPool().releaseRef( ref );
+		}
+	}
+
+	private static CompactBranchSpotTree branchSpotTree( final PreparedTree< Double > tree )
+	{
+		if ( !( tree.getTree() instanceof CompactBranchSpotTree ) )
+			throw new IllegalArgumentException( "The tree is expected to be prepared from a CompactBranchSpotTree." );
+		return ( CompactBranchSpotTree ) tree.getTree();
+	}
+}
@@ -0,0 +1,210 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Array based implementation of the Zhang unordered tree edit distance. See {@link ZhangUnorderedTreeEditDistance} for a description of the edit operations.
+ * <p>
+ * The subtrees of both trees are numbered in post-order once (see {@link PreparedTree}). All costs are then kept in flat arrays, where the entry for the pair of subtrees {@code (i, j)} is stored at index {@code i * n2 + j}.
+ * Since the post-order numbering guarantees that the children of a subtree have smaller numbers than the subtree itself, the tables can be filled in a single sweep over all pairs without any recursion between pairs.
+ * <p>
+ * Cells of pairs of isomorphic subtrees (see {@link SubtreeClasses}) are copied instead of computed.
+ * <p>
+ * Only costs are computed in this sweep, no {@link org.mastodon.mamut.treesimilarity.util.NodeMapping} objects are created.
+ * If the node mapping is needed, it is reconstructed afterwards by backtracking from the root pair through the filled tables ({@link #nodeMapping()}).
+ * <p>
+ * The recurrences are shared with {@link BoundedZhangUnorderedTreeEditDistance}, see {@link AbstractZhangUnorderedTreeEditDistance}.
+ * The results are identical to the ones of the hash map based implementation in {@link ZhangUnorderedTreeEditDistance}, including the tie-breaking between equally good edit operations,
+ * up to the rounding of the compensated summation used by the latter.
+ *
+ * @param <T> Attribute type of the tree nodes.
+ */
+class DenseZhangUnorderedTreeEditDistance< T > extends AbstractZhangUnorderedTreeEditDistance< T >
+{
+	/**
+	 * The maximum number of cells of a table, i.e. the maximum length of a Java array, which is slightly below {@link Integer#MAX_VALUE} on most virtual machines.
+	 */
+	static final long MAX_TABLE_CELLS = Integer.MAX_VALUE - 8;
+
+	private final double[] attributeDistances;
+
+	private final double[] treeDistances;
+
+	private final double[] forestDistances;
+
+	/**
+	 * Checks the budget of the computation, {@code null} if the computation is not limited.
+	 */
+	private final ZhangBudget.Meter meter;
+
+	DenseZhangUnorderedTreeEditDistance( final Tree< T > tree1, final Tree< T > tree2, final BiFunction< T, T, Double > costFunction )
+	{
+		this( PreparedTree.of( tree1, costFunction ), PreparedTree.of( tree2, costFunction ) );
+	}
+
+	/**
+	 * NB: both trees need to be non-empty and prepared with the same cost function.
+	 */
+	DenseZhangUnorderedTreeEditDistance( final PreparedTree< T > tree1, final PreparedTree< T > tree2 )
+	{
+		this( tree1, tree2, null );
+	}
+
+	/**
+	 * NB: both trees need to be non-empty and prepared with the same cost function.
+	 *
+	 * @param meter checks the budget of the computation once per row of the tables, or {@code null}
+	 * @throws IllegalArgumentException if the tables for the two trees exceed the maximum length of an array, see {@link #fitsTables(PreparedTree, PreparedTree)}
+	 */
+	DenseZhangUnorderedTreeEditDistance( final PreparedTree< T > tree1, final PreparedTree< T > tree2, final ZhangBudget.Meter meter )
+	{
+		super( tree1, tree2 );
+		if ( !fitsTables( tree1, tree2 ) )
+			throw new IllegalArgumentException( "The trees with " + tree1.size() + " and " + tree2.size() + " nodes are too large for the tables of "
+					+ ( ( long ) tree1.size() * tree2.size() ) + " cells. The maximum is " + MAX_TABLE_CELLS + " cells." );
+		this.meter = meter;
+		int n1 = tree1.size();
+
+		attributeDistances = new double[ n1 * n2 ];
+		DoubleCostFunction doubleCostFunction = tree1.doubleCostFunction;
+		if ( doubleCostFunction != null )
+		{
+			// NB: no boxing per pair of nodes
+			double[] attributes1 = tree1.doubleAttributes;
+			double[] attributes2 = tree2.doubleAttributes;
+			for ( int i = 0; i < n1; i++ )
+				for ( int j = 0; j < n2; j++ )
+					attributeDistances[ i * n2 + j ] = doubleCostFunction.change( attributes1[ i ], attributes2[ j ] );
+		}
+		else
+		{
+			BiFunction< T, T, Double > costFunction = tree1.costFunction;
+			for ( int i = 0; i < n1; i++ )
+				for ( int j = 0; j < n2; j++ )
+					attributeDistances[ i * n2 + j ] = costFunction.apply( tree1.attributes.get( i ), tree2.attributes.get( j ) );
+		}
+
+		treeDistances = new double[ n1 * n2 ];
+		forestDistances = new double[ n1 * n2 ];
+	}
+
+	/**
+	 * @return {@code true}, if the number of pairs of subtrees of the given trees does not exceed {@link #MAX_TABLE_CELLS}, such that the tables can be stored in arrays.
+	 */
+	static boolean fitsTables( final PreparedTree< ? > tree1, final PreparedTree< ? > tree2 )
+	{
+		return ( long ) tree1.size() * tree2.size() <= MAX_TABLE_CELLS;
+	}
+
+	/**
+	 * Fills the tables for all pairs of subtrees and returns the Zhang edit distance between the two trees.
+	 *
+	 * @throws java.util.concurrent.CancellationException if the budget of the {@link ZhangBudget.Meter meter} is exhausted
+	 */
+	double compute()
+	{
+		int n1 = tree1.size();
+		int[] representatives1 = tree1.representatives;
+		int[] representatives2 = tree2.representatives;
+		long reused = 0;
+		for ( int i = 0; i < n1; i++ )
+		{
+			if ( meter != null )
+				meter.add( n2 );
+			for ( int j = 0; j < n2; j++ )
+			{
+				int index = i * n2 + j;
+				// NB: isomorphic subtrees have the same distances. The representatives have smaller post-order numbers, thus their cell is already filled.
+				int representative1 = representatives1[ i ];
+				int representative2 = representatives2[ j ];
+				if ( representative1 != i || representative2 != j )
+				{
+					int representativeIndex = representative1 * n2 + representative2;
+					forestDistances[ index ] = forestDistances[ representativeIndex ];
+					treeDistances[ index ] = treeDistances[ representativeIndex ];
+					reused++;
+					continue;
+				}
+				if ( !tree1.isLeaf( i ) || !tree2.isLeaf( j ) )
+					forestDistances[ index ] = computeForestDistance( i, j );
+				treeDistances[ index ] = computeTreeDistance( i, j );
+			}
+		}
+		if ( tree1.memo != null && tree1.memo == tree2.memo )
+			tree1.memo.record( ( long ) n1 * n2, reused, flowSolves );
+		return treeDistances[ treeDistances.length - 1 ];
+	}
+
+	/**
+	 * @return the tree distances of all pairs of subtrees, see {@link SubtreeDistances}.
+	 * <p>
+	 * NB: {@link #compute()} needs to be called before.
+	 */
+	double[] treeDistances()
+	{
+		return treeDistances;
+	}
+
+	/**
+	 * Reconstructs the optimal node mapping between the two trees by backtracking through the tables filled by {@link #compute()}.
+	 * <p>
+	 * NB: {@link #compute()} needs to be called before.
+	 */
+	Map< Tree< T >, Tree< T > > nodeMapping()
+	{
+		int[] mapping = nodeMappingIndices();
+		Map< Tree< T >, Tree< T > > map = new HashMap<>();
+		for ( int i = 0; i < mapping.length; i++ )
+			if ( mapping[ i ] >= 0 )
+				map.put( tree1.subtrees.get( i ), tree2.subtrees.get( mapping[ i ] ) );
+		return map;
+	}
+
+	/**
+	 * Reconstructs the optimal node mapping between the two trees by backtracking through the tables filled by {@link #compute()}.
+	 * <p>
+	 * NB: {@link #compute()} needs to be called before.
+	 *
+	 * @return for each subtree of the first tree, the post-order number of the subtree of the second tree it is mapped to, or {@code -1}, if it is not mapped.
+	 */
+	int[] nodeMappingIndices()
+	{
+		int[] mapping = new int[ tree1.size() ];
+		Arrays.fill( mapping, -1 );
+		// NB: the pairs still to be visited are kept on an explicit stack instead of recursing, because the depth of the backtracking grows with the depth of the trees
+		PairStack pending = new PairStack();
+		pending.push( TREE, tree1.size() - 1, n2 - 1 );
+		while ( !pending.isEmpty() )
+		{
+			pending.pop();
+			if ( pending.kind == TREE )
+				writeTreeMapping( pending.i, pending.j, mapping, pending );
+			else
+				writeForestMapping( pending.i, pending.j, pending );
+		}
+		return mapping;
+	}
+
+	@Override
+	protected double attributeDistance( int i, int j )
+	{
+		return attributeDistances[ i * n2 + j ];
+	}
+
+	@Override
+	protected double treeDistance( int i, int j )
+	{
+		return treeDistances[ i * n2 + j ];
+	}
+
+	@Override
+	protected double forestDistance( int i, int j )
+	{
+		return forestDistances[ i * n2 + j ];
+	}
+}
@@ -0,0 +1,47 @@
+package org.mastodon.mamut.treesimilarity;
+
+import java.util.function.BiFunction;
+
+/**
+ * Cost function of the {@link ZhangUnorderedTreeEditDistance} for trees with numeric attributes.
+ * <p>
+ * In contrast to a {@code BiFunction< Double, Double, Double >}, the costs of the three edit operations are separate methods on primitive {@code double} values.
+ * Thus, no boxing is needed and {@code null} is not used to express a missing node.
+ *
+ * @see ZhangUnorderedTreeEditDistance#DEFAULT_DOUBLE_COST_FUNCTION
+ * @see PreparedTree#ofDoubles(org.mastodon.mamut.treesimilarity.tree.Tree, DoubleCostFunction)
+ */
+public interface DoubleCostFunction
+{
+	/**
+	 * @return the costs of changing the attribute of a node from {@code a} to {@code b}.
+	 */
+	double change( double a, double b );
+
+	/**
+	 * @return the costs of inserting a node with attribute {@code b}.
+	 */
+	double insert( double b );
+
+	/**
+	 * @return the costs of deleting a node with attribute {@code a}.
+	 */
+	double delete( double a );
+
+	/**
+	 * Returns this cost function in the form expected by the methods of {@link ZhangUnorderedTreeEditDistance} that take a {@link BiFunction},
+	 * where a {@code null} first argument means insertion and a {@code null} second argument means deletion.
+	 *
+	 * @return the cost function on boxed attributes
+	 */
+	default BiFunction< Double, Double, Double > boxed()
+	{
+		return ( a, b ) -> {
+			if ( b == null )
+				return a == null ? 0 : delete( a );
+			if ( a == null )
+				return insert( b );
+			return change( a, b );
+		};
+	}
+}
@@ -0,0 +1,353 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.mastodon.mamut.treesimilarity.tree.CompactTree;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+import org.mastodon.mamut.treesimilarity.tree.TreeUtils;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * A tree together with everything the {@link ZhangUnorderedTreeEditDistance} needs to know about it, independently of the tree it is compared to:
+ * the post-order numbering of its subtrees, the subtree sizes, the costs of deleting or inserting each subtree and its forest, and the distance to the empty tree.
+ * <p>
+ * In an all-pairs computation, each tree is prepared once with {@link #of(Tree, BiFunction)} and the prepared trees are passed to
+ * {@link ZhangUnorderedTreeEditDistance#distance(PreparedTree, PreparedTree)} and its normalized variants, such that the work per pair is only the pairwise dynamic programming.
+ * <p>
+ * The children of the subtree with number {@code i} are stored at the positions {@code childrenStart[i]} (inclusive) to {@code childrenStart[i + 1]} (exclusive) of {@code children},
+ * in the same order as returned by {@link Tree#getChildren()}.
+ * <p>
+ * Prepared trees are immutable and may be shared between threads.
+ *
+ * @param <T> Attribute type of the tree nodes.
+ */
+public class PreparedTree< T >
+{
+	private final Tree< T > tree;
+
+	final BiFunction< T, T, Double > costFunction;
+
+	/**
+	 * The primitive cost function, or {@code null}, if the tree has been prepared with a {@link BiFunction}.
+	 */
+	@Nullable
+	final DoubleCostFunction doubleCostFunction;
+
+	/**
+	 * The unboxed attributes, if the tree has been prepared with a {@link DoubleCostFunction}, otherwise {@code null}.
+	 */
+	@Nullable
+	final double[] doubleAttributes;
+
+	final List< Tree< T > > subtrees = new ArrayList<>();
+
+	final List< T > attributes = new ArrayList<>();
+
+	final int[] childrenStart;
+
+	final int[] children;
+
+	final int[] subtreeSizes;
+
+	final double[] treeCosts;
+
+	final double[] forestCosts;
+
+	/**
+	 * The {@link SubtreeClasses canonical classes} of the subtrees. Only comparable to the classes of other trees prepared with the same {@link #memo}.
+	 */
+	final int[] classes;
+
+	/**
+	 * For each subtree, the smallest post-order number of a subtree of this tree with the same class. Pairs of subtrees with the same representatives have the same distances.
+	 */
+	final int[] representatives;
+
+	@Nullable
+	final SubtreeMemo memo;
+
+	/**
+	 * Computed on first use, since not all cost functions support inserting nodes, which is not needed e.g. for {@link ZhangUnorderedTreeEditDistance#nodeMapping(Tree, Tree, BiFunction)}.
+	 * NB: concurrent first uses compute the same value.
+	 */
+	private volatile double distanceToNull = Double.NaN;
+
+	private PreparedTree( @Nullable final Tree< T > tree, final BiFunction< T, T, Double > costFunction,
+			@Nullable final DoubleCostFunction doubleCostFunction, @Nullable final SubtreeMemo memo )
+	{
+		this.tree = tree;
+		this.costFunction = costFunction;
+		this.doubleCostFunction = doubleCostFunction;
+		this.memo = memo;
+		if ( memo != null )
+			memo.bind( doubleCostFunction != null ? doubleCostFunction : costFunction );
+		if ( tree instanceof CompactTree )
+		{
+			// NB: a compact tree is already numbered in post-order, no traversal of the tree objects is needed
+			CompactTree compactTree = ( CompactTree ) tree;
+			int size = compactTree.size();
+			childrenStart = new int[ size + 1 ];
+			children = new int[ size - 1 ];
+			for ( int i = 0; i < size; i++ )
+			{
+				int numberOfChildren = compactTree.getNumberOfChildren( i );
+				for ( int k = 0; k < numberOfChildren; k++ )
+					children[ childrenStart[ i ] + k ] = compactTree.getChild( i, k );
+				childrenStart[ i + 1 ] = childrenStart[ i ] + numberOfChildren;
+				@SuppressWarnings( "unchecked" )
+				Tree< T > subtree = ( Tree< T > ) compactTree.getNode( i );
+				subtrees.add( subtree );
+				attributes.add( subtree.getAttribute() );
+			}
+		}
+		else
+		{
+			List< int[] > childNumbers = new ArrayList<>();
+			if ( tree != null )
+				number( tree, childNumbers );
+			int size = subtrees.size();
+			childrenStart = new int[ size + 1 ];
+			for ( int i = 0; i < size; i++ )
+				childrenStart[ i + 1 ] = childrenStart[ i ] + childNumbers.get( i ).length;
+			children = new int[ childrenStart[ size ] ];
+			for ( int i = 0; i < size; i++ )
+				System.arraycopy( childNumbers.get( i ), 0, children, childrenStart[ i ], childNumbers.get( i ).length );
+		}
+		int size = subtrees.size();
+		if ( doubleCostFunction != null )
+		{
+			doubleAttributes = new double[ size ];
+			for ( int i = 0; i < size; i++ )
+				doubleAttributes[ i ] = tree instanceof CompactTree ? ( ( CompactTree ) tree ).getAttribute( i ) : ( Double ) attributes.get( i );
+		}
+		else
+			doubleAttributes = null;
+
+		// NB: see ZhangUnorderedTreeEditDistance.EditCosts for the definition of the tree and forest costs.
+		subtreeSizes = new int[ size ];
+		treeCosts = new double[ size ];
+		forestCosts = new double[ size ];
+		for ( int i = 0; i < size; i++ )
+		{
+			double cost = 0;
+			int subtreeSize = 1;
+			for ( int k = childrenStart[ i ]; k < childrenStart[ i + 1 ]; k++ )
+			{
+				cost += treeCosts[ children[ k ] ];
+				subtreeSize += subtreeSizes[ children[ k ] ];
+			}
+			treeCosts[ i ] = cost + ( doubleCostFunction != null ? doubleCostFunction.delete( doubleAttributes[ i ] ) : costFunction.apply( attributes.get( i ), null ) );
+			forestCosts[ i ] = cost;
+			subtreeSizes[ i ] = subtreeSize;
+		}
+
+		classes = ( memo != null ? memo.classes : new SubtreeClasses() ).classify( this );
+		representatives = new int[ size ];
+		Map< Integer, Integer > firstOfClass = new HashMap<>();
+		for ( int i = 0; i < size; i++ )
+		{
+			Integer first = firstOfClass.putIfAbsent( classes[ i ], i );
+			representatives[ i ] = first == null ? i : first;
+		}
+	}
+
+	/**
+	 * Prepares the given tree for the computation of distances with the given cost function.
+	 *
+	 * @param tree the tree, or {@code null} for the empty tree
+	 * @param costFunction mandatory cost function, all prepared trees that are compared to each other need to use the same cost function
+	 * @return the prepared tree
+	 */
+	public static < T > PreparedTree< T > of( @Nullable final Tree< T > tree, final BiFunction< T, T, Double > costFunction )
+	{
+		return of( tree, costFunction, null );
+	}
+
+	/**
+	 * Prepares the given tree for the computation of distances with the given cost function, sharing the results for isomorphic subtrees with all other trees prepared with the given memo.
+	 *
+	 * @param tree the tree, or {@code null} for the empty tree
+	 * @param costFunction mandatory cost function, all prepared trees that are compared to each other need to use the same cost function
+	 * @param memo the memo or {@code null}
+	 * @return the prepared tree
+	 * @throws IllegalArgumentException if the memo is already used with another cost function
+	 */
+	public static < T > PreparedTree< T > of( @Nullable final Tree< T > tree, final BiFunction< T, T, Double > costFunction, @Nullable final SubtreeMemo memo )
+	{
+		if ( costFunction == null )
+			throw new IllegalArgumentException( "The cost function is expected to be non-null, but it is null." );
+		return new PreparedTree<>( tree, costFunction, null, memo );
+	}
+
+	/**
+	 * Prepares the given tree for the computation of distances with the given primitive cost function.
+	 * The distances between trees prepared this way are computed without boxing any attribute or cost.
+	 *
+	 * @param tree the tree, or {@code null} for the empty tree
+	 * @param costFunction mandatory cost function, all prepared trees that are compared to each other need to use the same cost function
+	 * @return the prepared tree
+	 */
+	public static PreparedTree< Double > ofDoubles( @Nullable final Tree< Double > tree, final DoubleCostFunction costFunction )
+	{
+		return ofDoubles( tree, costFunction, null );
+	}
+
+	/**
+	 * Prepares the given tree for the computation of distances with the given primitive cost function, sharing the results for isomorphic subtrees with all other trees prepared with the given memo.
+	 *
+	 * @param tree the tree, or {@code null} for the empty tree
+	 * @param costFunction mandatory cost function, all prepared trees that are compared to each other need to use the same cost function
+	 * @param memo the memo or {@code null}
+	 * @return the prepared tree
+	 * @throws IllegalArgumentException if the memo is already used with another cost function
+	 */
+	public static PreparedTree< Double > ofDoubles( @Nullable final Tree< Double > tree, final DoubleCostFunction costFunction, @Nullable final SubtreeMemo memo )
+	{
+		if ( costFunction == null )
+			throw new IllegalArgumentException( "The cost function is expected to be non-null, but it is null." );
+		return new PreparedTree<>( tree, costFunction.boxed(), costFunction, memo );
+	}
+
+	/**
+	 * @return the tree, or {@code null} for the empty tree.
+	 */
+	@Nullable
+	public Tree< T > getTree()
+	{
+		return tree;
+	}
+
+	/**
+	 * @return the cost function the tree has been prepared with. For trees prepared with a {@link DoubleCostFunction}, this is its {@link DoubleCostFunction#boxed() boxed} form.
+	 */
+	public BiFunction< T, T, Double > getCostFunction()
+	{
+		return costFunction;
+	}
+
+	/**
+	 * @return the number of nodes of the tree.
+	 */
+	public int size()
+	{
+		return subtrees.size();
+	}
+
+	/**
+	 * @return {@code true}, if this is the empty tree.
+	 */
+	public boolean isEmpty()
+	{
+		return subtrees.isEmpty();
+	}
+
+	/**
+	 * @return the subtree with the given post-order number. The root has the number {@code size() - 1}.
+	 */
+	public Tree< T > getSubtree( final int i )
+	{
+		return subtrees.get( i );
+	}
+
+	/**
+	 * @return the number of nodes of the subtree with the given post-order number.
+	 */
+	public int getSubtreeSize( final int i )
+	{
+		return subtreeSizes[ i ];
+	}
+
+	/**
+	 * @return the Zhang edit distance between the tree and the empty tree, i.e. the costs of inserting all nodes.
+	 */
+	public double getDistanceToNull()
+	{
+		double distance = distanceToNull;
+		if ( Double.isNaN( distance ) )
+		{
+			// NB: computed exactly as by ZhangUnorderedTreeEditDistance.distance( tree, null, costFunction ), such that the results of both APIs are identical
+			distance = doubleCostFunction != null ? primitiveDistanceToNull() : ZhangUnorderedTreeEditDistance.distance( tree, null, costFunction );
+			distanceToNull = distance;
+		}
+		return distance;
+	}
+
+	/**
+	 * @return {@code true}, if this tree and the given tree have been prepared with the same cost function.
+	 */
+	public boolean hasSameCostFunction( final PreparedTree< ? > other )
+	{
+		if ( doubleCostFunction != null || other.doubleCostFunction != null )
+			return doubleCostFunction == other.doubleCostFunction;
+		return costFunction == other.costFunction;
+	}
+
+	boolean isLeaf( int i )
+	{
+		return childrenStart[ i ] == childrenStart[ i + 1 ];
+	}
+
+	/**
+	 * Sums up the insertion costs in pre-order, like {@link ZhangUnorderedTreeEditDistance#distance(Tree, Tree, BiFunction)}.
+	 */
+	private double primitiveDistanceToNull()
+	{
+		double distance = 0;
+		for ( Tree< T > subtree : TreeUtils.listOfSubtrees( tree ) )
+			distance += doubleCostFunction.insert( ( Double ) subtree.getAttribute() );
+		return distance;
+	}
+
+	/**
+	 * Numbers the subtrees in post-order. The tree is traversed with an explicit stack instead of recursion, such that arbitrarily deep trees are supported.
+	 */
+	private void number( final Tree< T > tree, final List< int[] > childNumbers )
+	{
+		Deque< Frame< T > > stack = new ArrayDeque<>();
+		stack.push( new Frame<>( tree ) );
+		while ( !stack.isEmpty() )
+		{
+			Frame< T > frame = stack.peek();
+			if ( frame.children.hasNext() )
+			{
+				stack.push( new Frame<>( frame.children.next() ) );
+				continue;
+			}
+			stack.pop();
+			subtrees.add( frame.tree );
+			attributes.add( frame.tree.getAttribute() );
+			childNumbers.add( frame.childNumbers );
+			Frame< T > parent = stack.peek();
+			if ( parent != null )
+				parent.childNumbers[ parent.numberedChildren++ ] = subtrees.size() - 1;
+		}
+	}
+
+	/**
+	 * A subtree on the stack of {@link #number(Tree, List)}, whose children are being numbered.
+	 */
+	private static class Frame< T >
+	{
+		private final Tree< T > tree;
+
+		private final Iterator< Tree< T > > children;
+
+		private final int[] childNumbers;
+
+		private int numberedChildren;
+
+		private Frame( final Tree< T > tree )
+		{
+			this.tree = tree;
+			this.children = tree.getChildren().iterator();
+			this.childNumbers = new int[ tree.getChildren().size() ];
+		}
+	}
+}
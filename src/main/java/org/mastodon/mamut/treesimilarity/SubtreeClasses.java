@@ -0,0 +1,91 @@
+package org.mastodon.mamut.treesimilarity;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Canonical classes of labelled unordered subtrees, assigned bottom-up as in the tree isomorphism algorithm of Aho, Hopcroft and Ullman (AHU).
+ * <p>
+ * The canonical form of a subtree is its attribute together with the sorted classes of its children. Each distinct canonical form gets a new class.
+ * Thus, two subtrees have the same class, if and only if they have equal attributes and the same multiset of children classes, i.e. if they are isomorphic as labelled unordered trees.
+ * In contrast to a hash value, the classes are exact, there are no collisions.
+ * <p>
+ * The classes are only comparable between trees that have been classified by the same instance. Classifying is thread-safe.
+ */
+class SubtreeClasses
+{
+	private final Map< CanonicalForm, Integer > classes = new HashMap<>();
+
+	/**
+	 * Computes the classes of all subtrees of the given tree.
+	 *
+	 * @param tree the tree, whose children arrays have been set up
+	 * @return the classes indexed by the post-order numbers of the subtrees
+	 */
+	synchronized int[] classify( final PreparedTree< ? > tree )
+	{
+		int size = tree.size();
+		int[] result = new int[ size ];
+		// NB: the post-order numbering guarantees that the classes of the children are known, when a subtree is classified
+		for ( int i = 0; i < size; i++ )
+		{
+			int start = tree.childrenStart[ i ];
+			int[] childClasses = new int[ tree.childrenStart[ i + 1 ] - start ];
+			for ( int k = 0; k < childClasses.length; k++ )
+				childClasses[ k ] = result[ tree.children[ start + k ] ];
+			Arrays.sort( childClasses );
+			CanonicalForm form = new CanonicalForm( tree.attributes.get( i ), childClasses );
+			Integer existing = classes.get( form );
+			if ( existing == null )
+			{
+				existing = classes.size();
+				classes.put( form, existing );
+			}
+			result[ i ] = existing;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of distinct classes found so far.
+	 */
+	synchronized int size()
+	{
+		return classes.size();
+	}
+
+	private static class CanonicalForm
+	{
+		private final Object attribute;
+
+		private final int[] childClasses;
+
+		private final int hashCode;
+
+		private CanonicalForm( final Object attribute, final int[] childClasses )
+		{
+			this.attribute = attribute;
+			this.childClasses = childClasses;
+			this.hashCode = 31 * Objects.hashCode( attribute ) + Arrays.hashCode( childClasses );
+		}
+
+		@Override
+		public boolean equals( final Object o )
+		{
+			if ( this == o )
+				return true;
+			if ( !( o instanceof CanonicalForm ) )
+				return false;
+			CanonicalForm that = ( CanonicalForm ) o;
+			return hashCode == that.hashCode && Objects.equals( attribute, that.attribute ) && Arrays.equals( childClasses, that.childClasses );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+	}
+}
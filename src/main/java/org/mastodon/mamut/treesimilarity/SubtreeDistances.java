@@ -0,0 +1,127 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.mastodon.mamut.treesimilarity.tree.CompactTree;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+
+/**
+ * The Zhang edit distances between all pairs of subtrees of two trees, i.e. the table of tree distances that is filled anyway, when the distance between the two roots is computed.
+ * <p>
+ * The subtrees are identified by their post-order numbers in the {@link PreparedTree prepared trees}, see {@link PreparedTree#getSubtree(int)}.
+ * If a tree is a {@link CompactTree}, the numbers are the node indices of the compact tree. For a {@link org.mastodon.mamut.treesimilarity.tree.CompactBranchSpotTree},
+ * the branch spot of subtree {@code i} is thus {@code getBranchSpot( i, ref )}.
+ * <p>
+ * The distances are stored row by row in a single array, the distance between subtree {@code i} of the first tree and subtree {@code j} of the second tree is at index {@code i * size2() + j}.
+ * Each entry is the distance that {@link ZhangUnorderedTreeEditDistance#distance(Tree, Tree, java.util.function.BiFunction)} computes for the two subtrees on their own.
+ *
+ * @param <T> Attribute type of the tree nodes.
+ */
+public class SubtreeDistances< T >
+{
+	private final PreparedTree< T > tree1;
+
+	private final PreparedTree< T > tree2;
+
+	private final double[] distances;
+
+	/**
+	 * Computed on first use, since not all cost functions support inserting nodes.
+	 */
+	private volatile double[] distancesToNull1;
+
+	private volatile double[] distancesToNull2;
+
+	SubtreeDistances( final PreparedTree< T > tree1, final PreparedTree< T > tree2, final double[] distances )
+	{
+		this.tree1 = tree1;
+		this.tree2 = tree2;
+		this.distances = distances;
+	}
+
+	/**
+	 * @return the first tree, its post-order numbers are the row indices.
+	 */
+	public PreparedTree< T > getTree1()
+	{
+		return tree1;
+	}
+
+	/**
+	 * @return the second tree, its post-order numbers are the column indices.
+	 */
+	public PreparedTree< T > getTree2()
+	{
+		return tree2;
+	}
+
+	/**
+	 * @return the number of subtrees of the first tree, i.e. the number of rows.
+	 */
+	public int size1()
+	{
+		return tree1.size();
+	}
+
+	/**
+	 * @return the number of subtrees of the second tree, i.e. the number of columns.
+	 */
+	public int size2()
+	{
+		return tree2.size();
+	}
+
+	/**
+	 * @return the distance between subtree {@code i} of the first tree and subtree {@code j} of the second tree.
+	 */
+	public double get( final int i, final int j )
+	{
+		return distances[ i * tree2.size() + j ];
+	}
+
+	/**
+	 * Gets the distances as one array, row by row. The array is not copied, changes are visible to this object.
+	 *
+	 * @return the distances, the distance between subtree {@code i} of the first tree and subtree {@code j} of the second tree is at index {@code i * size2() + j}.
+	 */
+	public double[] getMatrix()
+	{
+		return distances;
+	}
+
+	/**
+	 * @return the distance between subtree {@code i} of the first tree and the empty tree, i.e. the sum of the costs of inserting its nodes.
+	 */
+	public double getDistanceToNull1( final int i )
+	{
+		if ( distancesToNull1 == null )
+			distancesToNull1 = distancesToNull( tree1 );
+		return distancesToNull1[ i ];
+	}
+
+	/**
+	 * @return the distance between subtree {@code j} of the second tree and the empty tree, i.e. the sum of the costs of inserting its nodes.
+	 */
+	public double getDistanceToNull2( final int j )
+	{
+		if ( distancesToNull2 == null )
+			distancesToNull2 = distancesToNull( tree2 );
+		return distancesToNull2[ j ];
+	}
+
+	/**
+	 * NB: the sums are computed bottom-up. They may thus differ in the last bits from {@link PreparedTree#getDistanceToNull()}, which sums up in pre-order.
+	 */
+	private static < T > double[] distancesToNull( final PreparedTree< T > tree )
+	{
+		int size = tree.size();
+		double[] result = new double[ size ];
+		for ( int i = 0; i < size; i++ )
+		{
+			double distance = tree.doubleCostFunction != null ? tree.doubleCostFunction.insert( tree.doubleAttributes[ i ] )
+					: tree.costFunction.apply( null, tree.attributes.get( i ) );
+			for ( int k = tree.childrenStart[ i ]; k < tree.childrenStart[ i + 1 ]; k++ )
+				distance += result[ tree.children[ k ] ];
+			result[ i ] = distance;
+		}
+		return result;
+	}
+}
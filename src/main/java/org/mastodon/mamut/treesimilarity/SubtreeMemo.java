@@ -0,0 +1,192 @@
+package org.mastodon.mamut.treesimilarity;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shares the results of the Zhang edit distance between isomorphic trees across many pairs of trees, e.g. in a distance matrix computation.
+ * <p>
+ * All trees {@link PreparedTree#of(org.mastodon.mamut.treesimilarity.tree.Tree, java.util.function.BiFunction, SubtreeMemo) prepared} with the same memo get their subtrees
+ * classified by one set of {@link SubtreeClasses canonical classes}. The distance of a pair of trees is memoized per pair of classes of the roots,
+ * such that it is computed only once for all pairs of trees that are isomorphic to each other, e.g. for the many identical small lineages of a dataset.
+ * <p>
+ * Within a single pair of trees, the cells of the dynamic programming are always shared between isomorphic subtrees, independently of a memo.
+ * The memo counts these reused cells as well, such that {@link #getCellHitRate()} and {@link #getPairHitRate()} report the savings of both.
+ * <p>
+ * NB: the cells of the dynamic programming are not memoized across pairs of trees. Each of them only combines the results of the children and a lookup in a shared map costs as much as computing the cell.
+ * <p>
+ * A memo is bound to the cost function of the first tree prepared with it. The memo is thread-safe. It holds at most the given number of distances, further distances are not memoized.
+ * <p>
+ * NB: the distances between isomorphic subtrees are equal, but the edit costs of their children may be summed up in a different order.
+ * For attributes whose sums are not exactly representable as {@code double}, the results may thus differ in the last bits from a computation without sharing.
+ */
+public class SubtreeMemo
+{
+	/**
+	 * The default maximum number of memoized distances.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1 << 20;
+
+	final SubtreeClasses classes = new SubtreeClasses();
+
+	private final int maxEntries;
+
+	private final Map< Long, Double > distances = new ConcurrentHashMap<>();
+
+	private final LongAdder pairs = new LongAdder();
+
+	private final LongAdder reusedPairs = new LongAdder();
+
+	private final LongAdder cells = new LongAdder();
+
+	private final LongAdder reusedCells = new LongAdder();
+
+	private final LongAdder flowSolves = new LongAdder();
+
+	private Object costFunction;
+
+	/**
+	 * Creates a new memo with {@link #DEFAULT_MAX_ENTRIES}.
+	 */
+	public SubtreeMemo()
+	{
+		this( DEFAULT_MAX_ENTRIES );
+	}
+
+	/**
+	 * Creates a new memo.
+	 *
+	 * @param maxEntries the maximum number of memoized distances
+	 */
+	public SubtreeMemo( final int maxEntries )
+	{
+		if ( maxEntries < 0 )
+			throw new IllegalArgumentException( "The maximum number of entries (" + maxEntries + ") must not be negative." );
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Binds this memo to the given cost function, if it is not yet bound.
+	 *
+	 * @throws IllegalArgumentException if the memo is bound to another cost function
+	 */
+	synchronized void bind( final Object costFunction )
+	{
+		if ( this.costFunction == null )
+			this.costFunction = costFunction;
+		else if ( this.costFunction != costFunction )
+			throw new IllegalArgumentException( "The subtree memo is already used with another cost function." );
+	}
+
+	/**
+	 * @return the memoized distance between trees, whose roots have the given classes, or {@code null}, if it is not memoized.
+	 */
+	Double get( final int rootClass1, final int rootClass2 )
+	{
+		pairs.increment();
+		Double distance = distances.get( key( rootClass1, rootClass2 ) );
+		if ( distance != null )
+			reusedPairs.increment();
+		return distance;
+	}
+
+	void put( final int rootClass1, final int rootClass2, final double distance )
+	{
+		if ( distances.size() < maxEntries )
+			distances.putIfAbsent( key( rootClass1, rootClass2 ), distance );
+	}
+
+	void record( final long cells, final long reusedCells, final long flowSolves )
+	{
+		this.cells.add( cells );
+		this.reusedCells.add( reusedCells );
+		this.flowSolves.add( flowSolves );
+	}
+
+	private static long key( final int class1, final int class2 )
+	{
+		return ( ( long ) class1 << 32 ) | ( class2 & 0xffffffffL );
+	}
+
+	/**
+	 * @return the number of distinct classes of subtrees of all trees prepared with this memo.
+	 */
+	public int getNumberOfClasses()
+	{
+		return classes.size();
+	}
+
+	/**
+	 * @return the number of memoized distances.
+	 */
+	public int getNumberOfEntries()
+	{
+		return distances.size();
+	}
+
+	/**
+	 * @return the number of pairs of trees, whose distance has been requested.
+	 */
+	public long getPairs()
+	{
+		return pairs.sum();
+	}
+
+	/**
+	 * @return the number of pairs of trees, whose distance has been taken from the memo.
+	 */
+	public long getReusedPairs()
+	{
+		return reusedPairs.sum();
+	}
+
+	/**
+	 * @return the number of cells, i.e. pairs of subtrees, of all pairs of trees that have been computed.
+	 */
+	public long getCells()
+	{
+		return cells.sum();
+	}
+
+	/**
+	 * @return the number of cells, whose result has been copied from an isomorphic pair of subtrees of the same pair of trees.
+	 */
+	public long getReusedCells()
+	{
+		return reusedCells.sum();
+	}
+
+	/**
+	 * @return the number of assignment problems between the children of two subtrees that have been solved for the computed pairs of trees, see {@link org.mastodon.mamut.treesimilarity.util.AssignmentSolver}.
+	 */
+	public long getFlowSolves()
+	{
+		return flowSolves.sum();
+	}
+
+	/**
+	 * @return the fraction of the pairs of trees, whose distance has been taken from the memo, or {@code 0}, if no distance has been requested.
+	 */
+	public double getPairHitRate()
+	{
+		long total = getPairs();
+		return total == 0 ? 0 : ( double ) getReusedPairs() / total;
+	}
+
+	/**
+	 * @return the fraction of the cells of the computed pairs of trees that have been copied instead of computed, or {@code 0}, if no pair has been computed.
+	 */
+	public double getCellHitRate()
+	{
+		long total = getCells();
+		return total == 0 ? 0 : ( double ) getReusedCells() / total;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "SubtreeMemo{classes=%d, pairs=%d, reused pairs=%d (%.1f%%), cells=%d, reused cells=%d (%.1f%%), flow solves=%d}",
+				getNumberOfClasses(), getPairs(), getReusedPairs(), 100 * getPairHitRate(), getCells(), getReusedCells(), 100 * getCellHitRate(), getFlowSolves() );
+	}
+}
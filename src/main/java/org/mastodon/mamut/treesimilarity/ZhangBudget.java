@@ -0,0 +1,160 @@
+package org.mastodon.mamut.treesimilarity;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Limits the work of a single computation of the {@link ZhangUnorderedTreeEditDistance} between two trees, see {@link ZhangUnorderedTreeEditDistance#distance(PreparedTree, PreparedTree, ZhangBudget)}.
+ * <p>
+ * A budget consists of
+ * <ul>
+ *     <li>a maximum number of cells of the dynamic programming, i.e. pairs of subtrees. The number of cells of two trees is the product of their sizes, such that pairs above the limit are rejected before any work is done.</li>
+ *     <li>a maximum time per pair of trees.</li>
+ *     <li>a cancellation token, which allows to stop a running computation from another thread.</li>
+ * </ul>
+ * The limits are checked once per row of the dynamic programming, i.e. after each subtree of the first tree. If a limit is reached, the computation throws a {@link CancellationException}.
+ * <p>
+ * Budgets are immutable and may be shared between threads. The time of each computation is measured separately.
+ */
+public class ZhangBudget
+{
+	/**
+	 * A budget without any limit.
+	 */
+	public static final ZhangBudget UNLIMITED = new ZhangBudget( Long.MAX_VALUE, Long.MAX_VALUE, () -> false );
+
+	private final long maxCells;
+
+	private final long maxNanos;
+
+	private final BooleanSupplier canceled;
+
+	private ZhangBudget( final long maxCells, final long maxNanos, final BooleanSupplier canceled )
+	{
+		this.maxCells = maxCells;
+		this.maxNanos = maxNanos;
+		this.canceled = canceled;
+	}
+
+	/**
+	 * Creates a budget, which limits the number of cells of the dynamic programming.
+	 *
+	 * @param maxCells the maximum number of cells per computation
+	 * @return the budget
+	 */
+	public static ZhangBudget ofCells( final long maxCells )
+	{
+		return UNLIMITED.withCells( maxCells );
+	}
+
+	/**
+	 * Creates a budget, which limits the time per computation.
+	 *
+	 * @param duration the maximum time per computation
+	 * @param unit the unit of the duration
+	 * @return the budget
+	 */
+	public static ZhangBudget ofTime( final long duration, final TimeUnit unit )
+	{
+		return UNLIMITED.withTime( duration, unit );
+	}
+
+	/**
+	 * @param maxCells the maximum number of cells per computation
+	 * @return a copy of this budget with the given maximum number of cells
+	 */
+	public ZhangBudget withCells( final long maxCells )
+	{
+		if ( maxCells < 0 )
+			throw new IllegalArgumentException( "The maximum number of cells (" + maxCells + ") must not be negative." );
+		return new ZhangBudget( maxCells, maxNanos, canceled );
+	}
+
+	/**
+	 * @param duration the maximum time per computation
+	 * @param unit the unit of the duration
+	 * @return a copy of this budget with the given maximum time
+	 */
+	public ZhangBudget withTime( final long duration, final TimeUnit unit )
+	{
+		if ( duration < 0 )
+			throw new IllegalArgumentException( "The maximum time (" + duration + " " + unit + ") must not be negative." );
+		return new ZhangBudget( maxCells, unit.toNanos( duration ), canceled );
+	}
+
+	/**
+	 * @param canceled the cancellation token, which is checked in addition to the cancellation token of this budget
+	 * @return a copy of this budget, whose computations are also stopped, if the given token returns {@code true}
+	 */
+	public ZhangBudget withCancellation( final BooleanSupplier canceled )
+	{
+		if ( canceled == null )
+			throw new IllegalArgumentException( "The cancellation token is expected to be non-null, but it is null." );
+		BooleanSupplier previous = this.canceled;
+		return new ZhangBudget( maxCells, maxNanos, () -> previous.getAsBoolean() || canceled.getAsBoolean() );
+	}
+
+	/**
+	 * @return the maximum number of cells per computation, {@link Long#MAX_VALUE} if not limited.
+	 */
+	public long getMaxCells()
+	{
+		return maxCells;
+	}
+
+	/**
+	 * @return the maximum time per computation in nanoseconds, {@link Long#MAX_VALUE} if not limited.
+	 */
+	public long getMaxNanos()
+	{
+		return maxNanos;
+	}
+
+	/**
+	 * Starts measuring a computation, which needs the given number of cells.
+	 *
+	 * @throws CancellationException if the number of cells exceeds the budget or the computation is already canceled
+	 */
+	Meter start( final long cells )
+	{
+		if ( cells > maxCells )
+			throw new CancellationException( "The computation needs " + cells + " cells, which exceeds the budget of " + maxCells + " cells." );
+		Meter meter = new Meter();
+		meter.add( 0 );
+		return meter;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ZhangBudget{maxCells=" + ( maxCells == Long.MAX_VALUE ? "unlimited" : maxCells ) + ", maxTime="
+				+ ( maxNanos == Long.MAX_VALUE ? "unlimited" : TimeUnit.NANOSECONDS.toMillis( maxNanos ) + " ms" ) + "}";
+	}
+
+	/**
+	 * Counts the cells of a single computation and checks the limits of the budget.
+	 */
+	class Meter
+	{
+		private final long start = System.nanoTime();
+
+		private long cells;
+
+		/**
+		 * Counts the given number of cells, which are about to be computed.
+		 *
+		 * @throws CancellationException if a limit of the budget is reached
+		 */
+		void add( final long cells )
+		{
+			this.cells += cells;
+			if ( this.cells > maxCells )
+				throw new CancellationException( "The computation exceeded the budget of " + maxCells + " cells." );
+			if ( maxNanos != Long.MAX_VALUE && System.nanoTime() - start > maxNanos )
+				throw new CancellationException( "The computation exceeded the budget of " + TimeUnit.NANOSECONDS.toMillis( maxNanos ) + " ms." );
+			if ( canceled.getAsBoolean() )
+				throw new CancellationException( "The computation has been canceled." );
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package org.mastodon.mamut.treesimilarity;
+
+/**
+ * The available implementations of the Zhang unordered tree edit distance.<p>
+ * All implementations return the same results, up to the rounding of the summation of costs that are not integers. They differ only in how intermediate results are stored.
+ *
+ * @see ZhangUnorderedTreeEditDistance
+ */
+public enum ZhangImplementation
+{
+	/**
+	 * Memoizes the distances between subtrees and forests in hash maps that are keyed by pairs of subtrees.
+	 */
+	HASH_MAP,
+
+	/**
+	 * Numbers the subtrees of both trees in post-order once and keeps all distances in flat arrays indexed by these numbers.
+	 */
+	DENSE_ARRAY
+}
@@ -0,0 +1,114 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+import org.mastodon.mamut.treesimilarity.tree.TreeUtils;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Cheap lower bounds of the {@link ZhangUnorderedTreeEditDistance}, which allow to reject pairs of trees before the edit distance is computed.
+ * <p>
+ * In any edit mapping, each node of the first tree is either mapped to a node of the second tree or deleted and each node of the second tree is either mapped or inserted. From this, two bounds follow:
+ * <ul>
+ *     <li>Size bound: if the first tree has {@code k} more nodes than the second tree, at least {@code k} nodes of the first tree are deleted.
+ *     These cost at least as much as the {@code k} cheapest deletions (and vice versa for insertions).</li>
+ *     <li>Cost bound: the distance is at least the difference of the distances of the two trees to the empty tree, i.e. the difference of the sums of all insert/delete costs.</li>
+ * </ul>
+ * <p>
+ * NB: the bounds are only valid for symmetric cost functions with non-negative insert/delete costs, for which changing an attribute costs at least the difference of the insert/delete costs,
+ * i.e. {@code c(a, b) >= |c(a, null) - c(b, null)|}. This holds for the {@link ZhangUnorderedTreeEditDistance#DEFAULT_COST_FUNCTION default cost function}.
+ */
+public class ZhangLowerBound
+{
+	private ZhangLowerBound()
+	{
+		// prevent from instantiation
+	}
+
+	/**
+	 * Computes a lower bound of the Zhang edit distance between the given trees.
+	 *
+	 * @param tree1 the first tree
+	 * @param tree2 the second tree
+	 * @param costFunction the cost function, see {@link ZhangLowerBound} for the requirements
+	 * @return a lower bound of {@link ZhangUnorderedTreeEditDistance#distance(Tree, Tree, BiFunction)}
+	 */
+	public static < T > double lowerBound( @Nullable final Tree< T > tree1, @Nullable final Tree< T > tree2,
+			final BiFunction< T, T, Double > costFunction )
+	{
+		return lowerBound( Summary.of( tree1, costFunction ), Summary.of( tree2, costFunction ) );
+	}
+
+	/**
+	 * Computes a lower bound of the Zhang edit distance between the trees with the given summaries.
+	 *
+	 * @param summary1 the summary of the first tree
+	 * @param summary2 the summary of the second tree
+	 * @return a lower bound of the distance between the trees
+	 */
+	public static double lowerBound( final Summary summary1, final Summary summary2 )
+	{
+		double costBound = Math.abs( summary1.cost - summary2.cost );
+		int sizeDifference = summary1.size() - summary2.size();
+		double sizeBound = sizeDifference > 0 ? summary1.cheapestCosts[ sizeDifference ] : summary2.cheapestCosts[ -sizeDifference ];
+		return Math.max( costBound, sizeBound );
+	}
+
+	/**
+	 * The properties of a tree that are needed to compute the lower bounds. A summary can be computed once per tree and reused for all pairs that contain the tree.
+	 */
+	public static class Summary
+	{
+		private final double cost;
+
+		/**
+		 * The sum of the {@code k} cheapest insert/delete costs at index {@code k}.
+		 */
+		private final double[] cheapestCosts;
+
+		private Summary( final double cost, final double[] cheapestCosts )
+		{
+			this.cost = cost;
+			this.cheapestCosts = cheapestCosts;
+		}
+
+		/**
+		 * Computes the summary of the given tree.
+		 *
+		 * @param tree the tree or {@code null} for the empty tree
+		 * @param costFunction the cost function
+		 * @return the summary
+		 */
+		public static < T > Summary of( @Nullable final Tree< T > tree, final BiFunction< T, T, Double > costFunction )
+		{
+			List< Tree< T > > subtrees = TreeUtils.listOfSubtrees( tree );
+			double[] costs = new double[ subtrees.size() ];
+			for ( int i = 0; i < costs.length; i++ )
+				costs[ i ] = costFunction.apply( subtrees.get( i ).getAttribute(), null );
+			Arrays.sort( costs );
+			double[] cheapestCosts = new double[ costs.length + 1 ];
+			for ( int i = 0; i < costs.length; i++ )
+				cheapestCosts[ i + 1 ] = cheapestCosts[ i ] + costs[ i ];
+			return new Summary( cheapestCosts[ costs.length ], cheapestCosts );
+		}
+
+		/**
+		 * @return the number of nodes of the tree.
+		 */
+		public int size()
+		{
+			return cheapestCosts.length - 1;
+		}
+
+		/**
+		 * @return the distance of the tree to the empty tree, i.e. the sum of the insert/delete costs of all nodes.
+		 */
+		public double getCost()
+		{
+			return cost;
+		}
+	}
+}
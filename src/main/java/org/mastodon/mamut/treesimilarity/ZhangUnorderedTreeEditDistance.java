@@ -3,7 +3,7 @@ package org.mastodon.mamut.treesimilarity;
 import org.apache.commons.lang3.tuple.Pair;
 import org.mastodon.mamut.treesimilarity.tree.Tree;
 import org.mastodon.mamut.treesimilarity.tree.TreeUtils;
-import org.mastodon.mamut.treesimilarity.util.FlowNetwork;
+import org.mastodon.mamut.treesimilarity.util.AssignmentSolver;
 import org.mastodon.mamut.treesimilarity.util.NodeMapping;
 import org.mastodon.mamut.treesimilarity.util.NodeMappings;
 import org.slf4j.Logger;
@@ -21,6 +21,7 @@ import java.util.Map;
 import java.util.StringJoiner;
 import java.util.function.BiFunction;
 import java.util.function.BinaryOperator;
+import java.util.function.DoubleSupplier;
 import java.util.function.Function;
 
 /**
@@ -84,6 +85,9 @@ import java.util.function.Function;
  *                   TB TC       (Subtree D and it's sibling TE are newly inserted,
  *                                TB and TC are kept as children of D)
  * </pre>
+ * The static methods of this class can be run with different implementations of the algorithm (see {@link ZhangImplementation}).
+ * The hash map based implementation is contained in this class, the array based implementation in {@link DenseZhangUnorderedTreeEditDistance}.
+ *
  * @param <T> Attribute type of the tree nodes.
  *
  * @author Stefan Hahmann
@@ -113,6 +117,35 @@ public class ZhangUnorderedTreeEditDistance< T >
 	 */
 	public static final BinaryOperator< Double > DEFAULT_COST_FUNCTION = ZhangUnorderedTreeEditDistance::defaultCostFunction;
 
+	/**
+	 * The same costs as the {@link #DEFAULT_COST_FUNCTION} on primitive values: the absolute difference for changes and the attribute itself for insertions and deletions.
+	 */
+	public static final DoubleCostFunction DEFAULT_DOUBLE_COST_FUNCTION = new DoubleCostFunction()
+	{
+		@Override
+		public double change( final double a, final double b )
+		{
+			return Math.abs( a - b );
+		}
+
+		@Override
+		public double insert( final double b )
+		{
+			return b;
+		}
+
+		@Override
+		public double delete( final double a )
+		{
+			return a;
+		}
+	};
+
+	/**
+	 * The implementation that is used by the methods of this class, if no {@link ZhangImplementation} is specified explicitly.
+	 */
+	public static final ZhangImplementation DEFAULT_IMPLEMENTATION = ZhangImplementation.DENSE_ARRAY;
+
 	/**
 	 * Calculates the absolute Zhang edit distance between two labeled unordered trees.
 	 *
@@ -124,6 +157,22 @@ public class ZhangUnorderedTreeEditDistance< T >
 	 */
 	public static < T > double distance( @Nullable final Tree< T > tree1, final @Nullable Tree< T > tree2,
 			final BiFunction< T, T, Double > costFunction )
+	{
+		return distance( tree1, tree2, costFunction, DEFAULT_IMPLEMENTATION );
+	}
+
+	/**
+	 * Calculates the absolute Zhang edit distance between two labeled unordered trees using the given implementation.
+	 *
+	 * @param tree1 Tree object representing the first tree.
+	 * @param tree2 Tree object representing the second tree.
+	 * @param costFunction mandatory cost function.
+	 * @param implementation the implementation to be used.
+	 *
+	 * @return The absolute Zhang edit distance between tree1 and tree2.
+	 */
+	public static < T > double distance( @Nullable final Tree< T > tree1, final @Nullable Tree< T > tree2,
+			final BiFunction< T, T, Double > costFunction, final ZhangImplementation implementation )
 	{
 		if ( costFunction == null )
 			throw new IllegalArgumentException( "The cost function is expected to be non-null, but it is null." );
@@ -136,8 +185,16 @@ public class ZhangUnorderedTreeEditDistance< T >
 		else if ( tree2 == null )
 			return distanceTreeToNull( tree1, costFunction );
 
-		ZhangUnorderedTreeEditDistance< T > zhang = new ZhangUnorderedTreeEditDistance<>( tree1, tree2, costFunction );
-		return zhang.compute( tree1, tree2 );
+		switch ( implementation )
+		{
+		case HASH_MAP:
+			return new ZhangUnorderedTreeEditDistance<>( tree1, tree2, costFunction ).compute( tree1, tree2 ).getCost();
+		case DENSE_ARRAY:
+			// NB: only the costs are computed, no node mapping is created.
+			return new DenseZhangUnorderedTreeEditDistance<>( tree1, tree2, costFunction ).compute();
+		default:
+			throw new IllegalArgumentException( "Unknown implementation: " + implementation );
+		}
 	}
 
 	/**
@@ -154,11 +211,29 @@ public class ZhangUnorderedTreeEditDistance< T >
 	public static < T > double normalizedDistance( @Nullable final Tree< T > tree1, final @Nullable Tree< T > tree2,
 			final BiFunction< T, T, Double > costFunction )
 	{
-		double denominator = distance( tree1, null, costFunction ) + distance( null, tree2, costFunction );
+		return normalizedDistance( tree1, tree2, costFunction, DEFAULT_IMPLEMENTATION );
+	}
+
+	/**
+	 * Calculates the normalized Zhang edit distance between two labeled unordered trees using the given implementation.
+	 * <p>
+	 * The normalized distance is defined as the absolute distance divided by the sum of the distances to empty/null trees.
+	 *
+	 * @param tree1 Tree object representing the first tree.
+	 * @param tree2 Tree object representing the second tree.
+	 * @param costFunction mandatory cost function.
+	 * @param implementation the implementation to be used.
+	 *
+	 * @return The normalized Zhang edit distance between tree1 and tree2.
+	 */
+	public static < T > double normalizedDistance( @Nullable final Tree< T > tree1, final @Nullable Tree< T > tree2,
+			final BiFunction< T, T, Double > costFunction, final ZhangImplementation implementation )
+	{
+		double denominator = distance( tree1, null, costFunction, implementation ) + distance( null, tree2, costFunction, implementation );
 		// NB: avoid division by zero. Two empty trees are considered equal. Two trees with zero distance are considered equal.
 		if ( denominator == 0 )
 			return 0;
-		return distance( tree1, tree2, costFunction ) / denominator;
+		return distance( tree1, tree2, costFunction, implementation ) / denominator;
 	}
 
 	/**
@@ -174,12 +249,247 @@ public class ZhangUnorderedTreeEditDistance< T >
 	 */
 	public static < T > double averageDistance( @Nullable final Tree< T > tree1, final @Nullable Tree< T > tree2,
 			final BiFunction< T, T, Double > costFunction )
+	{
+		return averageDistance( tree1, tree2, costFunction, DEFAULT_IMPLEMENTATION );
+	}
+
+	/**
+	 * Calculates the normalized Zhang edit distance between two labeled unordered trees using the given implementation.
+	 * <p>
+	 * The average distance is defined as the absolute distance divided by the sum of the sizes (i.e. number of nodes) of the trees.
+	 *
+	 * @param tree1 Tree object representing the first tree.
+	 * @param tree2 Tree object representing the second tree.
+	 * @param costFunction mandatory cost function.
+	 * @param implementation the implementation to be used.
+	 *
+	 * @return The average Zhang edit distance between tree1 and tree2.
+	 */
+	public static < T > double averageDistance( @Nullable final Tree< T > tree1, final @Nullable Tree< T > tree2,
+			final BiFunction< T, T, Double > costFunction, final ZhangImplementation implementation )
 	{
 		double denominator = ( double ) TreeUtils.size( tree1 ) + ( double ) TreeUtils.size( tree2 );
 		// NB: avoid division by zero. Two empty trees are considered equal. Two trees with zero distance are considered equal.
 		if ( denominator == 0 )
 			return 0;
-		return distance( tree1, tree2, costFunction ) / denominator;
+		return distance( tree1, tree2, costFunction, implementation ) / denominator;
+	}
+
+	/**
+	 * Calculates the absolute Zhang edit distance between two prepared trees. Only the pairwise dynamic programming is done, see {@link PreparedTree}.
+	 * If both trees are prepared with the same {@link SubtreeMemo}, the distance is only computed once for each pair of isomorphic trees.
+	 *
+	 * @param tree1 the first tree, prepared with the same cost function as the second tree.
+	 * @param tree2 the second tree.
+	 *
+	 * @return The absolute Zhang edit distance between tree1 and tree2.
+	 */
+	public static < T > double distance( final PreparedTree< T > tree1, final PreparedTree< T > tree2 )
+	{
+		if ( !tree1.hasSameCostFunction( tree2 ) )
+			throw new IllegalArgumentException( "The trees are expected to be prepared with the same cost function." );
+
+		// trivial cases
+		if ( tree1.isEmpty() )
+			return tree2.getDistanceToNull();
+		if ( tree2.isEmpty() )
+			return tree1.getDistanceToNull();
+
+		return memoized( tree1, tree2, () -> new DenseZhangUnorderedTreeEditDistance<>( tree1, tree2 ).compute() );
+	}
+
+	/**
+	 * Calculates the absolute Zhang edit distance between two prepared trees within the given budget, see {@link ZhangBudget}.
+	 * Distances that are taken from a {@link SubtreeMemo} shared by both trees do not count against the budget.
+	 *
+	 * @param tree1 the first tree, prepared with the same cost function as the second tree.
+	 * @param tree2 the second tree.
+	 * @param budget the limits of the computation.
+	 *
+	 * @return The absolute Zhang edit distance between tree1 and tree2.
+	 * @throws java.util.concurrent.CancellationException if a limit of the budget is reached before the computation is complete.
+	 */
+	public static < T > double distance( final PreparedTree< T > tree1, final PreparedTree< T > tree2, final ZhangBudget budget )
+	{
+		if ( !tree1.hasSameCostFunction( tree2 ) )
+			throw new IllegalArgumentException( "The trees are expected to be prepared with the same cost function." );
+
+		// trivial cases
+		if ( tree1.isEmpty() )
+			return tree2.getDistanceToNull();
+		if ( tree2.isEmpty() )
+			return tree1.getDistanceToNull();
+
+		return memoized( tree1, tree2,
+				() -> new DenseZhangUnorderedTreeEditDistance<>( tree1, tree2, budget.start( ( long ) tree1.size() * tree2.size() ) ).compute() );
+	}
+
+	/**
+	 * Returns the distance between the given non-empty trees from their memo, if both trees share one, or computes it with the given computation and memoizes it.
+	 */
+	private static < T > double memoized( final PreparedTree< T > tree1, final PreparedTree< T > tree2, final DoubleSupplier computation )
+	{
+		SubtreeMemo memo = tree1.memo == tree2.memo ? tree1.memo : null;
+		if ( memo == null )
+			return computation.getAsDouble();
+		int rootClass1 = tree1.classes[ tree1.size() - 1 ];
+		int rootClass2 = tree2.classes[ tree2.size() - 1 ];
+		Double cached = memo.get( rootClass1, rootClass2 );
+		if ( cached != null )
+			return cached;
+		double distance = computation.getAsDouble();
+		memo.put( rootClass1, rootClass2, distance );
+		return distance;
+	}
+
+	/**
+	 * Calculates the absolute Zhang edit distance between two prepared trees, keeping the tables of the dynamic programming within the given memory budget.
+	 * <p>
+	 * An estimate of the memory needed is logged before the computation starts. If the full tables of {@link #distance(PreparedTree, PreparedTree)} fit into the budget, the result is the same.
+	 * Otherwise, only the rows of the tables that are still needed are kept, in {@code float} precision (see {@link BoundedZhangUnorderedTreeEditDistance}).
+	 * This is exact for costs that are integers below 2<sup>24</sup>, e.g. branch durations in timepoints.
+	 *
+	 * @param tree1 the first tree, prepared with the same cost function as the second tree.
+	 * @param tree2 the second tree.
+	 * @param memoryBudget the maximum number of bytes of the tables.
+	 *
+	 * @return The absolute Zhang edit distance between tree1 and tree2.
+	 * @throws IllegalArgumentException if even the bounded tables need more memory than the budget.
+	 */
+	public static < T > double distance( final PreparedTree< T > tree1, final PreparedTree< T > tree2, final long memoryBudget )
+	{
+		if ( !tree1.hasSameCostFunction( tree2 ) )
+			throw new IllegalArgumentException( "The trees are expected to be prepared with the same cost function." );
+
+		// trivial cases
+		if ( tree1.isEmpty() )
+			return tree2.getDistanceToNull();
+		if ( tree2.isEmpty() )
+			return tree1.getDistanceToNull();
+
+		if ( fitsDenseTables( tree1, tree2, memoryBudget ) )
+			return distance( tree1, tree2 );
+		return memoized( tree1, tree2, () -> new BoundedZhangUnorderedTreeEditDistance<>( tree1, tree2 ).compute() );
+	}
+
+	/**
+	 * Logs the estimated memory of the tables for the given pair of trees and decides, whether the full tables fit into the given budget.
+	 *
+	 * @throws IllegalArgumentException if neither the full nor the bounded tables fit into the budget.
+	 */
+	private static boolean fitsDenseTables( final PreparedTree< ? > tree1, final PreparedTree< ? > tree2, final long memoryBudget )
+	{
+		long denseBytes = BoundedZhangUnorderedTreeEditDistance.denseTableBytes( tree1, tree2 );
+		long boundedBytes = BoundedZhangUnorderedTreeEditDistance.boundedTableBytes( tree1, tree2 );
+		logger.info( "Zhang tables for trees with {} and {} nodes need about {} MB (full) or {} MB (bounded). Budget: {} MB.", tree1.size(), tree2.size(),
+				megabytes( denseBytes ), megabytes( boundedBytes ), megabytes( memoryBudget ) );
+		// NB: the full tables are also limited by the maximum length of an array
+		if ( denseBytes <= memoryBudget && DenseZhangUnorderedTreeEditDistance.fitsTables( tree1, tree2 ) )
+			return true;
+		if ( boundedBytes <= memoryBudget )
+			return false;
+		throw new IllegalArgumentException( "The Zhang tables for trees with " + tree1.size() + " and " + tree2.size() + " nodes need about " + megabytes( boundedBytes )
+				+ " MB, which exceeds the memory budget of " + megabytes( memoryBudget ) + " MB." );
+	}
+
+	private static String megabytes( final long bytes )
+	{
+		return String.format( "%.1f", bytes / ( 1024d * 1024d ) );
+	}
+
+	/**
+	 * Calculates the normalized Zhang edit distance between two prepared trees, see {@link #normalizedDistance(Tree, Tree, BiFunction)}.
+	 *
+	 * @param tree1 the first tree, prepared with the same cost function as the second tree.
+	 * @param tree2 the second tree.
+	 *
+	 * @return The normalized Zhang edit distance between tree1 and tree2.
+	 */
+	public static < T > double normalizedDistance( final PreparedTree< T > tree1, final PreparedTree< T > tree2 )
+	{
+		double denominator = tree1.getDistanceToNull() + tree2.getDistanceToNull();
+		// NB: avoid division by zero. Two empty trees are considered equal. Two trees with zero distance are considered equal.
+		if ( denominator == 0 )
+			return 0;
+		return distance( tree1, tree2 ) / denominator;
+	}
+
+	/**
+	 * Calculates the average Zhang edit distance between two prepared trees, see {@link #averageDistance(Tree, Tree, BiFunction)}.
+	 *
+	 * @param tree1 the first tree, prepared with the same cost function as the second tree.
+	 * @param tree2 the second tree.
+	 *
+	 * @return The average Zhang edit distance between tree1 and tree2.
+	 */
+	public static < T > double averageDistance( final PreparedTree< T > tree1, final PreparedTree< T > tree2 )
+	{
+		double denominator = ( double ) tree1.size() + ( double ) tree2.size();
+		// NB: avoid division by zero. Two empty trees are considered equal. Two trees with zero distance are considered equal.
+		if ( denominator == 0 )
+			return 0;
+		return distance( tree1, tree2 ) / denominator;
+	}
+
+	/**
+	 * Calculates the absolute Zhang edit distances between all pairs of subtrees of the two given trees in one computation.
+	 * The distance between the two roots is contained as the last entry.
+	 *
+	 * @param tree1 Tree object representing the first tree.
+	 * @param tree2 Tree object representing the second tree.
+	 * @param costFunction mandatory cost function.
+	 *
+	 * @return The table of distances between the subtrees of tree1 and tree2.
+	 */
+	public static < T > SubtreeDistances< T > subtreeDistances( @Nullable final Tree< T > tree1, @Nullable final Tree< T > tree2,
+			final BiFunction< T, T, Double > costFunction )
+	{
+		return subtreeDistances( PreparedTree.of( tree1, costFunction ), PreparedTree.of( tree2, costFunction ) );
+	}
+
+	/**
+	 * Calculates the absolute Zhang edit distances between all pairs of subtrees of the two given prepared trees in one computation, see {@link SubtreeDistances}.
+	 * <p>
+	 * NB: in contrast to {@link #distance(PreparedTree, PreparedTree)}, the distance is always computed, even if both trees are prepared with the same {@link SubtreeMemo}.
+	 *
+	 * @param tree1 the first tree, prepared with the same cost function as the second tree.
+	 * @param tree2 the second tree.
+	 *
+	 * @return The table of distances between the subtrees of tree1 and tree2. If one of the trees is empty, the table is empty.
+	 */
+	public static < T > SubtreeDistances< T > subtreeDistances( final PreparedTree< T > tree1, final PreparedTree< T > tree2 )
+	{
+		if ( !tree1.hasSameCostFunction( tree2 ) )
+			throw new IllegalArgumentException( "The trees are expected to be prepared with the same cost function." );
+		if ( tree1.isEmpty() || tree2.isEmpty() )
+			return new SubtreeDistances<>( tree1, tree2, new double[ 0 ] );
+		DenseZhangUnorderedTreeEditDistance< T > zhang = new DenseZhangUnorderedTreeEditDistance<>( tree1, tree2 );
+		zhang.compute();
+		return new SubtreeDistances<>( tree1, tree2, zhang.treeDistances() );
+	}
+
+	/**
+	 * Calculates the absolute Zhang edit distance between two labeled unordered trees, if it is below the given bound.
+	 * <p>
+	 * The full computation is skipped, if a {@link ZhangLowerBound lower bound} of the distance already reaches the bound.
+	 * Thus, the cost function has to fulfil the requirements of the lower bounds, which is the case for the {@link #DEFAULT_COST_FUNCTION}.
+	 *
+	 * @param tree1 Tree object representing the first tree.
+	 * @param tree2 Tree object representing the second tree.
+	 * @param costFunction mandatory cost function.
+	 * @param bound the (exclusive) upper bound of the distances of interest.
+	 *
+	 * @return The absolute Zhang edit distance between tree1 and tree2, if it is below the bound, otherwise {@link Double#POSITIVE_INFINITY}.
+	 */
+	public static < T > double distanceIfBelow( @Nullable final Tree< T > tree1, final @Nullable Tree< T > tree2,
+			final BiFunction< T, T, Double > costFunction, final double bound )
+	{
+		if ( costFunction == null )
+			throw new IllegalArgumentException( "The cost function is expected to be non-null, but it is null." );
+		if ( ZhangLowerBound.lowerBound( tree1, tree2, costFunction ) >= bound )
+			return Double.POSITIVE_INFINITY;
+		double distance = distance( tree1, tree2, costFunction );
+		return distance < bound ? distance : Double.POSITIVE_INFINITY;
 	}
 
 	/**
@@ -191,12 +501,82 @@ public class ZhangUnorderedTreeEditDistance< T >
 	 * @return The mapping between nodes.
 	 */
 	public static < T > Map< Tree< T >, Tree< T > > nodeMapping( Tree< T > tree1, Tree< T > tree2, BiFunction< T, T, Double > costFunction )
+	{
+		return nodeMapping( tree1, tree2, costFunction, DEFAULT_IMPLEMENTATION );
+	}
+
+	/**
+	 * Calculates a mapping between nodes in the given two trees ({@code tree1} and {@code tree2}) that links the nodes from the two trees, which have the minimum tree edit distance to each other.<p>
+	 * The required minimum tree edit distance is calculated using the Zhang unordered edit distance and the given implementation.
+	 * @param tree1 The first tree.
+	 * @param tree2 The second tree.
+	 * @param costFunction The cost function.
+	 * @param implementation the implementation to be used.
+	 * @return The mapping between nodes.
+	 */
+	public static < T > Map< Tree< T >, Tree< T > > nodeMapping( Tree< T > tree1, Tree< T > tree2, BiFunction< T, T, Double > costFunction,
+			ZhangImplementation implementation )
 	{
 		if ( tree1 == null || tree2 == null )
 			return Collections.emptyMap();
 
-		NodeMapping< T > mapping = new ZhangUnorderedTreeEditDistance<>( tree1, tree2, costFunction ).treeMapping( tree1, tree2 );
-		return mapping.asMap();
+		switch ( implementation )
+		{
+		case HASH_MAP:
+			return new ZhangUnorderedTreeEditDistance<>( tree1, tree2, costFunction ).compute( tree1, tree2 ).asMap();
+		case DENSE_ARRAY:
+			DenseZhangUnorderedTreeEditDistance< T > zhang = new DenseZhangUnorderedTreeEditDistance<>( tree1, tree2, costFunction );
+			zhang.compute();
+			return zhang.nodeMapping();
+		default:
+			throw new IllegalArgumentException( "Unknown implementation: " + implementation );
+		}
+	}
+
+	/**
+	 * Calculates the same mapping between nodes as {@link #nodeMapping(Tree, Tree, BiFunction)} for two prepared trees, but as primitive int pairs without creating any object per node.
+	 * <p>
+	 * The nodes are identified by their post-order numbers in the prepared trees, see {@link PreparedTree#getSubtree(int)}.
+	 * For {@link org.mastodon.mamut.treesimilarity.tree.CompactTree compact trees}, these are the node indices of the compact trees, see also {@link BranchSpotMappings}.
+	 *
+	 * @param tree1 the first tree, prepared with the same cost function as the second tree.
+	 * @param tree2 the second tree.
+	 * @return for each node of the first tree, the number of the node of the second tree it is mapped to, or {@code -1}, if it is not mapped.
+	 */
+	public static < T > int[] nodeMappingIndices( final PreparedTree< T > tree1, final PreparedTree< T > tree2 )
+	{
+		if ( !tree1.hasSameCostFunction( tree2 ) )
+			throw new IllegalArgumentException( "The trees are expected to be prepared with the same cost function." );
+		if ( tree1.isEmpty() || tree2.isEmpty() )
+		{
+			int[] mapping = new int[ tree1.size() ];
+			Arrays.fill( mapping, -1 );
+			return mapping;
+		}
+		DenseZhangUnorderedTreeEditDistance< T > zhang = new DenseZhangUnorderedTreeEditDistance<>( tree1, tree2 );
+		zhang.compute();
+		return zhang.nodeMappingIndices();
+	}
+
+	/**
+	 * Calculates the same mapping between nodes as {@link #nodeMappingIndices(PreparedTree, PreparedTree)}, keeping the tables of the dynamic programming within the given memory budget.
+	 * <p>
+	 * An estimate of the memory needed is logged before the computation starts. If the full tables do not fit into the budget, the mapping is reconstructed by recomputing
+	 * the rows of the tables that are needed along the mapping instead of storing them, see {@link BoundedZhangUnorderedTreeEditDistance}.
+	 *
+	 * @param tree1 the first tree, prepared with the same cost function as the second tree.
+	 * @param tree2 the second tree.
+	 * @param memoryBudget the maximum number of bytes of the tables.
+	 * @return for each node of the first tree, the number of the node of the second tree it is mapped to, or {@code -1}, if it is not mapped.
+	 * @throws IllegalArgumentException if even the bounded tables need more memory than the budget.
+	 */
+	public static < T > int[] nodeMappingIndices( final PreparedTree< T > tree1, final PreparedTree< T > tree2, final long memoryBudget )
+	{
+		if ( !tree1.hasSameCostFunction( tree2 ) )
+			throw new IllegalArgumentException( "The trees are expected to be prepared with the same cost function." );
+		if ( tree1.isEmpty() || tree2.isEmpty() || fitsDenseTables( tree1, tree2, memoryBudget ) )
+			return nodeMappingIndices( tree1, tree2 );
+		return new BoundedZhangUnorderedTreeEditDistance<>( tree1, tree2 ).nodeMappingIndices();
 	}
 
 	private static < T > double distanceTreeToNull( Tree< T > tree2, BiFunction< T, T, Double > costFunction )
@@ -247,17 +627,31 @@ public class ZhangUnorderedTreeEditDistance< T >
 	 * @param tree1 Tree object representing the first tree.
 	 * @param tree2 Tree object representing the second tree.
 	 *
-	 * @return The Zhang edit distance between tree1 and tree2 as an integer.
+	 * @return The optimal node mapping between tree1 and tree2, which carries the Zhang edit distance as its cost.
 	 */
-	private double compute( final Tree< T > tree1, final Tree< T > tree2 )
+	private NodeMapping< T > compute( final Tree< T > tree1, final Tree< T > tree2 )
 	{
 		treeDistances.clear();
 		forestDistances.clear();
-		double distance = treeMapping( tree1, tree2 ).getCost();
+		// NB: the pairs of subtrees are evaluated bottom-up, in post-order on both trees. When a pair is visited, the mappings of all pairs of a subtree
+		// and a child of the other subtree are already known. This replaces a memoized recursion on both trees, whose depth would grow with the depth of the trees.
+		List< Tree< T > > postOrder1 = TreeUtils.listOfSubtreesInPostOrder( tree1 );
+		List< Tree< T > > postOrder2 = TreeUtils.listOfSubtreesInPostOrder( tree2 );
+		for ( Tree< T > subtree1 : postOrder1 )
+		{
+			for ( Tree< T > subtree2 : postOrder2 )
+			{
+				Pair< Tree< T >, Tree< T > > pair = Pair.of( subtree1, subtree2 );
+				if ( !subtree1.isLeaf() || !subtree2.isLeaf() )
+					forestDistances.put( pair, computeForestMapping( subtree1, subtree2 ) );
+				treeDistances.put( pair, computeTreeMapping( subtree1, subtree2 ) );
+			}
+		}
+		NodeMapping< T > mapping = treeMapping( tree1, tree2 );
 
 		log();
 
-		return distance;
+		return mapping;
 	}
 
 	private void log()
@@ -300,17 +694,12 @@ public class ZhangUnorderedTreeEditDistance< T >
 	/**
 	 * Returns the optimal node mapping with respect to zhang edit distance
 	 * that maps from tree1 to tree2.
+	 * <p>
+	 * NB: the mapping needs to be computed before, see {@link #compute(Tree, Tree)}.
 	 */
 	private NodeMapping< T > treeMapping( Tree< T > tree1, Tree< T > tree2 )
 	{
-		Pair< Tree< T >, Tree< T > > pair = Pair.of( tree1, tree2 );
-		NodeMapping< T > operation = treeDistances.get( pair );
-		if ( operation == null )
-		{
-			operation = computeTreeMapping( tree1, tree2 );
-			treeDistances.put( pair, operation );
-		}
-		return operation;
+		return treeDistances.get( Pair.of( tree1, tree2 ) );
 	}
 
 	private NodeMapping< T > computeTreeMapping( Tree< T > tree1, Tree< T > tree2 )
@@ -338,17 +727,12 @@ public class ZhangUnorderedTreeEditDistance< T >
 	 * <li>Let T[i] be the subtree rooted at t[i]</li>
 	 * <li>Let F[i] be the unordered forest obtained by deleting t[i] from T[i]."</li>
 	 * Algorithmica (1996) 15:208
+	 * <p>
+	 * NB: the mapping needs to be computed before, see {@link #compute(Tree, Tree)}.
 	 */
 	private NodeMapping< T > forestMapping( final Tree< T > forest1, final Tree< T > forest2 )
 	{
-		Pair< Tree< T >, Tree< T > > pair = Pair.of( forest1, forest2 );
-		NodeMapping< T > operation = forestDistances.get( pair );
-		if ( operation == null )
-		{
-			operation = computeForestMapping( forest1, forest2 );
-			forestDistances.put( pair, operation );
-		}
-		return operation;
+		return forestDistances.get( Pair.of( forest1, forest2 ) );
 	}
 
 	private NodeMapping< T > computeForestMapping( Tree< T > forest1, Tree< T > forest2 )
@@ -454,81 +838,52 @@ public class ZhangUnorderedTreeEditDistance< T >
 		return best;
 	}
 
+	/**
+	 * Returns the best {@link NodeMapping} that maps the children of {@code forest1} onto the children of {@code forest2} (edit operation 1 on the level of forests).
+	 * Each child is either mapped onto a child of the other forest, deleted or inserted. See {@link AssignmentSolver}.
+	 */
 	private NodeMapping< T > minCostMaxFlow( final Tree< T > forest1, final Tree< T > forest2 )
 	{
-		// Construction of graph for max flow min cost algorithm
-
-		Collection< Tree< T > > childrenForest1 = forest1.getChildren();
-		Collection< Tree< T > > childrenForest2 = forest2.getChildren();
-
-		String source = "source";
-		String sink = "sink";
-		String emptyTree1 = "empty1";
-		String emptyTree2 = "empty2";
-
-		FlowNetwork network = buildFlowNetwork( source, sink, emptyTree1, emptyTree2, childrenForest1, childrenForest2 );
-
-		network.solveMaxFlowMinCost( source, sink );
-
-		ArrayList< NodeMapping< T > > childMappings = new ArrayList<>();
-
-		for ( Tree< T > child1 : childrenForest1 )
-			if ( isFlowEqualToOne( network.getFlow( child1, emptyTree2 ) ) )
-				childMappings.add( NodeMappings.empty( deleteCosts.get( child1 ).treeCost ) );
-
-		for ( Tree< T > child2 : childrenForest2 )
-			if ( isFlowEqualToOne( network.getFlow( emptyTree1, child2 ) ) )
-				childMappings.add( NodeMappings.empty( insertCosts.get( child2 ).treeCost ) );
-
-		for ( Tree< T > child1 : childrenForest1 )
-			for ( Tree< T > child2 : childrenForest2 )
-				if ( isFlowEqualToOne( network.getFlow( child1, child2 ) ) )
-					childMappings.add( treeMapping( child1, child2 ) );
-
-		return NodeMappings.compose( childMappings );
-	}
-
-	private FlowNetwork buildFlowNetwork(
-			String source, String sink, String emptyTree1, String emptyTree2, Collection< Tree< T > > childrenForest1,
-			Collection< Tree< T > > childrenForest2
-	)
-	{
-		FlowNetwork network = new FlowNetwork();
-		network.addVertices( Arrays.asList( source, sink, emptyTree1, emptyTree2 ) );
-		network.addVertices( childrenForest1 );
-		network.addVertices( childrenForest2 );
-
+		List< Tree< T > > childrenForest1 = new ArrayList<>( forest1.getChildren() );
+		List< Tree< T > > childrenForest2 = new ArrayList<>( forest2.getChildren() );
 		int numberOfChildrenForest1 = childrenForest1.size();
 		int numberOfChildrenForest2 = childrenForest2.size();
-		int minNumberOfChildren = Math.min( numberOfChildrenForest1, numberOfChildrenForest2 );
-		network.addEdge( source, emptyTree1, numberOfChildrenForest2 - minNumberOfChildren, 0 );
-		network.addEdge( emptyTree2, sink, numberOfChildrenForest1 - minNumberOfChildren, 0 );
 
-		for ( Tree< T > child1 : childrenForest1 )
+		double[] deleteCostsForest1 = new double[ numberOfChildrenForest1 ];
+		double[] insertCostsForest2 = new double[ numberOfChildrenForest2 ];
+		double[] mapCosts = new double[ numberOfChildrenForest1 * numberOfChildrenForest2 ];
+		for ( int i = 0; i < numberOfChildrenForest1; i++ )
 		{
-			network.addEdge( source, child1, 1, 0 );
-			network.addEdge( child1, emptyTree2, 1, deleteCosts.get( child1 ).treeCost );
-			for ( Tree< T > child2 : childrenForest2 )
-				network.addEdge( child1, child2, 1, treeMapping( child1, child2 ).getCost() );
+			Tree< T > child1 = childrenForest1.get( i );
+			deleteCostsForest1[ i ] = deleteCosts.get( child1 ).treeCost;
+			for ( int j = 0; j < numberOfChildrenForest2; j++ )
+				mapCosts[ i * numberOfChildrenForest2 + j ] = treeMapping( child1, childrenForest2.get( j ) ).getCost();
 		}
+		for ( int j = 0; j < numberOfChildrenForest2; j++ )
+			insertCostsForest2[ j ] = insertCosts.get( childrenForest2.get( j ) ).treeCost;
 
-		for ( Tree< T > child2 : childrenForest2 )
+		int[] assignment = AssignmentSolver.solve( deleteCostsForest1, insertCostsForest2, mapCosts );
+
+		boolean[] mapped2 = new boolean[ numberOfChildrenForest2 ];
+		ArrayList< NodeMapping< T > > childMappings = new ArrayList<>();
+
+		for ( int i = 0; i < numberOfChildrenForest1; i++ )
 		{
-			network.addEdge( child2, sink, 1, 0 );
-			network.addEdge( emptyTree1, child2, 1, insertCosts.get( child2 ).treeCost );
+			if ( assignment[ i ] < 0 )
+				childMappings.add( NodeMappings.empty( deleteCostsForest1[ i ] ) );
+			else
+				mapped2[ assignment[ i ] ] = true;
 		}
-		return network;
-	}
 
-	/**
-	 * Returns true if the flow value equal to 1. Returns false if the flow value equal to 0.
-	 * Throws an {@link AssertionError} if the flow value is neither 0 nor 1.
-	 */
-	private static boolean isFlowEqualToOne( double flowValue )
-	{
-		if ( flowValue != 0.0 && flowValue != 1.0 )
-			throw new AssertionError( "Invalid flow value: " + flowValue );
-		return flowValue == 1.0;
+		for ( int j = 0; j < numberOfChildrenForest2; j++ )
+			if ( !mapped2[ j ] )
+				childMappings.add( NodeMappings.empty( insertCostsForest2[ j ] ) );
+
+		for ( int i = 0; i < numberOfChildrenForest1; i++ )
+			if ( assignment[ i ] >= 0 )
+				childMappings.add( treeMapping( childrenForest1.get( i ), childrenForest2.get( assignment[ i ] ) ) );
+
+		return NodeMappings.compose( childMappings );
 	}
 
 	private static < T > NodeMapping< T > findBestMapping( final NodeMapping< T > a, final NodeMapping< T > b, final NodeMapping< T > c )
@@ -578,20 +933,16 @@ public class ZhangUnorderedTreeEditDistance< T >
 		{
 			this.costFunction = costFunction;
 			this.costs = new HashMap<>();
-			computeChangeCosts( tree );
+			// NB: bottom-up, the costs of the children are known, when the costs of a subtree are computed
+			for ( Tree< T > subtree : TreeUtils.listOfSubtreesInPostOrder( tree ) )
+				computeChangeCosts( subtree );
 		}
 
 		private void computeChangeCosts( final Tree< T > tree )
 		{
 			double cost = 0;
-			if ( !tree.isLeaf() )
-			{
-				for ( Tree< T > child : tree.getChildren() )
-				{
-					computeChangeCosts( child );
-					cost += costs.get( child ).treeCost;
-				}
-			}
+			for ( Tree< T > child : tree.getChildren() )
+				cost += costs.get( child ).treeCost;
 			costs.put( tree, new TreeDetails( cost + costFunction.apply( tree.getAttribute(), null ), cost ) );
 		}
 	}
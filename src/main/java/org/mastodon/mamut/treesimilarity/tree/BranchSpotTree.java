@@ -3,8 +3,10 @@ package org.mastodon.mamut.treesimilarity.tree;
 import org.mastodon.mamut.model.branch.BranchLink;
 import org.mastodon.mamut.model.branch.BranchSpot;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 
 public class BranchSpotTree implements Tree< Double >
 {
@@ -24,16 +26,34 @@ public class BranchSpotTree implements Tree< Double >
 		this.branchSpot = branchSpot;
 		this.endTimepoint = endTimepoint;
 		this.children = new ArrayList<>();
-		for ( BranchLink branchLink : branchSpot.outgoingEdges() )
+		// NB: the descendants are created with an explicit stack instead of recursion, such that arbitrarily deep lineages are supported
+		Deque< BranchSpotTree > stack = new ArrayDeque<>();
+		stack.push( this );
+		while ( !stack.isEmpty() )
 		{
-			BranchSpot child = branchLink.getTarget();
-			if ( branchSpot.equals( child ) )
-				continue;
-			if ( child.getFirstTimePoint() <= this.endTimepoint )
-				this.children.add( new BranchSpotTree( child, this.endTimepoint ) );
+			BranchSpotTree tree = stack.pop();
+			for ( BranchLink branchLink : tree.branchSpot.outgoingEdges() )
+			{
+				BranchSpot child = branchLink.getTarget();
+				if ( tree.branchSpot.equals( child ) )
+					continue;
+				if ( child.getFirstTimePoint() <= endTimepoint )
+				{
+					BranchSpotTree childTree = new BranchSpotTree( child, endTimepoint, new ArrayList<>() );
+					tree.children.add( childTree );
+					stack.push( childTree );
+				}
+			}
 		}
 	}
 
+	private BranchSpotTree( final BranchSpot branchSpot, final int endTimepoint, final Collection< Tree< Double > > children )
+	{
+		this.branchSpot = branchSpot;
+		this.endTimepoint = endTimepoint;
+		this.children = children;
+	}
+
 	@Override
 	public Collection< Tree< Double > > getChildren()
 	{
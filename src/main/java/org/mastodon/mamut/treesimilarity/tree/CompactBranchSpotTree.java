@@ -0,0 +1,135 @@
+package org.mastodon.mamut.treesimilarity.tree;
+
+import org.mastodon.RefPool;
+import org.mastodon.mamut.model.branch.BranchLink;
+import org.mastodon.mamut.model.branch.BranchSpot;
+import org.mastodon.mamut.model.branch.ModelBranchGraph;
+
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of the lineage starting at a {@link BranchSpot} as a {@link CompactTree}.
+ * <p>
+ * The structure and the attributes are the same as the ones of a {@link BranchSpotTree} with the same root and end timepoint.
+ * In contrast to a {@link BranchSpotTree}, the snapshot is created by one non-recursive traversal of the {@link ModelBranchGraph}, using only two {@link BranchSpot} refs,
+ * and the attributes are computed once. Since only the pool indices of the branch spots are kept, the snapshot stays valid as long as the branch graph is not rebuilt.
+ */
+public class CompactBranchSpotTree extends CompactTree
+{
+	private final RefPool< BranchSpot > branchSpotPool;
+
+	private final String label;
+
+	private CompactBranchSpotTree( final Builder builder, final RefPool< BranchSpot > branchSpotPool, final String label )
+	{
+		super( builder );
+		this.branchSpotPool = branchSpotPool;
+		this.label = label;
+	}
+
+	/**
+	 * Creates a snapshot of the lineage starting at the given branch spot.
+	 *
+	 * @param branchGraph the branch graph
+	 * @param branchSpot the root of the lineage
+	 * @param endTimepoint branch spots starting after this timepoint are not included, branch spots ending after this timepoint are cropped
+	 * @return the snapshot
+	 */
+	public static CompactBranchSpotTree of( final ModelBranchGraph branchGraph, final BranchSpot branchSpot, final int endTimepoint )
+	{
+		if ( branchSpot == null )
+			throw new IllegalArgumentException( "The given branchSpot is null." );
+		if ( branchSpot.getFirstTimePoint() > endTimepoint )
+			throw new IllegalArgumentException( "The first timepoint of the given branchSpot " + branchSpot.getFirstTimePoint()
+					+ " is greater than the endTimepoint (" + endTimepoint + ")." );
+
+		RefPool< BranchSpot > pool = branchGraph.vertices().getRefPool();
+		BranchSpot ref = branchGraph.vertexRef();
+		BranchSpot childRef = branchGraph.vertexRef();
+		try
+		{
+			Builder builder = new Builder();
+			// NB: stack of pending branch spots, each entry is the pool index of the branch spot and the number of its parent node
+			int[] stack = new int[ 32 ];
+			int stackSize = 0;
+			stack[ stackSize++ ] = pool.getId( branchSpot );
+			stack[ stackSize++ ] = -1;
+			int[] childIds = new int[ 4 ];
+			while ( stackSize > 0 )
+			{
+				int parent = stack[ --stackSize ];
+				int id = stack[ --stackSize ];
+				BranchSpot current = pool.getObject( id, ref );
+				int node = builder.add( parent, attribute( current, endTimepoint ), id );
+				int numberOfChildren = 0;
+				for ( BranchLink branchLink : current.outgoingEdges() )
+				{
+					BranchSpot child = branchLink.getTarget( childRef );
+					int childId = pool.getId( child );
+					if ( childId == id || child.getFirstTimePoint() > endTimepoint )
+						continue;
+					if ( numberOfChildren == childIds.length )
+						childIds = Arrays.copyOf( childIds, 2 * numberOfChildren );
+					childIds[ numberOfChildren++ ] = childId;
+				}
+				if ( stackSize + 2 * numberOfChildren > stack.length )
+					stack = Arrays.copyOf( stack, 2 * ( stackSize + 2 * numberOfChildren ) );
+				// NB: push in reverse order, such that the children are visited in the order of the outgoing edges
+				for ( int k = numberOfChildren - 1; k >= 0; k-- )
+				{
+					stack[ stackSize++ ] = childIds[ k ];
+					stack[ stackSize++ ] = node;
+				}
+			}
+			return new CompactBranchSpotTree( builder, pool, branchSpot.getFirstLabel() );
+		}
+		finally
+		{
+			branchGraph.releaseRef( ref );
+			branchGraph.releaseRef( childRef );
+		}
+	}
+
+	/**
+	 * Gets the branch spot of the node with the given index.
+	 *
+	 * @param node the index of the node
+	 * @param ref a ref to be used
+	 * @return the branch spot
+	 */
+	public BranchSpot getBranchSpot( final int node, final BranchSpot ref )
+	{
+		return branchSpotPool.getObject( getObjectId( node ), ref );
+	}
+
+	/**
+	 * Gets the branch spot of the root.
+	 *
+	 * @param ref a ref to be used
+	 * @return the branch spot
+	 */
+	public BranchSpot getBranchSpot( final BranchSpot ref )
+	{
+		return getBranchSpot( getRootIndex(), ref );
+	}
+
+	/**
+	 * @return the pool of the branch spots, whose indices are the {@link #getObjectId(int) object ids} of the nodes.
+	 */
+	public RefPool< BranchSpot > getBranchSpotPool()
+	{
+		return branchSpotPool;
+	}
+
+	private static double attribute( final BranchSpot branchSpot, final int endTimepoint )
+	{
+		int lastTimePoint = Math.min( branchSpot.getTimepoint(), endTimepoint );
+		return ( double ) lastTimePoint - branchSpot.getFirstTimePoint();
+	}
+
+	@Override
+	public String toString()
+	{
+		return label;
+	}
+}
@@ -0,0 +1,320 @@
+package org.mastodon.mamut.treesimilarity.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * An immutable tree with {@code double} attributes, whose structure is stored in a few primitive arrays.
+ * <p>
+ * The nodes are numbered in post-order, i.e. the children of a node have smaller numbers than the node itself and the root has the number {@code size() - 1}.
+ * The descendants of node {@code i} (including {@code i}) are the nodes {@code i - getSubtreeSize(i) + 1} to {@code i}.
+ * The children of each node are kept in the order of {@link Tree#getChildren()} of the tree the compact tree has been created from.
+ * <p>
+ * A compact tree implements {@link Tree} itself and represents its root. {@link Tree} views of all other nodes are created once together with the tree,
+ * such that {@link #getChildren()} and {@link #getAttribute()} neither allocate nor compute anything.
+ * Algorithms that know about compact trees may use the index based methods, e.g. {@link #getAttribute(int)} and {@link #getChild(int, int)}, instead.
+ * <p>
+ * Compact trees are created by a single non-recursive traversal, see {@link #copyOf(Tree)} and {@link CompactBranchSpotTree}.
+ */
+public class CompactTree implements Tree< Double >
+{
+	private final int[] parents;
+
+	private final int[] childrenStart;
+
+	private final int[] children;
+
+	private final int[] subtreeSizes;
+
+	private final double[] attributes;
+
+	private final int[] objectIds;
+
+	private final Tree< Double >[] nodes;
+
+	private final Double attribute;
+
+	private final List< Tree< Double > > rootChildren;
+
+	protected CompactTree( final Builder builder )
+	{
+		int size = builder.size;
+		if ( size == 0 )
+			throw new IllegalArgumentException( "A compact tree needs at least one node." );
+
+		// NB: the builder collects the nodes in pre-order, i.e. parents before children and siblings in order
+		int[] preorderParents = builder.parents;
+		subtreeSizes = new int[ size ];
+		int[] preorderSizes = new int[ size ];
+		Arrays.fill( preorderSizes, 1 );
+		for ( int v = size - 1; v > 0; v-- )
+			preorderSizes[ preorderParents[ v ] ] += preorderSizes[ v ];
+		// NB: the subtree of v occupies the post-order numbers start[v] to start[v] + size[v] - 1, the children of v are laid out one after another from start[v]
+		int[] start = new int[ size ];
+		int[] nextStart = new int[ size ];
+		for ( int v = 1; v < size; v++ )
+		{
+			int parent = preorderParents[ v ];
+			start[ v ] = nextStart[ parent ];
+			nextStart[ v ] = start[ v ];
+			nextStart[ parent ] += preorderSizes[ v ];
+		}
+		int[] postorder = new int[ size ];
+		for ( int v = 0; v < size; v++ )
+			postorder[ v ] = start[ v ] + preorderSizes[ v ] - 1;
+
+		parents = new int[ size ];
+		attributes = new double[ size ];
+		objectIds = new int[ size ];
+		childrenStart = new int[ size + 1 ];
+		for ( int v = 0; v < size; v++ )
+		{
+			int i = postorder[ v ];
+			parents[ i ] = v == 0 ? -1 : postorder[ preorderParents[ v ] ];
+			attributes[ i ] = builder.attributes[ v ];
+			objectIds[ i ] = builder.objectIds[ v ];
+			subtreeSizes[ i ] = preorderSizes[ v ];
+			if ( v > 0 )
+				childrenStart[ parents[ i ] + 1 ]++;
+		}
+		for ( int i = 0; i < size; i++ )
+			childrenStart[ i + 1 ] += childrenStart[ i ];
+		children = new int[ size - 1 ];
+		int[] fill = Arrays.copyOf( childrenStart, size );
+		for ( int v = 1; v < size; v++ )
+		{
+			int i = postorder[ v ];
+			children[ fill[ parents[ i ] ]++ ] = i;
+		}
+
+		nodes = newTreeArray( size );
+		for ( int i = 0; i < size - 1; i++ )
+			nodes[ i ] = new Node( i );
+		nodes[ size - 1 ] = this;
+		Tree< Double >[] childNodes = newTreeArray( children.length );
+		for ( int k = 0; k < children.length; k++ )
+			childNodes[ k ] = nodes[ children[ k ] ];
+		for ( int i = 0; i < size - 1; i++ )
+			( ( Node ) nodes[ i ] ).children = childList( childNodes, i );
+		rootChildren = childList( childNodes, size - 1 );
+		attribute = attributes[ size - 1 ];
+	}
+
+	/**
+	 * Creates a compact copy of the given tree. The given tree is traversed once without recursion.
+	 *
+	 * @param tree the tree to be copied
+	 * @return the compact tree, or the given tree itself, if it already is a compact tree
+	 */
+	public static CompactTree copyOf( final Tree< Double > tree )
+	{
+		if ( tree == null )
+			throw new IllegalArgumentException( "The given tree is null." );
+		if ( tree instanceof CompactTree )
+			return ( CompactTree ) tree;
+		Builder builder = new Builder();
+		Deque< Tree< Double > > stack = new ArrayDeque<>();
+		Deque< Integer > parentStack = new ArrayDeque<>();
+		stack.push( tree );
+		parentStack.push( -1 );
+		List< Tree< Double > > children = new ArrayList<>();
+		while ( !stack.isEmpty() )
+		{
+			Tree< Double > subtree = stack.pop();
+			int node = builder.add( parentStack.pop(), subtree.getAttribute(), -1 );
+			children.clear();
+			children.addAll( subtree.getChildren() );
+			// NB: push in reverse order, such that the children are visited in order
+			for ( int k = children.size() - 1; k >= 0; k-- )
+			{
+				stack.push( children.get( k ) );
+				parentStack.push( node );
+			}
+		}
+		return new CompactTree( builder );
+	}
+
+	/**
+	 * @return the number of nodes of this tree.
+	 */
+	public int size()
+	{
+		return attributes.length;
+	}
+
+	/**
+	 * @return the index of the root, which is always {@code size() - 1}.
+	 */
+	public int getRootIndex()
+	{
+		return attributes.length - 1;
+	}
+
+	/**
+	 * @return the attribute of the node with the given index.
+	 */
+	public double getAttribute( final int node )
+	{
+		return attributes[ node ];
+	}
+
+	/**
+	 * @return the index of the parent of the node with the given index, or {@code -1} for the root.
+	 */
+	public int getParent( final int node )
+	{
+		return parents[ node ];
+	}
+
+	/**
+	 * @return the number of children of the node with the given index.
+	 */
+	public int getNumberOfChildren( final int node )
+	{
+		return childrenStart[ node + 1 ] - childrenStart[ node ];
+	}
+
+	/**
+	 * @return the index of the {@code k}-th child of the node with the given index.
+	 */
+	public int getChild( final int node, final int k )
+	{
+		return children[ childrenStart[ node ] + k ];
+	}
+
+	/**
+	 * @return the number of nodes of the subtree rooted at the node with the given index, including the node itself.
+	 */
+	public int getSubtreeSize( final int node )
+	{
+		return subtreeSizes[ node ];
+	}
+
+	/**
+	 * @return {@code true}, if the node with the given index has no children.
+	 */
+	public boolean isLeaf( final int node )
+	{
+		return childrenStart[ node ] == childrenStart[ node + 1 ];
+	}
+
+	/**
+	 * @return the id of the object the node with the given index has been created from, or {@code -1} if there is none.
+	 */
+	public int getObjectId( final int node )
+	{
+		return objectIds[ node ];
+	}
+
+	/**
+	 * @return a {@link Tree} view of the subtree rooted at the node with the given index. For the root, this is the compact tree itself.
+	 */
+	public Tree< Double > getNode( final int node )
+	{
+		return nodes[ node ];
+	}
+
+	@Override
+	public List< Tree< Double > > getChildren()
+	{
+		return rootChildren;
+	}
+
+	@Override
+	public Double getAttribute()
+	{
+		return attribute;
+	}
+
+	private List< Tree< Double > > childList( final Tree< Double >[] childNodes, final int node )
+	{
+		if ( isLeaf( node ) )
+			return Collections.emptyList();
+		return Collections.unmodifiableList( Arrays.asList( childNodes ).subList( childrenStart[ node ], childrenStart[ node + 1 ] ) );
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private static Tree< Double >[] newTreeArray( final int length )
+	{
+		return new Tree[ length ];
+	}
+
+	/**
+	 * {@link Tree} view of a non-root node.
+	 */
+	private class Node implements Tree< Double >
+	{
+		private final int index;
+
+		private final Double attribute;
+
+		private List< Tree< Double > > children;
+
+		private Node( final int index )
+		{
+			this.index = index;
+			this.attribute = attributes[ index ];
+		}
+
+		@Override
+		public List< Tree< Double > > getChildren()
+		{
+			return children;
+		}
+
+		@Override
+		public Double getAttribute()
+		{
+			return attribute;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Node " + index + " of " + CompactTree.this;
+		}
+	}
+
+	/**
+	 * Collects the nodes of a compact tree in pre-order, i.e. each node has to be added after its parent and siblings have to be added in order.
+	 */
+	protected static class Builder
+	{
+		private int size;
+
+		private int[] parents = new int[ 16 ];
+
+		private double[] attributes = new double[ 16 ];
+
+		private int[] objectIds = new int[ 16 ];
+
+		/**
+		 * Adds a node.
+		 *
+		 * @param parent the number returned for the parent node, or {@code -1} for the root, which has to be added first
+		 * @param attribute the attribute of the node
+		 * @param objectId the id of the object the node is created from, or {@code -1}
+		 * @return the number of the added node, to be used as parent of its children
+		 */
+		protected int add( final int parent, final double attribute, final int objectId )
+		{
+			if ( ( parent < 0 ) != ( size == 0 ) || parent >= size )
+				throw new IllegalArgumentException( "Invalid parent (" + parent + ") of node " + size + "." );
+			if ( size == parents.length )
+			{
+				int capacity = 2 * size;
+				parents = Arrays.copyOf( parents, capacity );
+				attributes = Arrays.copyOf( attributes, capacity );
+				objectIds = Arrays.copyOf( objectIds, capacity );
+			}
+			parents[ size ] = parent;
+			attributes[ size ] = attribute;
+			objectIds[ size ] = objectId;
+			return size++;
+		}
+	}
+}
@@ -1,8 +1,13 @@
 package org.mastodon.mamut.treesimilarity.tree;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class TreeUtils
 {
@@ -13,6 +18,9 @@ public class TreeUtils
 
 	/**
 	 * Returns a complete list of all descendant subtrees of the given {@code Tree}, including itself.
+	 * <p>
+	 * The subtrees are listed in pre-order, i.e. each subtree is followed by the subtrees of its children in the order of {@link Tree#getChildren()}.
+	 * The tree is traversed without recursion, such that arbitrarily deep trees are supported.
 	 *
 	 * @return The list of subtrees.
 	 */
@@ -21,9 +29,47 @@ public class TreeUtils
 		if ( tree == null )
 			return Collections.emptyList();
 		List< Tree< T > > list = new ArrayList<>();
-		list.add( tree );
-		for ( Tree< T > child : tree.getChildren() )
-			list.addAll( listOfSubtrees( child ) );
+		Deque< Tree< T > > stack = new ArrayDeque<>();
+		List< Tree< T > > children = new ArrayList<>();
+		stack.push( tree );
+		while ( !stack.isEmpty() )
+		{
+			Tree< T > subtree = stack.pop();
+			list.add( subtree );
+			children.clear();
+			children.addAll( subtree.getChildren() );
+			// NB: push in reverse order, such that the children are visited in order
+			for ( int k = children.size() - 1; k >= 0; k-- )
+				stack.push( children.get( k ) );
+		}
+		return list;
+	}
+
+	/**
+	 * Returns a complete list of all descendant subtrees of the given {@code Tree}, including itself, in post-order.
+	 * <p>
+	 * The subtrees of the children are listed before the subtree itself, and the children are visited in the order of {@link Tree#getChildren()}.
+	 * Thus, iterating over the list is a bottom-up evaluation order: the results for all children are available, when a subtree is visited.
+	 * The tree is traversed without recursion, such that arbitrarily deep trees are supported.
+	 *
+	 * @return The list of subtrees, the given tree is the last element.
+	 */
+	public static < T > List< Tree< T > > listOfSubtreesInPostOrder( final Tree< T > tree )
+	{
+		if ( tree == null )
+			return Collections.emptyList();
+		// NB: visiting the children in reverse order and reversing the result gives the post-order with the children in order
+		List< Tree< T > > list = new ArrayList<>();
+		Deque< Tree< T > > stack = new ArrayDeque<>();
+		stack.push( tree );
+		while ( !stack.isEmpty() )
+		{
+			Tree< T > subtree = stack.pop();
+			list.add( subtree );
+			for ( Tree< T > child : subtree.getChildren() )
+				stack.push( child );
+		}
+		Collections.reverse( list );
 		return list;
 	}
 
@@ -37,4 +83,53 @@ public class TreeUtils
 			return 0;
 		return listOfSubtrees( tree ).size();
 	}
+
+	/**
+	 * Computes a canonical structural fingerprint of the given tree.
+	 * <p>
+	 * The fingerprint only depends on the attributes of the nodes and on the unordered multiset of the children of each node.
+	 * Thus, two trees that only differ in the order of their children have the same fingerprint.
+	 * Trees with different attributes or structures have different fingerprints with a very high probability, collisions of the 64 bit value are possible, but very unlikely.
+	 * <p>
+	 * The fingerprint is stable across JVM runs and may thus be used as a key for persistent caches.
+	 * The fingerprints of the subtrees are computed bottom-up without recursion.
+	 *
+	 * @param tree the tree
+	 * @return the fingerprint
+	 */
+	public static long fingerprint( final Tree< Double > tree )
+	{
+		if ( tree == null )
+			return 0;
+		Map< Tree< Double >, Long > fingerprints = new IdentityHashMap<>();
+		long hash = 0;
+		for ( Tree< Double > subtree : listOfSubtreesInPostOrder( tree ) )
+		{
+			long[] childFingerprints = new long[ subtree.getChildren().size() ];
+			int i = 0;
+			for ( Tree< Double > child : subtree.getChildren() )
+				childFingerprints[ i++ ] = fingerprints.get( child );
+			// NB: sorting makes the fingerprint independent of the order of the children
+			Arrays.sort( childFingerprints );
+			Double attribute = subtree.getAttribute();
+			hash = mix( attribute == null ? 0 : Double.doubleToLongBits( attribute ) );
+			hash = mix( hash + childFingerprints.length );
+			for ( long childFingerprint : childFingerprints )
+				hash = mix( hash * 31 + childFingerprint );
+			fingerprints.put( subtree, hash );
+		}
+		// NB: the root is the last subtree in post-order
+		return hash;
+	}
+
+	/**
+	 * The finalizer of the SplitMix64 generator, which spreads the bits of the given value over the whole 64 bits.
+	 */
+	private static long mix( long value )
+	{
+		value += 0x9E3779B97F4A7C15L;
+		value = ( value ^ ( value >>> 30 ) ) * 0xBF58476D1CE4E5B9L;
+		value = ( value ^ ( value >>> 27 ) ) * 0x94D049BB133111EBL;
+		return value ^ ( value >>> 31 );
+	}
 }
@@ -0,0 +1,168 @@
+package org.mastodon.mamut.treesimilarity.util;
+
+import java.util.Arrays;
+
+/**
+ * Solves the assignment problem that occurs when the children of two forests are mapped onto each other in the Zhang unordered tree edit distance.<p>
+ * Given {@code m} children of the first forest and {@code n} children of the second forest, exactly {@code min(m, n)} pairs of children are mapped onto each other.
+ * The remaining children of the first forest are deleted and the remaining children of the second forest are inserted. The total costs of mapping, deleting and inserting are minimized.
+ * <p>
+ * This is the same problem that can be solved as a minimum cost maximum flow problem on a {@link FlowNetwork}.
+ * This class avoids the overhead of a general graph library:
+ * <ul>
+ *     <li>If one of the forests has only one child, or both forests have two children, the solution is found in closed form.</li>
+ *     <li>Otherwise, the Hungarian algorithm is run on a primitive cost matrix.</li>
+ * </ul>
+ */
+public class AssignmentSolver
+{
+	private AssignmentSolver()
+	{
+		// prevent from instantiation
+	}
+
+	/**
+	 * Solves the assignment problem.
+	 *
+	 * @param deleteCosts the costs of deleting each of the {@code m} children of the first forest.
+	 * @param insertCosts the costs of inserting each of the {@code n} children of the second forest.
+	 * @param mapCosts the costs of mapping child {@code i} of the first forest onto child {@code j} of the second forest, stored at index {@code i * n + j}.
+	 * @return an array of length {@code m} that contains for each child of the first forest the index of the child of the second forest it is mapped onto, or {@code -1}, if the child is deleted.
+	 * Children of the second forest that do not occur in the returned array are inserted.
+	 */
+	public static int[] solve( final double[] deleteCosts, final double[] insertCosts, final double[] mapCosts )
+	{
+		int m = deleteCosts.length;
+		int n = insertCosts.length;
+		if ( mapCosts.length != m * n )
+			throw new IllegalArgumentException( "The map costs are expected to have length " + m * n + ", but have length " + mapCosts.length + "." );
+
+		int[] assignment = new int[ m ];
+		Arrays.fill( assignment, -1 );
+		if ( m == 0 || n == 0 )
+			return assignment;
+
+		// NB: If m <= n, every child of the first forest is mapped. Mapping child i onto child j saves the insertion of child j.
+		// If m > n, every child of the second forest is mapped. Mapping child i onto child j saves the deletion of child i.
+		// In both cases, the problem is reduced to a rectangular assignment problem with fewer rows than columns.
+		boolean transposed = m > n;
+		int rows = transposed ? n : m;
+		int columns = transposed ? m : n;
+		double[] costs = new double[ rows * columns ];
+		for ( int i = 0; i < m; i++ )
+		{
+			for ( int j = 0; j < n; j++ )
+			{
+				double cost = mapCosts[ i * n + j ];
+				if ( transposed )
+					costs[ j * columns + i ] = cost - deleteCosts[ i ];
+				else
+					costs[ i * columns + j ] = cost - insertCosts[ j ];
+			}
+		}
+
+		int[] rowAssignment;
+		if ( rows == 1 )
+			rowAssignment = solveSingleRow( costs );
+		else if ( rows == 2 && columns == 2 )
+			rowAssignment = solveTwoByTwo( costs );
+		else
+			rowAssignment = solveHungarian( costs, rows, columns );
+
+		for ( int row = 0; row < rows; row++ )
+		{
+			if ( transposed )
+				assignment[ rowAssignment[ row ] ] = row;
+			else
+				assignment[ row ] = rowAssignment[ row ];
+		}
+		return assignment;
+	}
+
+	private static int[] solveSingleRow( final double[] costs )
+	{
+		int best = 0;
+		for ( int j = 1; j < costs.length; j++ )
+			if ( costs[ j ] < costs[ best ] )
+				best = j;
+		return new int[] { best };
+	}
+
+	private static int[] solveTwoByTwo( final double[] costs )
+	{
+		if ( costs[ 0 ] + costs[ 3 ] <= costs[ 1 ] + costs[ 2 ] )
+			return new int[] { 0, 1 };
+		return new int[] { 1, 0 };
+	}
+
+	/**
+	 * Hungarian algorithm with potentials for a rectangular cost matrix with {@code rows <= columns}. Runs in O(rows<sup>2</sup> * columns).
+	 *
+	 * @return for each row the column it is assigned to.
+	 */
+	private static int[] solveHungarian( final double[] costs, final int rows, final int columns )
+	{
+		// NB: index 0 is used as a virtual row and column, rows and columns are numbered starting with 1.
+		double[] rowPotentials = new double[ rows + 1 ];
+		double[] columnPotentials = new double[ columns + 1 ];
+		int[] rowOfColumn = new int[ columns + 1 ];
+		int[] previousColumn = new int[ columns + 1 ];
+		double[] minSlack = new double[ columns + 1 ];
+		boolean[] used = new boolean[ columns + 1 ];
+		for ( int row = 1; row <= rows; row++ )
+		{
+			rowOfColumn[ 0 ] = row;
+			int column0 = 0;
+			Arrays.fill( minSlack, Double.POSITIVE_INFINITY );
+			Arrays.fill( used, false );
+			do
+			{
+				used[ column0 ] = true;
+				int row0 = rowOfColumn[ column0 ];
+				double delta = Double.POSITIVE_INFINITY;
+				int column1 = 0;
+				for ( int column = 1; column <= columns; column++ )
+				{
+					if ( used[ column ] )
+						continue;
+					double slack = costs[ ( row0 - 1 ) * columns + column - 1 ] - rowPotentials[ row0 ] - columnPotentials[ column ];
+					if ( slack < minSlack[ column ] )
+					{
+						minSlack[ column ] = slack;
+						previousColumn[ column ] = column0;
+					}
+					if ( minSlack[ column ] < delta )
+					{
+						delta = minSlack[ column ];
+						column1 = column;
+					}
+				}
+				for ( int column = 0; column <= columns; column++ )
+				{
+					if ( used[ column ] )
+					{
+						rowPotentials[ rowOfColumn[ column ] ] += delta;
+						columnPotentials[ column ] -= delta;
+					}
+					else
+						minSlack[ column ] -= delta;
+				}
+				column0 = column1;
+			}
+			while ( rowOfColumn[ column0 ] != 0 );
+			do
+			{
+				int column1 = previousColumn[ column0 ];
+				rowOfColumn[ column0 ] = rowOfColumn[ column1 ];
+				column0 = column1;
+			}
+			while ( column0 != 0 );
+		}
+
+		int[] assignment = new int[ rows ];
+		for ( int column = 1; column <= columns; column++ )
+			if ( rowOfColumn[ column ] != 0 )
+				assignment[ rowOfColumn[ column ] - 1 ] = column - 1;
+		return assignment;
+	}
+}
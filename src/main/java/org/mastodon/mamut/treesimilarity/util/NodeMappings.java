@@ -1,6 +1,8 @@
 package org.mastodon.mamut.treesimilarity.util;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 
@@ -118,10 +120,22 @@ public class NodeMappings
 			this.children = children;
 		}
 
+		/**
+		 * NB: nested composed mappings are expanded with an explicit stack, because their nesting depth grows with the depth of the mapped trees.
+		 */
 		@Override
 		public void writeToMap( Map< Tree< T >, Tree< T > > map )
 		{
-			children.forEach( child -> child.writeToMap( map ) );
+			Deque< NodeMapping< T > > stack = new ArrayDeque<>();
+			stack.push( this );
+			while ( !stack.isEmpty() )
+			{
+				NodeMapping< T > mapping = stack.pop();
+				if ( mapping instanceof ComposedNodeMapping )
+					( ( ComposedNodeMapping< T > ) mapping ).children.forEach( stack::push );
+				else
+					mapping.writeToMap( map );
+			}
 		}
 	}
 }
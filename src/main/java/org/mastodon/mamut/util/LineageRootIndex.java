@@ -0,0 +1,269 @@
+package org.mastodon.mamut.util;
+
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefSet;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.model.branch.BranchLink;
+import org.mastodon.mamut.model.branch.BranchSpot;
+import org.mastodon.spatial.SpatioTemporalIndex;
+
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * An index of the roots of the lineage trees of a {@link Model}, which gives the same roots as {@link LineageTreeUtils#getRoots(ModelGraph, int)} without iterating all spots of the model.
+ * <p>
+ * The roots at a timepoint are all spots at this timepoint, which are taken from the {@link SpatioTemporalIndex} of the model,
+ * and all spots after this timepoint without incoming edges. The latter are kept in a map from timepoints to spots, which is maintained by listening to the changes of the {@link ModelGraph}.
+ * <p>
+ * NB: the listeners only collect the spots, whose incoming edges have changed. The map is updated with these spots on the next query, such that editing the graph stays as fast as without the index.
+ * <p>
+ * The index also keeps a {@link #getVersion() version}, which changes with every structural change of the model graph and with every rebuild of the branch graph.
+ * This allows to reuse results derived from the lineage trees, as long as the version has not changed.
+ * <p>
+ * The index also provides the {@link #getSpotCounts() number of spots per timepoint}, which allows to translate crop criteria into timepoints.
+ * <p>
+ * The index listens to the graphs of the model until it is {@link #close() closed}. It is thread-safe.
+ */
+public class LineageRootIndex implements GraphListener< Spot, Link >, AutoCloseable
+{
+	private final Model model;
+
+	private final BranchGraphListener branchGraphListener = new BranchGraphListener();
+
+	private final TimepointSpotCounts spotCounts;
+
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * The spots without incoming edges by their timepoints. Only valid, if {@link #valid} is {@code true}.
+	 */
+	private final TreeMap< Integer, RefSet< Spot > > parentless = new TreeMap<>();
+
+	/**
+	 * The spots, whose incoming edges have changed since the last query.
+	 */
+	private final RefSet< Spot > dirty;
+
+	private boolean valid = false;
+
+	/**
+	 * Creates a new index and starts listening to the graphs of the given model.
+	 *
+	 * @param model the model
+	 */
+	public LineageRootIndex( final Model model )
+	{
+		this.model = model;
+		this.dirty = RefCollections.createRefSet( model.getGraph().vertices() );
+		this.spotCounts = new TimepointSpotCounts( model );
+		model.getGraph().addGraphListener( this );
+		model.getBranchGraph().addGraphListener( branchGraphListener );
+	}
+
+	/**
+	 * Gets the roots of the lineage trees at the given timepoint, i.e. all spots at the given timepoint and all spots after the given timepoint without incoming edges.
+	 *
+	 * @param timepoint the timepoint
+	 * @return a new set of the roots
+	 */
+	public RefSet< Spot > getRoots( final int timepoint )
+	{
+		ModelGraph graph = model.getGraph();
+		RefSet< Spot > roots = RefCollections.createRefSet( graph.vertices() );
+		Lock graphLock = graph.getLock().readLock();
+		graphLock.lock();
+		try
+		{
+			SpatioTemporalIndex< Spot > index = model.getSpatioTemporalIndex();
+			Lock indexLock = index.readLock();
+			indexLock.lock();
+			try
+			{
+				for ( Spot spot : index.getSpatialIndex( timepoint ) )
+					roots.add( spot );
+			}
+			finally
+			{
+				indexLock.unlock();
+			}
+			synchronized ( this )
+			{
+				update();
+				for ( RefSet< Spot > spots : parentless.tailMap( timepoint, false ).values() )
+					roots.addAll( spots );
+			}
+		}
+		finally
+		{
+			graphLock.unlock();
+		}
+		return roots;
+	}
+
+	/**
+	 * Gets the version of the graphs of the model. The version changes with every vertex or edge that is added to or removed from the model graph,
+	 * with every rebuild of the model graph and with every rebuild of the branch graph.
+	 *
+	 * @return the version
+	 */
+	public long getVersion()
+	{
+		return version.get();
+	}
+
+	/**
+	 * @return the number of spots per timepoint of the model, which are closed together with this index.
+	 */
+	public TimepointSpotCounts getSpotCounts()
+	{
+		return spotCounts;
+	}
+
+	/**
+	 * Stops listening to the graphs of the model.
+	 */
+	@Override
+	public void close()
+	{
+		model.getGraph().removeGraphListener( this );
+		model.getBranchGraph().removeGraphListener( branchGraphListener );
+		spotCounts.close();
+	}
+
+	private void update()
+	{
+		if ( !valid )
+		{
+			parentless.clear();
+			dirty.clear();
+			for ( Spot spot : model.getGraph().vertices() )
+				if ( spot.incomingEdges().isEmpty() )
+					add( spot );
+			valid = true;
+			return;
+		}
+		for ( Spot spot : dirty )
+		{
+			if ( spot.incomingEdges().isEmpty() )
+				add( spot );
+			else
+				remove( spot );
+		}
+		dirty.clear();
+	}
+
+	private void add( final Spot spot )
+	{
+		parentless.computeIfAbsent( spot.getTimepoint(), timepoint -> RefCollections.createRefSet( model.getGraph().vertices() ) ).add( spot );
+	}
+
+	private void remove( final Spot spot )
+	{
+		RefSet< Spot > spots = parentless.get( spot.getTimepoint() );
+		if ( spots == null )
+			return;
+		spots.remove( spot );
+		if ( spots.isEmpty() )
+			parentless.remove( spot.getTimepoint() );
+	}
+
+	@Override
+	public synchronized void graphRebuilt()
+	{
+		version.incrementAndGet();
+		valid = false;
+		dirty.clear();
+	}
+
+	@Override
+	public synchronized void vertexAdded( final Spot spot )
+	{
+		version.incrementAndGet();
+		if ( valid )
+			dirty.add( spot );
+	}
+
+	@Override
+	public synchronized void vertexRemoved( final Spot spot )
+	{
+		version.incrementAndGet();
+		// NB: the listeners are notified before the spot is removed, thus its timepoint is still valid
+		if ( valid )
+		{
+			dirty.remove( spot );
+			remove( spot );
+		}
+	}
+
+	@Override
+	public synchronized void edgeAdded( final Link link )
+	{
+		version.incrementAndGet();
+		markTarget( link );
+	}
+
+	@Override
+	public synchronized void edgeRemoved( final Link link )
+	{
+		version.incrementAndGet();
+		// NB: the edge may still be contained in the incoming edges of its target. Thus, the target is checked on the next query.
+		markTarget( link );
+	}
+
+	private void markTarget( final Link link )
+	{
+		if ( !valid )
+			return;
+		Spot ref = model.getGraph().vertexRef();
+		try
+		{
+			dirty.add( link.getTarget( ref ) );
+		}
+		finally
+		{
+			model.getGraph().releaseRef( ref );
+		}
+	}
+
+	/**
+	 * Increases the version, if the branch graph is rebuilt, such that results referring to the branch spots can be invalidated.
+	 */
+	private class BranchGraphListener implements GraphListener< BranchSpot, BranchLink >
+	{
+		@Override
+		public void graphRebuilt()
+		{
+			version.incrementAndGet();
+		}
+
+		@Override
+		public void vertexAdded( final BranchSpot vertex )
+		{
+			version.incrementAndGet();
+		}
+
+		@Override
+		public void vertexRemoved( final BranchSpot vertex )
+		{
+			version.incrementAndGet();
+		}
+
+		@Override
+		public void edgeAdded( final BranchLink edge )
+		{
+			version.incrementAndGet();
+		}
+
+		@Override
+		public void edgeRemoved( final BranchLink edge )
+		{
+			version.incrementAndGet();
+		}
+	}
+}
@@ -80,6 +80,8 @@ public class LineageTreeUtils {
 
 	/**
 	 * Gets the minimum timepoint in the given {@link Model} at which at least one {@link Spot} exists in the Model.
+	 * <p>
+	 * NB: this iterates all spots. For repeated queries, use {@link TimepointSpotCounts#getMinTimepoint()}.
 	 * @param model the {@link Model}
 	 * @return the timepoint
 	 */
@@ -96,6 +98,8 @@ public class LineageTreeUtils {
 
 	/**
 	 * Gets the maximum timepoint in the given {@link Model} at which at least one {@link Spot} exists in the Model.
+	 * <p>
+	 * NB: this iterates all spots. For repeated queries, use {@link TimepointSpotCounts#getMaxTimepoint()}.
 	 * @param model the {@link Model}
 	 * @return the timepoint
 	 */
@@ -113,6 +117,8 @@ public class LineageTreeUtils {
 	/**
 	 * Gets the first time point that has at least the given number of spots ({@code numberOfSpots})
 	 * by iterating through the {@link org.mastodon.spatial.SpatioTemporalIndex} of the given {@link Model}.
+	 * <p>
+	 * NB: this iterates all spots. For repeated queries, use {@link TimepointSpotCounts#getFirstTimepointWithNSpots(int)}.
 	 *
 	 * @param model the {@link Model} to search in
 	 * @param numberOfSpots the number of spots to search for
@@ -132,6 +138,7 @@ public class LineageTreeUtils {
 	}
 
 	// Replace with new method after has been resolved https://github.com/mastodon-sc/mastodon-tomancak/issues/13
+	// NB: for repeated queries, use LineageRootIndex#getRoots(int)
 	public static RefSet< Spot > getRoots( ModelGraph graph, int timepoint )
 	{
 		Predicate< Spot > isRoot = spot -> spot.getTimepoint() == timepoint
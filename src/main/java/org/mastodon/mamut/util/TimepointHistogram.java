@@ -0,0 +1,159 @@
+package org.mastodon.mamut.util;
+
+import java.util.Arrays;
+
+/**
+ * Counts objects per timepoint and answers range queries over the timepoints.
+ * <p>
+ * The counts are kept in an array, which covers the range of the timepoints counted so far. The smallest and largest timepoint with a non-zero count and a prefix maximum of the counts
+ * are derived from this array on the first query after a change. The prefix maximum is non-decreasing, such that {@link #getFirstTimepointWithCount(int)} is a binary search.
+ * <p>
+ * Not thread-safe.
+ */
+class TimepointHistogram
+{
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The timepoint of {@code counts[ 0 ]}.
+	 */
+	private int offset;
+
+	private int[] counts = new int[ 0 ];
+
+	private long total;
+
+	private boolean derivedValid = true;
+
+	private int minIndex = -1;
+
+	private int maxIndex = -1;
+
+	/**
+	 * {@code prefixMax[ i ]} is the maximum of {@code counts[ minIndex ]} to {@code counts[ minIndex + i ]}.
+	 */
+	private int[] prefixMax = new int[ 0 ];
+
+	void add( final int timepoint )
+	{
+		ensureCapacity( timepoint );
+		counts[ timepoint - offset ]++;
+		total++;
+		derivedValid = false;
+	}
+
+	void remove( final int timepoint )
+	{
+		int index = timepoint - offset;
+		if ( total == 0 || index < 0 || index >= counts.length || counts[ index ] == 0 )
+			throw new IllegalStateException( "No object is counted at timepoint " + timepoint + "." );
+		counts[ index ]--;
+		total--;
+		derivedValid = false;
+	}
+
+	void clear()
+	{
+		counts = new int[ 0 ];
+		offset = 0;
+		total = 0;
+		derivedValid = false;
+	}
+
+	long getTotal()
+	{
+		return total;
+	}
+
+	int getCount( final int timepoint )
+	{
+		int index = timepoint - offset;
+		return index < 0 || index >= counts.length ? 0 : counts[ index ];
+	}
+
+	/**
+	 * @return the smallest timepoint with a non-zero count, {@link Integer#MAX_VALUE}, if nothing is counted.
+	 */
+	int getMinTimepoint()
+	{
+		updateDerived();
+		return total == 0 ? Integer.MAX_VALUE : offset + minIndex;
+	}
+
+	/**
+	 * @return the largest timepoint with a non-zero count, {@link Integer#MIN_VALUE}, if nothing is counted.
+	 */
+	int getMaxTimepoint()
+	{
+		updateDerived();
+		return total == 0 ? Integer.MIN_VALUE : offset + maxIndex;
+	}
+
+	/**
+	 * @return the first timepoint between the {@link #getMinTimepoint() smallest} and the {@link #getMaxTimepoint() largest} timepoint, whose count is at least the given count,
+	 * or {@code null}, if no such timepoint exists.
+	 */
+	Integer getFirstTimepointWithCount( final int count )
+	{
+		updateDerived();
+		if ( total == 0 || prefixMax[ prefixMax.length - 1 ] < count )
+			return null;
+		int low = 0;
+		int high = prefixMax.length - 1;
+		while ( low < high )
+		{
+			int middle = ( low + high ) >>> 1;
+			if ( prefixMax[ middle ] >= count )
+				high = middle;
+			else
+				low = middle + 1;
+		}
+		return offset + minIndex + low;
+	}
+
+	private void ensureCapacity( final int timepoint )
+	{
+		if ( counts.length == 0 )
+		{
+			offset = timepoint;
+			counts = new int[ INITIAL_CAPACITY ];
+			return;
+		}
+		int index = timepoint - offset;
+		if ( index >= counts.length )
+			counts = Arrays.copyOf( counts, Math.max( index + 1, 2 * counts.length ) );
+		else if ( index < 0 )
+		{
+			int grow = Math.max( -index, counts.length );
+			int[] grown = new int[ counts.length + grow ];
+			System.arraycopy( counts, 0, grown, grow, counts.length );
+			counts = grown;
+			offset -= grow;
+		}
+	}
+
+	private void updateDerived()
+	{
+		if ( derivedValid )
+			return;
+		minIndex = -1;
+		maxIndex = -1;
+		for ( int i = 0; i < counts.length; i++ )
+		{
+			if ( counts[ i ] > 0 )
+			{
+				if ( minIndex < 0 )
+					minIndex = i;
+				maxIndex = i;
+			}
+		}
+		prefixMax = new int[ minIndex < 0 ? 0 : maxIndex - minIndex + 1 ];
+		int max = 0;
+		for ( int i = 0; i < prefixMax.length; i++ )
+		{
+			max = Math.max( max, counts[ minIndex + i ] );
+			prefixMax[ i ] = max;
+		}
+		derivedValid = true;
+	}
+}
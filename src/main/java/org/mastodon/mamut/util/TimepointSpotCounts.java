@@ -0,0 +1,154 @@
+package org.mastodon.mamut.util;
+
+import org.mastodon.graph.GraphListener;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+
+/**
+ * Keeps the number of spots per timepoint of a {@link Model}, which is maintained by listening to the changes of the {@link ModelGraph}.
+ * <p>
+ * This gives the same results as {@link LineageTreeUtils#getMinTimepoint(Model)}, {@link LineageTreeUtils#getMaxTimepoint(Model)} and {@link LineageTreeUtils#getFirstTimepointWithNSpots(Model, int)}
+ * without iterating all spots of the model for each query. The first timepoint with at least a given number of spots is found by a binary search over the prefix maximum of the numbers of spots.
+ * <p>
+ * The spots are counted once on the first query. Afterwards, only the changes of the graph are applied. If the graph is rebuilt, e.g. after its listeners have been paused, the spots are counted again on the next query.
+ * <p>
+ * The counts listen to the model graph until they are {@link #close() closed}. They are thread-safe.
+ */
+public class TimepointSpotCounts implements GraphListener< Spot, Link >, AutoCloseable
+{
+	private final Model model;
+
+	private final TimepointHistogram histogram = new TimepointHistogram();
+
+	private boolean valid = false;
+
+	/**
+	 * Creates new counts and starts listening to the graph of the given model.
+	 *
+	 * @param model the model
+	 */
+	public TimepointSpotCounts( final Model model )
+	{
+		this.model = model;
+		model.getGraph().addGraphListener( this );
+	}
+
+	/**
+	 * Gets the minimum timepoint at which at least one {@link Spot} exists in the model.
+	 *
+	 * @return the timepoint, {@link Integer#MAX_VALUE}, if the model contains no spots
+	 */
+	public int getMinTimepoint()
+	{
+		return query( TimepointHistogram::getMinTimepoint );
+	}
+
+	/**
+	 * Gets the maximum timepoint at which at least one {@link Spot} exists in the model.
+	 *
+	 * @return the timepoint, {@link Integer#MIN_VALUE}, if the model contains no spots
+	 */
+	public int getMaxTimepoint()
+	{
+		return query( TimepointHistogram::getMaxTimepoint );
+	}
+
+	/**
+	 * Gets the number of spots at the given timepoint.
+	 *
+	 * @param timepoint the timepoint
+	 * @return the number of spots
+	 */
+	public int getNumberOfSpots( final int timepoint )
+	{
+		return query( histogram -> histogram.getCount( timepoint ) );
+	}
+
+	/**
+	 * Gets the first time point that has at least the given number of spots ({@code numberOfSpots}).
+	 *
+	 * @param numberOfSpots the number of spots to search for
+	 * @return the first time point with at least the given number of spots
+	 * @throws NoSuchElementException if no time point with at least the given number of spots exists
+	 */
+	public int getFirstTimepointWithNSpots( final int numberOfSpots )
+	{
+		Integer timepoint = query( histogram -> histogram.getFirstTimepointWithCount( numberOfSpots ) );
+		if ( timepoint == null )
+			throw new NoSuchElementException( "No time point with at least " + numberOfSpots + " spots in the range [minTimepoint=" + getMinTimepoint()
+					+ ", maxTimepoint=" + getMaxTimepoint() + "]." );
+		return timepoint;
+	}
+
+	/**
+	 * Stops listening to the model graph.
+	 */
+	@Override
+	public void close()
+	{
+		model.getGraph().removeGraphListener( this );
+	}
+
+	private < T > T query( final Function< TimepointHistogram, T > query )
+	{
+		Lock lock = model.getGraph().getLock().readLock();
+		lock.lock();
+		try
+		{
+			synchronized ( this )
+			{
+				if ( !valid )
+				{
+					histogram.clear();
+					for ( Spot spot : model.getGraph().vertices() )
+						histogram.add( spot.getTimepoint() );
+					valid = true;
+				}
+				return query.apply( histogram );
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public synchronized void graphRebuilt()
+	{
+		valid = false;
+	}
+
+	@Override
+	public synchronized void vertexAdded( final Spot spot )
+	{
+		if ( valid )
+			histogram.add( spot.getTimepoint() );
+	}
+
+	@Override
+	public synchronized void vertexRemoved( final Spot spot )
+	{
+		// NB: the listeners are notified before the spot is removed, thus its timepoint is still valid
+		if ( valid )
+			histogram.remove( spot.getTimepoint() );
+	}
+
+	@Override
+	public void edgeAdded( final Link link )
+	{
+		// NB: the number of spots does not depend on the edges
+	}
+
+	@Override
+	public void edgeRemoved( final Link link )
+	{
+		// NB: the number of spots does not depend on the edges
+	}
+}
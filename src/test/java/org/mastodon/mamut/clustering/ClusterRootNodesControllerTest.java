@@ -4,6 +4,7 @@ import org.junit.Test;
 import org.mastodon.mamut.clustering.config.ClusteringMethod;
 import org.mastodon.mamut.clustering.config.CropCriteria;
 import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.clustering.util.ClassificationReport;
 import org.mastodon.mamut.feature.branch.exampleGraph.ExampleGraph2;
 import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.model.ModelGraph;
@@ -11,11 +12,13 @@ import org.mastodon.mamut.model.Spot;
 import org.mastodon.mamut.model.branch.BranchGraphSynchronizer;
 import org.mastodon.model.tag.TagSetStructure;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static junit.framework.TestCase.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -85,6 +88,159 @@ public class ClusterRootNodesControllerTest
 		assertThrows( IllegalArgumentException.class, controller::createTagSet );
 	}
 
+	@Test
+	public void testComputeWithoutWriteLock()
+	{
+		final Model model = new Model();
+		final ModelGraph modelGraph = model.getGraph();
+		addLineageTree1( modelGraph );
+		addLineageTree2( modelGraph );
+		addLineageTree3( modelGraph );
+		addLineageTree4( modelGraph );
+		addLineageTree5( modelGraph );
+
+		ClusterRootNodesController controller = new ClusterRootNodesController( model, new BranchGraphSynchronizer( null, null ) );
+		controller.setInputParams( CropCriteria.TIMEPOINT, 0, 100, 1 );
+		controller.setComputeParams( SimilarityMeasure.NORMALIZED_DIFFERENCE, ClusteringMethod.AVERAGE_LINKAGE, 3 );
+		controller.setShowDendrogram( false );
+		AtomicBoolean writeLocked = new AtomicBoolean();
+		AtomicBoolean modified = new AtomicBoolean();
+		controller.setProgressListener( ( completed, total ) -> {
+			writeLocked.compareAndSet( false, modelGraph.getLock().isWriteLocked() );
+			// NB: edit the model during the first computation, which needs to be repeated
+			if ( modified.compareAndSet( false, true ) )
+			{
+				modelGraph.getLock().writeLock().lock();
+				try
+				{
+					modelGraph.addVertex().init( 50, new double[ 3 ], 0 );
+				}
+				finally
+				{
+					modelGraph.getLock().writeLock().unlock();
+				}
+			}
+		} );
+		controller.createTagSet();
+
+		assertFalse( writeLocked.get() );
+		assertTrue( modified.get() );
+		List< TagSetStructure.TagSet > tagSets = model.getTagSetModel().getTagSetStructure().getTagSets();
+		assertEquals( 1, tagSets.size() );
+		assertEquals( 3, tagSets.get( 0 ).getTags().size() );
+	}
+
+	private static ClusterRootNodesController controllerForLineageTrees( final Model model )
+	{
+		final ModelGraph modelGraph = model.getGraph();
+		addLineageTree1( modelGraph );
+		addLineageTree2( modelGraph );
+		addLineageTree3( modelGraph );
+		addLineageTree4( modelGraph );
+		addLineageTree5( modelGraph );
+		ClusterRootNodesController controller = new ClusterRootNodesController( model, new BranchGraphSynchronizer( null, null ) );
+		controller.setInputParams( CropCriteria.TIMEPOINT, 0, 100, 1 );
+		controller.setComputeParams( SimilarityMeasure.NORMALIZED_DIFFERENCE, ClusteringMethod.AVERAGE_LINKAGE, 3 );
+		controller.setShowDendrogram( false );
+		return controller;
+	}
+
+	@Test
+	public void testStageProgress()
+	{
+		final Model model = new Model();
+		ClusterRootNodesController controller = controllerForLineageTrees( model );
+		List< ClassificationReport.Stage > stages = new ArrayList<>();
+		controller.setClassificationProgressListener( ( stage, completed, total ) -> {
+			assertTrue( controller.isRunning() );
+			if ( completed == 0 )
+				stages.add( stage );
+		} );
+		controller.createTagSet();
+
+		assertFalse( controller.isRunning() );
+		assertFalse( controller.getLastReport().isCanceled() );
+		assertEquals( Arrays.asList( ClassificationReport.Stage.ROOTS, ClassificationReport.Stage.TREES, ClassificationReport.Stage.DISTANCES,
+				ClassificationReport.Stage.CLUSTERING, ClassificationReport.Stage.TAGGING ), stages );
+	}
+
+	@Test
+	public void testCancel()
+	{
+		final Model model = new Model();
+		ClusterRootNodesController controller = controllerForLineageTrees( model );
+		controller.setClassificationProgressListener( ( stage, completed, total ) -> {
+			if ( stage == ClassificationReport.Stage.DISTANCES )
+				controller.cancel( "test" );
+		} );
+		controller.createTagSet();
+
+		assertFalse( controller.isRunning() );
+		assertTrue( controller.getLastReport().isCanceled() );
+		assertEquals( "test", controller.getLastReport().getCancelReason() );
+		assertEquals( 0, model.getTagSetModel().getTagSetStructure().getTagSets().size() );
+
+		// NB: canceling only affects the running classification
+		controller.setClassificationProgressListener( null );
+		controller.createTagSet();
+		assertFalse( controller.getLastReport().isCanceled() );
+		assertEquals( 1, model.getTagSetModel().getTagSetStructure().getTagSets().size() );
+	}
+
+	@Test
+	public void testCancelBeforeRun()
+	{
+		final Model model = new Model();
+		ClusterRootNodesController controller = controllerForLineageTrees( model );
+		ClusterRootNodesController.ClassificationJob job = controller.createClassificationJob();
+		assertTrue( controller.isRunning() );
+		assertThrows( IllegalStateException.class, controller::createClassificationJob );
+		controller.cancel( "test" );
+		job.run();
+
+		assertFalse( controller.isRunning() );
+		assertTrue( job.getReport().isCanceled() );
+		assertEquals( "test", job.getReport().getCancelReason() );
+		assertEquals( 0, model.getTagSetModel().getTagSetStructure().getTagSets().size() );
+		assertThrows( IllegalStateException.class, job::run );
+	}
+
+	@Test
+	public void testParametersChangedDuringRun()
+	{
+		final Model model = new Model();
+		ClusterRootNodesController controller = controllerForLineageTrees( model );
+		controller.setClassificationProgressListener( ( stage, completed, total ) -> {
+			if ( stage == ClassificationReport.Stage.DISTANCES )
+				controller.setComputeParams( SimilarityMeasure.NORMALIZED_DIFFERENCE, ClusteringMethod.AVERAGE_LINKAGE, 2 );
+		} );
+		controller.createTagSet();
+
+		assertFalse( controller.getLastReport().isCanceled() );
+		List< TagSetStructure.TagSet > tagSets = model.getTagSetModel().getTagSetStructure().getTagSets();
+		assertEquals( 1, tagSets.size() );
+		assertEquals( 3, tagSets.get( 0 ).getTags().size() );
+	}
+
+	@Test
+	public void testConcurrentRun()
+	{
+		final Model model = new Model();
+		ClusterRootNodesController controller = controllerForLineageTrees( model );
+		AtomicBoolean rejected = new AtomicBoolean();
+		controller.setClassificationProgressListener( ( stage, completed, total ) -> {
+			if ( stage == ClassificationReport.Stage.CLUSTERING && completed == 0 )
+			{
+				assertThrows( IllegalStateException.class, controller::createTagSet );
+				rejected.set( true );
+			}
+		} );
+		controller.createTagSet();
+
+		assertTrue( rejected.get() );
+		assertEquals( 1, model.getTagSetModel().getTagSetStructure().getTagSets().size() );
+	}
+
 	@Test
 	public void testGetParameters()
 	{
@@ -0,0 +1,93 @@
+package org.mastodon.mamut.clustering.util;
+
+import org.junit.Test;
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.treesimilarity.SubtreeMemo;
+import org.mastodon.mamut.treesimilarity.tree.SimpleTreeExamples;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ClassificationReportTest
+{
+	@Test
+	public void testStages()
+	{
+		ClassificationReport report = new ClassificationReport();
+		assertEquals( "result", report.measure( ClassificationReport.Stage.ROOTS, () -> "result" ) );
+		report.measure( ClassificationReport.Stage.TAGGING, () -> {} );
+		report.addStageNanos( ClassificationReport.Stage.TAGGING, 5 );
+		assertThrows( IllegalStateException.class, () -> report.measure( ClassificationReport.Stage.CLUSTERING, () -> {
+			throw new IllegalStateException();
+		} ) );
+		assertTrue( report.getStageNanos( ClassificationReport.Stage.TAGGING ) >= 5 );
+		assertEquals( 0, report.getStageNanos( ClassificationReport.Stage.DENDROGRAM ) );
+		assertEquals( 3, report.getStageNanos().size() );
+		report.finish();
+		long total = report.getTotalNanos();
+		report.finish();
+		assertEquals( total, report.getTotalNanos() );
+		assertTrue( total >= report.getStageNanos( ClassificationReport.Stage.ROOTS ) );
+	}
+
+	@Test
+	public void testProgressListener()
+	{
+		List< String > progress = new ArrayList<>();
+		ClassificationReport report = new ClassificationReport( ( stage, completed, total ) -> progress.add( stage + " " + completed + "/" + total ) );
+		report.measure( ClassificationReport.Stage.ROOTS, () -> {} );
+		report.measure( ClassificationReport.Stage.TREES, () -> "trees" );
+		assertEquals( Arrays.asList( "ROOTS 0/1", "ROOTS 1/1", "TREES 0/1", "TREES 1/1" ), progress );
+	}
+
+	@Test
+	public void testCanceled()
+	{
+		ClassificationReport report = new ClassificationReport();
+		assertFalse( report.isCanceled() );
+		assertNull( report.getCancelReason() );
+		report.setCanceled( "reason" );
+		assertTrue( report.isCanceled() );
+		assertEquals( "reason", report.getCancelReason() );
+		assertTrue( report.toString().contains( "canceled" ) );
+	}
+
+	@Test
+	public void testDistanceMatrix()
+	{
+		List< Tree< Double > > trees = Arrays.asList( SimpleTreeExamples.tree1(), SimpleTreeExamples.tree2(), SimpleTreeExamples.tree3(),
+				SimpleTreeExamples.tree4(), SimpleTreeExamples.nonBinaryTree() );
+		SubtreeMemo memo = new SubtreeMemo();
+		DistanceMatrixComputation computation = new DistanceMatrixComputation( trees, SimilarityMeasure.NORMALIZED_DIFFERENCE );
+		computation.setSubtreeMemo( memo );
+		ClassificationReport report = new ClassificationReport();
+		report.setNumberOfTrees( trees.size() );
+		report.measure( ClassificationReport.Stage.DISTANCES, () -> computation.computeCondensed( false ) );
+		report.addDistanceMatrix( computation, memo );
+
+		assertEquals( trees.size(), report.getNumberOfTrees() );
+		assertEquals( 10, report.getComputedPairs() );
+		assertEquals( 0, report.getIncompletePairs() );
+		assertEquals( memo.getCells(), report.getCells() );
+		assertEquals( memo.getReusedCells(), report.getReusedCells() );
+		assertTrue( report.getFlowSolves() > 0 );
+		assertTrue( report.getPairNanos( 50 ) <= report.getPairNanos( 90 ) );
+		assertTrue( report.getPairNanos( 90 ) <= report.getPairNanos( 99 ) );
+		assertTrue( report.getPairNanos( 99 ) <= report.getPairNanos( 100 ) );
+		assertEquals( computation.getPeakMatrixBytes(), report.getPeakMatrixBytes() );
+		assertThrows( IllegalArgumentException.class, () -> report.getPairNanos( 75 ) );
+		assertFalse( report.toString().isEmpty() );
+
+		// NB: emitting without a running flight recording must not fail
+		report.finish();
+		report.emitJfrEvents();
+	}
+}
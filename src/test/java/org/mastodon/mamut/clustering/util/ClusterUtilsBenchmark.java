@@ -0,0 +1,83 @@
+package org.mastodon.mamut.clustering.util;
+
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.treesimilarity.tree.SyntheticTrees;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the computation of the distance matrix of random trees with {@link ClusterUtils}.
+ * <p>
+ * Run {@link #main(String...)} to get the throughput and, via the gc profiler, the allocation rate.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 2, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ClusterUtilsBenchmark
+{
+	@Param( { "20", "100" } )
+	private int numberOfRoots;
+
+	@Param( { "4", "6" } )
+	private int depth;
+
+	@Param( { "2", "3" } )
+	private int branchingFactor;
+
+	@Param( { "UNIFORM", "EXPONENTIAL" } )
+	private SyntheticTrees.AttributeDistribution attributeDistribution;
+
+	@Param( { "NORMALIZED_DIFFERENCE" } )
+	private SimilarityMeasure similarityMeasure;
+
+	private List< Tree< Double > > trees;
+
+	@Setup
+	public void setup()
+	{
+		SyntheticTrees.Shape shape = new SyntheticTrees.Shape( depth, branchingFactor, 0.8, attributeDistribution, 10 );
+		trees = SyntheticTrees.simpleTrees( 42, numberOfRoots, shape );
+	}
+
+	@Benchmark
+	public double[][] distanceMatrix()
+	{
+		return ClusterUtils.getDistanceMatrix( trees, similarityMeasure );
+	}
+
+	@Benchmark
+	public CondensedDistanceMatrix condensedDistanceMatrix()
+	{
+		return ClusterUtils.getCondensedDistanceMatrix( trees, similarityMeasure, false );
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		Options options = new OptionsBuilder()
+				.include( ClusterUtilsBenchmark.class.getSimpleName() )
+				.addProfiler( GCProfiler.class )
+				.build();
+		new Runner( options ).run();
+	}
+}
@@ -181,6 +181,31 @@ public class ClusterUtilsTest
 				() -> ClusterUtils.getClassificationByThreshold( ClusterData.names, ClusterData.fixedDistances, linkageStrategy, -1 ) );
 	}
 
+	@Test
+	public void testCondensedDistanceMatrix()
+	{
+		CondensedDistanceMatrix condensed = CondensedDistanceMatrix.fromSquare( ClusterData.fixedDistances );
+		for ( LinkageStrategy linkageStrategy : Arrays.asList( new AverageLinkageUPGMAStrategy(), new AverageLinkageWPGMAStrategy(),
+				new SingleLinkageStrategy(), new CompleteLinkageStrategy() ) )
+		{
+			for ( int classCount = 1; classCount <= ClusterData.names.length; classCount++ )
+			{
+				Classification< String > expected =
+						ClusterUtils.getClassificationByClassCount( ClusterData.names, ClusterData.fixedDistances, linkageStrategy, classCount );
+				Classification< String > actual =
+						ClusterUtils.getClassificationByClassCount( ClusterData.names, condensed, linkageStrategy, classCount );
+				assertEquals( expected.getClassifiedObjects(), actual.getClassifiedObjects() );
+				assertEquals( expected.getCutoff(), actual.getCutoff(), 0d );
+			}
+		}
+		assertThrows( IllegalArgumentException.class,
+				() -> ClusterUtils.getClassificationByClassCount( ClusterData.names, new CondensedDistanceMatrix( 3 ),
+						new AverageLinkageUPGMAStrategy(), 2 ) );
+		assertThrows( IllegalArgumentException.class,
+				() -> ClusterUtils.getClassificationByThreshold( ClusterData.names, new CondensedDistanceMatrix( 3 ),
+						new AverageLinkageUPGMAStrategy(), 2 ) );
+	}
+
 	@Test
 	public void testOneClass()
 	{
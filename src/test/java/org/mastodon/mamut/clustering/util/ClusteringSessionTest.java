@@ -0,0 +1,93 @@
+package org.mastodon.mamut.clustering.util;
+
+import com.apporiented.algorithm.clustering.CompleteLinkageStrategy;
+import com.apporiented.algorithm.clustering.LinkageStrategy;
+import com.apporiented.algorithm.clustering.SingleLinkageStrategy;
+import org.junit.Test;
+import org.mastodon.mamut.clustering.ClusterData;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class ClusteringSessionTest
+{
+
+	@Test
+	public void testGetClassificationByClassCount()
+	{
+		CondensedDistanceMatrix distances = CondensedDistanceMatrix.fromSquare( ClusterData.fixedDistances );
+		LinkageStrategy[] linkageStrategies =
+				{ new AverageLinkageUPGMAStrategy(), new CompleteLinkageStrategy(), new SingleLinkageStrategy() };
+		for ( LinkageStrategy linkageStrategy : linkageStrategies )
+		{
+			ClusteringSession< String > session = new ClusteringSession<>( ClusterData.names, distances, linkageStrategy );
+			for ( int classCount = 1; classCount <= ClusterData.names.length; classCount++ )
+			{
+				Classification< String > expected =
+						ClusterUtils.getClassificationByClassCount( ClusterData.names, ClusterData.fixedDistances, linkageStrategy, classCount );
+				Classification< String > actual = session.getClassificationByClassCount( classCount );
+				assertEquals( expected.getClassifiedObjects(), actual.getClassifiedObjects() );
+				assertEquals( expected.getCutoff(), actual.getCutoff(), 0d );
+			}
+		}
+	}
+
+	@Test
+	public void testGetClassificationByThreshold()
+	{
+		CondensedDistanceMatrix distances = CondensedDistanceMatrix.fromSquare( ClusterData.fixedDistances );
+		LinkageStrategy linkageStrategy = new AverageLinkageUPGMAStrategy();
+		ClusteringSession< String > session = new ClusteringSession<>( ClusterData.names, distances, linkageStrategy );
+		for ( double threshold : new double[] { 0d, 20d, 40d, 57.5d, 80d, 200d } )
+		{
+			Classification< String > expected =
+					ClusterUtils.getClassificationByThreshold( ClusterData.names, ClusterData.fixedDistances, linkageStrategy, threshold );
+			assertEquals( expected.getClassifiedObjects(), session.getClassificationByThreshold( threshold ).getClassifiedObjects() );
+		}
+	}
+
+	@Test
+	public void testReuseDendrogram()
+	{
+		CondensedDistanceMatrix distances = CondensedDistanceMatrix.fromSquare( ClusterData.fixedDistances );
+		ClusteringSession< String > session = new ClusteringSession<>( ClusterData.names, distances, new AverageLinkageUPGMAStrategy() );
+		Classification< String > classification3 = session.getClassificationByClassCount( 3 );
+		LinkageMatrix linkageMatrix = session.getLinkageMatrix();
+		session.getClassificationByClassCount( 4 );
+		assertSame( linkageMatrix, session.getLinkageMatrix() );
+
+		Integer[] numbers = new Integer[ ClusterData.names.length ];
+		for ( int i = 0; i < numbers.length; i++ )
+			numbers[ i ] = i;
+		ClusteringSession< Integer > numberSession = session.withObjects( numbers );
+		Classification< Integer > numberClassification = numberSession.getClassificationByClassCount( 3 );
+		assertSame( distances, numberSession.getDistances() );
+		assertSame( linkageMatrix, numberSession.getLinkageMatrix() );
+		Set< Set< String > > mapped = new HashSet<>();
+		for ( Set< Integer > numberClass : numberClassification.getClassifiedObjects() )
+		{
+			Set< String > names = new HashSet<>();
+			for ( Integer number : numberClass )
+				names.add( ClusterData.names[ number ] );
+			mapped.add( names );
+		}
+		assertEquals( classification3.getClassifiedObjects(), mapped );
+	}
+
+	@Test
+	public void testExceptions()
+	{
+		CondensedDistanceMatrix distances = CondensedDistanceMatrix.fromSquare( ClusterData.fixedDistances );
+		ClusteringSession< String > session = new ClusteringSession<>( ClusterData.names, distances, new AverageLinkageUPGMAStrategy() );
+		assertThrows( IllegalArgumentException.class, () -> session.getClassificationByClassCount( 0 ) );
+		assertThrows( IllegalArgumentException.class, () -> session.getClassificationByClassCount( ClusterData.names.length + 1 ) );
+		assertThrows( IllegalArgumentException.class, () -> session.getClassificationByThreshold( -1 ) );
+		assertThrows( IllegalArgumentException.class,
+				() -> new ClusteringSession<>( ClusterData.names, new CondensedDistanceMatrix( 3 ), new AverageLinkageUPGMAStrategy() ) );
+		assertThrows( IllegalArgumentException.class, () -> session.withObjects( new Integer[ 3 ] ) );
+	}
+}
@@ -0,0 +1,65 @@
+package org.mastodon.mamut.clustering.util;
+
+import org.junit.Test;
+import org.mastodon.mamut.clustering.ClusterData;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class CondensedDistanceMatrixTest
+{
+	@Test
+	public void testFromSquare()
+	{
+		double[][] square = ClusterData.fixedDistances;
+		CondensedDistanceMatrix matrix = CondensedDistanceMatrix.fromSquare( square );
+		assertEquals( square.length, matrix.size() );
+		assertFalse( matrix.isSinglePrecision() );
+		for ( int i = 0; i < square.length; i++ )
+			for ( int j = 0; j < square.length; j++ )
+				assertEquals( square[ i ][ j ], matrix.get( i, j ), 0d );
+		double[][] result = matrix.toSquare();
+		for ( int i = 0; i < square.length; i++ )
+			assertArrayEquals( square[ i ], result[ i ], 0d );
+	}
+
+	@Test
+	public void testScipyOrder()
+	{
+		CondensedDistanceMatrix matrix = new CondensedDistanceMatrix( 4 );
+		matrix.set( 0, 1, 1 );
+		matrix.set( 2, 0, 2 );
+		matrix.set( 0, 3, 3 );
+		matrix.set( 1, 2, 4 );
+		matrix.set( 3, 1, 5 );
+		matrix.set( 2, 3, 6 );
+		assertArrayEquals( new double[] { 1, 2, 3, 4, 5, 6 }, matrix.asDoubleArray(), 0d );
+		assertEquals( 5, matrix.get( 1, 3 ), 0d );
+		assertEquals( 0, matrix.get( 2, 2 ), 0d );
+	}
+
+	@Test
+	public void testSinglePrecision()
+	{
+		CondensedDistanceMatrix matrix = new CondensedDistanceMatrix( 3, true );
+		assertTrue( matrix.isSinglePrecision() );
+		matrix.set( 0, 2, 0.1 );
+		assertEquals( 0.1f, matrix.get( 2, 0 ), 0d );
+		assertArrayEquals( new double[] { 0, 0.1f, 0 }, matrix.asDoubleArray(), 0d );
+	}
+
+	@Test
+	public void testExceptions()
+	{
+		CondensedDistanceMatrix matrix = new CondensedDistanceMatrix( 3 );
+		assertThrows( IllegalArgumentException.class, () -> matrix.set( 1, 1, 1 ) );
+		assertThrows( IndexOutOfBoundsException.class, () -> matrix.get( 0, 3 ) );
+		assertThrows( IndexOutOfBoundsException.class, () -> matrix.get( -1, -1 ) );
+		assertThrows( IllegalArgumentException.class, () -> new CondensedDistanceMatrix( -1 ) );
+		assertThrows( IllegalArgumentException.class, () -> new CondensedDistanceMatrix( 100_000 ) );
+		assertThrows( IllegalArgumentException.class, () -> CondensedDistanceMatrix.fromSquare( new double[][] { { 0, 1 }, { 1 } } ) );
+	}
+}
@@ -0,0 +1,129 @@
+package org.mastodon.mamut.clustering.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class DistanceCacheTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testPutAndGet()
+	{
+		DistanceCache cache = new DistanceCache();
+		cache.put( SimilarityMeasure.NORMALIZED_DIFFERENCE, 1, 2, 0.5 );
+		assertEquals( 0.5, cache.get( SimilarityMeasure.NORMALIZED_DIFFERENCE, 1, 2 ), 0d );
+		assertEquals( 0.5, cache.get( SimilarityMeasure.NORMALIZED_DIFFERENCE, 2, 1 ), 0d );
+		assertNull( cache.get( SimilarityMeasure.ABSOLUTE_DIFFERENCE, 1, 2 ) );
+		assertNull( cache.get( SimilarityMeasure.NORMALIZED_DIFFERENCE, 1, 3 ) );
+		assertEquals( 1, cache.size() );
+		cache.clear();
+		assertEquals( 0, cache.size() );
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException
+	{
+		DistanceCache cache = new DistanceCache();
+		cache.put( SimilarityMeasure.NORMALIZED_DIFFERENCE, 1, 2, 0.5 );
+		cache.put( SimilarityMeasure.ABSOLUTE_DIFFERENCE, 1, 2, 10 );
+		cache.put( SimilarityMeasure.ABSOLUTE_DIFFERENCE, -5, Long.MAX_VALUE, 20 );
+		File file = folder.newFile( "cache" );
+		cache.save( file );
+
+		DistanceCache loaded = DistanceCache.load( file );
+		assertEquals( 3, loaded.size() );
+		assertEquals( 0.5, loaded.get( SimilarityMeasure.NORMALIZED_DIFFERENCE, 2, 1 ), 0d );
+		assertEquals( 10, loaded.get( SimilarityMeasure.ABSOLUTE_DIFFERENCE, 1, 2 ), 0d );
+		assertEquals( 20, loaded.get( SimilarityMeasure.ABSOLUTE_DIFFERENCE, Long.MAX_VALUE, -5 ), 0d );
+	}
+
+	@Test
+	public void testEviction()
+	{
+		DistanceCache cache = new DistanceCache( 10 );
+		for ( int i = 0; i < 100; i++ )
+		{
+			cache.put( SimilarityMeasure.NORMALIZED_DIFFERENCE, i, i + 1, i );
+			// NB: a distance that is used all the time is never evicted
+			assertEquals( 0, cache.get( SimilarityMeasure.NORMALIZED_DIFFERENCE, 0, 1 ), 0d );
+			assertTrue( cache.size() <= 10 );
+		}
+		assertEquals( 99, cache.get( SimilarityMeasure.NORMALIZED_DIFFERENCE, 99, 100 ), 0d );
+		assertNull( cache.get( SimilarityMeasure.NORMALIZED_DIFFERENCE, 50, 51 ) );
+	}
+
+	@Test
+	public void testManyDistances()
+	{
+		DistanceCache cache = new DistanceCache();
+		int n = 10_000;
+		for ( int i = 0; i < n; i++ )
+			cache.put( SimilarityMeasure.ABSOLUTE_DIFFERENCE, i * 7919L, -i, i );
+		assertEquals( n, cache.size() );
+		for ( int i = 0; i < n; i++ )
+			assertEquals( i, cache.get( SimilarityMeasure.ABSOLUTE_DIFFERENCE, -i, i * 7919L ), 0d );
+	}
+
+	@Test
+	public void testAppend() throws IOException
+	{
+		File file = folder.newFile( "cache" );
+		DistanceCache cache = new DistanceCache();
+		cache.put( SimilarityMeasure.NORMALIZED_DIFFERENCE, 1, 2, 0.5 );
+		cache.append( file );
+		long length = file.length();
+
+		// NB: only the new distance is appended
+		cache.put( SimilarityMeasure.ABSOLUTE_DIFFERENCE, 1, 2, 10 );
+		cache.append( file );
+		assertTrue( file.length() > length );
+		assertTrue( file.length() - length < length );
+		DistanceCache loaded = DistanceCache.load( file );
+		assertEquals( 2, loaded.size() );
+		assertEquals( 0.5, loaded.get( SimilarityMeasure.NORMALIZED_DIFFERENCE, 2, 1 ), 0d );
+
+		// NB: a loaded cache appends to the same file, too
+		loaded.put( SimilarityMeasure.ABSOLUTE_DIFFERENCE, 1, 2, 20 );
+		loaded.append( file );
+		assertEquals( 20, DistanceCache.load( file ).get( SimilarityMeasure.ABSOLUTE_DIFFERENCE, 1, 2 ), 0d );
+		assertEquals( 2, DistanceCache.load( file ).size() );
+	}
+
+	@Test
+	public void testLoadIncompleteFile() throws IOException
+	{
+		File file = folder.newFile( "cache" );
+		DistanceCache cache = new DistanceCache();
+		cache.put( SimilarityMeasure.NORMALIZED_DIFFERENCE, 1, 2, 0.5 );
+		cache.save( file );
+		cache.put( SimilarityMeasure.ABSOLUTE_DIFFERENCE, 1, 2, 10 );
+		cache.append( file );
+		byte[] bytes = Files.readAllBytes( file.toPath() );
+		Files.write( file.toPath(), Arrays.copyOf( bytes, bytes.length - 3 ) );
+		DistanceCache loaded = DistanceCache.load( file );
+		assertEquals( 1, loaded.size() );
+		assertEquals( 0.5, loaded.get( SimilarityMeasure.NORMALIZED_DIFFERENCE, 1, 2 ), 0d );
+	}
+
+	@Test
+	public void testLoadInvalidFile() throws IOException
+	{
+		File file = folder.newFile( "invalid" );
+		Files.write( file.toPath(), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 } );
+		assertThrows( IOException.class, () -> DistanceCache.load( file ) );
+	}
+}
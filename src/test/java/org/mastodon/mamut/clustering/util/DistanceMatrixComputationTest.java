@@ -0,0 +1,257 @@
+package org.mastodon.mamut.clustering.util;
+
+import org.junit.Test;
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.treesimilarity.SubtreeMemo;
+import org.mastodon.mamut.treesimilarity.ZhangBudget;
+import org.mastodon.mamut.treesimilarity.ZhangLowerBound;
+import org.mastodon.mamut.treesimilarity.ZhangUnorderedTreeEditDistance;
+import org.mastodon.mamut.treesimilarity.tree.SimpleTreeExamples;
+import org.mastodon.mamut.treesimilarity.tree.SyntheticTrees;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+import org.mastodon.mamut.treesimilarity.tree.TreeUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DistanceMatrixComputationTest
+{
+	private static List< Tree< Double > > trees()
+	{
+		return Arrays.asList( SimpleTreeExamples.tree1(), SimpleTreeExamples.tree2(), SimpleTreeExamples.tree3(), SimpleTreeExamples.tree4(),
+				SimpleTreeExamples.tree5(), SimpleTreeExamples.tree6(), SimpleTreeExamples.tree7(), SimpleTreeExamples.tree8(),
+				SimpleTreeExamples.nonBinaryTree() );
+	}
+
+	@Test
+	public void testCompute()
+	{
+		List< Tree< Double > > trees = trees();
+		for ( SimilarityMeasure similarityMeasure : SimilarityMeasure.values() )
+		{
+			double[][] distances = new DistanceMatrixComputation( trees, similarityMeasure, new ForkJoinPool( 3 ) ).compute();
+			for ( int i = 0; i < trees.size(); i++ )
+			{
+				double[] expected = new double[ trees.size() ];
+				for ( int j = 0; j < trees.size(); j++ )
+					if ( i != j )
+						expected[ j ] = similarityMeasure.compute( trees.get( i ), trees.get( j ), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION );
+				assertArrayEquals( expected, distances[ i ], 0d );
+			}
+		}
+	}
+
+	@Test
+	public void testManyTrees()
+	{
+		// NB: enough trees of different sizes, such that the pairs of small trees are handed out in blocks of many pairs
+		List< Tree< Double > > trees = new ArrayList<>( SyntheticTrees.simpleTrees( 42, 100, new SyntheticTrees.Shape( 4, 2, 0.6, SyntheticTrees.AttributeDistribution.UNIFORM, 5 ) ) );
+		trees.addAll( trees() );
+		CondensedDistanceMatrix distances = new DistanceMatrixComputation( trees, SimilarityMeasure.NORMALIZED_DIFFERENCE, new ForkJoinPool( 2 ) ).computeCondensed( false );
+		for ( int i = 0; i < trees.size(); i++ )
+			for ( int j = i + 1; j < trees.size(); j++ )
+				assertEquals( SimilarityMeasure.NORMALIZED_DIFFERENCE.compute( trees.get( i ), trees.get( j ), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION ),
+						distances.get( i, j ), 0d );
+	}
+
+	@Test
+	public void testComputeCondensed()
+	{
+		List< Tree< Double > > trees = trees();
+		double[][] expected = new DistanceMatrixComputation( trees, SimilarityMeasure.NORMALIZED_DIFFERENCE ).compute();
+		CondensedDistanceMatrix doublePrecision =
+				new DistanceMatrixComputation( trees, SimilarityMeasure.NORMALIZED_DIFFERENCE ).computeCondensed( false );
+		CondensedDistanceMatrix singlePrecision =
+				new DistanceMatrixComputation( trees, SimilarityMeasure.NORMALIZED_DIFFERENCE ).computeCondensed( true );
+		for ( int i = 0; i < trees.size(); i++ )
+		{
+			for ( int j = 0; j < trees.size(); j++ )
+			{
+				assertEquals( expected[ i ][ j ], doublePrecision.get( i, j ), 0d );
+				assertEquals( ( float ) expected[ i ][ j ], singlePrecision.get( i, j ), 0d );
+			}
+		}
+	}
+
+	@Test
+	public void testSubtreeMemo()
+	{
+		List< Tree< Double > > trees = trees();
+		double[][] expected = new DistanceMatrixComputation( trees, SimilarityMeasure.ABSOLUTE_DIFFERENCE ).compute();
+		SubtreeMemo memo = new SubtreeMemo();
+		DistanceMatrixComputation computation = new DistanceMatrixComputation( trees, SimilarityMeasure.ABSOLUTE_DIFFERENCE );
+		computation.setSubtreeMemo( memo );
+		double[][] distances = computation.compute();
+		for ( int i = 0; i < trees.size(); i++ )
+			assertArrayEquals( expected[ i ], distances[ i ], 0d );
+		assertEquals( trees.size() * ( trees.size() - 1 ) / 2, memo.getPairs() );
+		assertTrue( memo.getCells() > 0 );
+	}
+
+	@Test
+	public void testDistanceCache()
+	{
+		List< Tree< Double > > trees = trees();
+		DistanceCache cache = new DistanceCache();
+		DistanceMatrixComputation computation = new DistanceMatrixComputation( trees, SimilarityMeasure.ABSOLUTE_DIFFERENCE );
+		computation.setDistanceCache( cache );
+		double[][] expected = computation.compute();
+		assertEquals( trees.size() * ( trees.size() - 1 ) / 2, cache.size() );
+
+		// all distances are taken from the cache, none is computed
+		DistanceMatrixComputation cached = new DistanceMatrixComputation( trees, SimilarityMeasure.ABSOLUTE_DIFFERENCE );
+		cached.setDistanceCache( cache );
+		cached.setProgressListener( ( completed, total ) -> fail( "No distance should be computed." ) );
+		double[][] distances = cached.compute();
+		for ( int i = 0; i < trees.size(); i++ )
+			assertArrayEquals( expected[ i ], distances[ i ], 0d );
+
+		// only the distances of the new tree are computed
+		List< Tree< Double > > moreTrees = new ArrayList<>( trees );
+		moreTrees.add( SimpleTreeExamples.tree9() );
+		DistanceMatrixComputation partial = new DistanceMatrixComputation( moreTrees, SimilarityMeasure.ABSOLUTE_DIFFERENCE );
+		partial.setDistanceCache( cache );
+		AtomicInteger computedTotal = new AtomicInteger();
+		partial.setProgressListener( ( completed, total ) -> computedTotal.set( total ) );
+		partial.compute();
+		assertEquals( trees.size(), computedTotal.get() );
+	}
+
+	@Test
+	public void testFingerprints()
+	{
+		List< Tree< Double > > trees = trees();
+		long[] fingerprints = new long[ trees.size() ];
+		for ( int i = 0; i < fingerprints.length; i++ )
+			fingerprints[ i ] = TreeUtils.fingerprint( trees.get( i ) );
+		DistanceCache cache = new DistanceCache();
+		DistanceMatrixComputation computation = new DistanceMatrixComputation( trees, SimilarityMeasure.ABSOLUTE_DIFFERENCE );
+		computation.setDistanceCache( cache );
+		computation.setFingerprints( fingerprints );
+		double[][] distances = computation.compute();
+		assertEquals( distances[ 0 ][ 1 ], cache.get( SimilarityMeasure.ABSOLUTE_DIFFERENCE, fingerprints[ 0 ], fingerprints[ 1 ] ), 0d );
+		assertThrows( IllegalArgumentException.class, () -> computation.setFingerprints( new long[ trees.size() - 1 ] ) );
+	}
+
+	@Test
+	public void testProgress()
+	{
+		List< Tree< Double > > trees = trees();
+		int expectedTotal = trees.size() * ( trees.size() - 1 ) / 2;
+		AtomicInteger lastCompleted = new AtomicInteger();
+		DistanceMatrixComputation computation = new DistanceMatrixComputation( trees, SimilarityMeasure.NORMALIZED_DIFFERENCE );
+		computation.setProgressListener( ( completed, total ) -> {
+			assertEquals( expectedTotal, total );
+			lastCompleted.accumulateAndGet( completed, Math::max );
+		} );
+		computation.compute();
+		assertEquals( expectedTotal, lastCompleted.get() );
+	}
+
+	@Test
+	public void testCancel()
+	{
+		DistanceMatrixComputation computation = new DistanceMatrixComputation( trees(), SimilarityMeasure.NORMALIZED_DIFFERENCE );
+		computation.setProgressListener( ( completed, total ) -> computation.cancel( "test" ) );
+		assertThrows( CancellationException.class, computation::compute );
+	}
+
+	@Test
+	public void testWorkerFailure()
+	{
+		ForkJoinPool pool = new ForkJoinPool( 3 );
+		DistanceMatrixComputation computation = new DistanceMatrixComputation( trees(), SimilarityMeasure.NORMALIZED_DIFFERENCE, pool );
+		AtomicInteger failures = new AtomicInteger();
+		computation.setProgressListener( ( completed, total ) -> {
+			failures.incrementAndGet();
+			throw new IllegalStateException( "test" );
+		} );
+		IllegalStateException e = assertThrows( IllegalStateException.class, computation::compute );
+		assertEquals( "test", e.getMessage() );
+		// NB: the first failure stops all workers before the exception is rethrown
+		assertTrue( computation.isCanceled() );
+		assertTrue( failures.get() <= pool.getParallelism() );
+	}
+
+	@Test
+	public void testPairBudget()
+	{
+		List< Tree< Double > > trees = trees();
+		int maxCells = 20;
+		double[][] expected = new DistanceMatrixComputation( trees, SimilarityMeasure.NORMALIZED_DIFFERENCE ).compute();
+		for ( boolean lowerBoundFallback : new boolean[] { false, true } )
+		{
+			DistanceCache cache = new DistanceCache();
+			DistanceMatrixComputation computation = new DistanceMatrixComputation( trees, SimilarityMeasure.NORMALIZED_DIFFERENCE );
+			computation.setPairBudget( ZhangBudget.ofCells( maxCells ) );
+			computation.setLowerBoundFallback( lowerBoundFallback );
+			computation.setDistanceCache( cache );
+			double[][] distances = computation.compute();
+			List< int[] > incompletePairs = computation.getIncompletePairs();
+			int k = 0;
+			for ( int i = 0; i < trees.size(); i++ )
+			{
+				for ( int j = i + 1; j < trees.size(); j++ )
+				{
+					if ( TreeUtils.size( trees.get( i ) ) * TreeUtils.size( trees.get( j ) ) <= maxCells )
+					{
+						assertEquals( expected[ i ][ j ], distances[ i ][ j ], 0d );
+						continue;
+					}
+					assertArrayEquals( new int[] { i, j }, incompletePairs.get( k++ ) );
+					double estimate = SimilarityMeasure.NORMALIZED_DIFFERENCE.lowerBound(
+							ZhangLowerBound.Summary.of( trees.get( i ), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION ),
+							ZhangLowerBound.Summary.of( trees.get( j ), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION ) );
+					assertEquals( lowerBoundFallback ? estimate : Double.NaN, distances[ i ][ j ], 0d );
+				}
+			}
+			assertEquals( k, incompletePairs.size() );
+			assertTrue( k > 0 );
+			assertEquals( trees.size() * ( trees.size() - 1 ) / 2 - k, cache.size() );
+		}
+	}
+
+	@Test
+	public void testStatistics()
+	{
+		List< Tree< Double > > trees = trees();
+		int size = trees.size();
+		int pairs = size * ( size - 1 ) / 2;
+		SubtreeMemo memo = new SubtreeMemo();
+		DistanceMatrixComputation computation = new DistanceMatrixComputation( trees, SimilarityMeasure.NORMALIZED_DIFFERENCE );
+		computation.setSubtreeMemo( memo );
+		computation.computeCondensed( true );
+		assertEquals( pairs, computation.getPairTimes().getCount() );
+		assertTrue( computation.getPairTimes().getPercentile( 50 ) <= computation.getPairTimes().getMax() );
+		// NB: the schedule holds the index and the size of each tree
+		assertEquals( pairs * Float.BYTES + size * ( Integer.BYTES + Long.BYTES ), computation.getPeakMatrixBytes() );
+		assertTrue( memo.getFlowSolves() > 0 );
+
+		// NB: cached pairs are not computed again
+		DistanceCache cache = new DistanceCache();
+		computation.setDistanceCache( cache );
+		computation.compute();
+		computation.compute();
+		assertEquals( 0, computation.getPairTimes().getCount() );
+		// NB: plus one bit per pair to skip the cached pairs
+		assertEquals( size * size * Double.BYTES + size * ( Integer.BYTES + Long.BYTES ) + ( pairs + 63 ) / 64 * Long.BYTES, computation.getPeakMatrixBytes() );
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		assertEquals( 0, new DistanceMatrixComputation( Arrays.asList(), SimilarityMeasure.NORMALIZED_DIFFERENCE ).compute().length );
+		double[][] distances = new DistanceMatrixComputation( Arrays.asList( SimpleTreeExamples.tree1() ), SimilarityMeasure.NORMALIZED_DIFFERENCE ).compute();
+		assertArrayEquals( new double[] { 0 }, distances[ 0 ], 0d );
+	}
+}
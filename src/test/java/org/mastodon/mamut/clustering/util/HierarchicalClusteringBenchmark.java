@@ -0,0 +1,90 @@
+package org.mastodon.mamut.clustering.util;
+
+import com.apporiented.algorithm.clustering.Cluster;
+import com.apporiented.algorithm.clustering.LinkageStrategy;
+import com.apporiented.algorithm.clustering.PDistClusteringAlgorithm;
+import org.mastodon.mamut.clustering.config.ClusteringMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the hierarchical clustering of a random distance matrix: {@link HierarchicalClustering} compared to the {@link PDistClusteringAlgorithm} of the apporiented library.
+ * <p>
+ * Run {@link #main(String...)} to get the throughput and, via the gc profiler, the allocation rate.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 2, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class HierarchicalClusteringBenchmark
+{
+	@Param( { "100", "500", "1000" } )
+	private int numberOfObjects;
+
+	@Param( { "AVERAGE_LINKAGE", "SINGLE_LINKAGE", "COMPLETE_LINKAGE" } )
+	private ClusteringMethod clusteringMethod;
+
+	private CondensedDistanceMatrix distances;
+
+	private String[] names;
+
+	@Setup
+	public void setup()
+	{
+		Random random = new Random( 42 );
+		distances = new CondensedDistanceMatrix( numberOfObjects );
+		for ( int i = 0; i < numberOfObjects; i++ )
+			for ( int j = i + 1; j < numberOfObjects; j++ )
+				distances.set( i, j, random.nextDouble() );
+		names = new String[ numberOfObjects ];
+		for ( int i = 0; i < numberOfObjects; i++ )
+			names[ i ] = String.valueOf( i );
+	}
+
+	@Benchmark
+	public LinkageMatrix hierarchicalClustering()
+	{
+		return HierarchicalClustering.cluster( distances, clusteringMethod.getLinkage() );
+	}
+
+	@Benchmark
+	public Cluster hierarchicalClusteringWithDendrogram()
+	{
+		return HierarchicalClustering.cluster( distances, clusteringMethod.getLinkage() ).toCluster( names );
+	}
+
+	@Benchmark
+	public Cluster apporiented()
+	{
+		LinkageStrategy linkageStrategy = clusteringMethod.getLinkageStrategy();
+		return new PDistClusteringAlgorithm().performClustering( new double[][] { distances.asDoubleArray() }, names, linkageStrategy );
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		Options options = new OptionsBuilder()
+				.include( HierarchicalClusteringBenchmark.class.getSimpleName() )
+				.addProfiler( GCProfiler.class )
+				.build();
+		new Runner( options ).run();
+	}
+}
@@ -0,0 +1,124 @@
+package org.mastodon.mamut.clustering.util;
+
+import com.apporiented.algorithm.clustering.CompleteLinkageStrategy;
+import com.apporiented.algorithm.clustering.LinkageStrategy;
+import com.apporiented.algorithm.clustering.SingleLinkageStrategy;
+import org.junit.Test;
+import org.mastodon.mamut.clustering.ClusterData;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class HierarchicalClusteringTest
+{
+
+	@Test
+	public void testSameAsApporiented()
+	{
+		Random random = new Random( 42 );
+		LinkageStrategy[] linkageStrategies = { new SingleLinkageStrategy(), new CompleteLinkageStrategy(), new AverageLinkageUPGMAStrategy(),
+				new AverageLinkageWPGMAStrategy() };
+		for ( int size = 2; size < 40; size++ )
+		{
+			CondensedDistanceMatrix distances = new CondensedDistanceMatrix( size );
+			for ( int i = 0; i < size; i++ )
+				for ( int j = i + 1; j < size; j++ )
+					distances.set( i, j, random.nextDouble() * 100 );
+			Integer[] objects = new Integer[ size ];
+			for ( int i = 0; i < size; i++ )
+				objects[ i ] = i;
+			for ( LinkageStrategy linkageStrategy : linkageStrategies )
+			{
+				ClusteringSession< Integer > expected = new ClusteringSession<>( objects, distances, wrap( linkageStrategy ) );
+				ClusteringSession< Integer > actual = new ClusteringSession<>( objects, distances, Linkage.of( linkageStrategy ) );
+				assertArrayEquals( sortedDistances( expected.getLinkageMatrix() ), sortedDistances( actual.getLinkageMatrix() ), 1e-9 );
+				for ( int classCount = 1; classCount <= size; classCount++ )
+					assertEquals( expected.getClassificationByClassCount( classCount ).getClassifiedObjects(),
+							actual.getClassificationByClassCount( classCount ).getClassifiedObjects() );
+			}
+		}
+	}
+
+	@Test
+	public void testLinkageMatrix()
+	{
+		CondensedDistanceMatrix distances = CondensedDistanceMatrix.fromSquare( ClusterData.fixedDistances );
+		for ( Linkage linkage : Linkage.values() )
+		{
+			LinkageMatrix linkageMatrix = HierarchicalClustering.cluster( distances, linkage );
+			int size = ClusterData.names.length;
+			assertEquals( size, linkageMatrix.size() );
+			double[][] array = linkageMatrix.toArray();
+			assertEquals( size - 1, array.length );
+			for ( int k = 0; k < array.length; k++ )
+			{
+				// merges refer to earlier clusters, have increasing distances and the smaller id first
+				assertTrue( array[ k ][ 0 ] < array[ k ][ 1 ] );
+				assertTrue( array[ k ][ 1 ] < size + k );
+				if ( k > 0 )
+					assertTrue( array[ k - 1 ][ 2 ] <= array[ k ][ 2 ] );
+			}
+			assertEquals( size, linkageMatrix.getClusterSize( size - 2 ) );
+		}
+	}
+
+	@Test
+	public void testSingleLinkage()
+	{
+		// 0 -1- 1 -2- 2, 3 is far away
+		CondensedDistanceMatrix distances = new CondensedDistanceMatrix( 4 );
+		distances.set( 0, 1, 1 );
+		distances.set( 0, 2, 3 );
+		distances.set( 1, 2, 2 );
+		distances.set( 0, 3, 10 );
+		distances.set( 1, 3, 11 );
+		distances.set( 2, 3, 12 );
+		LinkageMatrix linkageMatrix = HierarchicalClustering.cluster( distances, Linkage.SINGLE );
+		assertArrayEquals( new double[] { 0, 1, 1, 2 }, linkageMatrix.toArray()[ 0 ], 0d );
+		assertArrayEquals( new double[] { 2, 4, 2, 3 }, linkageMatrix.toArray()[ 1 ], 0d );
+		assertArrayEquals( new double[] { 3, 5, 10, 4 }, linkageMatrix.toArray()[ 2 ], 0d );
+	}
+
+	@Test
+	public void testTrivial()
+	{
+		assertEquals( 0, HierarchicalClustering.cluster( new CondensedDistanceMatrix( 0 ), Linkage.COMPLETE ).toArray().length );
+		assertEquals( 0, HierarchicalClustering.cluster( new CondensedDistanceMatrix( 1 ), Linkage.COMPLETE ).toArray().length );
+	}
+
+	@Test
+	public void testNotFinite()
+	{
+		for ( Linkage linkage : Linkage.values() )
+		{
+			CondensedDistanceMatrix distances = new CondensedDistanceMatrix( 3 );
+			distances.set( 0, 1, 1 );
+			distances.set( 0, 2, Double.NaN );
+			distances.set( 1, 2, Double.POSITIVE_INFINITY );
+			IllegalArgumentException exception = assertThrows( IllegalArgumentException.class, () -> HierarchicalClustering.cluster( distances, linkage ) );
+			assertTrue( exception.getMessage().contains( "object 0 and object 2" ) );
+		}
+	}
+
+	private static double[] sortedDistances( final LinkageMatrix linkageMatrix )
+	{
+		double[] distances = new double[ linkageMatrix.size() - 1 ];
+		for ( int k = 0; k < distances.length; k++ )
+			distances[ k ] = linkageMatrix.getDistance( k );
+		Arrays.sort( distances );
+		return distances;
+	}
+
+	/**
+	 * Wraps the given linkage strategy, such that it is not recognized by {@link Linkage#of(LinkageStrategy)} and the clustering algorithm of the apporiented library is used.
+	 */
+	private static LinkageStrategy wrap( final LinkageStrategy linkageStrategy )
+	{
+		return linkageStrategy::calculateDistance;
+	}
+}
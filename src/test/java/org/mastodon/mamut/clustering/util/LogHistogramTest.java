@@ -0,0 +1,56 @@
+package org.mastodon.mamut.clustering.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class LogHistogramTest
+{
+	@Test
+	public void testBuckets()
+	{
+		for ( long value = 0; value < 10_000; value++ )
+		{
+			int bucket = LogHistogram.bucket( value );
+			assertTrue( value <= LogHistogram.largestValue( bucket ) );
+			if ( bucket > 0 )
+				assertTrue( value > LogHistogram.largestValue( bucket - 1 ) );
+		}
+		assertEquals( Long.MAX_VALUE, LogHistogram.largestValue( LogHistogram.bucket( Long.MAX_VALUE ) ) );
+	}
+
+	@Test
+	public void testPercentile()
+	{
+		LogHistogram histogram = new LogHistogram();
+		assertEquals( 0, histogram.getPercentile( 50 ) );
+		for ( int value = 1; value <= 1000; value++ )
+			histogram.record( value );
+		assertEquals( 1000, histogram.getCount() );
+		assertEquals( 1000, histogram.getMax() );
+		assertEquals( 1000, histogram.getPercentile( 100 ) );
+		assertEquals( 1, histogram.getPercentile( 0 ) );
+		for ( int percentile : new int[] { 50, 90, 99 } )
+		{
+			long estimate = histogram.getPercentile( percentile );
+			assertTrue( estimate >= percentile * 10 );
+			assertTrue( estimate <= percentile * 10 * ( 1 + 1d / LogHistogram.SUB_BUCKETS ) );
+		}
+		assertThrows( IllegalArgumentException.class, () -> histogram.getPercentile( 101 ) );
+	}
+
+	@Test
+	public void testSmallValues()
+	{
+		LogHistogram histogram = new LogHistogram();
+		histogram.record( -5 );
+		histogram.record( 3 );
+		histogram.record( 3 );
+		histogram.record( 7 );
+		assertEquals( 0, histogram.getPercentile( 25 ) );
+		assertEquals( 3, histogram.getPercentile( 50 ) );
+		assertEquals( 7, histogram.getPercentile( 100 ) );
+	}
+}
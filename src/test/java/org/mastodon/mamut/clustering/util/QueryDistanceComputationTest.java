@@ -0,0 +1,72 @@
+package org.mastodon.mamut.clustering.util;
+
+import org.junit.Test;
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.treesimilarity.ZhangUnorderedTreeEditDistance;
+import org.mastodon.mamut.treesimilarity.tree.SimpleTreeExamples;
+import org.mastodon.mamut.treesimilarity.tree.SyntheticTrees;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class QueryDistanceComputationTest
+{
+	private final List< Tree< Double > > trees =
+			SyntheticTrees.simpleTrees( 42, 50, new SyntheticTrees.Shape( 4, 2, 0.5, SyntheticTrees.AttributeDistribution.UNIFORM, 10 ) );
+
+	@Test
+	public void testCompute()
+	{
+		Tree< Double > query = SimpleTreeExamples.tree3();
+		for ( SimilarityMeasure similarityMeasure : SimilarityMeasure.values() )
+		{
+			double[] expected = new double[ trees.size() ];
+			for ( int i = 0; i < expected.length; i++ )
+				expected[ i ] = similarityMeasure.compute( query, trees.get( i ), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION );
+			QueryDistanceComputation computation = new QueryDistanceComputation( query, similarityMeasure );
+			assertArrayEquals( expected, computation.compute( trees ), 0d );
+			// NB: the prepared query is reused
+			assertArrayEquals( expected, computation.compute( trees ), 0d );
+		}
+	}
+
+	@Test
+	public void testComputeOnGivenPool()
+	{
+		ForkJoinPool pool = new ForkJoinPool( 1 );
+		try
+		{
+			QueryDistanceComputation computation = new QueryDistanceComputation( trees.get( 0 ), SimilarityMeasure.NORMALIZED_DIFFERENCE );
+			assertArrayEquals( computation.compute( trees ), computation.compute( trees, pool ), 0d );
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testEmptyTrees()
+	{
+		Tree< Double > tree = SimpleTreeExamples.tree1();
+		List< Tree< Double > > targets = new ArrayList<>();
+		targets.add( null );
+		targets.add( tree );
+		assertArrayEquals( new double[] { 60, 0 }, new QueryDistanceComputation( tree, SimilarityMeasure.ABSOLUTE_DIFFERENCE ).compute( targets ), 0d );
+		assertArrayEquals( new double[] { 0, 60 }, new QueryDistanceComputation( null, SimilarityMeasure.ABSOLUTE_DIFFERENCE ).compute( targets ), 0d );
+		assertEquals( 0, new QueryDistanceComputation( tree, SimilarityMeasure.ABSOLUTE_DIFFERENCE ).compute( Collections.emptyList() ).length );
+	}
+
+	@Test
+	public void testNullSimilarityMeasure()
+	{
+		assertThrows( IllegalArgumentException.class, () -> new QueryDistanceComputation( trees.get( 0 ), null ) );
+	}
+}
@@ -0,0 +1,101 @@
+package org.mastodon.mamut.clustering.util;
+
+import org.junit.Test;
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.treesimilarity.ZhangUnorderedTreeEditDistance;
+import org.mastodon.mamut.treesimilarity.tree.SyntheticTrees;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class SimilaritySearchTest
+{
+	private final List< Tree< Double > > trees =
+			SyntheticTrees.simpleTrees( 42, 30, new SyntheticTrees.Shape( 4, 2, 0.5, SyntheticTrees.AttributeDistribution.UNIFORM, 10 ) );
+
+	@Test
+	public void testRange()
+	{
+		for ( SimilarityMeasure similarityMeasure : SimilarityMeasure.values() )
+		{
+			SimilaritySearch search = new SimilaritySearch( trees, similarityMeasure );
+			for ( int index = 0; index < trees.size(); index++ )
+			{
+				List< double[] > expected = bruteForce( similarityMeasure, index );
+				double cutoff = expected.get( expected.size() / 3 )[ 1 ];
+				List< SimilaritySearch.Neighbor > actual = search.range( index, cutoff );
+				int expectedCount = 0;
+				for ( double[] neighbor : expected )
+					if ( neighbor[ 1 ] < cutoff )
+						assertEquals( neighbor[ 1 ], actual.get( expectedCount++ ).getDistance(), 0d );
+				assertEquals( expectedCount, actual.size() );
+			}
+		}
+	}
+
+	@Test
+	public void testNearest()
+	{
+		for ( SimilarityMeasure similarityMeasure : SimilarityMeasure.values() )
+		{
+			SimilaritySearch search = new SimilaritySearch( trees, similarityMeasure );
+			for ( int index = 0; index < trees.size(); index++ )
+			{
+				List< double[] > expected = bruteForce( similarityMeasure, index );
+				for ( int k : new int[] { 1, 3, 10 } )
+				{
+					List< SimilaritySearch.Neighbor > actual = search.nearest( index, k );
+					assertEquals( k, actual.size() );
+					for ( int i = 0; i < k; i++ )
+					{
+						assertEquals( ( int ) expected.get( i )[ 0 ], actual.get( i ).getIndex() );
+						assertEquals( expected.get( i )[ 1 ], actual.get( i ).getDistance(), 0d );
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testQueryTree()
+	{
+		SimilaritySearch search = new SimilaritySearch( trees, SimilarityMeasure.ABSOLUTE_DIFFERENCE );
+		// a tree of the list is its own nearest neighbour, if it is given as query tree
+		List< SimilaritySearch.Neighbor > nearest = search.nearest( trees.get( 5 ), 1 );
+		assertEquals( 0, nearest.get( 0 ).getDistance(), 0d );
+		assertTrue( search.range( trees.get( 5 ), 0 ).isEmpty() );
+		Tree< Double > query = SyntheticTrees.simpleTree( new Random( 1 ),
+				new SyntheticTrees.Shape( 3, 2, 0.5, SyntheticTrees.AttributeDistribution.UNIFORM, 10 ) );
+		assertEquals( trees.size(), search.nearest( query, trees.size() + 5 ).size() );
+		assertEquals( trees.size(), search.range( query, Double.POSITIVE_INFINITY ).size() );
+	}
+
+	@Test
+	public void testExceptions()
+	{
+		SimilaritySearch search = new SimilaritySearch( trees, SimilarityMeasure.ABSOLUTE_DIFFERENCE );
+		assertThrows( IllegalArgumentException.class, () -> search.nearest( 0, -1 ) );
+		assertTrue( search.nearest( 0, 0 ).isEmpty() );
+	}
+
+	/**
+	 * Computes the distances of all other trees to the tree with the given index as pairs of index and distance, sorted by distance and index.
+	 */
+	private List< double[] > bruteForce( final SimilarityMeasure similarityMeasure, final int index )
+	{
+		List< double[] > neighbors = new ArrayList<>();
+		for ( int i = 0; i < trees.size(); i++ )
+			if ( i != index )
+				neighbors.add( new double[] { i,
+						similarityMeasure.compute( trees.get( index ), trees.get( i ), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION ) } );
+		neighbors.sort( Comparator.< double[] >comparingDouble( neighbor -> neighbor[ 1 ] ).thenComparingDouble( neighbor -> neighbor[ 0 ] ) );
+		return neighbors;
+	}
+}
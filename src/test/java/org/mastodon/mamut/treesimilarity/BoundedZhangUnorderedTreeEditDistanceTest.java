@@ -0,0 +1,104 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.junit.Test;
+import org.mastodon.mamut.treesimilarity.tree.SimpleTreeExamples;
+import org.mastodon.mamut.treesimilarity.tree.SyntheticTrees;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedZhangUnorderedTreeEditDistanceTest
+{
+	private static List< PreparedTree< Double > > preparedTrees( final SyntheticTrees.Shape shape )
+	{
+		List< PreparedTree< Double > > trees = new ArrayList<>();
+		for ( Tree< Double > tree : SyntheticTrees.simpleTrees( 42, 8, shape ) )
+			trees.add( PreparedTree.ofDoubles( tree, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION ) );
+		for ( Tree< Double > tree : Arrays.asList( SimpleTreeExamples.tree1(), SimpleTreeExamples.tree3(), SimpleTreeExamples.nonBinaryTree(),
+				SimpleTreeExamples.tree1a111(), SimpleTreeExamples.tree2c2() ) )
+			trees.add( PreparedTree.ofDoubles( tree, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION ) );
+		return trees;
+	}
+
+	@Test
+	public void testSameAsDense()
+	{
+		// NB: integer attributes, thus the float tables are exact
+		for ( SyntheticTrees.AttributeDistribution distribution : SyntheticTrees.AttributeDistribution.values() )
+		{
+			List< PreparedTree< Double > > trees = preparedTrees( new SyntheticTrees.Shape( 4, 2, 0.7, distribution, 5 ) );
+			for ( PreparedTree< Double > tree1 : trees )
+			{
+				for ( PreparedTree< Double > tree2 : trees )
+				{
+					DenseZhangUnorderedTreeEditDistance< Double > dense = new DenseZhangUnorderedTreeEditDistance<>( tree1, tree2 );
+					BoundedZhangUnorderedTreeEditDistance< Double > bounded = new BoundedZhangUnorderedTreeEditDistance<>( tree1, tree2 );
+					assertEquals( dense.compute(), bounded.compute(), 0d );
+					assertArrayEquals( dense.nodeMappingIndices(), bounded.nodeMappingIndices() );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBoxedCostFunction()
+	{
+		List< Tree< Double > > trees = SyntheticTrees.simpleTrees( 42, 4, new SyntheticTrees.Shape( 3, 3, 0.7, SyntheticTrees.AttributeDistribution.UNIFORM, 5 ) );
+		for ( Tree< Double > tree1 : trees )
+		{
+			for ( Tree< Double > tree2 : trees )
+			{
+				PreparedTree< Double > prepared1 = PreparedTree.of( tree1, ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION );
+				PreparedTree< Double > prepared2 = PreparedTree.of( tree2, ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION );
+				assertEquals( ZhangUnorderedTreeEditDistance.distance( tree1, tree2, ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION ),
+						new BoundedZhangUnorderedTreeEditDistance<>( prepared1, prepared2 ).compute(), 0d );
+			}
+		}
+	}
+
+	@Test
+	public void testPeakRows()
+	{
+		int length = 1000;
+		PreparedTree< Double > chain = PreparedTree.ofDoubles( SyntheticTrees.chain( length, 1d ), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+		// NB: the row of a node and the row of its child
+		assertEquals( 2, BoundedZhangUnorderedTreeEditDistance.peakRows( chain ) );
+		PreparedTree< Double > tree = PreparedTree.ofDoubles( SimpleTreeExamples.tree3(), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+		assertTrue( BoundedZhangUnorderedTreeEditDistance.peakRows( tree ) < tree.size() );
+		assertTrue( BoundedZhangUnorderedTreeEditDistance.boundedTableBytes( chain, chain ) < BoundedZhangUnorderedTreeEditDistance.denseTableBytes( chain, chain ) / 100 );
+	}
+
+	@Test
+	public void testMemoryBudget()
+	{
+		List< PreparedTree< Double > > trees = preparedTrees( new SyntheticTrees.Shape( 7, 2, 0.8, SyntheticTrees.AttributeDistribution.UNIFORM, 5 ) );
+		PreparedTree< Double > tree1 = trees.get( 0 );
+		PreparedTree< Double > tree2 = trees.get( 1 );
+		long boundedBytes = BoundedZhangUnorderedTreeEditDistance.boundedTableBytes( tree1, tree2 );
+		assertTrue( boundedBytes < BoundedZhangUnorderedTreeEditDistance.denseTableBytes( tree1, tree2 ) );
+		double expected = ZhangUnorderedTreeEditDistance.distance( tree1, tree2 );
+		int[] expectedMapping = ZhangUnorderedTreeEditDistance.nodeMappingIndices( tree1, tree2 );
+		assertEquals( expected, ZhangUnorderedTreeEditDistance.distance( tree1, tree2, Long.MAX_VALUE ), 0d );
+		assertEquals( expected, ZhangUnorderedTreeEditDistance.distance( tree1, tree2, boundedBytes ), 0d );
+		assertArrayEquals( expectedMapping, ZhangUnorderedTreeEditDistance.nodeMappingIndices( tree1, tree2, boundedBytes ) );
+		assertThrows( IllegalArgumentException.class, () -> ZhangUnorderedTreeEditDistance.distance( tree1, tree2, boundedBytes - 1 ) );
+		assertThrows( IllegalArgumentException.class, () -> ZhangUnorderedTreeEditDistance.nodeMappingIndices( tree1, tree2, 0 ) );
+	}
+
+	@Test
+	public void testTablesLargerThanArray()
+	{
+		// NB: 50000 * 50000 cells exceed the maximum length of an array
+		PreparedTree< Double > chain = PreparedTree.ofDoubles( SyntheticTrees.chain( 50_000, 1d ), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+		assertFalse( DenseZhangUnorderedTreeEditDistance.fitsTables( chain, chain ) );
+		assertThrows( IllegalArgumentException.class, () -> new DenseZhangUnorderedTreeEditDistance<>( chain, chain ) );
+	}
+}
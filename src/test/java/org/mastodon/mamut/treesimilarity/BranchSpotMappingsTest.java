@@ -0,0 +1,71 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.junit.Test;
+import org.mastodon.collection.RefMaps;
+import org.mastodon.collection.RefRefMap;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.branch.BranchSpot;
+import org.mastodon.mamut.model.branch.ModelBranchGraph;
+import org.mastodon.mamut.treesimilarity.tree.CompactBranchSpotTree;
+import org.mastodon.mamut.treesimilarity.tree.SimpleTreeExamples;
+import org.mastodon.mamut.treesimilarity.tree.SyntheticModels;
+import org.mastodon.mamut.treesimilarity.tree.SyntheticTrees;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+import org.mastodon.properties.IntPropertyMap;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class BranchSpotMappingsTest
+{
+	private final Model model = SyntheticModels.model( 42, 2, new SyntheticTrees.Shape( 4, 2, 0.7, SyntheticTrees.AttributeDistribution.UNIFORM, 5 ) );
+
+	@Test
+	public void testWriteTo()
+	{
+		ModelBranchGraph branchGraph = model.getBranchGraph();
+		List< Tree< Double > > trees = SyntheticModels.compactBranchSpotTrees( model );
+		CompactBranchSpotTree tree1 = ( CompactBranchSpotTree ) trees.get( 0 );
+		CompactBranchSpotTree tree2 = ( CompactBranchSpotTree ) trees.get( 1 );
+		PreparedTree< Double > prepared1 = PreparedTree.ofDoubles( tree1, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+		PreparedTree< Double > prepared2 = PreparedTree.ofDoubles( tree2, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+		int[] indices = ZhangUnorderedTreeEditDistance.nodeMappingIndices( prepared1, prepared2 );
+
+		RefRefMap< BranchSpot, BranchSpot > refRefMap = RefMaps.createRefRefMap( branchGraph.vertices(), branchGraph.vertices() );
+		BranchSpotMappings.writeTo( prepared1, prepared2, refRefMap );
+		IntPropertyMap< BranchSpot > propertyMap = new IntPropertyMap<>( branchGraph.vertices().getRefPool(), -1 );
+		BranchSpotMappings.writeTo( prepared1, prepared2, propertyMap );
+
+		BranchSpot ref1 = branchGraph.vertexRef();
+		BranchSpot ref2 = branchGraph.vertexRef();
+		int mapped = 0;
+		for ( int i = 0; i < indices.length; i++ )
+		{
+			BranchSpot branchSpot1 = tree1.getBranchSpot( i, ref1 );
+			if ( indices[ i ] < 0 )
+			{
+				assertEquals( -1, propertyMap.get( branchSpot1 ) );
+				continue;
+			}
+			mapped++;
+			BranchSpot branchSpot2 = tree2.getBranchSpot( indices[ i ], ref2 );
+			assertEquals( branchSpot2, refRefMap.get( branchSpot1 ) );
+			assertEquals( branchGraph.vertices().getRefPool().getId( branchSpot2 ), propertyMap.get( branchSpot1 ) );
+		}
+		assertEquals( mapped, refRefMap.size() );
+		branchGraph.releaseRef( ref1 );
+		branchGraph.releaseRef( ref2 );
+	}
+
+	@Test
+	public void testOtherTrees()
+	{
+		ModelBranchGraph branchGraph = model.getBranchGraph();
+		PreparedTree< Double > tree1 = PreparedTree.ofDoubles( SimpleTreeExamples.tree1(), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+		PreparedTree< Double > tree2 = PreparedTree.ofDoubles( SimpleTreeExamples.tree2(), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+		assertThrows( IllegalArgumentException.class,
+				() -> BranchSpotMappings.writeTo( tree1, tree2, new IntPropertyMap<>( branchGraph.vertices().getRefPool(), -1 ) ) );
+	}
+}
@@ -0,0 +1,131 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.junit.Test;
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.treesimilarity.tree.CompactTree;
+import org.mastodon.mamut.treesimilarity.tree.SimpleTreeExamples;
+import org.mastodon.mamut.treesimilarity.tree.SyntheticTrees;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class DoubleCostFunctionTest
+{
+	/**
+	 * Changes are cheaper than insertions, which are cheaper than deletions.
+	 */
+	private static final DoubleCostFunction ASYMMETRIC_COSTS = new DoubleCostFunction()
+	{
+		@Override
+		public double change( final double a, final double b )
+		{
+			return 0.5 * Math.abs( a - b );
+		}
+
+		@Override
+		public double insert( final double b )
+		{
+			return b;
+		}
+
+		@Override
+		public double delete( final double a )
+		{
+			return 2 * a;
+		}
+	};
+
+	@Test
+	public void testDefaultCostFunction()
+	{
+		DoubleCostFunction costs = ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION;
+		BiFunction< Double, Double, Double > boxed = ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION;
+		for ( double a : new double[] { 0, 1.5, 10 } )
+		{
+			assertEquals( boxed.apply( a, null ), costs.delete( a ), 0d );
+			assertEquals( boxed.apply( null, a ), costs.insert( a ), 0d );
+			for ( double b : new double[] { 0, 2, 7.25 } )
+				assertEquals( boxed.apply( a, b ), costs.change( a, b ), 0d );
+		}
+	}
+
+	@Test
+	public void testBoxed()
+	{
+		BiFunction< Double, Double, Double > boxed = ASYMMETRIC_COSTS.boxed();
+		assertEquals( 2.5, boxed.apply( 3d, 8d ), 0d );
+		assertEquals( 8, boxed.apply( null, 8d ), 0d );
+		assertEquals( 6, boxed.apply( 3d, null ), 0d );
+		assertEquals( 0, boxed.apply( null, null ), 0d );
+	}
+
+	@Test
+	public void testSameDistances()
+	{
+		List< Tree< Double > > trees = trees();
+		BiFunction< Double, Double, Double > boxedCosts = ASYMMETRIC_COSTS.boxed();
+		for ( Tree< Double > tree1 : trees )
+		{
+			for ( Tree< Double > tree2 : trees )
+			{
+				for ( SimilarityMeasure similarityMeasure : SimilarityMeasure.values() )
+				{
+					PreparedTree< Double > prepared1 = PreparedTree.of( tree1, ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION );
+					PreparedTree< Double > prepared2 = PreparedTree.of( tree2, ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION );
+					assertEquals( similarityMeasure.compute( prepared1, prepared2 ),
+							similarityMeasure.compute( tree1, tree2, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION ), 0d );
+					assertEquals( similarityMeasure.compute( PreparedTree.of( tree1, boxedCosts ), PreparedTree.of( tree2, boxedCosts ) ),
+							similarityMeasure.compute( tree1, tree2, ASYMMETRIC_COSTS ), 0d );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCompactTree()
+	{
+		List< Tree< Double > > trees = trees();
+		// NB: compact trees cannot be empty
+		trees.remove( null );
+		for ( Tree< Double > tree1 : trees )
+		{
+			for ( Tree< Double > tree2 : trees )
+			{
+				double expected = ZhangUnorderedTreeEditDistance.distance( tree1, tree2, ASYMMETRIC_COSTS.boxed() );
+				double actual = ZhangUnorderedTreeEditDistance.distance( PreparedTree.ofDoubles( CompactTree.copyOf( tree1 ), ASYMMETRIC_COSTS ),
+						PreparedTree.ofDoubles( CompactTree.copyOf( tree2 ), ASYMMETRIC_COSTS ) );
+				assertEquals( expected, actual, 0d );
+			}
+		}
+	}
+
+	@Test
+	public void testSameCostFunction()
+	{
+		Tree< Double > tree = SimpleTreeExamples.tree1();
+		PreparedTree< Double > primitive1 = PreparedTree.ofDoubles( tree, ASYMMETRIC_COSTS );
+		PreparedTree< Double > primitive2 = PreparedTree.ofDoubles( SimpleTreeExamples.tree2(), ASYMMETRIC_COSTS );
+		PreparedTree< Double > boxed = PreparedTree.of( tree, ASYMMETRIC_COSTS.boxed() );
+		assertTrue( primitive1.hasSameCostFunction( primitive2 ) );
+		assertFalse( primitive1.hasSameCostFunction( boxed ) );
+		assertFalse( boxed.hasSameCostFunction( primitive1 ) );
+		assertThrows( IllegalArgumentException.class, () -> ZhangUnorderedTreeEditDistance.distance( primitive1, boxed ) );
+		assertThrows( IllegalArgumentException.class, () -> PreparedTree.ofDoubles( tree, null ) );
+	}
+
+	private static List< Tree< Double > > trees()
+	{
+		List< Tree< Double > > trees = new ArrayList<>( Arrays.asList( null, SimpleTreeExamples.tree1(), SimpleTreeExamples.tree2(),
+				SimpleTreeExamples.tree5(), SimpleTreeExamples.tree6(), SimpleTreeExamples.tree8(), SimpleTreeExamples.tree9() ) );
+		trees.addAll( SyntheticTrees.simpleTrees( 7, 5, new SyntheticTrees.Shape( 3, 2, 0.7, SyntheticTrees.AttributeDistribution.EXPONENTIAL, 10 ) ) );
+		return trees;
+	}
+}
@@ -0,0 +1,91 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.junit.Test;
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.treesimilarity.tree.CompactTree;
+import org.mastodon.mamut.treesimilarity.tree.SimpleTreeExamples;
+import org.mastodon.mamut.treesimilarity.tree.SyntheticTrees;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+import org.mastodon.mamut.treesimilarity.tree.TreeUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class PreparedTreeTest
+{
+	private final static BiFunction< Double, Double, Double > defaultCosts = ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION;
+
+	@Test
+	public void testSameDistances()
+	{
+		List< Tree< Double > > trees = new ArrayList<>( Arrays.asList( null, SimpleTreeExamples.tree1(), SimpleTreeExamples.tree2(),
+				SimpleTreeExamples.tree3(), SimpleTreeExamples.tree4(), SimpleTreeExamples.tree5(), SimpleTreeExamples.tree6(),
+				SimpleTreeExamples.tree7(), SimpleTreeExamples.tree8(), SimpleTreeExamples.tree9() ) );
+		trees.addAll( SyntheticTrees.simpleTrees( 42, 10, new SyntheticTrees.Shape( 4, 2, 0.7, SyntheticTrees.AttributeDistribution.UNIFORM, 10 ) ) );
+		List< PreparedTree< Double > > preparedTrees = new ArrayList<>();
+		for ( Tree< Double > tree : trees )
+			preparedTrees.add( PreparedTree.of( tree, defaultCosts ) );
+		for ( int i = 0; i < trees.size(); i++ )
+			for ( int j = 0; j < trees.size(); j++ )
+				for ( SimilarityMeasure similarityMeasure : SimilarityMeasure.values() )
+					assertEquals( similarityMeasure.compute( trees.get( i ), trees.get( j ), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION ),
+							similarityMeasure.compute( preparedTrees.get( i ), preparedTrees.get( j ) ), 0d );
+	}
+
+	@Test
+	public void testPreparedTree()
+	{
+		Tree< Double > tree = SimpleTreeExamples.tree1();
+		PreparedTree< Double > preparedTree = PreparedTree.of( tree, defaultCosts );
+		assertSame( tree, preparedTree.getTree() );
+		assertSame( defaultCosts, preparedTree.getCostFunction() );
+		assertEquals( TreeUtils.size( tree ), preparedTree.size() );
+		assertSame( tree, preparedTree.getSubtree( preparedTree.size() - 1 ) );
+		assertEquals( preparedTree.size(), preparedTree.getSubtreeSize( preparedTree.size() - 1 ) );
+		assertEquals( 1, preparedTree.getSubtreeSize( 0 ) );
+		assertEquals( ZhangUnorderedTreeEditDistance.distance( tree, null, defaultCosts ), preparedTree.getDistanceToNull(), 0d );
+	}
+
+	@Test
+	public void testCompactTree()
+	{
+		Tree< Double > tree = SimpleTreeExamples.tree6();
+		PreparedTree< Double > expected = PreparedTree.of( tree, defaultCosts );
+		PreparedTree< Double > actual = PreparedTree.of( CompactTree.copyOf( tree ), defaultCosts );
+		assertEquals( expected.size(), actual.size() );
+		assertEquals( expected.getDistanceToNull(), actual.getDistanceToNull(), 0d );
+		for ( int i = 0; i < expected.size(); i++ )
+		{
+			assertEquals( expected.getSubtreeSize( i ), actual.getSubtreeSize( i ) );
+			assertEquals( expected.getSubtree( i ).getAttribute(), actual.getSubtree( i ).getAttribute() );
+		}
+	}
+
+	@Test
+	public void testEmptyTree()
+	{
+		PreparedTree< Double > empty = PreparedTree.of( null, defaultCosts );
+		assertTrue( empty.isEmpty() );
+		assertNull( empty.getTree() );
+		assertEquals( 0, empty.size() );
+		assertEquals( 0, empty.getDistanceToNull(), 0d );
+		assertEquals( 0, ZhangUnorderedTreeEditDistance.normalizedDistance( empty, empty ), 0d );
+	}
+
+	@Test
+	public void testExceptions()
+	{
+		assertThrows( IllegalArgumentException.class, () -> PreparedTree.of( SimpleTreeExamples.tree1(), null ) );
+		PreparedTree< Double > tree1 = PreparedTree.of( SimpleTreeExamples.tree1(), defaultCosts );
+		PreparedTree< Double > tree2 = PreparedTree.of( SimpleTreeExamples.tree2(), ( a, b ) -> 1d );
+		assertThrows( IllegalArgumentException.class, () -> ZhangUnorderedTreeEditDistance.distance( tree1, tree2 ) );
+	}
+}
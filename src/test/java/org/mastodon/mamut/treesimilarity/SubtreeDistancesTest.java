@@ -0,0 +1,77 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.junit.Test;
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.treesimilarity.tree.CompactTree;
+import org.mastodon.mamut.treesimilarity.tree.SimpleTreeExamples;
+import org.mastodon.mamut.treesimilarity.tree.SyntheticTrees;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class SubtreeDistancesTest
+{
+	@Test
+	public void testSubtreeDistances()
+	{
+		List< Tree< Double > > trees =
+				SyntheticTrees.simpleTrees( 42, 2, new SyntheticTrees.Shape( 4, 2, 0.7, SyntheticTrees.AttributeDistribution.UNIFORM, 10 ) );
+		SubtreeDistances< Double > subtreeDistances =
+				ZhangUnorderedTreeEditDistance.subtreeDistances( trees.get( 0 ), trees.get( 1 ), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION );
+		int size1 = subtreeDistances.size1();
+		int size2 = subtreeDistances.size2();
+		assertEquals( size1 * size2, subtreeDistances.getMatrix().length );
+		assertEquals( ZhangUnorderedTreeEditDistance.distance( trees.get( 0 ), trees.get( 1 ), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION ),
+				subtreeDistances.get( size1 - 1, size2 - 1 ), 0d );
+		for ( int i = 0; i < size1; i++ )
+		{
+			for ( int j = 0; j < size2; j++ )
+			{
+				Tree< Double > subtree1 = subtreeDistances.getTree1().getSubtree( i );
+				Tree< Double > subtree2 = subtreeDistances.getTree2().getSubtree( j );
+				assertEquals( subtreeDistances.getMatrix()[ i * size2 + j ], subtreeDistances.get( i, j ), 0d );
+				for ( SimilarityMeasure similarityMeasure : SimilarityMeasure.values() )
+					assertEquals( similarityMeasure.compute( subtree1, subtree2, ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION ),
+							similarityMeasure.compute( subtreeDistances, i, j ), 0d );
+			}
+		}
+	}
+
+	@Test
+	public void testCompactTree()
+	{
+		CompactTree tree1 = CompactTree.copyOf( SimpleTreeExamples.tree3() );
+		CompactTree tree2 = CompactTree.copyOf( SimpleTreeExamples.tree4() );
+		SubtreeDistances< Double > subtreeDistances =
+				ZhangUnorderedTreeEditDistance.subtreeDistances( PreparedTree.ofDoubles( tree1, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION ),
+						PreparedTree.ofDoubles( tree2, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION ) );
+		// NB: the indices are the node indices of the compact trees
+		for ( int i = 0; i < tree1.size(); i++ )
+			assertSame( tree1.getNode( i ), subtreeDistances.getTree1().getSubtree( i ) );
+		for ( int j = 0; j < tree2.size(); j++ )
+			assertEquals( ZhangUnorderedTreeEditDistance.distance( tree1, tree2.getNode( j ), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION ),
+					subtreeDistances.get( tree1.getRootIndex(), j ), 0d );
+	}
+
+	@Test
+	public void testEmptyTree()
+	{
+		SubtreeDistances< Double > subtreeDistances =
+				ZhangUnorderedTreeEditDistance.subtreeDistances( null, SimpleTreeExamples.tree1(), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION );
+		assertEquals( 0, subtreeDistances.size1() );
+		assertEquals( 3, subtreeDistances.size2() );
+		assertEquals( 0, subtreeDistances.getMatrix().length );
+	}
+
+	@Test
+	public void testDifferentCostFunctions()
+	{
+		PreparedTree< Double > tree1 = PreparedTree.of( SimpleTreeExamples.tree1(), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION );
+		PreparedTree< Double > tree2 = PreparedTree.ofDoubles( SimpleTreeExamples.tree2(), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+		assertThrows( IllegalArgumentException.class, () -> ZhangUnorderedTreeEditDistance.subtreeDistances( tree1, tree2 ) );
+	}
+}
@@ -0,0 +1,91 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.junit.Test;
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.treesimilarity.tree.SimpleTree;
+import org.mastodon.mamut.treesimilarity.tree.SyntheticTrees;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class SubtreeMemoTest
+{
+	private final List< Tree< Double > > trees =
+			SyntheticTrees.simpleTrees( 42, 20, new SyntheticTrees.Shape( 5, 2, 0.6, SyntheticTrees.AttributeDistribution.UNIFORM, 2 ) );
+
+	@Test
+	public void testSameDistances()
+	{
+		// NB: isomorphic copies of some trees
+		List< Tree< Double > > trees = new ArrayList<>( this.trees );
+		trees.addAll( SyntheticTrees.simpleTrees( 42, 5, new SyntheticTrees.Shape( 5, 2, 0.6, SyntheticTrees.AttributeDistribution.UNIFORM, 2 ) ) );
+		SubtreeMemo memo = new SubtreeMemo();
+		List< PreparedTree< Double > > preparedTrees = new ArrayList<>();
+		for ( Tree< Double > tree : trees )
+			preparedTrees.add( PreparedTree.ofDoubles( tree, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION, memo ) );
+		for ( int i = 0; i < trees.size(); i++ )
+			for ( int j = 0; j < trees.size(); j++ )
+				for ( SimilarityMeasure similarityMeasure : SimilarityMeasure.values() )
+					assertEquals( similarityMeasure.compute( trees.get( i ), trees.get( j ), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION ),
+							similarityMeasure.compute( preparedTrees.get( i ), preparedTrees.get( j ) ), 0d );
+		assertTrue( memo.getReusedCells() > 0 );
+		assertTrue( memo.getReusedPairs() > 0 );
+		assertTrue( memo.getNumberOfEntries() > 0 );
+		assertEquals( ( double ) memo.getReusedCells() / memo.getCells(), memo.getCellHitRate(), 0d );
+		assertEquals( ( double ) memo.getReusedPairs() / memo.getPairs(), memo.getPairHitRate(), 0d );
+	}
+
+	@Test
+	public void testIsomorphicSubtrees()
+	{
+		// same attributes, children in different order
+		SimpleTree< Double > tree1 = new SimpleTree<>( 1d );
+		tree1.addChild( new SimpleTree<>( 2d ) );
+		tree1.addChild( new SimpleTree<>( 3d ) );
+		SimpleTree< Double > tree2 = new SimpleTree<>( 1d );
+		tree2.addChild( new SimpleTree<>( 3d ) );
+		tree2.addChild( new SimpleTree<>( 2d ) );
+		SimpleTree< Double > tree3 = new SimpleTree<>( 1d );
+		tree3.addChild( new SimpleTree<>( 2d ) );
+		tree3.addChild( new SimpleTree<>( 2d ) );
+
+		SubtreeMemo memo = new SubtreeMemo();
+		PreparedTree< Double > prepared1 = PreparedTree.ofDoubles( tree1, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION, memo );
+		PreparedTree< Double > prepared2 = PreparedTree.ofDoubles( tree2, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION, memo );
+		PreparedTree< Double > prepared3 = PreparedTree.ofDoubles( tree3, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION, memo );
+		assertEquals( prepared1.classes[ 2 ], prepared2.classes[ 2 ] );
+		assertNotEquals( prepared1.classes[ 2 ], prepared3.classes[ 2 ] );
+		assertEquals( 4, memo.getNumberOfClasses() );
+		// NB: both leaves of tree3 are represented by the first one
+		assertEquals( 0, prepared3.representatives[ 1 ] );
+		assertEquals( 2, prepared3.representatives[ 2 ] );
+	}
+
+	@Test
+	public void testOtherCostFunction()
+	{
+		SubtreeMemo memo = new SubtreeMemo();
+		PreparedTree.ofDoubles( trees.get( 0 ), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION, memo );
+		assertThrows( IllegalArgumentException.class, () -> PreparedTree.of( trees.get( 0 ), ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION, memo ) );
+	}
+
+	@Test
+	public void testMaxEntries()
+	{
+		SubtreeMemo memo = new SubtreeMemo( 0 );
+		PreparedTree< Double > tree1 = PreparedTree.ofDoubles( trees.get( 0 ), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION, memo );
+		PreparedTree< Double > tree2 = PreparedTree.ofDoubles( trees.get( 1 ), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION, memo );
+		ZhangUnorderedTreeEditDistance.distance( tree1, tree2 );
+		ZhangUnorderedTreeEditDistance.distance( tree1, tree2 );
+		assertEquals( 0, memo.getNumberOfEntries() );
+		assertEquals( 2, memo.getPairs() );
+		assertEquals( 0, memo.getReusedPairs() );
+		assertThrows( IllegalArgumentException.class, () -> new SubtreeMemo( -1 ) );
+	}
+}
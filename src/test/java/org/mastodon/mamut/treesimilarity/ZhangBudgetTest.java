@@ -0,0 +1,73 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.junit.Test;
+import org.mastodon.mamut.treesimilarity.tree.SyntheticTrees;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class ZhangBudgetTest
+{
+	private final List< Tree< Double > > trees =
+			SyntheticTrees.simpleTrees( 42, 2, new SyntheticTrees.Shape( 5, 2, 0.8, SyntheticTrees.AttributeDistribution.UNIFORM, 5 ) );
+
+	private final PreparedTree< Double > tree1 = PreparedTree.ofDoubles( trees.get( 0 ), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+
+	private final PreparedTree< Double > tree2 = PreparedTree.ofDoubles( trees.get( 1 ), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+
+	@Test
+	public void testUnlimited()
+	{
+		assertEquals( ZhangUnorderedTreeEditDistance.distance( tree1, tree2 ), ZhangUnorderedTreeEditDistance.distance( tree1, tree2, ZhangBudget.UNLIMITED ), 0d );
+	}
+
+	@Test
+	public void testCells()
+	{
+		long cells = ( long ) tree1.size() * tree2.size();
+		assertEquals( ZhangUnorderedTreeEditDistance.distance( tree1, tree2 ), ZhangUnorderedTreeEditDistance.distance( tree1, tree2, ZhangBudget.ofCells( cells ) ), 0d );
+		assertThrows( CancellationException.class, () -> ZhangUnorderedTreeEditDistance.distance( tree1, tree2, ZhangBudget.ofCells( cells - 1 ) ) );
+		assertThrows( IllegalArgumentException.class, () -> ZhangBudget.ofCells( -1 ) );
+	}
+
+	@Test
+	public void testTime()
+	{
+		PreparedTree< Double > chain = PreparedTree.ofDoubles( SyntheticTrees.chain( 1000, 1d ), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+		assertThrows( CancellationException.class, () -> ZhangUnorderedTreeEditDistance.distance( chain, chain, ZhangBudget.ofTime( 0, TimeUnit.NANOSECONDS ) ) );
+		assertEquals( ZhangUnorderedTreeEditDistance.distance( tree1, tree2 ),
+				ZhangUnorderedTreeEditDistance.distance( tree1, tree2, ZhangBudget.ofTime( 1, TimeUnit.HOURS ) ), 0d );
+		assertThrows( IllegalArgumentException.class, () -> ZhangBudget.ofTime( -1, TimeUnit.SECONDS ) );
+	}
+
+	@Test
+	public void testCancellation()
+	{
+		// NB: canceled while the computation is running, after a few rows
+		AtomicInteger checks = new AtomicInteger();
+		ZhangBudget budget = ZhangBudget.UNLIMITED.withCancellation( () -> checks.incrementAndGet() > 3 );
+		assertThrows( CancellationException.class, () -> ZhangUnorderedTreeEditDistance.distance( tree1, tree2, budget ) );
+		assertEquals( 4, checks.get() );
+		// NB: both tokens are checked
+		assertThrows( CancellationException.class,
+				() -> ZhangUnorderedTreeEditDistance.distance( tree1, tree2, ZhangBudget.UNLIMITED.withCancellation( () -> true ).withCancellation( () -> false ) ) );
+		assertThrows( IllegalArgumentException.class, () -> ZhangBudget.UNLIMITED.withCancellation( null ) );
+	}
+
+	@Test
+	public void testMemo()
+	{
+		SubtreeMemo memo = new SubtreeMemo();
+		PreparedTree< Double > memoTree1 = PreparedTree.ofDoubles( trees.get( 0 ), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION, memo );
+		PreparedTree< Double > memoTree2 = PreparedTree.ofDoubles( trees.get( 1 ), ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION, memo );
+		double distance = ZhangUnorderedTreeEditDistance.distance( memoTree1, memoTree2 );
+		// NB: memoized distances do not count against the budget
+		assertEquals( distance, ZhangUnorderedTreeEditDistance.distance( memoTree1, memoTree2, ZhangBudget.ofCells( 0 ) ), 0d );
+	}
+}
@@ -0,0 +1,81 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.junit.Test;
+import org.mastodon.mamut.treesimilarity.tree.SimpleTreeExamples;
+import org.mastodon.mamut.treesimilarity.tree.SyntheticTrees;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ZhangLowerBoundTest
+{
+	private final static BiFunction< Double, Double, Double > defaultCosts = ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION;
+
+	@Test
+	public void testLowerBoundSimpleTrees()
+	{
+		List< Tree< Double > > trees = Arrays.asList( null, SimpleTreeExamples.tree1(), SimpleTreeExamples.tree2(), SimpleTreeExamples.tree3(),
+				SimpleTreeExamples.tree4(), SimpleTreeExamples.tree5(), SimpleTreeExamples.tree6(), SimpleTreeExamples.tree7(),
+				SimpleTreeExamples.tree8(), SimpleTreeExamples.tree9() );
+		assertLowerBounds( trees );
+	}
+
+	@Test
+	public void testLowerBoundRandomTrees()
+	{
+		for ( SyntheticTrees.AttributeDistribution distribution : SyntheticTrees.AttributeDistribution.values() )
+			assertLowerBounds( SyntheticTrees.simpleTrees( 42, 20, new SyntheticTrees.Shape( 4, 2, 0.6, distribution, 10 ) ) );
+	}
+
+	@Test
+	public void testLowerBoundToNull()
+	{
+		// the distance to the empty tree is known exactly
+		Tree< Double > tree = SimpleTreeExamples.tree1();
+		assertEquals( ZhangUnorderedTreeEditDistance.distance( tree, null, defaultCosts ), ZhangLowerBound.lowerBound( tree, null, defaultCosts ), 0d );
+		assertEquals( 0, ZhangLowerBound.lowerBound( null, null, defaultCosts ), 0d );
+	}
+
+	@Test
+	public void testSummary()
+	{
+		Tree< Double > tree = SimpleTreeExamples.tree1();
+		ZhangLowerBound.Summary summary = ZhangLowerBound.Summary.of( tree, defaultCosts );
+		assertEquals( 3, summary.size() );
+		assertEquals( ZhangUnorderedTreeEditDistance.distance( tree, null, defaultCosts ), summary.getCost(), 0d );
+		assertEquals( 0, ZhangLowerBound.Summary.of( null, defaultCosts ).size() );
+	}
+
+	@Test
+	public void testDistanceIfBelow()
+	{
+		Tree< Double > tree1 = SimpleTreeExamples.tree1();
+		Tree< Double > tree2 = SimpleTreeExamples.tree2();
+		// distance is 20
+		assertEquals( 20d, ZhangUnorderedTreeEditDistance.distanceIfBelow( tree1, tree2, defaultCosts, 21 ), 0d );
+		assertEquals( Double.POSITIVE_INFINITY, ZhangUnorderedTreeEditDistance.distanceIfBelow( tree1, tree2, defaultCosts, 20 ), 0d );
+		assertEquals( Double.POSITIVE_INFINITY, ZhangUnorderedTreeEditDistance.distanceIfBelow( tree1, null, defaultCosts, 1 ), 0d );
+		assertThrows( IllegalArgumentException.class, () -> ZhangUnorderedTreeEditDistance.distanceIfBelow( tree1, tree2, null, 1 ) );
+	}
+
+	private static void assertLowerBounds( final List< Tree< Double > > trees )
+	{
+		for ( Tree< Double > tree1 : trees )
+		{
+			for ( Tree< Double > tree2 : trees )
+			{
+				double distance = ZhangUnorderedTreeEditDistance.distance( tree1, tree2, defaultCosts );
+				double lowerBound = ZhangLowerBound.lowerBound( tree1, tree2, defaultCosts );
+				assertTrue( "lower bound " + lowerBound + " exceeds distance " + distance, lowerBound <= distance + 1e-9 );
+				double distanceIfBelow = ZhangUnorderedTreeEditDistance.distanceIfBelow( tree1, tree2, defaultCosts, distance + 1 );
+				assertEquals( distance, distanceIfBelow, 0d );
+			}
+		}
+	}
+}
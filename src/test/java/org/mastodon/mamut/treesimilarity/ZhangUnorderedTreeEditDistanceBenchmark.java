@@ -0,0 +1,84 @@
+package org.mastodon.mamut.treesimilarity;
+
+import org.mastodon.mamut.treesimilarity.tree.SyntheticTrees;
+import org.mastodon.mamut.treesimilarity.tree.Tree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the computation of the distance and the node mapping between two random trees with {@link ZhangUnorderedTreeEditDistance}.
+ * <p>
+ * Run {@link #main(String...)} to get the throughput and, via the gc profiler, the allocation rate.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ZhangUnorderedTreeEditDistanceBenchmark
+{
+	@Param( { "4", "6", "8" } )
+	private int depth;
+
+	@Param( { "2", "3" } )
+	private int branchingFactor;
+
+	@Param( { "CONSTANT", "UNIFORM", "EXPONENTIAL" } )
+	private SyntheticTrees.AttributeDistribution attributeDistribution;
+
+	@Param( { "HASH_MAP", "DENSE_ARRAY" } )
+	private ZhangImplementation implementation;
+
+	private Tree< Double > tree1;
+
+	private Tree< Double > tree2;
+
+	@Setup
+	public void setup()
+	{
+		SyntheticTrees.Shape shape = new SyntheticTrees.Shape( depth, branchingFactor, 0.8, attributeDistribution, 10 );
+		List< Tree< Double > > trees = SyntheticTrees.simpleTrees( 42, 2, shape );
+		tree1 = trees.get( 0 );
+		tree2 = trees.get( 1 );
+	}
+
+	@Benchmark
+	public double distance()
+	{
+		return ZhangUnorderedTreeEditDistance.distance( tree1, tree2, ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION, implementation );
+	}
+
+	@Benchmark
+	public Map< Tree< Double >, Tree< Double > > nodeMapping()
+	{
+		return ZhangUnorderedTreeEditDistance.nodeMapping( tree1, tree2, ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION, implementation );
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		Options options = new OptionsBuilder()
+				.include( ZhangUnorderedTreeEditDistanceBenchmark.class.getSimpleName() )
+				.addProfiler( GCProfiler.class )
+				.build();
+		new Runner( options ).run();
+	}
+}
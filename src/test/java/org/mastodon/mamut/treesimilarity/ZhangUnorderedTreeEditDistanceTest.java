@@ -2,12 +2,18 @@ package org.mastodon.mamut.treesimilarity;
 
 import org.junit.Test;
 import org.mastodon.mamut.treesimilarity.tree.BranchSpotTreeExamples;
+import org.mastodon.mamut.treesimilarity.tree.SimpleTree;
 import org.mastodon.mamut.treesimilarity.tree.SimpleTreeExamples;
+import org.mastodon.mamut.treesimilarity.tree.SyntheticTrees;
 import org.mastodon.mamut.treesimilarity.tree.Tree;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.function.BiFunction;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
 
 public class ZhangUnorderedTreeEditDistanceTest
@@ -15,6 +21,13 @@ public class ZhangUnorderedTreeEditDistanceTest
 
 	private final static BiFunction< Double, Double, Double > defaultCosts = ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION;
 
+	/**
+	 * The {@link ZhangImplementation#HASH_MAP} implementation sums up the costs of composed node mappings with compensated summation, while the
+	 * {@link ZhangImplementation#DENSE_ARRAY} implementation adds them up in plain arithmetic. Both are exact for the integer attributes of the
+	 * example trees, but may differ in the last bits for arbitrary attributes.
+	 */
+	private final static double IMPLEMENTATION_TOLERANCE = 1e-9;
+
 	@SuppressWarnings("all")
 	@Test
 	public void testExceptions()
@@ -290,4 +303,75 @@ public class ZhangUnorderedTreeEditDistanceTest
 		Tree< Double > tree2c2 = SimpleTreeExamples.tree2c2();
 		assertEquals( 1_654d, ZhangUnorderedTreeEditDistance.distance( tree1a111, tree2c2, defaultCosts ), 0d );
 	}
+
+	@Test
+	public void testImplementationsAreIdentical()
+	{
+		List< Tree< Double > > trees = Arrays.asList( SimpleTreeExamples.emptyTree(), SimpleTreeExamples.tree1(), SimpleTreeExamples.tree2(),
+				SimpleTreeExamples.tree3(), SimpleTreeExamples.tree4(), SimpleTreeExamples.tree5(), SimpleTreeExamples.tree6(),
+				SimpleTreeExamples.tree7(), SimpleTreeExamples.tree8(), SimpleTreeExamples.tree9(), SimpleTreeExamples.tree14(),
+				SimpleTreeExamples.nonBinaryTree(), SimpleTreeExamples.tree15(), SimpleTreeExamples.tree16(), SimpleTreeExamples.tree17(),
+				SimpleTreeExamples.tree18(), SimpleTreeExamples.tree19(), SimpleTreeExamples.tree20(), SimpleTreeExamples.tree21(),
+				SimpleTreeExamples.tree1a111(), SimpleTreeExamples.tree2c2() );
+		for ( Tree< Double > tree1 : trees )
+		{
+			for ( Tree< Double > tree2 : trees )
+			{
+				if ( tree1 == tree2 )
+					continue;
+				assertEquals( ZhangUnorderedTreeEditDistance.distance( tree1, tree2, defaultCosts, ZhangImplementation.HASH_MAP ),
+						ZhangUnorderedTreeEditDistance.distance( tree1, tree2, defaultCosts, ZhangImplementation.DENSE_ARRAY ), IMPLEMENTATION_TOLERANCE );
+				assertEquals( ZhangUnorderedTreeEditDistance.normalizedDistance( tree1, tree2, defaultCosts, ZhangImplementation.HASH_MAP ),
+						ZhangUnorderedTreeEditDistance.normalizedDistance( tree1, tree2, defaultCosts, ZhangImplementation.DENSE_ARRAY ), IMPLEMENTATION_TOLERANCE );
+				assertEquals( ZhangUnorderedTreeEditDistance.averageDistance( tree1, tree2, defaultCosts, ZhangImplementation.HASH_MAP ),
+						ZhangUnorderedTreeEditDistance.averageDistance( tree1, tree2, defaultCosts, ZhangImplementation.DENSE_ARRAY ), IMPLEMENTATION_TOLERANCE );
+				assertEquals( ZhangUnorderedTreeEditDistance.nodeMapping( tree1, tree2, defaultCosts, ZhangImplementation.HASH_MAP ),
+						ZhangUnorderedTreeEditDistance.nodeMapping( tree1, tree2, defaultCosts, ZhangImplementation.DENSE_ARRAY ) );
+			}
+		}
+	}
+
+	@Test
+	public void testNodeMappingIndices()
+	{
+		List< Tree< Double > > trees = Arrays.asList( SimpleTreeExamples.emptyTree(), SimpleTreeExamples.tree1(), SimpleTreeExamples.tree3(),
+				SimpleTreeExamples.tree4(), SimpleTreeExamples.nonBinaryTree(), SimpleTreeExamples.tree1a111(), SimpleTreeExamples.tree2c2() );
+		for ( Tree< Double > tree1 : trees )
+		{
+			for ( Tree< Double > tree2 : trees )
+			{
+				PreparedTree< Double > prepared1 = PreparedTree.ofDoubles( tree1, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+				PreparedTree< Double > prepared2 = PreparedTree.ofDoubles( tree2, ZhangUnorderedTreeEditDistance.DEFAULT_DOUBLE_COST_FUNCTION );
+				int[] indices = ZhangUnorderedTreeEditDistance.nodeMappingIndices( prepared1, prepared2 );
+				Map< Tree< Double >, Tree< Double > > mapping = ZhangUnorderedTreeEditDistance.nodeMapping( tree1, tree2, defaultCosts );
+				assertEquals( prepared1.size(), indices.length );
+				int mapped = 0;
+				for ( int i = 0; i < indices.length; i++ )
+				{
+					if ( indices[ i ] < 0 )
+						continue;
+					mapped++;
+					assertSame( mapping.get( prepared1.getSubtree( i ) ), prepared2.getSubtree( indices[ i ] ) );
+				}
+				assertEquals( mapping.size(), mapped );
+			}
+		}
+	}
+
+	@Test
+	public void testDeepTrees()
+	{
+		// NB: a degenerate lineage, which is much deeper than a recursive implementation could handle
+		int length = 100_000;
+		Tree< Double > chain = SyntheticTrees.chain( length, 1d );
+		Tree< Double > tree1 = SimpleTreeExamples.tree1();
+		for ( ZhangImplementation implementation : ZhangImplementation.values() )
+		{
+			assertEquals( length - 1, ZhangUnorderedTreeEditDistance.distance( chain, new SimpleTree<>( 1d ), defaultCosts, implementation ), 0d );
+			assertEquals( length, ZhangUnorderedTreeEditDistance.distance( chain, null, defaultCosts, implementation ), 0d );
+			assertEquals( 2, ZhangUnorderedTreeEditDistance.nodeMapping( chain, tree1, defaultCosts, implementation ).size() );
+		}
+		assertEquals( ZhangUnorderedTreeEditDistance.distance( chain, tree1, defaultCosts, ZhangImplementation.HASH_MAP ),
+				ZhangUnorderedTreeEditDistance.distance( chain, tree1, defaultCosts, ZhangImplementation.DENSE_ARRAY ), IMPLEMENTATION_TOLERANCE );
+	}
 }
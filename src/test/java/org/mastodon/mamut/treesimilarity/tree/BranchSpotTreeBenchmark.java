@@ -0,0 +1,99 @@
+package org.mastodon.mamut.treesimilarity.tree;
+
+import org.mastodon.mamut.clustering.config.SimilarityMeasure;
+import org.mastodon.mamut.clustering.util.ClusterUtils;
+import org.mastodon.mamut.clustering.util.CondensedDistanceMatrix;
+import org.mastodon.mamut.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the creation of {@link BranchSpotTree}s and {@link CompactBranchSpotTree}s from a random {@link Model} and the computation of their distance matrices.
+ * <p>
+ * Run {@link #main(String...)} to get the throughput and, via the gc profiler, the allocation rate.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 2, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class BranchSpotTreeBenchmark
+{
+	@Param( { "20", "100" } )
+	private int numberOfRoots;
+
+	@Param( { "4", "6" } )
+	private int depth;
+
+	@Param( { "2" } )
+	private int branchingFactor;
+
+	@Param( { "UNIFORM", "EXPONENTIAL" } )
+	private SyntheticTrees.AttributeDistribution attributeDistribution;
+
+	private Model model;
+
+	private List< Tree< Double > > trees;
+
+	private List< Tree< Double > > compactTrees;
+
+	@Setup
+	public void setup()
+	{
+		SyntheticTrees.Shape shape = new SyntheticTrees.Shape( depth, branchingFactor, 0.8, attributeDistribution, 10 );
+		model = SyntheticModels.model( 42, numberOfRoots, shape );
+		trees = SyntheticModels.branchSpotTrees( model );
+		compactTrees = SyntheticModels.compactBranchSpotTrees( model );
+	}
+
+	@Benchmark
+	public List< Tree< Double > > createTrees()
+	{
+		return SyntheticModels.branchSpotTrees( model );
+	}
+
+	@Benchmark
+	public List< Tree< Double > > createCompactTrees()
+	{
+		return SyntheticModels.compactBranchSpotTrees( model );
+	}
+
+	@Benchmark
+	public CondensedDistanceMatrix distanceMatrix()
+	{
+		return ClusterUtils.getCondensedDistanceMatrix( trees, SimilarityMeasure.NORMALIZED_DIFFERENCE, false );
+	}
+
+	@Benchmark
+	public CondensedDistanceMatrix distanceMatrixCompact()
+	{
+		return ClusterUtils.getCondensedDistanceMatrix( compactTrees, SimilarityMeasure.NORMALIZED_DIFFERENCE, false );
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		Options options = new OptionsBuilder()
+				.include( BranchSpotTreeBenchmark.class.getSimpleName() )
+				.addProfiler( GCProfiler.class )
+				.build();
+		new Runner( options ).run();
+	}
+}
@@ -0,0 +1,97 @@
+package org.mastodon.mamut.treesimilarity.tree;
+
+import org.junit.Test;
+import org.mastodon.mamut.feature.branch.exampleGraph.ExampleGraph2;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.model.branch.BranchSpot;
+import org.mastodon.mamut.model.branch.ModelBranchGraph;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class CompactBranchSpotTreeTest
+{
+
+	@Test
+	public void testSameAsBranchSpotTree()
+	{
+		Model model = SyntheticModels.model( 42, 10, new SyntheticTrees.Shape( 4, 2, 0.7, SyntheticTrees.AttributeDistribution.UNIFORM, 5 ) );
+		List< Tree< Double > > expected = SyntheticModels.branchSpotTrees( model );
+		List< Tree< Double > > actual = SyntheticModels.compactBranchSpotTrees( model );
+		assertEquals( expected.size(), actual.size() );
+		for ( int i = 0; i < expected.size(); i++ )
+			CompactTreeTest.assertSameTree( expected.get( i ), actual.get( i ) );
+	}
+
+	@Test
+	public void testEndTimepoint()
+	{
+		ExampleGraph2 example = new ExampleGraph2();
+		ModelBranchGraph branchGraph = example.getModel().getBranchGraph();
+		for ( int endTimepoint = 4; endTimepoint < 10; endTimepoint++ )
+			CompactTreeTest.assertSameTree( new BranchSpotTree( example.branchSpotB, endTimepoint ),
+					CompactBranchSpotTree.of( branchGraph, example.branchSpotB, endTimepoint ) );
+	}
+
+	@Test
+	public void testGetBranchSpot()
+	{
+		ExampleGraph2 example = new ExampleGraph2();
+		ModelBranchGraph branchGraph = example.getModel().getBranchGraph();
+		CompactBranchSpotTree tree = CompactBranchSpotTree.of( branchGraph, example.branchSpotB, 20 );
+		assertEquals( example.branchSpotB, tree.getBranchSpot( branchGraph.vertexRef() ) );
+		BranchSpot ref = branchGraph.vertexRef();
+		for ( int i = 0; i < tree.size(); i++ )
+		{
+			BranchSpot branchSpot = tree.getBranchSpot( i, ref );
+			assertEquals( tree.getAttribute( i ), Math.min( branchSpot.getTimepoint(), 20 ) - branchSpot.getFirstTimePoint(), 0d );
+		}
+	}
+
+	@Test
+	public void testToString()
+	{
+		ExampleGraph2 example = new ExampleGraph2();
+		CompactBranchSpotTree tree = CompactBranchSpotTree.of( example.getModel().getBranchGraph(), example.branchSpotB, 20 );
+		// Note: spot3 is the first spot of branchSpotB.
+		assertEquals( example.spot3.getLabel(), tree.toString() );
+	}
+
+	@Test
+	public void testExceptions()
+	{
+		ExampleGraph2 example = new ExampleGraph2();
+		ModelBranchGraph branchGraph = example.getModel().getBranchGraph();
+		// NB: 2 is not a timepoint of branchSpotB, it only starts at 4.
+		assertThrows( IllegalArgumentException.class, () -> CompactBranchSpotTree.of( branchGraph, example.branchSpotB, 2 ) );
+		assertThrows( IllegalArgumentException.class, () -> CompactBranchSpotTree.of( branchGraph, null, 0 ) );
+	}
+
+	@Test
+	public void testDeepLineage()
+	{
+		// a lineage, in which one daughter of each division divides again
+		int divisions = 5_000;
+		Model model = new Model();
+		ModelGraph graph = model.getGraph();
+		Spot parent = graph.addVertex( graph.vertexRef() ).init( 0, new double[ 3 ], 1 );
+		Spot root = graph.vertexRef();
+		root.refTo( parent );
+		for ( int t = 1; t <= divisions; t++ )
+		{
+			Spot leaf = graph.addVertex( graph.vertexRef() ).init( t, new double[ 3 ], 1 );
+			Spot next = graph.addVertex( graph.vertexRef() ).init( t, new double[ 3 ], 1 );
+			graph.addEdge( parent, leaf );
+			graph.addEdge( parent, next );
+			parent = next;
+		}
+		ModelBranchGraph branchGraph = model.getBranchGraph();
+		branchGraph.graphRebuilt();
+		CompactBranchSpotTree tree = CompactBranchSpotTree.of( branchGraph, branchGraph.getBranchVertex( root, branchGraph.vertexRef() ), divisions );
+		assertEquals( 2 * divisions + 1, tree.size() );
+	}
+}
@@ -0,0 +1,128 @@
+package org.mastodon.mamut.treesimilarity.tree;
+
+import org.junit.Test;
+import org.mastodon.mamut.treesimilarity.ZhangUnorderedTreeEditDistance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class CompactTreeTest
+{
+
+	@Test
+	public void testCopyOf()
+	{
+		for ( Tree< Double > tree : simpleTrees() )
+			assertSameTree( tree, CompactTree.copyOf( tree ) );
+		for ( Tree< Double > tree : SyntheticTrees.simpleTrees( 42, 10,
+				new SyntheticTrees.Shape( 5, 3, 0.6, SyntheticTrees.AttributeDistribution.UNIFORM, 10 ) ) )
+			assertSameTree( tree, CompactTree.copyOf( tree ) );
+	}
+
+	@Test
+	public void testCopyOfCompactTree()
+	{
+		CompactTree tree = CompactTree.copyOf( SimpleTreeExamples.tree1() );
+		assertSame( tree, CompactTree.copyOf( tree ) );
+		assertThrows( IllegalArgumentException.class, () -> CompactTree.copyOf( null ) );
+	}
+
+	@Test
+	public void testPostOrder()
+	{
+		// root (1) with children 2 and 3, 2 has children 4 and 5
+		SimpleTree< Double > root = new SimpleTree<>( 1d );
+		SimpleTree< Double > child2 = new SimpleTree<>( 2d );
+		child2.addChild( new SimpleTree<>( 4d ) );
+		child2.addChild( new SimpleTree<>( 5d ) );
+		root.addChild( child2 );
+		root.addChild( new SimpleTree<>( 3d ) );
+		CompactTree tree = CompactTree.copyOf( root );
+
+		assertEquals( 5, tree.size() );
+		assertEquals( 4, tree.getRootIndex() );
+		double[] attributes = new double[ tree.size() ];
+		for ( int i = 0; i < tree.size(); i++ )
+			attributes[ i ] = tree.getAttribute( i );
+		assertArrayEquals( new double[] { 4, 5, 2, 3, 1 }, attributes, 0d );
+		assertEquals( 2, tree.getNumberOfChildren( 4 ) );
+		assertEquals( 2, tree.getChild( 4, 0 ) );
+		assertEquals( 3, tree.getChild( 4, 1 ) );
+		assertEquals( 4, tree.getParent( 2 ) );
+		assertEquals( -1, tree.getParent( 4 ) );
+		assertEquals( 3, tree.getSubtreeSize( 2 ) );
+		assertEquals( 5, tree.getSubtreeSize( 4 ) );
+		assertTrue( tree.isLeaf( 0 ) );
+		assertFalse( tree.isLeaf( 2 ) );
+		assertEquals( -1, tree.getObjectId( 0 ) );
+		assertSame( tree, tree.getNode( 4 ) );
+		assertSame( tree.getNode( 2 ), tree.getChildren().iterator().next() );
+		assertEquals( 2d, tree.getNode( 2 ).getAttribute(), 0d );
+	}
+
+	@Test
+	public void testSameDistances()
+	{
+		List< Tree< Double > > trees = simpleTrees();
+		trees.addAll( SyntheticTrees.simpleTrees( 42, 10, new SyntheticTrees.Shape( 4, 2, 0.7, SyntheticTrees.AttributeDistribution.EXPONENTIAL, 10 ) ) );
+		for ( Tree< Double > tree1 : trees )
+		{
+			for ( Tree< Double > tree2 : trees )
+			{
+				double expected = ZhangUnorderedTreeEditDistance.distance( tree1, tree2, ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION );
+				double actual = ZhangUnorderedTreeEditDistance.distance( CompactTree.copyOf( tree1 ), CompactTree.copyOf( tree2 ),
+						ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION );
+				assertEquals( expected, actual, 0d );
+				assertEquals( ZhangUnorderedTreeEditDistance.nodeMapping( tree1, tree2, ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION ).size(),
+						ZhangUnorderedTreeEditDistance.nodeMapping( CompactTree.copyOf( tree1 ), CompactTree.copyOf( tree2 ),
+								ZhangUnorderedTreeEditDistance.DEFAULT_COST_FUNCTION ).size() );
+			}
+		}
+	}
+
+	@Test
+	public void testDeepTree()
+	{
+		int depth = 100_000;
+		SimpleTree< Double > root = new SimpleTree<>( 0d );
+		SimpleTree< Double > parent = root;
+		for ( int i = 1; i < depth; i++ )
+		{
+			SimpleTree< Double > child = new SimpleTree<>( ( double ) i );
+			parent.addChild( child );
+			parent = child;
+		}
+		CompactTree tree = CompactTree.copyOf( root );
+		assertEquals( depth, tree.size() );
+		assertEquals( depth - 1, tree.getAttribute( 0 ), 0d );
+		assertEquals( depth, tree.getSubtreeSize( tree.getRootIndex() ) );
+	}
+
+	private static List< Tree< Double > > simpleTrees()
+	{
+		return new ArrayList<>( Arrays.asList( SimpleTreeExamples.tree1(), SimpleTreeExamples.tree2(), SimpleTreeExamples.tree3(),
+				SimpleTreeExamples.tree4(), SimpleTreeExamples.tree5(), SimpleTreeExamples.tree6(), SimpleTreeExamples.tree7(),
+				SimpleTreeExamples.tree8(), SimpleTreeExamples.tree9() ) );
+	}
+
+	/**
+	 * Asserts that both trees have the same attributes and the same children in the same order.
+	 */
+	static void assertSameTree( final Tree< Double > expected, final Tree< Double > actual )
+	{
+		assertEquals( expected.getAttribute(), actual.getAttribute() );
+		assertEquals( expected.getChildren().size(), actual.getChildren().size() );
+		Iterator< Tree< Double > > actualChildren = actual.getChildren().iterator();
+		for ( Tree< Double > expectedChild : expected.getChildren() )
+			assertSameTree( expectedChild, actualChildren.next() );
+	}
+}
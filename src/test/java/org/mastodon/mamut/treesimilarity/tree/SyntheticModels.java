@@ -0,0 +1,132 @@
+package org.mastodon.mamut.treesimilarity.tree;
+
+import org.mastodon.collection.RefSet;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.model.branch.BranchSpot;
+import org.mastodon.mamut.model.branch.ModelBranchGraph;
+import org.mastodon.mamut.util.LineageTreeUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates {@link Model}s with random lineages for benchmarks.
+ * <p>
+ * The lineages have the same shapes as the trees generated by {@link SyntheticTrees}. Each branch is a chain of spots with one spot per timepoint.
+ * The lifespan of a branch, i.e. the attribute of the corresponding {@link BranchSpotTree}, is drawn from the {@link SyntheticTrees.AttributeDistribution}.
+ */
+public class SyntheticModels
+{
+	private SyntheticModels()
+	{
+		// prevent from instantiation
+	}
+
+	/**
+	 * Generates a model with the given number of lineages, all starting at timepoint 0. The branch graph of the model is up-to-date.
+	 *
+	 * @param seed the seed of the random numbers, such that the same model is generated for the same seed
+	 * @param numberOfRoots the number of lineages
+	 * @param shape the shape of the lineages
+	 * @return the model
+	 */
+	public static Model model( final long seed, final int numberOfRoots, final SyntheticTrees.Shape shape )
+	{
+		Random random = new Random( seed );
+		Model model = new Model();
+		ModelGraph graph = model.getGraph();
+		for ( int r = 0; r < numberOfRoots; r++ )
+		{
+			Deque< Branch > branches = new ArrayDeque<>();
+			branches.push( new Branch( null, -1, 0 ) );
+			while ( !branches.isEmpty() )
+			{
+				Branch branch = branches.pop();
+				int lifespan = ( int ) shape.attributeDistribution.next( random, shape.meanAttribute );
+				int firstTimepoint = branch.parentTimepoint + 1;
+				Spot previous = branch.parent;
+				// NB: a branch with a lifespan of n consists of n + 1 spots
+				for ( int t = firstTimepoint; t <= firstTimepoint + lifespan; t++ )
+				{
+					// NB: a new ref per spot, since the last spot of the branch is kept as parent of the child branches
+					Spot spot = graph.addVertex( graph.vertexRef() ).init( t, new double[] { r, t, 0 }, 1 );
+					if ( previous != null )
+						graph.addEdge( previous, spot );
+					previous = spot;
+				}
+				boolean divides = branch.level < shape.depth && ( branch.level == 0 || random.nextDouble() < shape.divisionProbability );
+				if ( divides )
+					for ( int i = 0; i < shape.branchingFactor; i++ )
+						branches.push( new Branch( previous, firstTimepoint + lifespan, branch.level + 1 ) );
+			}
+		}
+		model.getBranchGraph().graphRebuilt();
+		return model;
+	}
+
+	/**
+	 * Creates a {@link BranchSpotTree} for each lineage of the given model, which starts at timepoint 0.
+	 *
+	 * @param model the model
+	 * @return the trees
+	 */
+	public static List< Tree< Double > > branchSpotTrees( final Model model )
+	{
+		ModelBranchGraph branchGraph = model.getBranchGraph();
+		int endTimepoint = LineageTreeUtils.getMaxTimepoint( model );
+		RefSet< Spot > roots = LineageTreeUtils.getRoots( model.getGraph(), 0 );
+		List< Tree< Double > > trees = new ArrayList<>( roots.size() );
+		for ( Spot root : roots )
+		{
+			BranchSpot branchSpot = branchGraph.getBranchVertex( root, branchGraph.vertexRef() );
+			trees.add( new BranchSpotTree( branchSpot, endTimepoint ) );
+		}
+		return trees;
+	}
+
+	/**
+	 * Creates a {@link CompactBranchSpotTree} for each lineage of the given model, which starts at timepoint 0.
+	 *
+	 * @param model the model
+	 * @return the trees
+	 */
+	public static List< Tree< Double > > compactBranchSpotTrees( final Model model )
+	{
+		ModelBranchGraph branchGraph = model.getBranchGraph();
+		int endTimepoint = LineageTreeUtils.getMaxTimepoint( model );
+		RefSet< Spot > roots = LineageTreeUtils.getRoots( model.getGraph(), 0 );
+		List< Tree< Double > > trees = new ArrayList<>( roots.size() );
+		BranchSpot ref = branchGraph.vertexRef();
+		for ( Spot root : roots )
+			trees.add( CompactBranchSpotTree.of( branchGraph, branchGraph.getBranchVertex( root, ref ), endTimepoint ) );
+		branchGraph.releaseRef( ref );
+		return trees;
+	}
+
+	/**
+	 * A branch that still needs to be generated.
+	 */
+	private static class Branch
+	{
+		/**
+		 * The last spot of the parent branch or {@code null} for roots.
+		 */
+		private final Spot parent;
+
+		private final int parentTimepoint;
+
+		private final int level;
+
+		private Branch( final Spot parent, final int parentTimepoint, final int level )
+		{
+			this.parent = parent;
+			this.parentTimepoint = parentTimepoint;
+			this.level = level;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package org.mastodon.mamut.treesimilarity.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates random lineage trees of configurable shape for benchmarks.
+ * <p>
+ * Each tree starts with a root. Each node above the given depth divides with the given probability into the given number of children.
+ * The attributes of the nodes, i.e. the lifespans of the branches, are drawn from an {@link AttributeDistribution}.
+ */
+public class SyntheticTrees
+{
+	private SyntheticTrees()
+	{
+		// prevent from instantiation
+	}
+
+	/**
+	 * The distribution of the attributes of the generated trees.
+	 */
+	public enum AttributeDistribution
+	{
+		/**
+		 * All attributes are equal, i.e. the trees only differ by their structure.
+		 */
+		CONSTANT,
+
+		/**
+		 * Integer attributes drawn uniformly from {@code [1, 2 * mean]}.
+		 */
+		UNIFORM,
+
+		/**
+		 * Integer attributes drawn from an exponential distribution, i.e. many short and few long branches.
+		 */
+		EXPONENTIAL;
+
+		public double next( final Random random, final double mean )
+		{
+			switch ( this )
+			{
+			case CONSTANT:
+				return mean;
+			case UNIFORM:
+				return 1 + random.nextInt( ( int ) Math.max( 1, 2 * mean ) );
+			case EXPONENTIAL:
+				return 1 + Math.floor( -Math.log( 1 - random.nextDouble() ) * mean );
+			default:
+				throw new IllegalArgumentException( "Unknown distribution: " + this );
+			}
+		}
+	}
+
+	/**
+	 * The parameters of the generated trees.
+	 */
+	public static class Shape
+	{
+		/**
+		 * The maximum number of divisions from the root to a leaf.
+		 */
+		public final int depth;
+
+		/**
+		 * The number of children of each dividing node.
+		 */
+		public final int branchingFactor;
+
+		/**
+		 * The probability that a node above the maximum depth divides.
+		 */
+		public final double divisionProbability;
+
+		/**
+		 * The distribution of the attributes.
+		 */
+		public final AttributeDistribution attributeDistribution;
+
+		/**
+		 * The mean attribute.
+		 */
+		public final double meanAttribute;
+
+		public Shape( final int depth, final int branchingFactor, final double divisionProbability,
+				final AttributeDistribution attributeDistribution, final double meanAttribute )
+		{
+			if ( depth < 0 )
+				throw new IllegalArgumentException( "depth (" + depth + ") must not be negative." );
+			if ( branchingFactor < 1 )
+				throw new IllegalArgumentException( "branching factor (" + branchingFactor + ") must be at least one." );
+			this.depth = depth;
+			this.branchingFactor = branchingFactor;
+			this.divisionProbability = divisionProbability;
+			this.attributeDistribution = attributeDistribution;
+			this.meanAttribute = meanAttribute;
+		}
+	}
+
+	/**
+	 * Generates a random tree.
+	 *
+	 * @param random the source of randomness
+	 * @param shape the shape of the tree
+	 * @return the tree
+	 */
+	public static SimpleTree< Double > simpleTree( final Random random, final Shape shape )
+	{
+		SimpleTree< Double > root = new SimpleTree<>( shape.attributeDistribution.next( random, shape.meanAttribute ) );
+		addChildren( random, shape, root, 0 );
+		return root;
+	}
+
+	/**
+	 * Generates a list of random trees.
+	 *
+	 * @param seed the seed of the random numbers, such that the same trees are generated for the same seed
+	 * @param numberOfTrees the number of trees
+	 * @param shape the shape of the trees
+	 * @return the trees
+	 */
+	public static List< Tree< Double > > simpleTrees( final long seed, final int numberOfTrees, final Shape shape )
+	{
+		Random random = new Random( seed );
+		List< Tree< Double > > trees = new ArrayList<>( numberOfTrees );
+		for ( int i = 0; i < numberOfTrees; i++ )
+			trees.add( simpleTree( random, shape ) );
+		return trees;
+	}
+
+	/**
+	 * Generates a degenerate tree, in which each node except for the last one has exactly one child, i.e. a tree whose depth equals its size.
+	 *
+	 * @param length the number of nodes
+	 * @param attribute the attribute of all nodes
+	 * @return the root of the chain
+	 */
+	public static SimpleTree< Double > chain( final int length, final double attribute )
+	{
+		SimpleTree< Double > root = new SimpleTree<>( attribute );
+		SimpleTree< Double > last = root;
+		for ( int i = 1; i < length; i++ )
+		{
+			SimpleTree< Double > child = new SimpleTree<>( attribute );
+			last.addChild( child );
+			last = child;
+		}
+		return root;
+	}
+
+	private static void addChildren( final Random random, final Shape shape, final SimpleTree< Double > parent, final int level )
+	{
+		if ( level >= shape.depth )
+			return;
+		// NB: the root always divides, such that no tree is trivial
+		if ( level > 0 && random.nextDouble() >= shape.divisionProbability )
+			return;
+		for ( int i = 0; i < shape.branchingFactor; i++ )
+		{
+			SimpleTree< Double > child = new SimpleTree<>( shape.attributeDistribution.next( random, shape.meanAttribute ) );
+			parent.addChild( child );
+			addChildren( random, shape, child, level + 1 );
+		}
+	}
+}
@@ -7,6 +7,8 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TreeUtilsTest
 {
@@ -25,6 +27,35 @@ public class TreeUtilsTest
 		assertEquals( subtrees1, TreeUtils.listOfSubtrees( tree1 ) );
 	}
 
+	@Test
+	public void testListOfSubtreesInPostOrder()
+	{
+		Tree< Double > tree3 = SimpleTreeExamples.tree3();
+		List< Tree< Double > > postOrder = TreeUtils.listOfSubtreesInPostOrder( tree3 );
+		List< Tree< Double > > preOrder = TreeUtils.listOfSubtrees( tree3 );
+		assertEquals( preOrder.size(), postOrder.size() );
+		assertEquals( tree3, postOrder.get( postOrder.size() - 1 ) );
+		for ( int i = 0; i < postOrder.size(); i++ )
+			for ( Tree< Double > child : postOrder.get( i ).getChildren() )
+				assertTrue( postOrder.indexOf( child ) < i );
+		assertEquals( Collections.emptyList(), TreeUtils.listOfSubtreesInPostOrder( null ) );
+	}
+
+	@Test
+	public void testDeepTree()
+	{
+		int length = 100_000;
+		SimpleTree< Double > chain = SyntheticTrees.chain( length, 1d );
+		List< Tree< Double > > subtrees = TreeUtils.listOfSubtrees( chain );
+		assertEquals( length, subtrees.size() );
+		assertEquals( chain, subtrees.get( 0 ) );
+		List< Tree< Double > > postOrder = TreeUtils.listOfSubtreesInPostOrder( chain );
+		assertEquals( length, postOrder.size() );
+		assertEquals( chain, postOrder.get( length - 1 ) );
+		assertEquals( TreeUtils.fingerprint( chain ), TreeUtils.fingerprint( SyntheticTrees.chain( length, 1d ) ) );
+		assertNotEquals( TreeUtils.fingerprint( chain ), TreeUtils.fingerprint( SyntheticTrees.chain( length - 1, 1d ) ) );
+	}
+
 	@Test
 	public void testSize()
 	{
@@ -38,4 +69,28 @@ public class TreeUtilsTest
 		assertEquals( 3, TreeUtils.size( SimpleTreeExamples.tree6() ) );
 		assertEquals( 5, TreeUtils.size( SimpleTreeExamples.tree7() ) );
 	}
+
+	@Test
+	public void testFingerprint()
+	{
+		// same attributes, children in different order
+		SimpleTree< Double > tree1 = new SimpleTree<>( 1d );
+		tree1.addChild( new SimpleTree<>( 2d ) );
+		tree1.addChild( new SimpleTree<>( 3d ) );
+		SimpleTree< Double > tree2 = new SimpleTree<>( 1d );
+		tree2.addChild( new SimpleTree<>( 3d ) );
+		tree2.addChild( new SimpleTree<>( 2d ) );
+		assertEquals( TreeUtils.fingerprint( tree1 ), TreeUtils.fingerprint( tree2 ) );
+
+		// same attributes, different structure
+		SimpleTree< Double > tree3 = new SimpleTree<>( 1d );
+		SimpleTree< Double > child = new SimpleTree<>( 2d );
+		child.addChild( new SimpleTree<>( 3d ) );
+		tree3.addChild( child );
+		assertNotEquals( TreeUtils.fingerprint( tree1 ), TreeUtils.fingerprint( tree3 ) );
+
+		// different attributes
+		assertNotEquals( TreeUtils.fingerprint( SimpleTreeExamples.tree1() ), TreeUtils.fingerprint( SimpleTreeExamples.tree2() ) );
+		assertEquals( TreeUtils.fingerprint( SimpleTreeExamples.tree1() ), TreeUtils.fingerprint( SimpleTreeExamples.tree1() ) );
+	}
 }
@@ -0,0 +1,77 @@
+package org.mastodon.mamut.treesimilarity.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the assignment of children in the tree edit distance: {@link AssignmentSolver} compared to the minimum cost maximum flow on a {@link FlowNetwork}, which uses {@link JGraphtTools#maxFlowMinCost}.
+ * <p>
+ * Run {@link #main(String...)} to get the throughput and, via the gc profiler, the allocation rate.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class AssignmentSolverBenchmark
+{
+	/**
+	 * The number of children of both trees.
+	 */
+	@Param( { "2", "3", "5", "10" } )
+	private int numberOfChildren;
+
+	private double[] deleteCosts;
+
+	private double[] insertCosts;
+
+	private double[] mapCosts;
+
+	@Setup
+	public void setup()
+	{
+		Random random = new Random( 42 );
+		deleteCosts = AssignmentSolverTest.randomCosts( random, numberOfChildren );
+		insertCosts = AssignmentSolverTest.randomCosts( random, numberOfChildren );
+		mapCosts = AssignmentSolverTest.randomCosts( random, numberOfChildren * numberOfChildren );
+	}
+
+	@Benchmark
+	public int[] assignmentSolver()
+	{
+		return AssignmentSolver.solve( deleteCosts, insertCosts, mapCosts );
+	}
+
+	@Benchmark
+	public int[] flowNetwork()
+	{
+		return AssignmentSolverTest.solveWithFlowNetwork( deleteCosts, insertCosts, mapCosts );
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		Options options = new OptionsBuilder()
+				.include( AssignmentSolverBenchmark.class.getSimpleName() )
+				.addProfiler( GCProfiler.class )
+				.build();
+		new Runner( options ).run();
+	}
+}
@@ -0,0 +1,141 @@
+package org.mastodon.mamut.treesimilarity.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class AssignmentSolverTest
+{
+	@Test
+	public void testEmpty()
+	{
+		assertArrayEquals( new int[ 0 ], AssignmentSolver.solve( new double[ 0 ], new double[] { 1, 2 }, new double[ 0 ] ) );
+		assertArrayEquals( new int[] { -1, -1 }, AssignmentSolver.solve( new double[] { 1, 2 }, new double[ 0 ], new double[ 0 ] ) );
+	}
+
+	@Test
+	public void testSingleChild()
+	{
+		// map the only child of forest 1 onto the child of forest 2 that saves the most costs
+		assertArrayEquals( new int[] { 1 }, AssignmentSolver.solve( new double[] { 5 }, new double[] { 1, 10 }, new double[] { 2, 3 } ) );
+		// delete the child of forest 1 that is most expensive to map
+		assertArrayEquals( new int[] { -1, 0 }, AssignmentSolver.solve( new double[] { 1, 10 }, new double[] { 5 }, new double[] { 2, 3 } ) );
+	}
+
+	@Test
+	public void testTwoByTwo()
+	{
+		assertArrayEquals( new int[] { 0, 1 }, AssignmentSolver.solve( new double[] { 1, 1 }, new double[] { 1, 1 }, new double[] { 1, 5, 5, 1 } ) );
+		assertArrayEquals( new int[] { 1, 0 }, AssignmentSolver.solve( new double[] { 1, 1 }, new double[] { 1, 1 }, new double[] { 5, 1, 1, 5 } ) );
+	}
+
+	@Test
+	public void testInvalidMapCosts()
+	{
+		assertThrows( IllegalArgumentException.class, () -> AssignmentSolver.solve( new double[ 2 ], new double[ 3 ], new double[ 5 ] ) );
+	}
+
+	@Test
+	public void testAgainstFlowNetwork()
+	{
+		Random random = new Random( 42 );
+		for ( int run = 0; run < 1000; run++ )
+		{
+			int m = random.nextInt( 6 );
+			int n = random.nextInt( 6 );
+			double[] deleteCosts = randomCosts( random, m );
+			double[] insertCosts = randomCosts( random, n );
+			double[] mapCosts = randomCosts( random, m * n );
+
+			int[] assignment = AssignmentSolver.solve( deleteCosts, insertCosts, mapCosts );
+			int[] reference = solveWithFlowNetwork( deleteCosts, insertCosts, mapCosts );
+
+			assertEquals( Math.min( m, n ), Arrays.stream( assignment ).filter( j -> j >= 0 ).distinct().count() );
+			assertEquals( cost( reference, deleteCosts, insertCosts, mapCosts ), cost( assignment, deleteCosts, insertCosts, mapCosts ), 1e-9 );
+		}
+	}
+
+	static double[] randomCosts( Random random, int size )
+	{
+		double[] costs = new double[ size ];
+		for ( int i = 0; i < size; i++ )
+			costs[ i ] = random.nextInt( 20 ) + ( random.nextBoolean() ? random.nextDouble() : 0 );
+		return costs;
+	}
+
+	private static double cost( int[] assignment, double[] deleteCosts, double[] insertCosts, double[] mapCosts )
+	{
+		int n = insertCosts.length;
+		boolean[] mapped = new boolean[ n ];
+		double cost = 0;
+		for ( int i = 0; i < assignment.length; i++ )
+		{
+			if ( assignment[ i ] < 0 )
+				cost += deleteCosts[ i ];
+			else
+			{
+				cost += mapCosts[ i * n + assignment[ i ] ];
+				mapped[ assignment[ i ] ] = true;
+			}
+		}
+		for ( int j = 0; j < n; j++ )
+			if ( !mapped[ j ] )
+				cost += insertCosts[ j ];
+		return cost;
+	}
+
+	/**
+	 * Reference implementation that solves the assignment problem as a minimum cost maximum flow problem on a {@link FlowNetwork}.
+	 */
+	static int[] solveWithFlowNetwork( double[] deleteCosts, double[] insertCosts, double[] mapCosts )
+	{
+		int m = deleteCosts.length;
+		int n = insertCosts.length;
+		String source = "source";
+		String sink = "sink";
+		String empty1 = "empty1";
+		String empty2 = "empty2";
+		List< String > children1 = new ArrayList<>();
+		for ( int i = 0; i < m; i++ )
+			children1.add( "a" + i );
+		List< String > children2 = new ArrayList<>();
+		for ( int j = 0; j < n; j++ )
+			children2.add( "b" + j );
+
+		FlowNetwork network = new FlowNetwork();
+		network.addVertices( Arrays.asList( source, sink, empty1, empty2 ) );
+		network.addVertices( children1 );
+		network.addVertices( children2 );
+		int min = Math.min( m, n );
+		network.addEdge( source, empty1, n - min, 0 );
+		network.addEdge( empty2, sink, m - min, 0 );
+		for ( int i = 0; i < m; i++ )
+		{
+			network.addEdge( source, children1.get( i ), 1, 0 );
+			network.addEdge( children1.get( i ), empty2, 1, deleteCosts[ i ] );
+			for ( int j = 0; j < n; j++ )
+				network.addEdge( children1.get( i ), children2.get( j ), 1, mapCosts[ i * n + j ] );
+		}
+		for ( int j = 0; j < n; j++ )
+		{
+			network.addEdge( children2.get( j ), sink, 1, 0 );
+			network.addEdge( empty1, children2.get( j ), 1, insertCosts[ j ] );
+		}
+		network.solveMaxFlowMinCost( source, sink );
+
+		int[] assignment = new int[ m ];
+		Arrays.fill( assignment, -1 );
+		for ( int i = 0; i < m; i++ )
+			for ( int j = 0; j < n; j++ )
+				if ( network.getFlow( children1.get( i ), children2.get( j ) ) == 1.0 )
+					assignment[ i ] = j;
+		return assignment;
+	}
+}
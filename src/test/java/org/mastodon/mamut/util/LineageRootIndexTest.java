@@ -0,0 +1,103 @@
+package org.mastodon.mamut.util;
+
+import org.junit.Test;
+import org.mastodon.collection.RefSet;
+import org.mastodon.mamut.feature.branch.exampleGraph.ExampleGraph2;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class LineageRootIndexTest
+{
+	private static void assertSameRoots( final Model model, final LineageRootIndex index )
+	{
+		for ( int timepoint = -1; timepoint <= 12; timepoint++ )
+		{
+			RefSet< Spot > expected = LineageTreeUtils.getRoots( model.getGraph(), timepoint );
+			RefSet< Spot > actual = index.getRoots( timepoint );
+			assertEquals( expected.size(), actual.size() );
+			assertEquals( labels( expected ), labels( actual ) );
+		}
+	}
+
+	private static Set< String > labels( final RefSet< Spot > spots )
+	{
+		Set< String > labels = new HashSet<>();
+		for ( Spot spot : spots )
+			labels.add( spot.getLabel() + "@" + spot.getTimepoint() );
+		return labels;
+	}
+
+	@Test
+	public void testGetRoots()
+	{
+		Model model = new ExampleGraph2().getModel();
+		try (LineageRootIndex index = new LineageRootIndex( model ))
+		{
+			assertSameRoots( model, index );
+		}
+	}
+
+	@Test
+	public void testGraphChanges()
+	{
+		Model model = new ExampleGraph2().getModel();
+		ModelGraph graph = model.getGraph();
+		try (LineageRootIndex index = new LineageRootIndex( model ))
+		{
+			assertSameRoots( model, index );
+
+			long version = index.getVersion();
+			Spot root = graph.addVertex().init( 9, new double[ 3 ], 1 );
+			root.setLabel( "new root" );
+			Spot child = graph.addVertex().init( 10, new double[ 3 ], 1 );
+			child.setLabel( "new child" );
+			assertNotEquals( version, index.getVersion() );
+			assertSameRoots( model, index );
+
+			Link link = graph.addEdge( root, child ).init();
+			assertSameRoots( model, index );
+
+			graph.remove( link );
+			assertSameRoots( model, index );
+
+			graph.addEdge( root, child ).init();
+			graph.remove( root );
+			assertSameRoots( model, index );
+
+			// NB: a spot without parent in the example graph gets a parent
+			Spot parent = graph.addVertex().init( 8, new double[ 3 ], 1 );
+			parent.setLabel( "new parent" );
+			graph.addEdge( parent, child ).init();
+			assertSameRoots( model, index );
+
+			graph.remove( child );
+			graph.remove( parent );
+			assertSameRoots( model, index );
+		}
+	}
+
+	@Test
+	public void testPausedListeners()
+	{
+		Model model = new ExampleGraph2().getModel();
+		ModelGraph graph = model.getGraph();
+		try (LineageRootIndex index = new LineageRootIndex( model ))
+		{
+			assertSameRoots( model, index );
+			long version = index.getVersion();
+			graph.pauseListeners();
+			graph.addVertex().init( 11, new double[ 3 ], 1 ).setLabel( "paused" );
+			graph.resumeListeners();
+			assertNotEquals( version, index.getVersion() );
+			assertSameRoots( model, index );
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package org.mastodon.mamut.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+public class TimepointHistogramTest
+{
+	@Test
+	public void testEmpty()
+	{
+		TimepointHistogram histogram = new TimepointHistogram();
+		assertEquals( Integer.MAX_VALUE, histogram.getMinTimepoint() );
+		assertEquals( Integer.MIN_VALUE, histogram.getMaxTimepoint() );
+		assertNull( histogram.getFirstTimepointWithCount( 0 ) );
+		assertEquals( 0, histogram.getCount( 5 ) );
+		assertThrows( IllegalStateException.class, () -> histogram.remove( 5 ) );
+	}
+
+	@Test
+	public void testAddAndRemove()
+	{
+		TimepointHistogram histogram = new TimepointHistogram();
+		histogram.add( 40 );
+		histogram.add( 3 );
+		histogram.add( 3 );
+		histogram.add( 100 );
+		histogram.add( 100 );
+		histogram.add( 100 );
+		assertEquals( 6, histogram.getTotal() );
+		assertEquals( 3, histogram.getMinTimepoint() );
+		assertEquals( 100, histogram.getMaxTimepoint() );
+		assertEquals( 2, histogram.getCount( 3 ) );
+		assertEquals( 3, ( int ) histogram.getFirstTimepointWithCount( 1 ) );
+		assertEquals( 3, ( int ) histogram.getFirstTimepointWithCount( 2 ) );
+		assertEquals( 100, ( int ) histogram.getFirstTimepointWithCount( 3 ) );
+		assertNull( histogram.getFirstTimepointWithCount( 4 ) );
+
+		histogram.remove( 3 );
+		histogram.remove( 3 );
+		histogram.remove( 100 );
+		assertEquals( 40, histogram.getMinTimepoint() );
+		assertEquals( 100, histogram.getMaxTimepoint() );
+		assertEquals( 100, ( int ) histogram.getFirstTimepointWithCount( 2 ) );
+		assertNull( histogram.getFirstTimepointWithCount( 3 ) );
+
+		histogram.clear();
+		assertEquals( 0, histogram.getTotal() );
+		assertEquals( Integer.MAX_VALUE, histogram.getMinTimepoint() );
+	}
+
+	@Test
+	public void testSameAsLinearSearch()
+	{
+		Random random = new Random( 42 );
+		TimepointHistogram histogram = new TimepointHistogram();
+		int[] counts = new int[ 200 ];
+		for ( int step = 0; step < 2000; step++ )
+		{
+			int timepoint = random.nextInt( counts.length );
+			if ( counts[ timepoint ] > 0 && random.nextInt( 3 ) == 0 )
+			{
+				histogram.remove( timepoint - 50 );
+				counts[ timepoint ]--;
+			}
+			else
+			{
+				histogram.add( timepoint - 50 );
+				counts[ timepoint ]++;
+			}
+			if ( step % 50 != 0 )
+				continue;
+			for ( int count = 0; count < 20; count++ )
+			{
+				Integer expected = null;
+				for ( int t = 0; t < counts.length && expected == null; t++ )
+					if ( counts[ t ] > 0 && counts[ t ] >= count )
+						expected = t - 50;
+				assertEquals( expected, histogram.getFirstTimepointWithCount( count ) );
+			}
+		}
+	}
+}
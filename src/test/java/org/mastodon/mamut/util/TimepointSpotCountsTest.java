@@ -0,0 +1,75 @@
+package org.mastodon.mamut.util;
+
+import org.junit.Test;
+import org.mastodon.mamut.feature.branch.exampleGraph.ExampleGraph1;
+import org.mastodon.mamut.feature.branch.exampleGraph.ExampleGraph2;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class TimepointSpotCountsTest
+{
+	private static void assertSameAsLineageTreeUtils( final Model model, final TimepointSpotCounts spotCounts )
+	{
+		assertEquals( LineageTreeUtils.getMinTimepoint( model ), spotCounts.getMinTimepoint() );
+		assertEquals( LineageTreeUtils.getMaxTimepoint( model ), spotCounts.getMaxTimepoint() );
+		for ( int numberOfSpots = 0; numberOfSpots <= 5; numberOfSpots++ )
+		{
+			int n = numberOfSpots;
+			int expected;
+			try
+			{
+				expected = LineageTreeUtils.getFirstTimepointWithNSpots( model, n );
+			}
+			catch ( NoSuchElementException e )
+			{
+				assertThrows( NoSuchElementException.class, () -> spotCounts.getFirstTimepointWithNSpots( n ) );
+				continue;
+			}
+			assertEquals( expected, spotCounts.getFirstTimepointWithNSpots( n ) );
+		}
+	}
+
+	@Test
+	public void testExampleGraphs()
+	{
+		for ( Model model : new Model[] { new ExampleGraph1().getModel(), new ExampleGraph2().getModel() } )
+		{
+			try (TimepointSpotCounts spotCounts = new TimepointSpotCounts( model ))
+			{
+				assertSameAsLineageTreeUtils( model, spotCounts );
+			}
+		}
+	}
+
+	@Test
+	public void testGraphChanges()
+	{
+		Model model = new ExampleGraph2().getModel();
+		ModelGraph graph = model.getGraph();
+		try (TimepointSpotCounts spotCounts = new TimepointSpotCounts( model ))
+		{
+			assertEquals( 5, spotCounts.getFirstTimepointWithNSpots( 3 ) );
+			Spot spot1 = graph.addVertex().init( 2, new double[ 3 ], 1 );
+			Spot spot2 = graph.addVertex().init( 2, new double[ 3 ], 1 );
+			graph.addVertex().init( 9, new double[ 3 ], 1 );
+			assertEquals( 9, spotCounts.getMaxTimepoint() );
+			assertSameAsLineageTreeUtils( model, spotCounts );
+
+			graph.remove( spot1 );
+			graph.remove( spot2 );
+			assertSameAsLineageTreeUtils( model, spotCounts );
+
+			graph.pauseListeners();
+			graph.addVertex().init( 12, new double[ 3 ], 1 );
+			graph.resumeListeners();
+			assertEquals( 12, spotCounts.getMaxTimepoint() );
+			assertSameAsLineageTreeUtils( model, spotCounts );
+		}
+	}
+}